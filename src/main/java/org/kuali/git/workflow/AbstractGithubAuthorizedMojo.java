@@ -3,8 +3,16 @@
  */
 package org.kuali.git.workflow;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.util.Properties;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
 
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -13,6 +21,8 @@ import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 import org.kohsuke.github.GitHub;
+import org.kuali.git.workflow.model.utils.GitCredentials;
+import org.kuali.git.workflow.model.utils.GithubRestClient;
 
 /**
  * 
@@ -26,6 +36,9 @@ import org.kohsuke.github.GitHub;
  * GITHUB_AUTH_PASSWORD
  * <br/>
  * 
+ * With git-flow.useDaemon=true the goal is sent to the running {@link WorkflowDaemon} instead.  Goals read the environment
+ * and resolve relative paths through the {@link WorkflowSession} so they behave the same in either jvm.
+ * 
  * @author ocleirig
  */
 public abstract class AbstractGithubAuthorizedMojo extends AbstractMojo {
@@ -36,6 +49,12 @@ public abstract class AbstractGithubAuthorizedMojo extends AbstractMojo {
 	@Component
 	protected MavenProject project;
 	
+	/**
+	 * Run the goal in the workflow daemon if one is running.
+	 */
+	@Parameter(property="git-flow.useDaemon", defaultValue="false")
+	protected boolean useDaemon;
+	
 	/**
 	 * 
 	 */
@@ -48,29 +67,196 @@ public abstract class AbstractGithubAuthorizedMojo extends AbstractMojo {
 		this.project = project;
 	}
 
+	/**
+	 * @param useDaemon the useDaemon to set
+	 */
+	public final void setUseDaemon(boolean useDaemon) {
+		this.useDaemon = useDaemon;
+	}
+
+	/**
+	 * Send the goal to the workflow daemon if it was asked for and one is running.  Goals call this first and return
+	 * if it is true.
+	 * 
+	 * @return true if the daemon ran the goal.
+	 * @throws MojoExecutionException if the daemon failed to run the goal.
+	 * @throws MojoFailureException if the goal failed in the daemon.
+	 */
+	protected final boolean executeInDaemon() throws MojoExecutionException, MojoFailureException {
+		
+		WorkflowSession session = WorkflowSession.current();
+		
+		if (!useDaemon || session.isRemote())
+			return false;
+		
+		WorkflowDaemonClient client;
+		
+		try {
+			client = WorkflowDaemonClient.connect();
+		} catch (IOException e) {
+			throw new MojoExecutionException("Failed to read " + WorkflowDaemon.getStateFile(), e);
+		}
+		
+		if (client == null) {
+			getLog().info("No workflow daemon is running, running the goal here.");
+			return false;
+		}
+		
+		client.execute(GoalRequest.fromMojo(this, project.getBasedir(), session, getLog().isDebugEnabled()), getLog());
+		
+		return true;
+	}
+	
+	/**
+	 * @return the value of the environment variable in the current {@link WorkflowSession}.
+	 */
+	protected String getenv(String name) {
+		return WorkflowSession.current().getenv(name);
+	}
+	
+	/**
+	 * @return the path as an absolute file, relative to the working directory of the current {@link WorkflowSession}.
+	 */
+	protected File resolveFile(String path) {
+		return WorkflowSession.current().resolve(path);
+	}
+
 
 	protected GitHub authorizeFromCredentials () throws IOException {
 		
+		// a resident jvm keeps the client, the ~/.github file takes precedence so it only depends on the environment.
+		String key = getCredentialsKey(getenv(GITHUB_AUTH_USERNAME), getenv(GITHUB_AUTH_PASSWORD));
+		
+		GitHub github = WorkflowSession.getGitHub(key);
+		
+		if (github != null)
+			return github;
+		
 		try {
-			return GitHub.connect();
+			github = GitHub.connect();
 			
 		} catch (FileNotFoundException e) {
-			return authorizeFromEnvironment(GITHUB_AUTH_USERNAME, GITHUB_AUTH_PASSWORD);
+			github = authorizeFromEnvironment(GITHUB_AUTH_USERNAME, GITHUB_AUTH_PASSWORD);
 		}
 		
-		
+		return WorkflowSession.keepGitHub(key, github);
+	}
+	
+	/*
+	 * Requests with the same user name but another password must not share a client, so the key covers both.  It is a
+	 * digest so the password is not kept in the clear as a map key.
+	 */
+	private static String getCredentialsKey(String userName, String password) {
+		return DigestUtils.sha256Hex(credentialPart(userName) + '\0' + credentialPart(password));
+	}
+	
+	// an unset variable is not the same as one set to "null".
+	private static String credentialPart(String value) {
+		return value == null ? "-" : "+" + value;
 	}
 	
 	private GitHub authorizeFromEnvironment(String userNameVariableName, String passwordVariableName) throws IOException {
 		
-		String user = System.getenv(userNameVariableName);
+		String user = getenv(userNameVariableName);
 		
-		String password = System.getenv(passwordVariableName);
+		String password = getenv(passwordVariableName);
 		
 		return GitHub.connectUsingPassword(user, password);
 		
 		
 	}
 	
+	/**
+	 * Create a client for the api calls not supported by the github-api library.
+	 * 
+	 * The credentials are resolved in the same order as {@link #authorizeFromCredentials()}.
+	 * 
+	 * @return the rest client.
+	 * @throws IOException
+	 */
+	protected GithubRestClient createRestClient() throws IOException {
+		
+		Properties githubProperties = readGithubProperties();
+		
+		if (githubProperties == null)
+			return GithubRestClient.usingPassword(getenv(GITHUB_AUTH_USERNAME), getenv(GITHUB_AUTH_PASSWORD));
+		
+		String oauthToken = githubProperties.getProperty("oauth");
+		
+		if (oauthToken != null)
+			return GithubRestClient.usingOAuth(oauthToken);
+		
+		return GithubRestClient.usingPassword(githubProperties.getProperty("login"), githubProperties.getProperty("password"));
+	}
+	
+	/**
+	 * Create the credentials for git operations against the github host of the url given, e.g. an ls-remote of the
+	 * https transport url.
+	 * 
+	 * The credentials are resolved in the same order as {@link #authorizeFromCredentials()}, an oauth token is sent as
+	 * the user name.  When none are configured the credentials are empty and only public repositories can be read.
+	 * 
+	 * @throws IOException
+	 * @throws MojoExecutionException if the url is malformed.
+	 */
+	protected GitCredentials createGithubCredentials(String url) throws IOException, MojoExecutionException {
+		
+		GitCredentials credentials = new GitCredentials();
+		
+		Properties githubProperties = readGithubProperties();
+		
+		String userName;
+		
+		String password;
+		
+		if (githubProperties == null) {
+			userName = getenv(GITHUB_AUTH_USERNAME);
+			password = getenv(GITHUB_AUTH_PASSWORD);
+		}
+		else if (githubProperties.getProperty("oauth") != null) {
+			userName = githubProperties.getProperty("oauth");
+			password = "x-oauth-basic";
+		}
+		else {
+			userName = githubProperties.getProperty("login");
+			password = githubProperties.getProperty("password");
+		}
+		
+		if (userName == null || password == null)
+			return credentials;
+		
+		try {
+			credentials.addForUrl(url, userName, password);
+		} catch (URISyntaxException e) {
+			throw new MojoExecutionException("Invalid github url: " + url, e);
+		}
+		
+		return credentials;
+	}
+	
+	/*
+	 * @return the ~/.github properties or null if there is no such file.
+	 */
+	private static Properties readGithubProperties() throws IOException {
+		
+		File githubPropertiesFile = new File(System.getProperty("user.home"), ".github");
+		
+		if (!githubPropertiesFile.exists())
+			return null;
+		
+		Properties githubProperties = new Properties();
+		
+		InputStream input = new FileInputStream(githubPropertiesFile);
+		
+		try {
+			githubProperties.load(input);
+		}
+		finally {
+			IOUtils.closeQuietly(input);
+		}
+		
+		return githubProperties;
+	}
+	
 
 }
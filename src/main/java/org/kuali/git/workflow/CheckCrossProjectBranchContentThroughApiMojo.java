@@ -1,14 +1,16 @@
 /**
- * 
+ *
  */
 package org.kuali.git.workflow;
 
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.lang.reflect.Field;
-import java.util.HashSet;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -16,21 +18,21 @@ import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Execute;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.kohsuke.github.GHCommit;
-import org.kohsuke.github.GHCommit.File;
-import org.kohsuke.github.GHCompare;
-import org.kohsuke.github.GHPullRequest;
-import org.kohsuke.github.GHRepository;
-import org.kohsuke.github.GitHub;
+import org.kuali.git.workflow.model.BranchContentDivergence;
+import org.kuali.git.workflow.model.BranchContentLocation;
+import org.kuali.git.workflow.model.utils.ChangeReportWriter;
+import org.kuali.git.workflow.model.utils.GithubTreeComparator;
 
 /**
- * Use the github api to check the comment of a branch in a remote repository for a particular string.
- * 
- * This was created to support a KS impex use case.  
- * 
- * We want to know if the impex changes are upto date.
- * 
- * 
+ * Use the github api to check that the content of a directory in a branch of one repository matches the content
+ * of a directory in a branch of another repository.
+ *
+ * This was created to support a KS impex use case.
+ *
+ * We want to know if the mirrored modules (i.e. the impex changes) are upto date without having to clone either repository.
+ *
+ * The tree sha1's of the mapped directories are compared so identical content is confirmed with a handful of api calls.  Only the subtrees that differ are listed.
+ *
  * @author ocleirig
  *
  */
@@ -40,72 +42,67 @@ public class CheckCrossProjectBranchContentThroughApiMojo extends
 		AbstractGithubAuthorizedMojo {
 
 	/**
-	 * For example: kuali/ks-development.
-	 * 
-	 * The name of the github user or organization [slash] the name of the git repository.
-	 * 
-	 * The pull requests are resolved from this location.
-	 * 
+	 * The locations to compare.
+	 *
+	 * Each mapping is in the form of: owner/repository@branch:path=owner/repository@branch:path
+	 *
+	 * For example: kuali-student/ks-development@master:ks-impex=kuali-student/ks-impex@master
+	 *
+	 * Expecting a comma seperated list of string values.
+	 */
+	@Parameter(required=true, property="git-flow.branchContentMappings")
+	private List<String> branchContentMappings;
+
+	/**
+	 * The divergence report is written here.
 	 */
-	@Parameter(required=true, property="git-flow.sourceGithubUser")
-	private String sourceGithubUser;
-	
-	@Parameter(required=true, property="git-flow.sourceGithubRepo")
-	private String sourceGithubRepo;
-	
-	@Parameter(required=true, property="git-flow.sourceGithubBranch")
-	private String sourceGithubBranch;
-	
-	@Parameter(property="git-flow.specificPullRequest")
-	private Integer specificPullRequest;
-	
+	@Parameter(property="git-flow.crossCheckReportFile", defaultValue="target/cross-project-branch-content.dat")
+	private String crossCheckReportFile;
+
 	/**
-	 * Any variables specified here will be included in the variables written into the files for the downstream jobs.
-	 * 
-	 * Expecting a comma seperated list of string values.
+	 * Fail the build if any of the mapped locations have diverged.
 	 */
-	@Parameter(property="git-flow.environmentVariablesToInclude")
-	private List<String> environmentVariablesToInclude;
-	
+	@Parameter(property="git-flow.failOnDivergence", defaultValue="false")
+	private boolean failOnDivergence;
+
 	/**
-	 * @param sourceGithubUser the sourceGithubUser to set
+	 * How many mappings are compared at the same time.
 	 */
-	public void setSourceGithubUser(String sourceGithubUser) {
-		this.sourceGithubUser = sourceGithubUser;
-	}
+	@Parameter(property="git-flow.crossCheckThreads", defaultValue="4")
+	private int crossCheckThreads = 4;
 
 	/**
-	 * @param sourceGithubRepo the sourceGithubRepo to set
+	 * @param branchContentMappings the branchContentMappings to set
 	 */
-	public void setSourceGithubRepo(String sourceGithubRepo) {
-		this.sourceGithubRepo = sourceGithubRepo;
+	public void setBranchContentMappings(List<String> branchContentMappings) {
+		this.branchContentMappings = branchContentMappings;
 	}
 
 	/**
-	 * @param sourceGithubBranch the sourceGithubBranch to set
+	 * @param crossCheckReportFile the crossCheckReportFile to set
 	 */
-	public void setSourceGithubBranch(String sourceGithubBranch) {
-		this.sourceGithubBranch = sourceGithubBranch;
+	public void setCrossCheckReportFile(String crossCheckReportFile) {
+		this.crossCheckReportFile = crossCheckReportFile;
 	}
 
 	/**
-	 * @param specificPullRequest the specificPullRequest to set
+	 * @param failOnDivergence the failOnDivergence to set
 	 */
-	public void setSpecificPullRequest(Integer specificPullRequest) {
-		this.specificPullRequest = specificPullRequest;
+	public void setFailOnDivergence(boolean failOnDivergence) {
+		this.failOnDivergence = failOnDivergence;
 	}
 
-	
-	public void setEnvironmentVariablesToInclude(
-			List<String> environmentVariablesToInclude) {
-		this.environmentVariablesToInclude = environmentVariablesToInclude;
+	/**
+	 * @param crossCheckThreads the crossCheckThreads to set
+	 */
+	public void setCrossCheckThreads(int crossCheckThreads) {
+		this.crossCheckThreads = crossCheckThreads;
 	}
 
 	/**
-	 * 
+	 *
 	 */
 	public CheckCrossProjectBranchContentThroughApiMojo() {
-		// TODO Auto-generated constructor stub
 	}
 
 	/* (non-Javadoc)
@@ -113,167 +110,105 @@ public class CheckCrossProjectBranchContentThroughApiMojo extends
 	 */
 	@Override
 	public void execute() throws MojoExecutionException, MojoFailureException {
-		
+
+		if (executeInDaemon())
+			return;
+
+		List<BranchContentLocation[]>mappings = parseMappings();
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(crossCheckThreads, mappings.size())));
+
 		try {
-			GitHub github = super.authorizeFromCredentials();
-			
-			String repositoryName = sourceGithubUser + "/" + sourceGithubRepo;
-			
-			GHRepository repo = github.getRepository(repositoryName);
-			
-			GHPullRequest pr = repo.getPullRequest(specificPullRequest);
-			
-			String baseCommitId = pr.getBase().getSha();
-			
-			String headCommitId = pr.getHead().getSha();
-			
-			GHCompare compare = repo.getCompare(baseCommitId, headCommitId);
-			
-			Set<String>changes = new HashSet<String>();
-			
-			for (File file : getFiles(compare)) {
-				
-				changes.add(file.getFileName());
-			}
-			
-			java.io.File reportsBase = new java.io.File("target");
-			
-			reportsBase.mkdirs();
-			
-			Set<String> sqlModuleChanges = reportOnTopLevelDirectoriesWithSQLChanges(changes);
-			
-			if (sqlModuleChanges.size() > 0) {
-				PrintWriter pw = new PrintWriter(new java.io.File (reportsBase, "sql-changes.dat"));
-				
-				pw.println("PULL_REQUEST_NUMBER=" + specificPullRequest);
-				
-				if (environmentVariablesToInclude != null && environmentVariablesToInclude.size() > 0) {
-					
-					for (String var : environmentVariablesToInclude) {
-						
-						String key = var.trim();
-						
-						String value = System.getenv(key);
-
-						if (value != null) {
-							pw.println(key + "=" + value);
-						}
+
+			final GithubTreeComparator comparator = new GithubTreeComparator(super.createRestClient());
+
+			List<Future<List<BranchContentDivergence>>>results = new ArrayList<Future<List<BranchContentDivergence>>>();
+
+			for (final BranchContentLocation[] mapping : mappings) {
+
+				results.add(executor.submit(new Callable<List<BranchContentDivergence>>() {
+
+					@Override
+					public List<BranchContentDivergence> call() throws Exception {
+						return comparator.compare(mapping[0], mapping[1]);
 					}
+				}));
 			}
-				
-				pw.close();
-			}
-			
-			Set<String> moduleChanges = reportOnTopLevelDirectoryChanges(changes);
-			
-			for (String module : moduleChanges) {
-				PrintWriter pw = new PrintWriter(new java.io.File(reportsBase, module + "-changes.dat"));
-				
-				pw.println("PULL_REQUEST_NUMBER=" + specificPullRequest);
-				pw.println("MODULE=" + module);
-				
-				if (environmentVariablesToInclude != null && environmentVariablesToInclude.size() > 0) {
-						
-						for (String var : environmentVariablesToInclude) {
-							
-							String key = var.trim();
-							
-							String value = System.getenv(key);
-
-							if (value != null) {
-								pw.println(key + "=" + value);
-							}
-						}
-				}
-				pw.close();
-			}
-			
-			getLog().info("Changes to " + changes.size() + " files between pull request base and head.");
-			
-			getLog().info("Top Level Directory Changes to : " + StringUtils.join(moduleChanges, ", "));
-			
-			getLog().info("Top Level Directory SQL Changes to : " + StringUtils.join(sqlModuleChanges, ", "));
-			
-		} catch (IOException e) {
-			throw new MojoExecutionException("Failed to authorize from Credentials", e);
-		}
-		
-	}
-	
 
+			List<String> report = new ArrayList<String>();
 
+			int diverged = 0;
 
+			report.add("CROSS_CHECKS=" + mappings.size());
 
-	private GHCommit.File[] getFiles(GHCompare compare) throws MojoExecutionException {
-//		once github-api 1.59 is released use this instead
-//		return compare.getFiles();
-		
-		try {
-			Field f = compare.getClass().getDeclaredField("files");
-			
-			f.setAccessible(true);
-			
-			return (File[]) f.get(compare);
-			
-		} catch (NoSuchFieldException e) {
-			throw new MojoExecutionException("failed to read compare.files using reflection", e);
-		} catch (SecurityException e) {
-			throw new MojoExecutionException("failed to read compare.files using reflection", e);
-		} catch (IllegalArgumentException e) {
-			throw new MojoExecutionException("failed to read compare.files using reflection", e);
-		} catch (IllegalAccessException e) {
-			throw new MojoExecutionException("failed to read compare.files using reflection", e);
-		}
-	}
+			for (int i = 0; i < mappings.size(); i++) {
+
+				BranchContentLocation[] mapping = mappings.get(i);
+
+				List<BranchContentDivergence> divergences = results.get(i).get();
+
+				String prefix = "CROSS_CHECK_" + (i+1);
+
+				report.add(prefix + "=" + mapping[0] + "=" + mapping[1]);
+
+				if (divergences.isEmpty()) {
+					getLog().info(mapping[0] + " and " + mapping[1] + " are in sync.");
+
+					report.add(prefix + "_STATUS=IN_SYNC");
+				}
+				else {
+					diverged++;
+
+					getLog().warn(mapping[0] + " and " + mapping[1] + " have diverged: " + StringUtils.join(divergences, ", "));
 
-	private Set<String> reportOnTopLevelDirectoriesWithSQLChanges(
-			Set<String> changes) {
-		
-		Set<String>topLevelSqlChanges = new HashSet<String>();
-		
-		for (String change : changes) {
-			
-			if (change.endsWith(".sql")) {
-				
-				int offset = change.indexOf("/");
-				
-				if (offset == -1) {
-					topLevelSqlChanges.add(".");
-					continue;
+					report.add(prefix + "_STATUS=DIVERGED");
+					report.add(prefix + "_DIVERGENCES=" + StringUtils.join(divergences, ","));
 				}
-				
-				String topLevel = change.substring(0, offset);
-				
-				topLevelSqlChanges.add(topLevel);
 			}
+
+			report.add("DIVERGED_CROSS_CHECKS=" + diverged);
+
+			// only written once every check is done so a downstream job never reads a partial report.
+			ChangeReportWriter.writeAtomically(resolveFile(crossCheckReportFile), report);
+
+			if (diverged > 0 && failOnDivergence)
+				throw new MojoFailureException(diverged + " of " + mappings.size() + " cross checked locations have diverged, see " + crossCheckReportFile);
+
+		} catch (IOException e) {
+			throw new MojoExecutionException("CheckCrossProjectBranchContentThroughApiMojo failed: ", e);
+		} catch (InterruptedException e) {
+			throw new MojoExecutionException("CheckCrossProjectBranchContentThroughApiMojo interrupted: ", e);
+		} catch (ExecutionException e) {
+			throw new MojoExecutionException("CheckCrossProjectBranchContentThroughApiMojo failed: ", e.getCause());
 		}
-		
-		return topLevelSqlChanges;
+		finally {
+			executor.shutdownNow();
+		}
+
 	}
 
+	private List<BranchContentLocation[]> parseMappings() throws MojoExecutionException {
+
+		List<BranchContentLocation[]>mappings = new ArrayList<BranchContentLocation[]>();
 
+		for (String mapping : branchContentMappings) {
 
+			String[] parts = mapping.split("=");
 
-	private Set<String> reportOnTopLevelDirectoryChanges(Set<String> changes) {
+			if (parts.length != 2)
+				throw new MojoExecutionException("Expected left=right in branch content mapping: " + mapping);
 
-		Set<String>topLevelChanges = new HashSet<String>();
-		
-		for (String change : changes) {
-			
-			int offset = change.indexOf("/");
-			
-			if (offset == -1) {
-				topLevelChanges.add(".");
-				continue;
+			try {
+				mappings.add(new BranchContentLocation[] {BranchContentLocation.parse(parts[0]), BranchContentLocation.parse(parts[1])});
+			} catch (IllegalArgumentException e) {
+				throw new MojoExecutionException("Invalid branch content mapping: " + mapping, e);
 			}
-			
-			String topLevel = change.substring(0, offset);
-			
-			topLevelChanges.add(topLevel);
 		}
-		
-		return topLevelChanges;
-	}
 
+		if (mappings.isEmpty())
+			throw new MojoExecutionException("No branch content mappings were given.");
+
+		return mappings;
+	}
 
 }
@@ -0,0 +1,231 @@
+/**
+ *
+ */
+package org.kuali.git.workflow;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Execute;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.eclipse.jgit.lib.ObjectId;
+import org.kuali.git.workflow.model.utils.GitOperations;
+import org.kuali.git.workflow.model.utils.PullRequestMergeTester;
+import org.kuali.git.workflow.model.utils.PullRequestMergeTester.Mergeability;
+import org.kuali.git.workflow.model.utils.PullRequestRefManager;
+import org.kuali.git.workflow.model.utils.StagedPipeline;
+import org.kuali.git.workflow.model.utils.StagedPipeline.Result;
+import org.kuali.git.workflow.model.utils.StagedPipeline.Stage;
+
+/**
+ * @author ocleirig
+ *
+ * Test merges every pull-request-&lt;n&gt; branch fetched by fetchOpenPullRequests (or processOpenPullRequests) into the
+ * stable branch, so the pull requests that no longer merge cleanly are known before any CI time is spent on them.
+ *
+ * Github's mergeable flag is only computed when something asks for it and is often stale, so the merges are done
+ * locally: an in core three-way merge of each head onto the branch without a checkout (see {@link PullRequestMergeTester}),
+ * run on git-flow.mergeThreads threads at once.
+ *
+ * A &lt;prefix&gt;.&lt;n&gt; report is written for each pull request with its MERGEABLE flag, the MERGE_TREE_ID of a clean
+ * merge and the CONFLICTING_PATHS otherwise.  listOpenPullRequests reads them with git-flow.skipConflictingPullRequests
+ * and leaves the conflicting heads out of the build queue.
+ *
+ */
+@Mojo (name="checkPullRequestMergeability")
+@Execute (goal="checkPullRequestMergeability", lifecycle="initialize")
+public class CheckPullRequestMergeabilityMojo extends AbstractGitRepositoryAwareMojo {
+
+	@Parameter(required=true, property="git-flow.sourceGithubBranch")
+	private String sourceGithubBranch;
+
+	/**
+	 * The ref the pull requests are merged into, refs/remotes/origin/&lt;sourceGithubBranch&gt; as fetched by
+	 * fetchOpenPullRequests when not set.
+	 */
+	@Parameter (property="git-flow.targetBranchRef")
+	private String targetBranchRef;
+
+	/**
+	 * The most test merges run at once, one per available processor when not positive.
+	 */
+	@Parameter (property="git-flow.mergeThreads", defaultValue="0")
+	private int mergeThreads;
+
+	/**
+	 * The prefix of the &lt;prefix&gt;.&lt;n&gt; mergeability report files.
+	 */
+	@Parameter (property="git-flow.mergeabilityReportPrefix", defaultValue="mergeability")
+	private String mergeabilityReportPrefix;
+
+	/**
+	 *
+	 */
+	public CheckPullRequestMergeabilityMojo() {
+	}
+
+	/**
+	 * @param sourceGithubBranch the sourceGithubBranch to set
+	 */
+	public void setSourceGithubBranch(String sourceGithubBranch) {
+		this.sourceGithubBranch = sourceGithubBranch;
+	}
+
+	/**
+	 * @param targetBranchRef the targetBranchRef to set
+	 */
+	public void setTargetBranchRef(String targetBranchRef) {
+		this.targetBranchRef = targetBranchRef;
+	}
+
+	/**
+	 * @param mergeThreads the mergeThreads to set
+	 */
+	public void setMergeThreads(int mergeThreads) {
+		this.mergeThreads = mergeThreads;
+	}
+
+	/**
+	 * @param mergeabilityReportPrefix the mergeabilityReportPrefix to set
+	 */
+	public void setMergeabilityReportPrefix(String mergeabilityReportPrefix) {
+		this.mergeabilityReportPrefix = mergeabilityReportPrefix;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.kuali.git.workflow.AbstractGitRepositoryAwareMojo#onExecute()
+	 */
+	@Override
+	protected void onExecute() throws MojoExecutionException,
+			MojoFailureException {
+
+		String targetRef = StringUtils.isBlank(targetBranchRef) ? "refs/remotes/origin/" + sourceGithubBranch : targetBranchRef;
+
+		GitOperations gitOperations = createGitOperations();
+
+		try {
+			final ObjectId targetCommitId = repository.resolve(targetRef);
+
+			if (targetCommitId == null)
+				throw new MojoFailureException("No " + targetRef + " in " + repositoryRelativePath + ", run fetchOpenPullRequests first.");
+
+			Map<Integer, ObjectId> branches = new PullRequestRefManager(repository, gitOperations).getPullRequestBranches();
+
+			File reportPrefix = resolveFile(mergeabilityReportPrefix).getAbsoluteFile();
+
+			final File reportDirectory = reportPrefix.getParentFile();
+
+			final String prefix = reportPrefix.getName();
+
+			// the reports of closed pull requests would otherwise be read as current.
+			PullRequestMergeTester.deleteReports(reportDirectory, prefix);
+
+			List<MergeWork> work = new ArrayList<MergeWork>();
+
+			for (Entry<Integer, ObjectId> branch : branches.entrySet()) {
+				work.add(new MergeWork(branch.getKey(), branch.getValue()));
+			}
+
+			final PullRequestMergeTester tester = new PullRequestMergeTester(repository);
+
+			int threads = mergeThreads > 0 ? mergeThreads : Runtime.getRuntime().availableProcessors();
+
+			StagedPipeline<MergeWork> pipeline = new StagedPipeline<MergeWork>();
+
+			pipeline.addStage("merge", threads, new Stage<MergeWork>() {
+
+				@Override
+				public boolean process(MergeWork pullRequest) throws Exception {
+					pullRequest.mergeability = tester.test(pullRequest.number, pullRequest.headCommitId, targetCommitId);
+					return true;
+				}
+			});
+
+			// writing the reports is cheap, one thread keeps the console output readable.
+			pipeline.addStage("report", 1, new Stage<MergeWork>() {
+
+				@Override
+				public boolean process(MergeWork pullRequest) throws Exception {
+					writeReport(reportDirectory, prefix, pullRequest.mergeability);
+					return true;
+				}
+			});
+
+			getLog().info("Test merging " + work.size() + " pull requests into " + targetRef + " (" + targetCommitId.name() + ") on " + threads + " threads");
+
+			Result<MergeWork> result = pipeline.run(work);
+
+			for (String line : pipeline.summarize()) {
+				getLog().info("stage: " + line);
+			}
+
+			int conflicting = 0;
+
+			for (MergeWork pullRequest : result.getCompleted()) {
+
+				if (!pullRequest.mergeability.isMergeable())
+					conflicting++;
+			}
+
+			Set<Integer> failed = new TreeSet<Integer>();
+
+			for (Entry<MergeWork, Throwable> failure : result.getFailures().entrySet()) {
+
+				failed.add(failure.getKey().number);
+
+				getLog().error("pull-request-" + failure.getKey().number + " could not be test merged: " + failure.getValue().getMessage(), failure.getValue());
+			}
+
+			getLog().info((result.getCompleted().size() - conflicting) + " pull requests merge cleanly, " + conflicting + " conflict, " + failed.size() + " failed.");
+
+			if (!failed.isEmpty())
+				throw new MojoFailureException("Failed to test merge pull requests: " + StringUtils.join(failed, ", "));
+
+		} catch (IOException e) {
+			throw new MojoExecutionException("CheckPullRequestMergeabilityMojo failed: ", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while test merging the pull requests", e);
+		}
+		finally {
+			gitOperations.close();
+		}
+	}
+
+	private void writeReport(File reportDirectory, String prefix, Mergeability mergeability) throws IOException {
+
+		PullRequestMergeTester.save(PullRequestMergeTester.getReportFile(reportDirectory, prefix, mergeability.getPullRequestNumber()), mergeability);
+
+		if (mergeability.isMergeable())
+			getLog().info("pull-request-" + mergeability.getPullRequestNumber() + " merges cleanly into tree " + mergeability.getMergeTreeId());
+		else
+			getLog().info("pull-request-" + mergeability.getPullRequestNumber() + " conflicts in: " + StringUtils.join(mergeability.getConflictingPaths(), ", "));
+	}
+
+	/*
+	 * One pull request branch to test merge, only touched by one stage at a time.
+	 */
+	private static final class MergeWork {
+
+		private final int number;
+
+		private final ObjectId headCommitId;
+
+		private volatile Mergeability mergeability;
+
+		private MergeWork(int number, ObjectId headCommitId) {
+			this.number = number;
+			this.headCommitId = headCommitId;
+		}
+	}
+}
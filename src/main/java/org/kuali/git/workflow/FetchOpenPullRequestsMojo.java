@@ -7,6 +7,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -20,9 +21,7 @@ import org.apache.maven.plugins.annotations.Execute;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
-import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.ObjectId;
-import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.transport.ReceiveCommand;
 import org.eclipse.persistence.internal.libraries.asm.util.Traceable;
 import org.kohsuke.github.GHBranch;
@@ -34,8 +33,10 @@ import org.kohsuke.github.GHRepository;
 import org.kohsuke.github.GitHub;
 import org.kuali.common.util.execute.StorePropertiesExecutable;
 import org.kuali.git.workflow.model.PullRequestRefs;
+import org.kuali.git.workflow.model.utils.GitOperations;
+import org.kuali.git.workflow.model.utils.GitProgressParser.Phase;
+import org.kuali.git.workflow.model.utils.PullRequestRefManager;
 import org.kuali.student.git.model.GitRepositoryUtils;
-import org.kuali.student.git.utils.ExternalGitUtils;
 
 /**
  * @author ocleirig
@@ -148,6 +149,14 @@ public class FetchOpenPullRequestsMojo extends AbstractGitRepositoryAwareMojo {
 	protected void onExecute() throws MojoExecutionException,
 			MojoFailureException {
 		
+		// long running C git sessions are shared by the operations of this run.
+		GitOperations gitOperations = createGitOperations();
+		
+		PullRequestRefManager refManager = new PullRequestRefManager(repository, gitOperations);
+		
+		// the numbers of every open pull request, null when only a specific pull request is fetched.
+		Set<Integer> openPullRequestNumbers = null;
+		
 		try {
 			/*
 			 * Create the repository for download of the pull requests.
@@ -179,8 +188,12 @@ public class FetchOpenPullRequestsMojo extends AbstractGitRepositoryAwareMojo {
 				
 				List<GHPullRequest> openPullRequests = repo.getPullRequests(GHIssueState.OPEN);
 				
+				openPullRequestNumbers = new HashSet<Integer>();
+				
 				for (GHPullRequest pullRequest : openPullRequests) {
 					
+					openPullRequestNumbers.add(pullRequest.getNumber());
+					
 					storePullRequest (repo, sourceGithubBranch, pullRequest, repositoryToPullRequestsMap);
 					
 				}
@@ -199,7 +212,7 @@ public class FetchOpenPullRequestsMojo extends AbstractGitRepositoryAwareMojo {
 			
 			repository.getConfig().save();
 			
-			ExternalGitUtils.fetch (externalCGitCommand, repository, "origin", this.fetchDepth, System.out);
+			logFetchPhases("origin", gitOperations.fetch ("origin", this.fetchDepth, System.out));
 	
 			for (Entry<GHRepository, List<PullRequestRefs>> entry : repositoryToPullRequestsMap.entrySet()) {
 				
@@ -207,8 +220,10 @@ public class FetchOpenPullRequestsMojo extends AbstractGitRepositoryAwareMojo {
 				
 				String remoteRepositoryName = remoteRepo.getFullName();
 				
-				if (!remoteExists(remoteRepositoryName, repository))
+				if (!refManager.remoteExists(remoteRepositoryName)) {
 					repository.getConfig().setString("remote", remoteRepositoryName, "url", remoteRepo.getGitTransportUrl());
+					refManager.addRemote(remoteRepositoryName);
+				}
 				
 				List<String>refSpecs = new ArrayList<String>();
 				
@@ -225,29 +240,54 @@ public class FetchOpenPullRequestsMojo extends AbstractGitRepositoryAwareMojo {
 				repository.getConfig().save();
 				
 				// deep fetch because we want to know which are based in the current branch.
-				ExternalGitUtils.fetch (externalCGitCommand, repository, remoteRepositoryName, this.fetchDepth, System.out);
+				logFetchPhases(remoteRepositoryName, gitOperations.fetch (remoteRepositoryName, this.fetchDepth, System.out));
 				
 			}
 			
-			List<ReceiveCommand> commands = new ArrayList<ReceiveCommand>();
+			Map<Integer, ObjectId> heads = new HashMap<Integer, ObjectId>();
 			
 			for (Entry<GHRepository, List<PullRequestRefs>> entry : repositoryToPullRequestsMap.entrySet()) {
 				
 				for (PullRequestRefs pullRequest : entry.getValue()) {
 					
+					ObjectId commitId = ObjectId.fromString(pullRequest.getCommitId());
+					
+					if (!gitOperations.hasObject(commitId))
+						throw new MojoExecutionException("pull-request-" + pullRequest.getIssueNumber() + " head commit " + pullRequest.getCommitId() + " was not fetched.");
+					
 					// next create a local branch for each issue.
-					commands.add(new ReceiveCommand(null, ObjectId.fromString(pullRequest.getCommitId()), String.format("refs/heads/pull-request-%d", pullRequest.getIssueNumber())));
+					heads.put(pullRequest.getIssueNumber(), commitId);
 					
 					
 				}
 				
 			}
 			
-			ExternalGitUtils.batchRefUpdate(externalCGitCommand, repository, commands, System.out);
+			/*
+			 * One batch creates or moves the pull-request-<n> branches and deletes those of closed pull requests, 
+			 * then the refs are packed so later ref lookups stay fast.
+			 */
+			List<ReceiveCommand> applied = refManager.update(heads, openPullRequestNumbers);
+			
+			getLog().info("Updated " + applied.size() + " pull request refs (" + (heads.size() - countNonDeletes(applied)) + " already up to date)");
+			
+			// keep the commit-graph current so the history walks of later goals don't have to parse the new commits.
+			try {
+				gitOperations.writeCommitGraph();
+			} catch (IOException e) {
+				getLog().warn("Failed to update the commit-graph: " + e.getMessage());
+			}
 			
 		} catch (IOException e) {
 			throw new MojoExecutionException("FetchOpenPullRequestsMojo failed: ", e);
 		}
+		finally {
+			gitOperations.close();
+			
+			for (String line : gitOperations.getMetrics().summarize()) {
+				getLog().info("git operation: " + line);
+			}
+		}
 		
 
 	}
@@ -305,16 +345,27 @@ public class FetchOpenPullRequestsMojo extends AbstractGitRepositoryAwareMojo {
 
 
 
-	private boolean remoteExists(String name, Repository projectRepository) {
+	/*
+	 * One line per phase of the fetch (Counting objects, Receiving objects, ...) with its time and bytes.
+	 */
+	private void logFetchPhases(String remoteName, List<Phase> phases) {
+		
+		for (Phase phase : phases) {
+			getLog().info(remoteName + " " + phase);
+		}
+	}
+	
+	private int countNonDeletes(List<ReceiveCommand> commands) {
 		
-		Config projectConfig = projectRepository.getConfig();
+		int count = 0;
 		
-		Set<String> remotes = projectConfig.getSubsections("remote");
+		for (ReceiveCommand command : commands) {
+			
+			if (command.getType() != ReceiveCommand.Type.DELETE)
+				count++;
+		}
 		
-		if (remotes.contains(name))
-			return true;
-		else
-			return false;
+		return count;
 	}
 
 }
@@ -3,41 +3,36 @@
  */
 package org.kuali.git.workflow;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.TimeZone;
 
+import net.sf.json.JSONObject;
+
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
-import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.Execute;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.apache.maven.project.MavenProject;
-import org.eclipse.jgit.lib.FileMode;
-import org.eclipse.jgit.lib.ObjectId;
-import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.revwalk.RevCommit;
-import org.eclipse.jgit.revwalk.RevWalk;
-import org.eclipse.jgit.treewalk.TreeWalk;
-import org.kohsuke.github.GHCommit;
-import org.kohsuke.github.GHCommitPointer;
-import org.kohsuke.github.GHCommitState;
-import org.kohsuke.github.GHCommitStatus;
-import org.kohsuke.github.GHIssueComment;
-import org.kohsuke.github.GHPullRequest;
-import org.kohsuke.github.GHRepository;
-import org.kohsuke.github.GitHub;
-import org.kohsuke.github.PagedIterable;
-import org.kuali.git.workflow.model.PullRequestRefs;
-import org.kuali.git.workflow.model.utils.GithubApiUtils;
-import org.kuali.student.git.model.GitRepositoryUtils;
+import org.kuali.git.workflow.model.CommentCommand;
+import org.kuali.git.workflow.model.utils.ChangeReportWriter;
+import org.kuali.git.workflow.model.utils.CommentCommandParser;
+import org.kuali.git.workflow.model.utils.GithubRestClient;
 
 /**
  * @author ocleirig
@@ -46,6 +41,12 @@ import org.kuali.student.git.model.GitRepositoryUtils;
  * 
  * This is for reading dev and functional signoff in support of automatic pull request merging.
  * 
+ * Comments are scanned incrementally, the last comment seen on each pull request is remembered and only newer comments are
+ * requested on the next run.  Commands in new comments (i.e. ci retest) are written out as trigger files for CI.  Github
+ * also returns the older comments that were edited since, their commands were already handled when they were created.
+ * 
+ * The first run on a pull request only records the current time, the commands in the comments left before it are not acted on.
+ * 
  * The premise is that if the pull request builds and runs the smoke test aft's and then
  * the pull request is incorporated into an integration build that works and there has been sign-off
  * then we can merge down the pull request to trunk.
@@ -56,6 +57,8 @@ import org.kuali.student.git.model.GitRepositoryUtils;
 @Execute (goal="githubComments", lifecycle="initialize")
 public class GithubCommentsMojo extends AbstractGithubAuthorizedMojo {
 
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
 	/**
 	 * Certain operations are slow for JGit so this allows us to run them using C git.
 	 * 
@@ -82,6 +85,38 @@ public class GithubCommentsMojo extends AbstractGithubAuthorizedMojo {
 	@Parameter(required=true, property="git-flow.pullRequestNumber")
 	private int pullRequestNumber;
 	
+	/**
+	 * Remembers the last comment seen on each pull request so that only newer comments are requested on the next run.
+	 * 
+	 * Keep this outside of a directory that is cleaned between runs.
+	 */
+	@Parameter(property="git-flow.commentScanStateFile", defaultValue="${project.basedir}/comment-scan-state.properties")
+	private String commentScanStateFile;
+	
+	/**
+	 * The word that starts a command line in a comment (i.e. ci retest).
+	 */
+	@Parameter(property="git-flow.commentCommandPrefix", defaultValue="ci")
+	private String commentCommandPrefix;
+	
+	/**
+	 * The commands that are recognized.
+	 */
+	@Parameter(property="git-flow.commentCommands", defaultValue="retest,skip-sql,build")
+	private List<String> commentCommands;
+	
+	/**
+	 * If set only the commands of these github logins are acted on.
+	 */
+	@Parameter(property="git-flow.commentCommandUsers")
+	private List<String> commentCommandUsers;
+	
+	/**
+	 * A file named $prefix.$pullRequestNumber.$commentId.$command is written for each command found.
+	 */
+	@Parameter(property="git-flow.commentCommandFilePrefix", defaultValue="comment-command")
+	private String commentCommandFilePrefix;
+	
 	
 	/**
 	 * @param projectRepository the projectRepository to set
@@ -117,6 +152,41 @@ public class GithubCommentsMojo extends AbstractGithubAuthorizedMojo {
 		this.pullRequestNumber = pullRequestNumber;
 	}
 
+	/**
+	 * @param commentScanStateFile the commentScanStateFile to set
+	 */
+	public void setCommentScanStateFile(String commentScanStateFile) {
+		this.commentScanStateFile = commentScanStateFile;
+	}
+
+	/**
+	 * @param commentCommandPrefix the commentCommandPrefix to set
+	 */
+	public void setCommentCommandPrefix(String commentCommandPrefix) {
+		this.commentCommandPrefix = commentCommandPrefix;
+	}
+
+	/**
+	 * @param commentCommands the commentCommands to set
+	 */
+	public void setCommentCommands(List<String> commentCommands) {
+		this.commentCommands = commentCommands;
+	}
+
+	/**
+	 * @param commentCommandUsers the commentCommandUsers to set
+	 */
+	public void setCommentCommandUsers(List<String> commentCommandUsers) {
+		this.commentCommandUsers = commentCommandUsers;
+	}
+
+	/**
+	 * @param commentCommandFilePrefix the commentCommandFilePrefix to set
+	 */
+	public void setCommentCommandFilePrefix(String commentCommandFilePrefix) {
+		this.commentCommandFilePrefix = commentCommandFilePrefix;
+	}
+
 	/**
 	 * @param externalCGitCommand the externalCGitCommand to set
 	 */
@@ -138,25 +208,105 @@ public class GithubCommentsMojo extends AbstractGithubAuthorizedMojo {
 	@Override
 	public void execute() throws MojoExecutionException, MojoFailureException {
 		
+		if (executeInDaemon())
+			return;
+		
 		try {
 			
-			projectRepository = GitRepositoryUtils.buildFileRepository(project.getBasedir(), false, false);
+			String targetRepository = sourceGithubUser + "/" + sourceGithubRepo;
 			
-			GitHub github = super.authorizeFromCredentials();
+			GithubRestClient client = createRestClient();
 			
-			String targetRepository = sourceGithubUser + "/" + sourceGithubRepo;
+			CommentCommandParser parser = new CommentCommandParser(commentCommandPrefix, commentCommands);
+			
+			File stateFile = resolveFile(commentScanStateFile);
+			
+			Properties state = loadState(stateFile);
+			
+			String lastCommentIdKey = targetRepository + ".pr." + pullRequestNumber + ".lastCommentId";
+			String lastCreatedAtKey = targetRepository + ".pr." + pullRequestNumber + ".lastCreatedAt";
+			String lastUpdatedAtKey = targetRepository + ".pr." + pullRequestNumber + ".lastUpdatedAt";
+			
+			long lastCommentId = Long.parseLong(state.getProperty(lastCommentIdKey, "0"));
+			String lastUpdatedAt = state.getProperty(lastUpdatedAtKey);
+			
+			if (lastUpdatedAt == null) {
+				
+				// otherwise every command in the history of the pull request would be triggered again.
+				String now = formatTimestamp(new Date());
+				
+				getLog().info(String.format("pull-request-%d: no comments scanned yet, only comments created after %s will be scanned.", pullRequestNumber, now));
+				
+				state.setProperty(lastCommentIdKey, "0");
+				state.setProperty(lastCreatedAtKey, now);
+				state.setProperty(lastUpdatedAtKey, now);
+				
+				saveState(stateFile, state);
+				
+				return;
+			}
+			
+			// the state of earlier versions only has the update time, no comment handled then was created after it.
+			String lastCreatedAt = state.getProperty(lastCreatedAtKey, lastUpdatedAt);
+			
+			String path = "/repos/" + targetRepository + "/issues/" + pullRequestNumber + "/comments?per_page=100&since=" + lastUpdatedAt;
 			
-			GHRepository repo = github.getRepository(targetRepository);
+			List<JSONObject> comments = client.getAllPages(path);
 			
-			GHPullRequest pullRequest = repo.getPullRequest(pullRequestNumber);
+			int newComments = 0;
+			
+			long highWaterCommentId = lastCommentId;
+			String highWaterCreatedAt = lastCreatedAt;
+			String highWaterUpdatedAt = lastUpdatedAt;
+			
+			for (JSONObject comment : comments) {
+				
+				long commentId = comment.getLong("id");
+				
+				// timestamps are ISO 8601 in UTC so they order as strings.
+				String createdAt = comment.getString("created_at");
+				String updatedAt = comment.getString("updated_at");
+				
+				if (highWaterUpdatedAt == null || updatedAt.compareTo(highWaterUpdatedAt) > 0)
+					highWaterUpdatedAt = updatedAt;
+				
+				// since is inclusive and matches on the update time, so the last comment of the previous run and the 
+				// older comments edited since are returned again.
+				if (lastCreatedAt != null && (createdAt.compareTo(lastCreatedAt) < 0 || (createdAt.equals(lastCreatedAt) && commentId <= lastCommentId)))
+					continue;
+				
+				newComments++;
+				
+				String login = comment.getJSONObject("user").getString("login");
+				
+				getLog().info("login: " + login);
+				getLog().info("body: " + comment.getString("body"));
+				
+				if (commentCommandUsers != null && commentCommandUsers.size() > 0 && !commentCommandUsers.contains(login)) {
+					getLog().debug("ignoring commands from " + login);
+				}
+				else {
+					for (CommentCommand command : parser.parse(commentId, login, comment.getString("body"))) {
+						writeCommandFile(command);
+					}
+				}
+				
+				if (highWaterCreatedAt == null || createdAt.compareTo(highWaterCreatedAt) > 0 || (createdAt.equals(highWaterCreatedAt) && commentId > highWaterCommentId)) {
+					highWaterCreatedAt = createdAt;
+					highWaterCommentId = commentId;
+				}
+			}
 			
-			PagedIterable<GHIssueComment> pullRequestComments = pullRequest.listComments();
+			getLog().info(String.format("pull-request-%d: %d new comments out of %d returned.", pullRequestNumber, newComments, comments.size()));
 			
-			for (GHIssueComment comment : pullRequestComments) {
+			if (highWaterUpdatedAt != null) {
+				state.setProperty(lastCommentIdKey, String.valueOf(highWaterCommentId));
+				state.setProperty(lastUpdatedAtKey, highWaterUpdatedAt);
 				
-				getLog().info("login: " + comment.getUser().getLogin());
-				getLog().info("body: " + comment.getBody());
+				if (highWaterCreatedAt != null)
+					state.setProperty(lastCreatedAtKey, highWaterCreatedAt);
 				
+				saveState(stateFile, state);
 			}
 			
 		} catch (IOException e) {
@@ -168,6 +318,68 @@ public class GithubCommentsMojo extends AbstractGithubAuthorizedMojo {
 
 
 
+	private void writeCommandFile(CommentCommand command) throws IOException {
+		
+		getLog().info("pull-request-" + pullRequestNumber + " command: " + command + " from " + command.getUser());
+		
+		List<String> lines = new ArrayList<String>();
+		
+		lines.add(String.format ("PULL_REQUEST_NUMBER=%d", pullRequestNumber));
+		lines.add(String.format ("COMMENT_ID=%d", command.getCommentId()));
+		lines.add("COMMENT_USER=" + command.getUser());
+		lines.add("COMMAND=" + command.getCommand());
+		lines.add("COMMAND_ARGUMENTS=" + StringUtils.join(command.getArguments(), ","));
+		
+		// CI triggers on the file appearing so it must not see it half written.
+		ChangeReportWriter.writeAtomically(resolveFile(commentCommandFilePrefix + "." + pullRequestNumber + "." + command.getCommentId() + "." + command.getCommand()), lines);
+	}
+	
+	
+	/*
+	 * In the ISO 8601 UTC form github uses so that it orders with the comment timestamps as a string.
+	 */
+	private static String formatTimestamp(Date date) {
+		
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+		
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		
+		return format.format(date);
+	}
+
+
+	private Properties loadState(File stateFile) throws IOException {
+		
+		Properties state = new Properties();
+		
+		if (!stateFile.exists())
+			return state;
+		
+		Reader input = Files.newBufferedReader(stateFile.toPath(), UTF_8);
+		
+		try {
+			state.load(input);
+		}
+		finally {
+			IOUtils.closeQuietly(input);
+		}
+		
+		return state;
+	}
+
+
+	private void saveState(File stateFile, Properties state) throws IOException {
+		
+		StringWriter content = new StringWriter();
+		
+		state.store(content, "last pull request comments scanned by githubComments");
+		
+		// written atomically so an interrupted run keeps the previous high water mark.
+		ChangeReportWriter.writeAtomically(stateFile, Arrays.asList(content.toString().split("\\r?\\n")));
+	}
+
+
+
 
 	private Set<String> reportOnTopLevelDirectoriesWithSQLChanges(
 			Set<String> changes) {
@@ -27,11 +27,10 @@ import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.kohsuke.github.GHCommitState;
-import org.kohsuke.github.GHCommitStatus;
 import org.kohsuke.github.GHRepository;
 import org.kohsuke.github.GitHub;
-import org.kohsuke.github.PagedIterable;
 import org.kuali.git.workflow.model.PullRequestRefs;
+import org.kuali.git.workflow.model.utils.CommitStatusPublisher.StatusUpdate;
 import org.kuali.git.workflow.model.utils.GithubApiUtils;
 import org.kuali.student.git.model.GitRepositoryUtils;
 
@@ -133,6 +132,9 @@ public class GithubStatusMojo extends AbstractGithubAuthorizedMojo {
 	@Override
 	public void execute() throws MojoExecutionException, MojoFailureException {
 		
+		if (executeInDaemon())
+			return;
+		
 		try {
 			
 			projectRepository = GitRepositoryUtils.buildFileRepository(project.getBasedir(), false, false);
@@ -147,10 +149,13 @@ public class GithubStatusMojo extends AbstractGithubAuthorizedMojo {
 			
 			githubUtils.registerCommitStatus(targetCommitId, GHCommitState.PENDING, null, "testing status", "verify-merge-to-trunk-pull-request");
 			
-			PagedIterable<GHCommitStatus> currentCommitStatuses = repo.listCommitStatuses(targetCommitId);
+			githubUtils.flushCommitStatuses();
+			
+			// listed by the flush above and kept up to date with what it posted.
+			Map<String, StatusUpdate> currentCommitStatuses = githubUtils.getStatusPublisher().getCurrentStatuses(targetCommitId);
 			
-			for (GHCommitStatus ghCommitStatus : currentCommitStatuses) {
-				getLog().info(String.format ("status: (context, state) = (%s, %s)", ghCommitStatus.getContext(), ghCommitStatus.getState().name() ));
+			for (StatusUpdate status : currentCommitStatuses.values()) {
+				getLog().info(String.format ("status: (context, state) = (%s, %s)", status.getContext(), status.getState().name() ));
 			}
 			
 			
@@ -0,0 +1,328 @@
+/**
+ *
+ */
+package org.kuali.git.workflow;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * @author ocleirig
+ *
+ * A goal of this plugin as described by the plugin descriptor (META-INF/maven/plugin.xml) that the maven-plugin-plugin
+ * generates from the mojo annotations.
+ *
+ * It lets the goals be configured outside of maven the same way maven does: a parameter takes the value of the property
+ * named by its expression (i.e. ${git-flow.sourceGithubUser}) or else its default value, with the project expressions
+ * resolved against the base directory.
+ *
+ */
+public final class GoalDescriptor {
+
+	/**
+	 * Where the plugin descriptor is on the classpath.
+	 */
+	public static final String PLUGIN_DESCRIPTOR = "META-INF/maven/plugin.xml";
+
+	private static final Pattern EXPRESSION = Pattern.compile("\\$\\{([^}]+)\\}");
+
+	// the parameter types that can be given as text, the rest are injected by maven.
+	private static final List<String> TEXT_TYPES = Arrays.asList("java.lang.String", "boolean", "java.lang.Boolean", "int", "java.lang.Integer", "long", "java.lang.Long", "double", "java.lang.Double", "java.util.List");
+
+	private final String goal;
+
+	private final String implementation;
+
+	private final List<Parameter> parameters;
+
+	private GoalDescriptor(String goal, String implementation, List<Parameter> parameters) {
+		this.goal = goal;
+		this.implementation = implementation;
+		this.parameters = parameters;
+	}
+
+	/**
+	 * @return the goals of the plugin descriptor on the classpath.
+	 * @throws IOException if there is no descriptor or it can't be read.
+	 */
+	public static List<GoalDescriptor> load() throws IOException {
+
+		InputStream input = GoalDescriptor.class.getClassLoader().getResourceAsStream(PLUGIN_DESCRIPTOR);
+
+		if (input == null)
+			throw new IOException(PLUGIN_DESCRIPTOR + " is not on the classpath");
+
+		try {
+			return read(input);
+		}
+		finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * @return the goals of the plugin descriptor.
+	 * @throws IOException if the descriptor can't be parsed.
+	 */
+	public static List<GoalDescriptor> read(InputStream descriptor) throws IOException {
+
+		Document document;
+
+		try {
+			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+
+			factory.setExpandEntityReferences(false);
+
+			document = factory.newDocumentBuilder().parse(descriptor);
+
+		} catch (ParserConfigurationException e) {
+			throw new IOException("failed to create an xml parser", e);
+		} catch (SAXException e) {
+			throw new IOException("invalid plugin descriptor", e);
+		}
+
+		List<GoalDescriptor> goals = new ArrayList<GoalDescriptor>();
+
+		NodeList mojos = document.getElementsByTagName("mojo");
+
+		for (int i = 0; i < mojos.getLength(); i++) {
+
+			Element mojo = (Element)mojos.item(i);
+
+			Element configuration = child(mojo, "configuration");
+
+			List<Parameter> parameters = new ArrayList<Parameter>();
+
+			Element parametersElement = child(mojo, "parameters");
+
+			for (Element parameter : children(parametersElement, "parameter")) {
+
+				String name = text(child(parameter, "name"));
+
+				String type = text(child(parameter, "type"));
+
+				Element value = configuration == null ? null : child(configuration, name);
+
+				String expression = value == null ? null : text(value);
+
+				String defaultValue = value == null || !value.hasAttribute("default-value") ? null : value.getAttribute("default-value");
+
+				parameters.add(new Parameter(name, type, "true".equals(text(child(parameter, "required"))), expression, defaultValue));
+			}
+
+			goals.add(new GoalDescriptor(text(child(mojo, "goal")), text(child(mojo, "implementation")), parameters));
+		}
+
+		return goals;
+	}
+
+	/**
+	 * @return the goal with the name given or null.
+	 */
+	public static GoalDescriptor find(List<GoalDescriptor> goals, String goal) {
+
+		for (GoalDescriptor descriptor : goals) {
+
+			if (descriptor.getGoal().equals(goal))
+				return descriptor;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Resolve the parameter values in the way maven would.
+	 *
+	 * @param properties the user properties (-Dname=value).
+	 * @param basedir the project base directory.
+	 * @return the values by parameter name, a String or a List of Strings.
+	 * @throws IllegalArgumentException if a required parameter has no value.
+	 */
+	public Map<String, Object> resolveParameters(Properties properties, File basedir) {
+
+		Map<String, Object> values = new LinkedHashMap<String, Object>();
+
+		for (Parameter parameter : parameters) {
+
+			if (!TEXT_TYPES.contains(parameter.type))
+				continue;
+
+			String value = null;
+
+			if (parameter.expression != null)
+				value = evaluate(parameter.expression, properties, basedir);
+
+			if (value == null && parameter.defaultValue != null)
+				value = evaluate(parameter.defaultValue, properties, basedir);
+
+			if (value == null) {
+
+				if (parameter.required)
+					throw new IllegalArgumentException(goal + " needs a value for " + parameter.name + (parameter.expression == null ? "" : " (-D" + parameter.expression.replaceAll("[${}]", "") + "=...)"));
+
+				continue;
+			}
+
+			if ("java.util.List".equals(parameter.type)) {
+
+				List<String> items = new ArrayList<String>();
+
+				for (String item : value.split(",")) {
+
+					if (item.trim().length() > 0)
+						items.add(item.trim());
+				}
+
+				values.put(parameter.name, items);
+			}
+			else
+				values.put(parameter.name, value);
+		}
+
+		return values;
+	}
+
+	/**
+	 * @return the goal name (i.e. listOpenPullRequests)
+	 */
+	public String getGoal() {
+		return goal;
+	}
+
+	/**
+	 * @return the mojo class.
+	 */
+	public String getImplementation() {
+		return implementation;
+	}
+
+	/**
+	 * @return the names of the parameters that can be given as -D properties and the property of each.
+	 */
+	public Map<String, String> getProperties() {
+
+		Map<String, String> properties = new LinkedHashMap<String, String>();
+
+		for (Parameter parameter : parameters) {
+
+			if (TEXT_TYPES.contains(parameter.type) && parameter.expression != null && parameter.expression.startsWith("${"))
+				properties.put(parameter.name, parameter.expression.substring(2, parameter.expression.length() - 1));
+		}
+
+		return properties;
+	}
+
+	/*
+	 * Replace the expressions with their values, null if an expression has none.
+	 */
+	private static String evaluate(String text, Properties properties, File basedir) {
+
+		Matcher m = EXPRESSION.matcher(text);
+
+		StringBuffer value = new StringBuffer();
+
+		while (m.find()) {
+
+			String name = m.group(1);
+
+			String replacement;
+
+			if ("basedir".equals(name) || "project.basedir".equals(name))
+				replacement = basedir.getAbsolutePath();
+			else if ("project.build.directory".equals(name))
+				replacement = new File(basedir, "target").getAbsolutePath();
+			else
+				replacement = properties.getProperty(name);
+
+			if (replacement == null)
+				return null;
+
+			m.appendReplacement(value, Matcher.quoteReplacement(replacement));
+		}
+
+		m.appendTail(value);
+
+		return value.toString();
+	}
+
+	private static Element child(Element parent, String name) {
+
+		if (parent == null)
+			return null;
+
+		List<Element> children = children(parent, name);
+
+		return children.isEmpty() ? null : children.get(0);
+	}
+
+	/*
+	 * Direct children only, getElementsByTagName would also find the nested ones.
+	 */
+	private static List<Element> children(Element parent, String name) {
+
+		List<Element> children = new ArrayList<Element>();
+
+		if (parent == null)
+			return children;
+
+		for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+
+			if (node instanceof Element && name.equals(node.getNodeName()))
+				children.add((Element)node);
+		}
+
+		return children;
+	}
+
+	private static String text(Element element) {
+
+		if (element == null)
+			return null;
+
+		String text = element.getTextContent().trim();
+
+		return text.length() == 0 ? null : text;
+	}
+
+	/*
+	 * One parameter of a goal.
+	 */
+	private static final class Parameter {
+
+		private final String name;
+
+		private final String type;
+
+		private final boolean required;
+
+		private final String expression;
+
+		private final String defaultValue;
+
+		private Parameter(String name, String type, boolean required, String expression, String defaultValue) {
+			this.name = name;
+			this.type = type;
+			this.required = required;
+			this.expression = expression;
+			this.defaultValue = defaultValue;
+		}
+	}
+}
@@ -0,0 +1,325 @@
+/**
+ *
+ */
+package org.kuali.git.workflow;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.maven.plugin.AbstractMojo;
+
+/**
+ * @author ocleirig
+ *
+ * Everything needed to run a goal in another jvm: the mojo class, its parameter values, the project base directory and the
+ * working directory and environment of the caller.
+ *
+ * The parameters are the values of the mojo's fields by name.  Only fields holding strings, numbers, booleans or lists of
+ * strings are carried; the rest (repositories, clients) are created by the goal itself.
+ *
+ * On the wire a request is a line per value (name then url encoded value) ending with an end line.
+ *
+ */
+public final class GoalRequest {
+
+	private static final String UTF_8 = "UTF-8";
+
+	private static final String END = "end";
+
+	private final String mojoClassName;
+
+	private final File basedir;
+
+	private final File workingDirectory;
+
+	private final Map<String, String> environment;
+
+	// a String or a List<String> by field name.
+	private final Map<String, Object> parameters;
+
+	private final boolean debug;
+
+	/**
+	 * @param mojoClassName the class of the goal.
+	 * @param basedir the directory of the maven project.
+	 * @param workingDirectory the directory relative paths are resolved against.
+	 * @param environment the environment of the caller.
+	 * @param parameters a String or a List of Strings by field name.
+	 * @param debug true to send the debug output of the goal.
+	 */
+	public GoalRequest(String mojoClassName, File basedir, File workingDirectory, Map<String, String> environment, Map<String, Object> parameters, boolean debug) {
+		this.mojoClassName = mojoClassName;
+		this.basedir = basedir;
+		this.workingDirectory = workingDirectory;
+		this.environment = environment;
+		this.parameters = parameters;
+		this.debug = debug;
+	}
+
+	/**
+	 * Capture the parameter values of a configured mojo.
+	 */
+	public static GoalRequest fromMojo(AbstractMojo mojo, File basedir, WorkflowSession session, boolean debug) {
+
+		Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+
+		for (Class<?> type = mojo.getClass(); type != AbstractMojo.class; type = type.getSuperclass()) {
+
+			for (Field field : type.getDeclaredFields()) {
+
+				if (Modifier.isStatic(field.getModifiers()) || !isCarried(field.getType()) || parameters.containsKey(field.getName()))
+					continue;
+
+				Object value;
+
+				try {
+					field.setAccessible(true);
+					value = field.get(mojo);
+				} catch (IllegalAccessException e) {
+					throw new IllegalStateException("can't read " + field, e);
+				}
+
+				if (value instanceof List) {
+
+					List<String> items = new ArrayList<String>();
+
+					for (Object item : (List<?>)value) {
+						items.add(String.valueOf(item));
+					}
+
+					parameters.put(field.getName(), items);
+				}
+				else if (value != null) {
+					parameters.put(field.getName(), String.valueOf(value));
+				}
+			}
+		}
+
+		return new GoalRequest(mojo.getClass().getName(), basedir, session.getWorkingDirectory(), session.getEnvironment(), parameters, debug);
+	}
+
+	/**
+	 * Set the parameter values on a new instance of the mojo.
+	 *
+	 * @throws IllegalArgumentException if the mojo has no field of a parameter name or the value can't be converted.
+	 */
+	public void applyTo(AbstractMojo mojo) {
+
+		for (Entry<String, Object> parameter : parameters.entrySet()) {
+
+			Field field = findField(mojo.getClass(), parameter.getKey());
+
+			if (field == null)
+				throw new IllegalArgumentException(mojo.getClass().getName() + " has no parameter named " + parameter.getKey());
+
+			try {
+				field.setAccessible(true);
+				field.set(mojo, convert(field.getType(), parameter.getValue()));
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException("can't set " + field, e);
+			}
+		}
+	}
+
+	/**
+	 * Write the request in its wire format.
+	 */
+	public void write(PrintWriter output) throws IOException {
+
+		writeLine(output, "mojo", mojoClassName);
+		writeLine(output, "basedir", basedir.getAbsolutePath());
+		writeLine(output, "cwd", workingDirectory.getAbsolutePath());
+		writeLine(output, "debug", String.valueOf(debug));
+
+		for (Entry<String, String> variable : environment.entrySet()) {
+			writeLine(output, "env", variable.getKey(), variable.getValue());
+		}
+
+		for (Entry<String, Object> parameter : parameters.entrySet()) {
+
+			if (parameter.getValue() instanceof List) {
+
+				// an empty list still needs a line so that it is not left null.
+				writeLine(output, "list", parameter.getKey());
+
+				for (Object item : (List<?>)parameter.getValue()) {
+					writeLine(output, "item", parameter.getKey(), String.valueOf(item));
+				}
+			}
+			else
+				writeLine(output, "param", parameter.getKey(), String.valueOf(parameter.getValue()));
+		}
+
+		output.println(END);
+		output.flush();
+	}
+
+	/**
+	 * Read a request written by {@link #write(PrintWriter)}.
+	 *
+	 * @throws IOException if the input ends before the request or a line is not understood.
+	 */
+	@SuppressWarnings("unchecked")
+	public static GoalRequest read(BufferedReader input) throws IOException {
+
+		String mojoClassName = null;
+		File basedir = null;
+		File workingDirectory = null;
+		boolean debug = false;
+
+		Map<String, String> environment = new LinkedHashMap<String, String>();
+		Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+
+		String line;
+
+		while (!END.equals(line = input.readLine())) {
+
+			if (line == null)
+				throw new IOException("the request ended before its end line");
+
+			String[] parts = line.split(" ", -1);
+
+			String kind = parts[0];
+
+			if ("mojo".equals(kind))
+				mojoClassName = decode(parts, 1);
+			else if ("basedir".equals(kind))
+				basedir = new File(decode(parts, 1));
+			else if ("cwd".equals(kind))
+				workingDirectory = new File(decode(parts, 1));
+			else if ("debug".equals(kind))
+				debug = Boolean.parseBoolean(decode(parts, 1));
+			else if ("env".equals(kind))
+				environment.put(decode(parts, 1), decode(parts, 2));
+			else if ("param".equals(kind))
+				parameters.put(decode(parts, 1), decode(parts, 2));
+			else if ("list".equals(kind))
+				parameters.put(decode(parts, 1), new ArrayList<String>());
+			else if ("item".equals(kind))
+				((List<String>)parameters.get(decode(parts, 1))).add(decode(parts, 2));
+			else
+				throw new IOException("unknown request line: " + line);
+		}
+
+		if (mojoClassName == null || basedir == null || workingDirectory == null)
+			throw new IOException("the request is missing the mojo, basedir or cwd");
+
+		return new GoalRequest(mojoClassName, basedir, workingDirectory, environment, parameters, debug);
+	}
+
+	/**
+	 * @return the mojoClassName
+	 */
+	public String getMojoClassName() {
+		return mojoClassName;
+	}
+
+	/**
+	 * @return the basedir
+	 */
+	public File getBasedir() {
+		return basedir;
+	}
+
+	/**
+	 * @return the workingDirectory
+	 */
+	public File getWorkingDirectory() {
+		return workingDirectory;
+	}
+
+	/**
+	 * @return the environment
+	 */
+	public Map<String, String> getEnvironment() {
+		return environment;
+	}
+
+	/**
+	 * @return the parameters
+	 */
+	public Map<String, Object> getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * @return the debug
+	 */
+	public boolean isDebug() {
+		return debug;
+	}
+
+	private static boolean isCarried(Class<?> type) {
+		return type == String.class || type.isPrimitive() || Number.class.isAssignableFrom(type) || type == Boolean.class || List.class.isAssignableFrom(type);
+	}
+
+	private static Field findField(Class<?> type, String name) {
+
+		for (; type != null && type != AbstractMojo.class; type = type.getSuperclass()) {
+
+			try {
+				Field field = type.getDeclaredField(name);
+
+				if (!Modifier.isStatic(field.getModifiers()))
+					return field;
+
+			} catch (NoSuchFieldException e) {
+				// look in the super class.
+			}
+		}
+
+		return null;
+	}
+
+	private static Object convert(Class<?> type, Object value) {
+
+		if (value instanceof List)
+			return new ArrayList<Object>((List<?>)value);
+
+		String text = (String)value;
+
+		if (type == String.class)
+			return text;
+		else if (type == boolean.class || type == Boolean.class)
+			return Boolean.valueOf(text);
+		else if (type == int.class || type == Integer.class)
+			return Integer.valueOf(text);
+		else if (type == long.class || type == Long.class)
+			return Long.valueOf(text);
+		else if (type == double.class || type == Double.class)
+			return Double.valueOf(text);
+
+		throw new IllegalArgumentException("unsupported parameter type " + type.getName());
+	}
+
+	private static void writeLine(PrintWriter output, String kind, String... values) throws UnsupportedEncodingException {
+
+		StringBuilder line = new StringBuilder(kind);
+
+		for (String value : values) {
+			line.append(' ').append(URLEncoder.encode(value, UTF_8));
+		}
+
+		output.println(line);
+	}
+
+	private static String decode(String[] parts, int index) throws IOException {
+
+		if (parts.length <= index)
+			throw new IOException("missing value in request line: " + parts[0]);
+
+		return URLDecoder.decode(parts[index], UTF_8);
+	}
+}
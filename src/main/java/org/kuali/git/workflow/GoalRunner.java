@@ -0,0 +1,84 @@
+/**
+ *
+ */
+package org.kuali.git.workflow;
+
+import java.io.File;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * @author ocleirig
+ *
+ * Runs a goal of this plugin outside of the maven build that configured it.
+ *
+ * The mojo is created and given the parameter values of the request, a project for the request's base directory and the
+ * log to write to.  It runs with the request's working directory and environment as its {@link WorkflowSession}.
+ *
+ */
+public final class GoalRunner {
+
+	private GoalRunner() {
+	}
+
+	/**
+	 * Run the goal of the request on the current thread.
+	 *
+	 * @param request the goal and its parameters.
+	 * @param log where the goal's output goes.
+	 * @param remote true if the goal is run for a client of the daemon.
+	 * @throws MojoExecutionException if the goal can't be created or it fails with an error.
+	 * @throws MojoFailureException if the goal fails.
+	 */
+	public static void run(GoalRequest request, Log log, boolean remote) throws MojoExecutionException, MojoFailureException {
+
+		AbstractGithubAuthorizedMojo mojo = createMojo(request.getMojoClassName());
+
+		MavenProject project = new MavenProject();
+
+		project.setFile(new File(request.getBasedir(), "pom.xml"));
+
+		mojo.setProject(project);
+		mojo.setLog(log);
+
+		try {
+			request.applyTo(mojo);
+		} catch (IllegalArgumentException e) {
+			throw new MojoExecutionException("Invalid parameters for " + request.getMojoClassName() + ": " + e.getMessage(), e);
+		}
+
+		WorkflowSession.enter(new WorkflowSession(request.getWorkingDirectory(), request.getEnvironment(), remote));
+
+		try {
+			mojo.execute();
+		}
+		finally {
+			WorkflowSession.exit();
+		}
+	}
+
+	/*
+	 * Only the goals of this plugin can be run.
+	 */
+	private static AbstractGithubAuthorizedMojo createMojo(String mojoClassName) throws MojoExecutionException {
+
+		try {
+			Class<?> type = Class.forName(mojoClassName);
+
+			if (!AbstractGithubAuthorizedMojo.class.isAssignableFrom(type))
+				throw new MojoExecutionException(mojoClassName + " is not a goal of this plugin.");
+
+			return (AbstractGithubAuthorizedMojo)type.newInstance();
+
+		} catch (ClassNotFoundException e) {
+			throw new MojoExecutionException("Unknown goal class: " + mojoClassName, e);
+		} catch (InstantiationException e) {
+			throw new MojoExecutionException("Failed to create " + mojoClassName, e);
+		} catch (IllegalAccessException e) {
+			throw new MojoExecutionException("Failed to create " + mojoClassName, e);
+		}
+	}
+}
@@ -5,8 +5,11 @@ package org.kuali.git.workflow;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -22,6 +25,13 @@ import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.treewalk.TreeWalk;
+import org.kuali.git.workflow.model.ChangeSet;
+import org.kuali.git.workflow.model.utils.BuildResultCache;
+import org.kuali.git.workflow.model.utils.BuildResultCache.Selection;
+import org.kuali.git.workflow.model.utils.ChangeReportWriter;
+import org.kuali.git.workflow.model.utils.CommitGraph;
+import org.kuali.git.workflow.model.utils.CommitRangeWalker;
+import org.kuali.git.workflow.model.utils.CosmeticChangeFilter;
 import org.kuali.student.git.model.GitRepositoryUtils;
 
 /**
@@ -32,6 +42,8 @@ import org.kuali.student.git.model.GitRepositoryUtils;
  * We will emit the modules and if there are sql changes or not.
  * 
  * This is useful for routing a set of changes (i.e. if impex is required more time will be required)
+ * 
+ * With git-flow.skipPassedModules the changed modules whose content has already passed a build are left out.
  *
  */
 @Mojo (name="identifyChangesInGit")
@@ -51,8 +63,96 @@ public class IdentifyChangesInGitMojo extends AbstractGitRepositoryAwareMojo {
 	@Parameter (property="git-flow.changesReportTargetDirectory", defaultValue="target")
 	private String changesReportTargetDirectory;
 	
+	/**
+	 * When enabled the content of each changed file is compared ignoring whitespace and comments.
+	 * 
+	 * Modules where every change is cosmetic are reported in a $module-cosmetic-changes.dat file instead of $module-changes.dat
+	 * so that CI can skip them or run a cheaper job.
+	 */
+	@Parameter (property="git-flow.cosmeticChangeFilter", defaultValue="false")
+	private boolean cosmeticChangeFilter;
+	
+	/**
+	 * Overrides the default file types inspected by the cosmetic change filter.
+	 * 
+	 * Expecting a comma seperated list of extension=SYNTAX values where SYNTAX is one of C_STYLE, C_STYLE_LINES, CSS, SQL, XML, HASH or DOCUMENTATION.
+	 */
+	@Parameter (property="git-flow.cosmeticFileTypes")
+	private List<String> cosmeticFileTypes;
+	
+	/**
+	 * When enabled the repository's commit-graph (if it has one) is used to find the merge base and to count the commits 
+	 * of the source branch that touched each changed module without parsing commits or diffing trees that the changed path 
+	 * Bloom filters can rule out.
+	 */
+	@Parameter (property="git-flow.useCommitGraph", defaultValue="true")
+	private boolean useCommitGraph;
+	
+	/**
+	 * When enabled the MERGE_BASE, AHEAD, BEHIND and per module SOURCE_COMMITS properties are reported even if the repository
+	 * has no commit-graph to answer them from.  Without a graph every commit of both sides is parsed and each source commit
+	 * is diffed once per changed module, so by default they are only reported when a commit-graph is used.
+	 */
+	@Parameter (property="git-flow.reportBranchHistory", defaultValue="false")
+	private boolean reportBranchHistory;
 	
 	
+	
+	/**
+	 * Skip the changed modules whose exact content (see {@link BuildResultCache}) has already passed a build.
+	 */
+	@Parameter(property="git-flow.skipPassedModules", defaultValue="false")
+	private boolean skipPassedModules;
+	
+	/**
+	 * Where the content keys of the passed module builds recorded by the recordModuleBuild goal are kept.
+	 */
+	@Parameter(property="git-flow.buildResultCacheFile", defaultValue="build-result-cache.dat")
+	private String buildResultCacheFile;
+	
+	/**
+	 * The modules each module depends on, their content is part of the module's content key.  Only the modules listed
+	 * here can be skipped, ks-core= declares a module without dependencies.
+	 * 
+	 * Expecting a comma seperated list of module=dependency+dependency values.
+	 */
+	@Parameter(property="git-flow.moduleDependencies")
+	private List<String> moduleDependencies;
+	
+	/**
+	 * The files at the root of the repository that every module build depends on.
+	 */
+	@Parameter(property="git-flow.sharedBuildFiles", defaultValue=BuildResultCache.DEFAULT_SHARED_BUILD_FILES)
+	private List<String> sharedBuildFiles;
+	
+	/**
+	 * @param skipPassedModules the skipPassedModules to set
+	 */
+	public void setSkipPassedModules(boolean skipPassedModules) {
+		this.skipPassedModules = skipPassedModules;
+	}
+
+	/**
+	 * @param buildResultCacheFile the buildResultCacheFile to set
+	 */
+	public void setBuildResultCacheFile(String buildResultCacheFile) {
+		this.buildResultCacheFile = buildResultCacheFile;
+	}
+
+	/**
+	 * @param moduleDependencies the moduleDependencies to set
+	 */
+	public void setModuleDependencies(List<String> moduleDependencies) {
+		this.moduleDependencies = moduleDependencies;
+	}
+
+	/**
+	 * @param sharedBuildFiles the sharedBuildFiles to set
+	 */
+	public void setSharedBuildFiles(List<String> sharedBuildFiles) {
+		this.sharedBuildFiles = sharedBuildFiles;
+	}
+
 	/**
 	 * @param sourceBranch the sourceBranch to set
 	 */
@@ -73,6 +173,56 @@ public class IdentifyChangesInGitMojo extends AbstractGitRepositoryAwareMojo {
 
 
 
+	/**
+	 * @param changesReportTargetDirectory the changesReportTargetDirectory to set
+	 */
+	public void setChangesReportTargetDirectory(String changesReportTargetDirectory) {
+		this.changesReportTargetDirectory = changesReportTargetDirectory;
+	}
+
+
+
+
+	/**
+	 * @param cosmeticChangeFilter the cosmeticChangeFilter to set
+	 */
+	public void setCosmeticChangeFilter(boolean cosmeticChangeFilter) {
+		this.cosmeticChangeFilter = cosmeticChangeFilter;
+	}
+
+
+
+
+	/**
+	 * @param cosmeticFileTypes the cosmeticFileTypes to set
+	 */
+	public void setCosmeticFileTypes(List<String> cosmeticFileTypes) {
+		this.cosmeticFileTypes = cosmeticFileTypes;
+	}
+
+
+
+
+	/**
+	 * @param useCommitGraph the useCommitGraph to set
+	 */
+	public void setUseCommitGraph(boolean useCommitGraph) {
+		this.useCommitGraph = useCommitGraph;
+	}
+
+
+
+
+	/**
+	 * @param reportBranchHistory the reportBranchHistory to set
+	 */
+	public void setReportBranchHistory(boolean reportBranchHistory) {
+		this.reportBranchHistory = reportBranchHistory;
+	}
+
+
+
+
 	/**
 	 * 
 	 */
@@ -111,8 +261,14 @@ public class IdentifyChangesInGitMojo extends AbstractGitRepositoryAwareMojo {
 			
 			tw.setRecursive(true);
 			
-			Set<String>changes = new HashSet<String>();
+			ChangeSet changes = new ChangeSet();
+			
+			ChangeSet cosmeticChanges = new ChangeSet();
+			
+			CosmeticChangeFilter filter = null;
 			
+			if (cosmeticChangeFilter)
+				filter = (cosmeticFileTypes == null || cosmeticFileTypes.isEmpty()) ? new CosmeticChangeFilter() : new CosmeticChangeFilter(cosmeticFileTypes);
 			
 			while (tw.next()) {
 				
@@ -125,21 +281,103 @@ public class IdentifyChangesInGitMojo extends AbstractGitRepositoryAwareMojo {
 					
 					String path = tw.getPathString();
 					
-					changes.add(path);
+					if (filter != null && tw.getRawMode(0) == tw.getRawMode(1) && filter.isCosmetic(tw.getObjectReader(), path, origId, newId))
+						cosmeticChanges.add(path);
+					else
+						changes.add(path);
 				}
 				
 			}
 			
 			Set<String>topLevelDirectoryChanges = reportOnTopLevelDirectoryChanges(changes);
 			
+			Map<String, String> contentKeys = Collections.emptyMap();
+			
+			if (skipPassedModules) {
+				
+				Selection selection = BuildResultCache.select(resolveFile(buildResultCacheFile), BuildResultCache.readTopLevelEntries(rw.getObjectReader(), sourceCommit.getTree()), topLevelDirectoryChanges, moduleDependencies, sharedBuildFiles, getLog());
+				
+				contentKeys = selection.getContentKeys();
+				
+				topLevelDirectoryChanges = selection.getUnpassedModules();
+			}
+			
 			Set<String>topLevelDirectoriesWithSQLChanges = reportOnTopLevelDirectoriesWithSQLChanges (changes);
 			
+			Set<String>cosmeticOnlyTopLevelDirectories = new TreeSet<String>(reportOnTopLevelDirectoryChanges(cosmeticChanges));
+			
+			cosmeticOnlyTopLevelDirectories.removeAll(topLevelDirectoryChanges);
+			
 			getLog().info("changes to : " + StringUtils.join(changes, ", "));
 			
 			getLog().info("Top Level Directory Changes to : " + StringUtils.join(topLevelDirectoryChanges, ", "));
 			
 			getLog().info("Top Level Directory SQL Changes to : " + StringUtils.join(topLevelDirectoriesWithSQLChanges, ", "));
 			
+			if (filter != null) {
+				getLog().info("cosmetic changes to : " + StringUtils.join(cosmeticChanges, ", "));
+				
+				getLog().info("Top Level Directories with only Cosmetic Changes : " + StringUtils.join(cosmeticOnlyTopLevelDirectories, ", "));
+			}
+			
+			ChangeReportWriter reportWriter = new ChangeReportWriter(resolveFile(changesReportTargetDirectory));
+			
+			reportWriter.addCommonProperty("SOURCE_BRANCH", sourceBranch);
+			reportWriter.addCommonProperty("TARGET_BRANCH", targetBranch);
+			
+			/*
+			 * The history between the branches: merge base, commits ahead / behind and the source commits per module.
+			 */
+			CommitGraph graph = useCommitGraph ? CommitGraph.open(repository) : null;
+			
+			CommitRangeWalker walker = new CommitRangeWalker(repository, graph);
+			
+			ObjectId mergeBase = null;
+			
+			if (graph != null || reportBranchHistory)
+				mergeBase = walker.mergeBase(sourceCommit, targetCommit);
+			else
+				getLog().info("no commit-graph, not reporting the branch history (enable git-flow.reportBranchHistory to walk it anyway)");
+			
+			List<ObjectId> sourceOnlyCommits = null;
+			
+			if (mergeBase != null) {
+				
+				sourceOnlyCommits = walker.commitsBetween(targetCommit, sourceCommit);
+				
+				List<ObjectId> targetOnlyCommits = walker.commitsBetween(sourceCommit, targetCommit);
+				
+				reportWriter.addCommonProperty("MERGE_BASE", mergeBase.name());
+				reportWriter.addCommonProperty("AHEAD", String.valueOf(sourceOnlyCommits.size()));
+				reportWriter.addCommonProperty("BEHIND", String.valueOf(targetOnlyCommits.size()));
+				
+				getLog().info("merge base " + mergeBase.name() + ", " + sourceBranch + " is " + sourceOnlyCommits.size() + " ahead and " + targetOnlyCommits.size() + " behind " + targetBranch);
+			}
+			
+			for (String module : topLevelDirectoryChanges) {
+				
+				Map<String, String> report = reportWriter.addReport(ChangeReportWriter.MODULE_CATEGORY, module, module + "-changes.dat");
+				
+				report.put("MODULE", module);
+				
+				if (contentKeys.containsKey(module))
+					report.put("MODULE_CONTENT_KEY", contentKeys.get(module));
+				
+				if (sourceOnlyCommits != null && !ChangeSet.ROOT_DIRECTORY.equals(module))
+					report.put("SOURCE_COMMITS", String.valueOf(countCommitsTouching(walker, sourceOnlyCommits, module)));
+			}
+			
+			if (graph != null)
+				getLog().info("commit-graph of " + graph.getCommitCount() + " commits: " + walker.getBloomFilterAnswers() + " path checks answered by Bloom filters, " + walker.getTreeDiffAnswers() + " needed a tree diff");
+			
+			walker.release();
+			
+			for (String module : cosmeticOnlyTopLevelDirectories) {
+				reportWriter.addReport(ChangeReportWriter.COSMETIC_CATEGORY, module, module + "-cosmetic-changes.dat").put("MODULE", module);
+			}
+			
+			reportWriter.write();
+			
 			tw.release();
 			rw.release();
 			
@@ -153,53 +391,34 @@ public class IdentifyChangesInGitMojo extends AbstractGitRepositoryAwareMojo {
 
 
 
-	private Set<String> reportOnTopLevelDirectoriesWithSQLChanges(
-			Set<String> changes) {
+	private int countCommitsTouching(CommitRangeWalker walker, List<ObjectId> commits, String module) throws IOException {
 		
-		Set<String>topLevelSqlChanges = new HashSet<String>();
+		int count = 0;
 		
-		for (String change : changes) {
+		for (ObjectId commit : commits) {
 			
-			if (change.endsWith(".sql")) {
-				
-				int offset = change.indexOf("/");
-				
-				if (offset == -1) {
-					topLevelSqlChanges.add(".");
-					continue;
-				}
-				
-				String topLevel = change.substring(0, offset);
-				
-				topLevelSqlChanges.add(topLevel);
-			}
+			if (walker.touches(commit, module))
+				count++;
 		}
 		
-		return topLevelSqlChanges;
+		return count;
 	}
 
 
 
 
-	private Set<String> reportOnTopLevelDirectoryChanges(Set<String> changes) {
-
-		Set<String>topLevelChanges = new HashSet<String>();
-		
-		for (String change : changes) {
-			
-			int offset = change.indexOf("/");
-			
-			if (offset == -1) {
-				topLevelChanges.add(".");
-				continue;
-			}
-			
-			String topLevel = change.substring(0, offset);
-			
-			topLevelChanges.add(topLevel);
-		}
+	private Set<String> reportOnTopLevelDirectoriesWithSQLChanges(
+			ChangeSet changes) {
 		
-		return topLevelChanges;
+		return changes.getTopLevelDirectoriesContaining(".sql");
+	}
+
+
+
+
+	private Set<String> reportOnTopLevelDirectoryChanges(ChangeSet changes) {
+
+		return changes.getTopLevelDirectories();
 	}
 
 	
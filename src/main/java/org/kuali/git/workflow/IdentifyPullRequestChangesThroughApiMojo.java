@@ -3,12 +3,19 @@
  */
 package org.kuali.git.workflow;
 
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.lang.reflect.Field;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -22,10 +29,25 @@ import org.kohsuke.github.GHCompare;
 import org.kohsuke.github.GHPullRequest;
 import org.kohsuke.github.GHRepository;
 import org.kohsuke.github.GitHub;
+import org.kuali.git.workflow.model.ChangeSet;
+import org.kuali.git.workflow.model.utils.BuildResultCache;
+import org.kuali.git.workflow.model.utils.BuildResultCache.Selection;
+import org.kuali.git.workflow.model.utils.ChangeReportWriter;
+import org.kuali.git.workflow.model.utils.GithubRestClient;
+import org.kuali.git.workflow.model.utils.ModuleBuildHistory;
+import org.kuali.git.workflow.model.utils.ShardPlanner;
+import org.kuali.git.workflow.model.utils.ShardPlanner.Shard;
+import org.kuali.git.workflow.model.utils.SqlChangeAnalyzer;
 
 /**
  * Use the github api to compare a pull request with its head to determine which files have changed.
  * 
+ * A report file is written for each changed module.  With git-flow.moduleShards the changed modules are instead packed into 
+ * that many shard-$n-changes.dat reports of about the same estimated build duration, using the durations recorded by 
+ * the recordModuleBuild goal.
+ * 
+ * With git-flow.skipPassedModules the changed modules whose content has already passed a build are left out.
+ * 
  * @author ocleirig
  *
  */
@@ -62,6 +84,100 @@ public class IdentifyPullRequestChangesThroughApiMojo extends
 	@Parameter(property="git-flow.environmentVariablesToInclude")
 	private List<String> environmentVariablesToInclude;
 	
+	/**
+	 * The number of downstream jobs to spread the changed modules over, 0 for one job per module.
+	 */
+	@Parameter(property="git-flow.moduleShards", defaultValue="0")
+	private int moduleShards;
+	
+	/**
+	 * Where the module build durations recorded by the recordModuleBuild goal are kept.
+	 */
+	@Parameter(property="git-flow.moduleBuildHistoryFile", defaultValue="module-build-history.dat")
+	private String moduleBuildHistoryFile;
+	
+	/**
+	 * The estimated build duration in seconds of a module without any recorded builds.
+	 */
+	@Parameter(property="git-flow.defaultModuleBuildSeconds", defaultValue="60")
+	private long defaultModuleBuildSeconds;
+	
+	/**
+	 * Skip the changed modules whose exact content (see {@link BuildResultCache}) has already passed a build.
+	 */
+	@Parameter(property="git-flow.skipPassedModules", defaultValue="false")
+	private boolean skipPassedModules;
+	
+	/**
+	 * Where the content keys of the passed module builds recorded by the recordModuleBuild goal are kept.
+	 */
+	@Parameter(property="git-flow.buildResultCacheFile", defaultValue="build-result-cache.dat")
+	private String buildResultCacheFile;
+	
+	/**
+	 * The modules each module depends on, their content is part of the module's content key.  Only the modules listed
+	 * here can be skipped, ks-core= declares a module without dependencies.
+	 * 
+	 * Expecting a comma seperated list of module=dependency+dependency values.
+	 */
+	@Parameter(property="git-flow.moduleDependencies")
+	private List<String> moduleDependencies;
+	
+	/**
+	 * The files at the root of the repository that every module build depends on.
+	 */
+	@Parameter(property="git-flow.sharedBuildFiles", defaultValue=BuildResultCache.DEFAULT_SHARED_BUILD_FILES)
+	private List<String> sharedBuildFiles;
+	
+	/**
+	 * @param skipPassedModules the skipPassedModules to set
+	 */
+	public void setSkipPassedModules(boolean skipPassedModules) {
+		this.skipPassedModules = skipPassedModules;
+	}
+
+	/**
+	 * @param buildResultCacheFile the buildResultCacheFile to set
+	 */
+	public void setBuildResultCacheFile(String buildResultCacheFile) {
+		this.buildResultCacheFile = buildResultCacheFile;
+	}
+
+	/**
+	 * @param moduleDependencies the moduleDependencies to set
+	 */
+	public void setModuleDependencies(List<String> moduleDependencies) {
+		this.moduleDependencies = moduleDependencies;
+	}
+
+	/**
+	 * @param sharedBuildFiles the sharedBuildFiles to set
+	 */
+	public void setSharedBuildFiles(List<String> sharedBuildFiles) {
+		this.sharedBuildFiles = sharedBuildFiles;
+	}
+
+	/**
+	 * @param moduleShards the moduleShards to set
+	 */
+	public void setModuleShards(int moduleShards) {
+		this.moduleShards = moduleShards;
+	}
+
+	/**
+	 * @param moduleBuildHistoryFile the moduleBuildHistoryFile to set
+	 */
+	public void setModuleBuildHistoryFile(String moduleBuildHistoryFile) {
+		this.moduleBuildHistoryFile = moduleBuildHistoryFile;
+	}
+
+	/**
+	 * @param defaultModuleBuildSeconds the defaultModuleBuildSeconds to set
+	 */
+	public void setDefaultModuleBuildSeconds(long defaultModuleBuildSeconds) {
+		this.defaultModuleBuildSeconds = defaultModuleBuildSeconds;
+	}
+
 	/**
 	 * @param sourceGithubUser the sourceGithubUser to set
 	 */
@@ -109,6 +225,9 @@ public class IdentifyPullRequestChangesThroughApiMojo extends
 	@Override
 	public void execute() throws MojoExecutionException, MojoFailureException {
 		
+		if (executeInDaemon())
+			return;
+		
 		try {
 			GitHub github = super.authorizeFromCredentials();
 			
@@ -124,71 +243,86 @@ public class IdentifyPullRequestChangesThroughApiMojo extends
 			
 			GHCompare compare = repo.getCompare(baseCommitId, headCommitId);
 			
-			Set<String>changes = new HashSet<String>();
+			ChangeSet changes = new ChangeSet();
+			
+			SqlChangeAnalyzer sqlAnalyzer = new SqlChangeAnalyzer();
+			
+			GithubRestClient restClient = null;
 			
 			for (File file : getFiles(compare)) {
 				
 				changes.add(file.getFileName());
+				
+				if (file.getFileName().endsWith(".sql")) {
+					
+					if (restClient == null)
+						restClient = super.createRestClient();
+					
+					analyzeSqlChange(sqlAnalyzer, restClient, repositoryName, headCommitId, file);
+				}
 			}
 			
-			java.io.File reportsBase = new java.io.File("target");
+			ChangeReportWriter reportWriter = new ChangeReportWriter(resolveFile("target"));
+			
+			reportWriter.addCommonProperty("PULL_REQUEST_NUMBER", String.valueOf(specificPullRequest));
 			
-			reportsBase.mkdirs();
+			reportWriter.addEnvironmentVariables(environmentVariablesToInclude, WorkflowSession.current().getEnvironment());
 			
 			Set<String> sqlModuleChanges = reportOnTopLevelDirectoriesWithSQLChanges(changes);
 			
 			if (sqlModuleChanges.size() > 0) {
-				PrintWriter pw = new PrintWriter(new java.io.File (reportsBase, "sql-changes.dat"));
-				
-				pw.println("PULL_REQUEST_NUMBER=" + specificPullRequest);
-				
-				if (environmentVariablesToInclude != null && environmentVariablesToInclude.size() > 0) {
-					
-					for (String var : environmentVariablesToInclude) {
-						
-						String key = var.trim();
-						
-						String value = System.getenv(key);
-
-						if (value != null) {
-							pw.println(key + "=" + value);
-						}
-					}
-			}
+				Map<String, String> sqlReport = reportWriter.addReport(ChangeReportWriter.SQL_CATEGORY, StringUtils.join(sqlModuleChanges, ","), "sql-changes.dat");
 				
-				pw.close();
+				sqlReport.put("SQL_MODULES", StringUtils.join(sqlModuleChanges, ","));
+				sqlReport.put("SQL_OBJECTS", StringUtils.join(sqlAnalyzer.getChanges(), ","));
+				sqlReport.put("SQL_TABLES", StringUtils.join(sqlAnalyzer.getObjectNames("TABLE"), ","));
+				sqlReport.put("SQL_VIEWS", StringUtils.join(sqlAnalyzer.getObjectNames("VIEW"), ","));
+				sqlReport.put("SQL_SEQUENCES", StringUtils.join(sqlAnalyzer.getObjectNames("SEQUENCE"), ","));
+				// downstream should fall back to a full rebuild when some change could not be attributed to an object.
+				sqlReport.put("SQL_FULL_REBUILD", String.valueOf(sqlAnalyzer.hasUnattributedChanges()));
 			}
 			
 			Set<String> moduleChanges = reportOnTopLevelDirectoryChanges(changes);
 			
-			for (String module : moduleChanges) {
-				PrintWriter pw = new PrintWriter(new java.io.File(reportsBase, module + "-changes.dat"));
+			Map<String, String> contentKeys = Collections.emptyMap();
+			
+			if (skipPassedModules) {
+				
+				if (restClient == null)
+					restClient = super.createRestClient();
 				
-				pw.println("PULL_REQUEST_NUMBER=" + specificPullRequest);
-				pw.println("MODULE=" + module);
+				Selection selection = BuildResultCache.select(resolveFile(buildResultCacheFile), readTopLevelEntries(restClient, repositoryName, headCommitId), moduleChanges, moduleDependencies, sharedBuildFiles, getLog());
 				
-				if (environmentVariablesToInclude != null && environmentVariablesToInclude.size() > 0) {
-						
-						for (String var : environmentVariablesToInclude) {
-							
-							String key = var.trim();
-							
-							String value = System.getenv(key);
-
-							if (value != null) {
-								pw.println(key + "=" + value);
-							}
-						}
+				contentKeys = selection.getContentKeys();
+				
+				moduleChanges = selection.getUnpassedModules();
+			}
+			
+			if (moduleShards > 0)
+				reportShards(reportWriter, moduleChanges, contentKeys);
+			else {
+				
+				for (String module : moduleChanges) {
+					
+					Map<String, String> report = reportWriter.addReport(ChangeReportWriter.MODULE_CATEGORY, module, module + "-changes.dat");
+					
+					report.put("MODULE", module);
+					
+					if (contentKeys.containsKey(module))
+						report.put("MODULE_CONTENT_KEY", contentKeys.get(module));
 				}
-				pw.close();
 			}
 			
+			reportWriter.write();
+			
 			getLog().info("Changes to " + changes.size() + " files between pull request base and head.");
 			
 			getLog().info("Top Level Directory Changes to : " + StringUtils.join(moduleChanges, ", "));
 			
 			getLog().info("Top Level Directory SQL Changes to : " + StringUtils.join(sqlModuleChanges, ", "));
 			
+			getLog().info("SQL Object Changes : " + StringUtils.join(sqlAnalyzer.getChanges(), ", "));
+			
 		} catch (IOException e) {
 			throw new MojoExecutionException("Failed to authorize from Credentials", e);
 		}
@@ -199,6 +333,87 @@ public class IdentifyPullRequestChangesThroughApiMojo extends
 
 
 
+	/*
+	 * The ids of the top level entries of the commit through the trees api, the module directories are their subtrees.
+	 */
+	private Map<String, String> readTopLevelEntries(GithubRestClient restClient, String repositoryName, String commitId) throws IOException {
+		
+		JSONArray tree = restClient.getObject("/repos/" + repositoryName + "/git/trees/" + commitId).getJSONArray("tree");
+		
+		Map<String, String> entries = new TreeMap<String, String>();
+		
+		for (int i = 0; i < tree.size(); i++) {
+			
+			JSONObject entry = tree.getJSONObject(i);
+			
+			entries.put(entry.getString("path"), entry.getString("sha"));
+		}
+		
+		return entries;
+	}
+
+	/*
+	 * Pack the changed modules into the shards with longest processing time first scheduling on their recorded build durations.
+	 */
+	private void reportShards(ChangeReportWriter reportWriter, Set<String> moduleChanges, Map<String, String> contentKeys) throws IOException {
+		
+		ModuleBuildHistory history = ModuleBuildHistory.load(resolveFile(moduleBuildHistoryFile), ModuleBuildHistory.DEFAULT_SAMPLES_PER_MODULE);
+		
+		List<Shard> shards = ShardPlanner.plan(history.estimate(moduleChanges, defaultModuleBuildSeconds), moduleShards);
+		
+		for (Shard shard : shards) {
+			
+			String name = "shard-" + shard.getNumber();
+			
+			Map<String, String> report = reportWriter.addReport(ChangeReportWriter.SHARD_CATEGORY, name, name + "-changes.dat");
+			
+			report.put("SHARD", String.valueOf(shard.getNumber()));
+			report.put("SHARD_COUNT", String.valueOf(shards.size()));
+			report.put("MODULES", StringUtils.join(shard.getModules(), ","));
+			report.put("ESTIMATED_SECONDS", String.valueOf(shard.getEstimatedSeconds()));
+			
+			StringBuilder shardContentKeys = new StringBuilder();
+			
+			for (String module : shard.getModules()) {
+				
+				if (contentKeys.containsKey(module))
+					shardContentKeys.append(shardContentKeys.length() == 0 ? "" : ",").append(module).append('=').append(contentKeys.get(module));
+			}
+			
+			if (shardContentKeys.length() > 0)
+				report.put("MODULE_CONTENT_KEYS", shardContentKeys.toString());
+			
+			getLog().info(String.format("Shard %d of %d (about %d seconds): %s", shard.getNumber(), shards.size(), shard.getEstimatedSeconds(), StringUtils.join(shard.getModules(), ", ")));
+		}
+	}
+
+	/*
+	 * Extract the schema objects affected by the changed sql script.
+	 * 
+	 * The patch is used when github includes it, otherwise the new version of the script is streamed through the contents api.
+	 */
+	private void analyzeSqlChange(SqlChangeAnalyzer sqlAnalyzer, GithubRestClient restClient, String repositoryName, String headCommitId, File file) throws IOException {
+		
+		if (file.getPatch() != null) {
+			sqlAnalyzer.analyzePatch(file.getPatch());
+			return;
+		}
+		
+		if ("removed".equals(file.getStatus())) {
+			sqlAnalyzer.addUnattributedScript();
+			return;
+		}
+		
+		Reader script = new BufferedReader(new InputStreamReader(restClient.openRawContent(repositoryName, file.getFileName(), headCommitId), "UTF-8"));
+		
+		try {
+			sqlAnalyzer.analyze(script);
+		}
+		finally {
+			script.close();
+		}
+	}
+
 	private GHCommit.File[] getFiles(GHCompare compare) throws MojoExecutionException {
 //		once github-api 1.59 is released use this instead
 //		return compare.getFiles();
@@ -222,52 +437,17 @@ public class IdentifyPullRequestChangesThroughApiMojo extends
 	}
 
 	private Set<String> reportOnTopLevelDirectoriesWithSQLChanges(
-			Set<String> changes) {
+			ChangeSet changes) {
 		
-		Set<String>topLevelSqlChanges = new HashSet<String>();
-		
-		for (String change : changes) {
-			
-			if (change.endsWith(".sql")) {
-				
-				int offset = change.indexOf("/");
-				
-				if (offset == -1) {
-					topLevelSqlChanges.add(".");
-					continue;
-				}
-				
-				String topLevel = change.substring(0, offset);
-				
-				topLevelSqlChanges.add(topLevel);
-			}
-		}
-		
-		return topLevelSqlChanges;
+		return changes.getTopLevelDirectoriesContaining(".sql");
 	}
 
 
 
 
-	private Set<String> reportOnTopLevelDirectoryChanges(Set<String> changes) {
+	private Set<String> reportOnTopLevelDirectoryChanges(ChangeSet changes) {
 
-		Set<String>topLevelChanges = new HashSet<String>();
-		
-		for (String change : changes) {
-			
-			int offset = change.indexOf("/");
-			
-			if (offset == -1) {
-				topLevelChanges.add(".");
-				continue;
-			}
-			
-			String topLevel = change.substring(0, offset);
-			
-			topLevelChanges.add(topLevel);
-		}
-		
-		return topLevelChanges;
+		return changes.getTopLevelDirectories();
 	}
 
 
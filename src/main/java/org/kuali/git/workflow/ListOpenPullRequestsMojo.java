@@ -4,10 +4,30 @@
 package org.kuali.git.workflow;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -16,14 +36,30 @@ import org.apache.maven.plugins.annotations.Execute;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.kohsuke.github.GHCommit;
 import org.kohsuke.github.GHCommitPointer;
+import org.kohsuke.github.GHCommitState;
 import org.kohsuke.github.GHCommitStatus;
 import org.kohsuke.github.GHIssueState;
 import org.kohsuke.github.GHPullRequest;
 import org.kohsuke.github.GHRepository;
 import org.kohsuke.github.GitHub;
+import org.kuali.git.workflow.model.ChangeSet;
+import org.kuali.git.workflow.model.utils.ChangeReportWriter;
+import org.kuali.git.workflow.model.utils.CommitStatusPublisher;
+import org.kuali.git.workflow.model.utils.CommitStatusPublisher.StatusUpdate;
+import org.kuali.git.workflow.model.utils.GithubRestClient;
+import org.kuali.git.workflow.model.utils.ModuleBuildHistory;
+import org.kuali.git.workflow.model.utils.PullRequestHeads;
+import org.kuali.git.workflow.model.utils.PullRequestMergeTester;
+import org.kuali.git.workflow.model.utils.PullRequestMergeTester.Mergeability;
+import org.kuali.git.workflow.model.utils.PullRequestPriority;
+import org.kuali.git.workflow.model.utils.PullRequestPriority.Candidate;
+import org.kuali.git.workflow.model.utils.VerificationLedger;
 import org.kuali.student.git.model.GitRepositoryUtils;
 
 /**
@@ -36,6 +72,22 @@ import org.kuali.student.git.model.GitRepositoryUtils;
  * We want only those that have new commits without any CI running against them.
  * 
  * We output a report file that can then be used to trigger a downstream job for each pull request.
+ * 
+ * With git-flow.discoverThroughLsRemote the heads of all pull requests are listed with one ls-remote of refs/pull/&lt;n&gt;/head 
+ * and compared with the heads saved by the previous run so the api is only used for the pull requests whose head moved.
+ * 
+ * With git-flow.prioritizePullRequests the pull requests are scored by their diff size, the build cost of the modules they 
+ * change, their age and how recently their head was updated (see {@link PullRequestPriority}).  Each report file gets a 
+ * PRIORITY (1 is built first) and the numbers are also written in build order to the &lt;prefix&gt;.queue manifest.  With
+ * git-flow.discoverThroughLsRemote the reports still queued from earlier runs are ranked again together with the moved
+ * pull requests, so the manifest always covers every queued report.
+ * 
+ * With git-flow.copyVerifiedStatuses an untested head whose merge result tree was already verified by another commit (an 
+ * amended commit message, a rebase onto an unchanged base) gets the statuses of that commit copied onto it instead of 
+ * being queued for a build (see {@link VerificationLedger}).
+ * 
+ * With git-flow.skipConflictingPullRequests the heads that checkPullRequestMergeability found to conflict with the branch 
+ * are left out of the build queue (see {@link PullRequestMergeTester}) and get a failure status listing the conflicting paths.
  *
  */
 @Mojo (name="listOpenPullRequests")
@@ -62,6 +114,177 @@ public class ListOpenPullRequestsMojo extends AbstractGithubAuthorizedMojo {
 	@Parameter (required=true, property="git-flow.reportFileNamePrefix", defaultValue="open-pull-requests")
 	private String reportFileNamePrefix;
 	
+	/**
+	 * Find the pull requests to look at through ls-remote instead of listing every open pull request through the api.
+	 */
+	@Parameter (property="git-flow.discoverThroughLsRemote", defaultValue="false")
+	private boolean discoverThroughLsRemote;
+	
+	/**
+	 * Where the pull request heads seen by the last ls-remote are kept between runs.
+	 */
+	@Parameter (property="git-flow.pullRequestHeadsFile", defaultValue="open-pull-request-heads.dat")
+	private String pullRequestHeadsFile;
+	
+	/**
+	 * Score the untested pull requests and emit them in the order they should be built.
+	 */
+	@Parameter (property="git-flow.prioritizePullRequests", defaultValue="false")
+	private boolean prioritizePullRequests;
+	
+	/**
+	 * The build cost of each module as module=seconds properties, overriding the durations in the moduleBuildHistoryFile.
+	 */
+	@Parameter (property="git-flow.moduleBuildCostsFile", defaultValue="module-build-costs.properties")
+	private String moduleBuildCostsFile;
+	
+	/**
+	 * The build cost in seconds of a module missing from the moduleBuildCostsFile.
+	 */
+	@Parameter (property="git-flow.defaultModuleBuildSeconds", defaultValue="60")
+	private long defaultModuleBuildSeconds;
+	
+	/**
+	 * The module build durations recorded by the recordModuleBuild goal.
+	 */
+	@Parameter (property="git-flow.moduleBuildHistoryFile", defaultValue="module-build-history.dat")
+	private String moduleBuildHistoryFile;
+	
+	/**
+	 * Where the scoring inputs of the prioritized pull requests are kept by head commit, so a head that has not moved is
+	 * scored again without any api calls.
+	 */
+	@Parameter (property="git-flow.pullRequestCandidatesFile", defaultValue="pull-request-candidates.dat")
+	private String pullRequestCandidatesFile;
+	
+	/**
+	 * Copy the statuses of the commit that verified the same merge result tree instead of building the head again.
+	 */
+	@Parameter (property="git-flow.copyVerifiedStatuses", defaultValue="false")
+	private boolean copyVerifiedStatuses;
+	
+	/**
+	 * Where the verified merge result trees and the queued heads are kept between runs.
+	 */
+	@Parameter (property="git-flow.verificationLedgerFile", defaultValue="verification-ledger.dat")
+	private String verificationLedgerFile;
+	
+	/**
+	 * Leave out the heads whose checkPullRequestMergeability report says they conflict with the branch.  A failure status
+	 * listing the conflicting paths is published on each skipped head so its author knows why it was not built.
+	 */
+	@Parameter (property="git-flow.skipConflictingPullRequests", defaultValue="true")
+	private boolean skipConflictingPullRequests;
+	
+	/**
+	 * The context of the status published on the heads that were skipped because they conflict with the branch.
+	 */
+	@Parameter (property="git-flow.conflictStatusContext", defaultValue="merge-conflicts")
+	private String conflictStatusContext;
+	
+	/**
+	 * The prefix of the &lt;prefix&gt;.&lt;n&gt; mergeability report files written by checkPullRequestMergeability.
+	 */
+	@Parameter (property="git-flow.mergeabilityReportPrefix", defaultValue="mergeability")
+	private String mergeabilityReportPrefix;
+	
+	/**
+	 * @param skipConflictingPullRequests the skipConflictingPullRequests to set
+	 */
+	public void setSkipConflictingPullRequests(boolean skipConflictingPullRequests) {
+		this.skipConflictingPullRequests = skipConflictingPullRequests;
+	}
+
+	/**
+	 * @param conflictStatusContext the conflictStatusContext to set
+	 */
+	public void setConflictStatusContext(String conflictStatusContext) {
+		this.conflictStatusContext = conflictStatusContext;
+	}
+
+	/**
+	 * @param mergeabilityReportPrefix the mergeabilityReportPrefix to set
+	 */
+	public void setMergeabilityReportPrefix(String mergeabilityReportPrefix) {
+		this.mergeabilityReportPrefix = mergeabilityReportPrefix;
+	}
+
+	/**
+	 * How long a head sent to be built stays in the verification ledger without completing its statuses.
+	 */
+	@Parameter (property="git-flow.queuedHeadExpiryHours", defaultValue="48")
+	private int queuedHeadExpiryHours;
+	
+	/**
+	 * @param queuedHeadExpiryHours the queuedHeadExpiryHours to set
+	 */
+	public void setQueuedHeadExpiryHours(int queuedHeadExpiryHours) {
+		this.queuedHeadExpiryHours = queuedHeadExpiryHours;
+	}
+
+	/**
+	 * @param copyVerifiedStatuses the copyVerifiedStatuses to set
+	 */
+	public void setCopyVerifiedStatuses(boolean copyVerifiedStatuses) {
+		this.copyVerifiedStatuses = copyVerifiedStatuses;
+	}
+
+	/**
+	 * @param verificationLedgerFile the verificationLedgerFile to set
+	 */
+	public void setVerificationLedgerFile(String verificationLedgerFile) {
+		this.verificationLedgerFile = verificationLedgerFile;
+	}
+
+	/**
+	 * @param moduleBuildHistoryFile the moduleBuildHistoryFile to set
+	 */
+	public void setModuleBuildHistoryFile(String moduleBuildHistoryFile) {
+		this.moduleBuildHistoryFile = moduleBuildHistoryFile;
+	}
+
+	/**
+	 * @param prioritizePullRequests the prioritizePullRequests to set
+	 */
+	public void setPrioritizePullRequests(boolean prioritizePullRequests) {
+		this.prioritizePullRequests = prioritizePullRequests;
+	}
+
+	/**
+	 * @param moduleBuildCostsFile the moduleBuildCostsFile to set
+	 */
+	public void setModuleBuildCostsFile(String moduleBuildCostsFile) {
+		this.moduleBuildCostsFile = moduleBuildCostsFile;
+	}
+
+	/**
+	 * @param pullRequestCandidatesFile the pullRequestCandidatesFile to set
+	 */
+	public void setPullRequestCandidatesFile(String pullRequestCandidatesFile) {
+		this.pullRequestCandidatesFile = pullRequestCandidatesFile;
+	}
+
+	/**
+	 * @param defaultModuleBuildSeconds the defaultModuleBuildSeconds to set
+	 */
+	public void setDefaultModuleBuildSeconds(long defaultModuleBuildSeconds) {
+		this.defaultModuleBuildSeconds = defaultModuleBuildSeconds;
+	}
+
+	/**
+	 * @param discoverThroughLsRemote the discoverThroughLsRemote to set
+	 */
+	public void setDiscoverThroughLsRemote(boolean discoverThroughLsRemote) {
+		this.discoverThroughLsRemote = discoverThroughLsRemote;
+	}
+
+	/**
+	 * @param pullRequestHeadsFile the pullRequestHeadsFile to set
+	 */
+	public void setPullRequestHeadsFile(String pullRequestHeadsFile) {
+		this.pullRequestHeadsFile = pullRequestHeadsFile;
+	}
+
 	/**
 	 * @return the reportFileNamePrefix
 	 */
@@ -110,6 +333,9 @@ public class ListOpenPullRequestsMojo extends AbstractGithubAuthorizedMojo {
 	@Override
 	public void execute() throws MojoExecutionException, MojoFailureException {
 		
+		if (executeInDaemon())
+			return;
+		
 		try {
 			
 			GitHub github = super.authorizeFromCredentials();
@@ -118,74 +344,489 @@ public class ListOpenPullRequestsMojo extends AbstractGithubAuthorizedMojo {
 			
 			GHRepository repo = github.getRepository(targetRepository);
 			
-			List<GHPullRequest> openPullRequests = repo.getPullRequests(GHIssueState.OPEN);
+			List<GHPullRequest> untested = new ArrayList<GHPullRequest>();
 			
+			Map<Integer, String> currentHeads = null;
 			
-			for (GHPullRequest pullRequest : openPullRequests) {
+			Set<String> currentHeadCommitIds = new HashSet<String>();
+			
+			if (discoverThroughLsRemote) {
+				currentHeads = findMovedPullRequests(repo, untested);
 				
-				GHCommitPointer head = pullRequest.getHead();
+				currentHeadCommitIds.addAll(currentHeads.values());
+			}
+			else {
+			
+				List<GHPullRequest> openPullRequests = repo.getPullRequests(GHIssueState.OPEN);
 				
-				GHRepository remoteRepository = head.getRepository();
 				
-				GHCommitPointer base = pullRequest.getBase();
+				for (GHPullRequest pullRequest : openPullRequests) {
+					
+					currentHeadCommitIds.add(pullRequest.getHead().getSha());
+					
+					if (isUntested(repo, pullRequest))
+						untested.add(pullRequest);
+					
+				}
+			}
+			
+			if (skipConflictingPullRequests)
+				untested = skipConflictingPullRequests(repo, untested);
+			
+			if (copyVerifiedStatuses)
+				untested = copyVerifiedStatuses(repo, targetRepository, untested, currentHeadCommitIds);
+			
+			if (prioritizePullRequests)
+				writePrioritizedReports(repo, targetRepository, untested, currentHeads);
+			else {
 				
-				if (!sourceGithubBranch.equals(base.getRef())) {
-					getLog().info("Skipping pull request: " + pullRequest.getNumber() + " because it does not apply to branch: " + sourceGithubBranch);
-					continue; 
+				for (GHPullRequest pullRequest : untested) {
+					writeReport(pullRequest.getNumber(), pullRequest.getHead().getSha(), null);
 				}
+			}
+			
+			// only once the moved pull requests are reported, a failed run looks at them again.
+			if (currentHeads != null)
+				PullRequestHeads.save(resolveFile(pullRequestHeadsFile), currentHeads);
+			
+		} catch (IOException e) {
+			throw new MojoExecutionException("ListOpenPullRequestsMojo failed: ", e);
+		}
+		
 
-				String commitId = head.getSha();
+	}
+
+	/*
+	 * Only the pull requests whose head moved since the last run are looked up through the api.
+	 * 
+	 * @return the current pull request heads, to be saved once the untested pull requests are reported.
+	 */
+	private Map<Integer, String> findMovedPullRequests(GHRepository repo, List<GHPullRequest> untested) throws IOException, MojoExecutionException {
+		
+		Collection<Ref> refs;
+		
+		// the https url with the github credentials, the git:// protocol is unauthenticated and blocked on many networks.
+		String remoteUrl = repo.gitHttpTransportUrl();
+		
+		try {
+			refs = Git.lsRemoteRepository().setRemote(remoteUrl).setCredentialsProvider(createGithubCredentials(remoteUrl)).call();
+		} catch (GitAPIException e) {
+			throw new MojoExecutionException("ls-remote of " + remoteUrl + " failed: ", e);
+		}
+		
+		Map<Integer, String> currentHeads = PullRequestHeads.fromRefs(refs);
+		
+		File headsFile = resolveFile(pullRequestHeadsFile);
+		
+		if (!headsFile.exists()) {
+			
+			// nothing to compare with so list the open pull requests once, later runs only look at the moved heads.
+			getLog().info("No pull request heads in " + headsFile + ", listing all of the open pull requests.");
+			
+			for (GHPullRequest pullRequest : repo.getPullRequests(GHIssueState.OPEN)) {
 				
-				// check that the commit id has no ci running.
+				if (isUntested(repo, pullRequest))
+					untested.add(pullRequest);
+			}
+		}
+		else {
+			
+			Set<Integer> moved = PullRequestHeads.changedSince(PullRequestHeads.load(headsFile), currentHeads);
+			
+			getLog().info("ls-remote listed " + currentHeads.size() + " pull request heads, " + moved.size() + " moved since the last run.");
+			
+			for (Integer pullRequestNumber : moved) {
 				
-				// once github-api 1.59 is released used that but for now just access the commit through the main repository.
-				// it seems like a github api bug but the non merged commits are available through the base repository.
-				// it may be related to their test merge support.
-				GHCommit headCommit = repo.getCommit(commitId);
-
-				List<GHCommitStatus> commitStatuses = headCommit.listStatuses().asList();
+				GHPullRequest pullRequest = repo.getPullRequest(pullRequestNumber);
 				
-				if (commitStatuses.size() != 0) {
-					// there are statuses so skip over
-					getLog().warn("skipping pull-request-" + pullRequest.getNumber() + " because it has existing commit statuses: ");
-					
-					for (GHCommitStatus status : commitStatuses) {
-						
-						getLog().info("pull-request-" + pullRequest.getNumber() + " status: context =  '" + status.getContext() + "', name='" + status.getState().name() + "', description = '" + status.getDescription() + "'");
-						
-					}
-					
+				if (pullRequest.getState() != GHIssueState.OPEN) {
+					getLog().info("Skipping pull request: " + pullRequestNumber + " because it is not open.");
 					continue;
 				}
-				else {
-					getLog().info("pull-request-" +pullRequest.getNumber() + " added to report.");
-				}
 				
-				/*
-				 * Emit a file per pull request because this is easier to consume in Jenkins.
-				 * 
-				 * For every matching file, invoke one build.
-				 * For every property file, invoke one build.
-				 */
-				PrintWriter pw = new PrintWriter(new File (reportFileNamePrefix + "." + pullRequest.getNumber()).getAbsoluteFile());
+				if (isUntested(repo, pullRequest))
+					untested.add(pullRequest);
+			}
+		}
+		
+		return currentHeads;
+	}
+	
+	private boolean isUntested(GHRepository repo, GHPullRequest pullRequest) throws IOException {
+		
+		GHCommitPointer head = pullRequest.getHead();
+		
+		GHCommitPointer base = pullRequest.getBase();
+		
+		if (!sourceGithubBranch.equals(base.getRef())) {
+			getLog().info("Skipping pull request: " + pullRequest.getNumber() + " because it does not apply to branch: " + sourceGithubBranch);
+			return false; 
+		}
+
+		String commitId = head.getSha();
+		
+		// check that the commit id has no ci running.
+		
+		// once github-api 1.59 is released used that but for now just access the commit through the main repository.
+		// it seems like a github api bug but the non merged commits are available through the base repository.
+		// it may be related to their test merge support.
+		GHCommit headCommit = repo.getCommit(commitId);
+
+		List<GHCommitStatus> commitStatuses = headCommit.listStatuses().asList();
+		
+		if (commitStatuses.size() != 0) {
+			// there are statuses so skip over
+			getLog().warn("skipping pull-request-" + pullRequest.getNumber() + " because it has existing commit statuses: ");
+			
+			for (GHCommitStatus status : commitStatuses) {
+				
+				getLog().info("pull-request-" + pullRequest.getNumber() + " status: context =  '" + status.getContext() + "', name='" + status.getState().name() + "', description = '" + status.getDescription() + "'");
 				
-				pw.println(String.format ("PULL_REQUEST_NUMBER=%d", pullRequest.getNumber()));
-				pw.println(String.format ("PULL_REQUEST_COMMIT_ID=%s", pullRequest.getHead().getSha()));
+			}
+			
+			return false;
+		}
+		else {
+			getLog().info("pull-request-" +pullRequest.getNumber() + " added to report.");
+		}
+		
+		return true;
+	}
+	
+	/*
+	 * Only a report for the same head counts, a head pushed since the test merge may have resolved the conflict.
+	 * 
+	 * Each skipped head gets a failure status listing the conflicting paths, it is only posted once per head since the
+	 * publisher skips a status that is already registered.
+	 * 
+	 * @return the pull requests that merge cleanly or have not been test merged.
+	 */
+	private List<GHPullRequest> skipConflictingPullRequests(GHRepository repo, List<GHPullRequest> untested) throws IOException {
+		
+		List<GHPullRequest> mergeable = new ArrayList<GHPullRequest>();
+		
+		CommitStatusPublisher publisher = new CommitStatusPublisher(repo, getLog());
+		
+		for (GHPullRequest pullRequest : untested) {
+			
+			Mergeability mergeability = PullRequestMergeTester.load(resolveFile(mergeabilityReportPrefix + "." + pullRequest.getNumber()));
+			
+			if (mergeability != null && !mergeability.isMergeable() && mergeability.getPullRequestCommitId().equals(pullRequest.getHead().getSha())) {
 				
-				pw.close();
+				String conflictingPaths = StringUtils.join(mergeability.getConflictingPaths(), ", ");
 				
+				getLog().info("pull-request-" + pullRequest.getNumber() + " conflicts with " + sourceGithubBranch + " in " + conflictingPaths + ", not queueing it for a build.");
+				
+				// the status description is limited to 140 characters.
+				publisher.queue(pullRequest.getHead().getSha(), GHCommitState.FAILURE, null, StringUtils.abbreviate("conflicts with " + sourceGithubBranch + " in " + conflictingPaths, 140), conflictStatusContext);
+				
+				continue;
 			}
 			
+			mergeable.add(pullRequest);
+		}
+		
+		publisher.flush();
+		
+		return mergeable;
+	}
+	
+	/*
+	 * Copy the statuses of the commit that verified the same merge result tree onto the untested heads.
+	 * 
+	 * The heads queued for a build by earlier runs are promoted to the verifier of their merge tree once all of their 
+	 * statuses are successful (or forgotten if they failed) and the rest of the untested heads are recorded as queued.  The 
+	 * queued heads that are no longer current or that were queued too long ago are forgotten first so their statuses are 
+	 * not read on every run.
+	 * 
+	 * @return the pull requests that still need to be built.
+	 */
+	private List<GHPullRequest> copyVerifiedStatuses(GHRepository repo, String targetRepository, List<GHPullRequest> untested, Set<String> currentHeadCommitIds) throws IOException {
+		
+		File ledgerFile = resolveFile(verificationLedgerFile);
+		
+		VerificationLedger ledger = VerificationLedger.load(ledgerFile, VerificationLedger.DEFAULT_MAXIMUM_ENTRIES);
+		
+		CommitStatusPublisher publisher = new CommitStatusPublisher(repo, getLog());
+		
+		GithubRestClient client = createRestClient();
+		
+		int forgotten = ledger.forgetStaleQueued(currentHeadCommitIds, System.currentTimeMillis() - TimeUnit.HOURS.toMillis(queuedHeadExpiryHours));
+		
+		if (forgotten > 0)
+			getLog().info("Forgot " + forgotten + " queued heads that were superseded, closed or queued over " + queuedHeadExpiryHours + " hours ago.");
+		
+		for (Entry<String, String> queued : ledger.getQueuedHeads().entrySet()) {
 			
+			List<GHCommitState> states = getStates(publisher.getCurrentStatuses(queued.getKey()));
 			
+			if (VerificationLedger.isVerified(states)) {
+				ledger.recordVerified(queued.getValue(), queued.getKey());
+				getLog().info("merge tree " + queued.getValue() + " verified by " + queued.getKey());
+			}
+			else if (VerificationLedger.isFailed(states))
+				ledger.forgetQueued(queued.getKey());
+		}
+		
+		List<GHPullRequest> toBuild = new ArrayList<GHPullRequest>();
+		
+		for (GHPullRequest pullRequest : untested) {
 			
+			String commitId = pullRequest.getHead().getSha();
 			
-		} catch (IOException e) {
-			throw new MojoExecutionException("ListOpenPullRequestsMojo failed: ", e);
+			String mergeTreeId = getMergeTreeId(client, targetRepository, pullRequest.getNumber(), commitId);
+			
+			if (mergeTreeId == null) {
+				// github has not computed the test merge of this head yet.
+				toBuild.add(pullRequest);
+				continue;
+			}
+			
+			String verifyingCommitId = ledger.getVerifyingCommit(mergeTreeId);
+			
+			Map<String, StatusUpdate> verifyingStatuses = verifyingCommitId == null ? null : publisher.getCurrentStatuses(verifyingCommitId);
+			
+			if (verifyingStatuses == null || verifyingCommitId.equals(commitId) || !VerificationLedger.isVerified(getStates(verifyingStatuses))) {
+				ledger.recordQueued(commitId, mergeTreeId);
+				toBuild.add(pullRequest);
+				continue;
+			}
+			
+			for (StatusUpdate status : verifyingStatuses.values()) {
+				publisher.queue(commitId, status.getState(), status.getTargetUrl(), StringUtils.abbreviate(StringUtils.defaultString(status.getDescription()) + " (same tree as " + verifyingCommitId.substring(0, 7) + ")", 140), status.getContext());
+			}
+			
+			getLog().info("pull-request-" + pullRequest.getNumber() + " has the same merge tree " + mergeTreeId + " as the verified commit " + verifyingCommitId + ", copying its statuses instead of building it.");
 		}
 		
-
+		publisher.flush();
+		
+		ledger.save(ledgerFile);
+		
+		return toBuild;
+	}
+	
+	/*
+	 * The tree of github's test merge of the head into the base, null if the test merge of this head is not available.
+	 */
+	private String getMergeTreeId(GithubRestClient client, String targetRepository, int pullRequestNumber, String commitId) throws IOException {
+		
+		JSONObject pull = client.getObject("/repos/" + targetRepository + "/pulls/" + pullRequestNumber);
+		
+		// null while github is still computing the test merge, false if it conflicts.
+		if (!Boolean.TRUE.equals(pull.opt("mergeable")))
+			return null;
+		
+		String mergeCommitId = pull.optString("merge_commit_sha");
+		
+		if (mergeCommitId.length() == 0 || "null".equals(mergeCommitId))
+			return null;
+		
+		JSONObject mergeCommit = client.getObject("/repos/" + targetRepository + "/git/commits/" + mergeCommitId);
+		
+		JSONArray parents = mergeCommit.getJSONArray("parents");
+		
+		for (int i = 0; i < parents.size(); i++) {
+			
+			// otherwise it is the test merge of an earlier head.
+			if (commitId.equals(parents.getJSONObject(i).getString("sha")))
+				return mergeCommit.getJSONObject("tree").getString("sha");
+		}
+		
+		return null;
+	}
+	
+	private static List<GHCommitState> getStates(Map<String, StatusUpdate> statuses) {
+		
+		List<GHCommitState> states = new ArrayList<GHCommitState>();
+		
+		for (StatusUpdate status : statuses.values()) {
+			states.add(status.getState());
+		}
+		
+		return states;
+	}
+	
+	/*
+	 * Score the untested pull requests on the files they change, write their reports with their priority and the queue 
+	 * manifest with their numbers in build order.
+	 * 
+	 * When only the moved pull requests were looked at (currentHeads is not null) the reports written by earlier runs whose 
+	 * head is still current are ranked with them.
+	 */
+	private void writePrioritizedReports(GHRepository repo, String targetRepository, List<GHPullRequest> untested, Map<Integer, String> currentHeads) throws IOException {
+		
+		Map<String, Long> moduleBuildSeconds = ModuleBuildHistory.load(resolveFile(moduleBuildHistoryFile), ModuleBuildHistory.DEFAULT_SAMPLES_PER_MODULE).estimateRecordedModules();
+		
+		moduleBuildSeconds.putAll(PullRequestPriority.loadModuleBuildSeconds(resolveFile(moduleBuildCostsFile)));
+		
+		PullRequestPriority priority = new PullRequestPriority(moduleBuildSeconds, defaultModuleBuildSeconds);
+		
+		GithubRestClient client = createRestClient();
+		
+		File candidatesFile = resolveFile(pullRequestCandidatesFile);
+		
+		Map<String, Candidate> savedCandidates = PullRequestPriority.loadCandidates(candidatesFile);
+		
+		Map<Integer, Candidate> candidates = new TreeMap<Integer, Candidate>();
+		
+		for (GHPullRequest pullRequest : untested) {
+			candidates.put(pullRequest.getNumber(), getCandidate(client, targetRepository, savedCandidates, pullRequest));
+		}
+		
+		if (currentHeads != null) {
+			
+			for (Entry<Integer, String> queued : readQueuedReports().entrySet()) {
+				
+				int number = queued.getKey();
+				
+				// reported again by this run, or its head moved since and the report is stale.
+				if (candidates.containsKey(number) || !queued.getValue().equals(currentHeads.get(number)))
+					continue;
+				
+				Candidate candidate = savedCandidates.get(queued.getValue());
+				
+				if (candidate == null || candidate.getNumber() != number)
+					candidate = getCandidate(client, targetRepository, savedCandidates, repo.getPullRequest(number));
+				
+				candidates.put(number, candidate);
+			}
+		}
+		
+		List<Candidate> ordered = priority.order(candidates.values(), System.currentTimeMillis());
+		
+		List<String> queue = new ArrayList<String>();
+		
+		for (int i = 0; i < ordered.size(); i++) {
+			
+			Candidate candidate = ordered.get(i);
+			
+			getLog().info(String.format("pull-request-%d priority %d (score %.0f, %d changed lines in %s)", candidate.getNumber(), i + 1, candidate.getScore(), candidate.getChangedLines(), candidate.getModules()));
+			
+			writeReport(candidate.getNumber(), candidate.getCommitId(), i + 1);
+			
+			queue.add(String.valueOf(candidate.getNumber()));
+		}
+		
+		ChangeReportWriter.writeAtomically(resolveFile(reportFileNamePrefix + ".queue"), queue);
+		
+		// only the candidates still queued are kept.
+		PullRequestPriority.saveCandidates(candidatesFile, ordered);
+	}
+	
+	/*
+	 * The saved candidate of the head or a new one scored through the api (the changed files and the head commit).
+	 */
+	private Candidate getCandidate(GithubRestClient client, String targetRepository, Map<String, Candidate> savedCandidates, GHPullRequest pullRequest) throws IOException {
+		
+		String headCommitId = pullRequest.getHead().getSha();
+		
+		Candidate saved = savedCandidates.get(headCommitId);
+		
+		if (saved != null && saved.getNumber() == pullRequest.getNumber())
+			return saved;
+		
+		List<JSONObject> files = client.getAllPages("/repos/" + targetRepository + "/pulls/" + pullRequest.getNumber() + "/files?per_page=100");
+		
+		ChangeSet changes = new ChangeSet();
+		
+		int changedLines = 0;
+		
+		for (JSONObject file : files) {
+			changes.add(file.getString("filename"));
+			changedLines += file.optInt("additions") + file.optInt("deletions");
+		}
+		
+		return new Candidate(pullRequest.getNumber(), headCommitId, changedLines, changes.getTopLevelDirectories(), getTime(pullRequest.getCreatedAt()), getCommitTime(client, targetRepository, headCommitId));
+	}
+	
+	/*
+	 * @return the head commit id of each &lt;prefix&gt;.&lt;n&gt; report that is still waiting to be built, by number.
+	 */
+	private Map<Integer, String> readQueuedReports() throws IOException {
+		
+		File prefix = resolveFile(reportFileNamePrefix);
+		
+		File[] files = prefix.getParentFile().listFiles();
+		
+		Map<Integer, String> queued = new TreeMap<Integer, String>();
+		
+		if (files == null)
+			return queued;
+		
+		for (File file : files) {
+			
+			String name = file.getName();
+			
+			if (!name.startsWith(prefix.getName() + ".") || !StringUtils.isNumeric(name.substring(prefix.getName().length() + 1)))
+				continue;
+			
+			Properties report = new Properties();
+			
+			InputStream input = new FileInputStream(file);
+			
+			try {
+				report.load(input);
+			}
+			finally {
+				IOUtils.closeQuietly(input);
+			}
+			
+			String number = report.getProperty("PULL_REQUEST_NUMBER");
+			
+			String commitId = report.getProperty("PULL_REQUEST_COMMIT_ID");
+			
+			if (StringUtils.isNumeric(number) && commitId != null)
+				queued.put(Integer.parseInt(number), commitId);
+		}
+		
+		return queued;
+	}
+	
+	private static long getTime(Date date) {
+		return date == null ? 0L : date.getTime();
+	}
+	
+	/*
+	 * The committer date of the head, the updated date of the pull request also moves on comments and label changes.
+	 */
+	private long getCommitTime(GithubRestClient client, String targetRepository, String commitId) throws IOException {
+		
+		JSONObject commit = client.getObject("/repos/" + targetRepository + "/git/commits/" + commitId);
+		
+		JSONObject committer = commit.optJSONObject("committer");
+		
+		String date = committer == null ? "" : committer.optString("date");
+		
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.ENGLISH);
+		
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		
+		try {
+			return format.parse(date).getTime();
+		} catch (ParseException e) {
+			getLog().warn("No commit date for " + commitId + ", it gets no recent update bonus: " + date);
+			return 0L;
+		}
+	}
+	
+	private void writeReport(int number, String commitId, Integer priority) throws IOException {
+		
+		/*
+		 * Emit a file per pull request because this is easier to consume in Jenkins.
+		 * 
+		 * For every matching file, invoke one build.
+		 * For every property file, invoke one build.
+		 */
+		List<String> lines = new ArrayList<String>();
+		
+		lines.add(String.format ("PULL_REQUEST_NUMBER=%d", number));
+		lines.add(String.format ("PULL_REQUEST_COMMIT_ID=%s", commitId));
+		
+		if (priority != null)
+			lines.add(String.format ("PRIORITY=%d", priority));
+		
+		ChangeReportWriter.writeAtomically(resolveFile(reportFileNamePrefix + "." + number), lines);
 	}
-
 	
 }
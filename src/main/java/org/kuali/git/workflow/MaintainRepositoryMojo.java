@@ -0,0 +1,384 @@
+/**
+ *
+ */
+package org.kuali.git.workflow;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Execute;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.GC;
+import org.eclipse.jgit.internal.storage.file.GC.RepoStatistics;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.kohsuke.github.GHIssueState;
+import org.kohsuke.github.GHPullRequest;
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GitHub;
+import org.kuali.git.workflow.model.utils.ChangeReportWriter;
+import org.kuali.git.workflow.model.utils.ExternalGitCommand;
+import org.kuali.git.workflow.model.utils.GitOperations;
+import org.kuali.git.workflow.model.utils.PullRequestRefManager;
+
+/**
+ * @author ocleirig
+ *
+ * Keeps the repository that {@link FetchOpenPullRequestsMojo} fetches into from growing forever.
+ *
+ * The pull-request-&lt;n&gt; branches and tracking refs of pull requests that are no longer open are deleted and the fork
+ * remotes that no open pull request comes from are removed (with their tracking refs).
+ *
+ * Then the object storage is maintained incrementally through C git, in the same way as git maintenance's
+ * incremental-repack strategy:
+ *
+ * 1. pack the loose objects (only once there are more than looseObjectLimit).
+ * 2. write the commit-graph (with changed path Bloom filters, see {@link org.kuali.git.workflow.model.utils.CommitGraph}).
+ * 3. write the multi-pack-index, expire the packs it no longer needs and repack a batch of the small packs.
+ *
+ * Each step is only started while the time budget lasts and the multi-pack-index repack only rewrites a batch of the size
+ * given, so a run never rewrites the whole repository.  The object and ref counts before and after are written to the
+ * report file.
+ *
+ */
+@Mojo (name="maintainRepository")
+@Execute (goal="maintainRepository", lifecycle="initialize")
+public class MaintainRepositoryMojo extends AbstractGitRepositoryAwareMojo {
+
+	private static final String CONFIG_SECTION = "git-workflow";
+
+	private static final String LAST_MAINTENANCE = "lastMaintenance";
+
+	private static final String ORIGIN = "origin";
+
+	@Parameter(required=true, property="git-flow.sourceGithubUser")
+	private String sourceGithubUser;
+
+	@Parameter(required=true, property="git-flow.sourceGithubRepo")
+	private String sourceGithubRepo;
+
+	/**
+	 * Skip the run if the last maintenance was more recent than this.  0 to always run.
+	 */
+	@Parameter(property="git-flow.maintenanceIntervalHours", defaultValue="24")
+	private int maintenanceIntervalHours;
+
+	/**
+	 * No maintenance step is started after this many seconds.
+	 */
+	@Parameter(property="git-flow.maintenanceBudgetSeconds", defaultValue="900")
+	private int maintenanceBudgetSeconds;
+
+	/**
+	 * The loose objects are only packed once there are more than this.
+	 */
+	@Parameter(property="git-flow.maintenanceLooseObjectLimit", defaultValue="1000")
+	private int maintenanceLooseObjectLimit;
+
+	/**
+	 * The most data the multi-pack-index repack rewrites in one run (git multi-pack-index repack --batch-size).
+	 */
+	@Parameter(property="git-flow.maintenanceRepackBatchSize", defaultValue="512m")
+	private String maintenanceRepackBatchSize;
+
+	@Parameter(property="git-flow.maintenanceReportFile", defaultValue="${project.build.directory}/repository-maintenance.dat")
+	private String maintenanceReportFile;
+
+	/**
+	 *
+	 */
+	public MaintainRepositoryMojo() {
+		super();
+	}
+
+	/**
+	 * @param sourceGithubUser the sourceGithubUser to set
+	 */
+	public void setSourceGithubUser(String sourceGithubUser) {
+		this.sourceGithubUser = sourceGithubUser;
+	}
+
+	/**
+	 * @param sourceGithubRepo the sourceGithubRepo to set
+	 */
+	public void setSourceGithubRepo(String sourceGithubRepo) {
+		this.sourceGithubRepo = sourceGithubRepo;
+	}
+
+	/**
+	 * @param maintenanceIntervalHours the maintenanceIntervalHours to set
+	 */
+	public void setMaintenanceIntervalHours(int maintenanceIntervalHours) {
+		this.maintenanceIntervalHours = maintenanceIntervalHours;
+	}
+
+	/**
+	 * @param maintenanceBudgetSeconds the maintenanceBudgetSeconds to set
+	 */
+	public void setMaintenanceBudgetSeconds(int maintenanceBudgetSeconds) {
+		this.maintenanceBudgetSeconds = maintenanceBudgetSeconds;
+	}
+
+	/**
+	 * @param maintenanceLooseObjectLimit the maintenanceLooseObjectLimit to set
+	 */
+	public void setMaintenanceLooseObjectLimit(int maintenanceLooseObjectLimit) {
+		this.maintenanceLooseObjectLimit = maintenanceLooseObjectLimit;
+	}
+
+	/**
+	 * @param maintenanceRepackBatchSize the maintenanceRepackBatchSize to set
+	 */
+	public void setMaintenanceRepackBatchSize(String maintenanceRepackBatchSize) {
+		this.maintenanceRepackBatchSize = maintenanceRepackBatchSize;
+	}
+
+	/**
+	 * @param maintenanceReportFile the maintenanceReportFile to set
+	 */
+	public void setMaintenanceReportFile(String maintenanceReportFile) {
+		this.maintenanceReportFile = maintenanceReportFile;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.kuali.git.workflow.AbstractGitRepositoryAwareMojo#onExecute()
+	 */
+	@Override
+	protected void onExecute() throws MojoExecutionException,
+			MojoFailureException {
+
+		long start = System.currentTimeMillis();
+
+		StoredConfig config = repository.getConfig();
+
+		if (!isMaintenanceDue(start)) {
+			getLog().info("Skipping maintenance, the last run was less than " + maintenanceIntervalHours + " hours ago.");
+			return;
+		}
+
+		if (!(repository instanceof FileRepository))
+			throw new MojoExecutionException("Maintenance is only supported for file based repositories.");
+
+		GitOperations gitOperations = createGitOperations();
+
+		Map<String, String> report = new LinkedHashMap<String, String>();
+
+		try {
+
+			GC gc = new GC((FileRepository) repository);
+
+			putStatistics(report, "BEFORE", gc.getStatistics(), countRefs());
+
+			/*
+			 * Remove what belongs to closed pull requests.
+			 */
+			GitHub github = super.authorizeFromCredentials();
+
+			GHRepository repo = github.getRepository(sourceGithubUser + "/" + sourceGithubRepo);
+
+			Set<Integer> openPullRequests = new HashSet<Integer>();
+
+			Set<String> openForks = new HashSet<String>();
+
+			for (GHPullRequest pullRequest : repo.getPullRequests(GHIssueState.OPEN)) {
+
+				openPullRequests.add(pullRequest.getNumber());
+
+				// the fork may have been deleted.
+				GHRepository fork = pullRequest.getHead().getRepository();
+
+				if (fork != null)
+					openForks.add(fork.getFullName());
+			}
+
+			PullRequestRefManager refManager = new PullRequestRefManager(repository, gitOperations);
+
+			List<ReceiveCommand> prunedRefs = refManager.update(Collections.<Integer, ObjectId>emptyMap(), openPullRequests);
+
+			report.put("PRUNED_REFS", String.valueOf(prunedRefs.size()));
+
+			Set<String> removedRemotes = removeStaleRemotes(gitOperations, openForks);
+
+			report.put("REMOVED_REMOTES", StringUtils.join(removedRemotes, ","));
+
+			getLog().info("Deleted " + prunedRefs.size() + " refs of closed pull requests and removed remotes: " + removedRemotes);
+
+			/*
+			 * Incremental object maintenance within the budget.
+			 */
+			long deadline = start + TimeUnit.SECONDS.toMillis(maintenanceBudgetSeconds);
+
+			List<String> ranSteps = new ArrayList<String>();
+
+			List<String> skippedSteps = new ArrayList<String>();
+
+			if (gc.getStatistics().numberOfLooseObjects > maintenanceLooseObjectLimit)
+				runStep(report, ranSteps, skippedSteps, deadline, "repack-loose", "repack", "-d", "-l");
+			else
+				skippedSteps.add("repack-loose");
+
+			runStep(report, ranSteps, skippedSteps, deadline, "commit-graph", "commit-graph", "write", "--reachable", "--split", "--changed-paths");
+			runStep(report, ranSteps, skippedSteps, deadline, "multi-pack-index-write", "multi-pack-index", "write");
+			runStep(report, ranSteps, skippedSteps, deadline, "multi-pack-index-expire", "multi-pack-index", "expire");
+			runStep(report, ranSteps, skippedSteps, deadline, "multi-pack-index-repack", "multi-pack-index", "repack", "--batch-size=" + maintenanceRepackBatchSize);
+
+			report.put("STEPS", StringUtils.join(ranSteps, ","));
+			report.put("SKIPPED_STEPS", StringUtils.join(skippedSteps, ","));
+
+			putStatistics(report, "AFTER", gc.getStatistics(), countRefs());
+
+			report.put("ELAPSED_MILLIS", String.valueOf(System.currentTimeMillis() - start));
+
+			config.setLong(CONFIG_SECTION, null, LAST_MAINTENANCE, start);
+
+			config.save();
+
+			writeReport(report);
+
+		} catch (IOException e) {
+			throw new MojoExecutionException("MaintainRepositoryMojo failed: ", e);
+		}
+		finally {
+			gitOperations.close();
+		}
+
+		getLog().info("Objects before=" + report.get("BEFORE_PACKED_OBJECTS") + "+" + report.get("BEFORE_LOOSE_OBJECTS") + " loose, after=" + report.get("AFTER_PACKED_OBJECTS") + "+" + report.get("AFTER_LOOSE_OBJECTS") + " loose; refs before=" + report.get("BEFORE_REFS") + " after=" + report.get("AFTER_REFS"));
+	}
+
+	/*
+	 * True unless the last maintenance recorded in the repository config was within the interval.
+	 */
+	boolean isMaintenanceDue(long now) {
+
+		if (maintenanceIntervalHours <= 0)
+			return true;
+
+		long lastMaintenance = repository.getConfig().getLong(CONFIG_SECTION, null, LAST_MAINTENANCE, 0L);
+
+		return now - lastMaintenance >= TimeUnit.HOURS.toMillis(maintenanceIntervalHours);
+	}
+
+	/*
+	 * Remove the fork remotes (named user/repo by FetchOpenPullRequestsMojo) that no open pull request comes from, and
+	 * their tracking refs.
+	 */
+	Set<String> removeStaleRemotes(GitOperations gitOperations, Set<String> openForks) throws IOException {
+
+		StoredConfig config = repository.getConfig();
+
+		Set<String> removed = new TreeSet<String>();
+
+		for (String remote : config.getSubsections("remote")) {
+
+			if (remote.equals(ORIGIN) || !remote.contains("/") || openForks.contains(remote))
+				continue;
+
+			removed.add(remote);
+		}
+
+		if (removed.isEmpty())
+			return removed;
+
+		List<ReceiveCommand> deletes = new ArrayList<ReceiveCommand>();
+
+		for (Entry<String, Ref> ref : repository.getRefDatabase().getRefs(RefDatabase.ALL).entrySet()) {
+
+			if (ref.getValue().isSymbolic() || ref.getValue().getObjectId() == null)
+				continue;
+
+			for (String remote : removed) {
+
+				if (ref.getKey().startsWith("refs/remotes/" + remote + "/")) {
+					deletes.add(new ReceiveCommand(ref.getValue().getObjectId(), ObjectId.zeroId(), ref.getKey()));
+					break;
+				}
+			}
+		}
+
+		gitOperations.updateRefs(deletes);
+
+		for (String remote : removed) {
+			config.unsetSection("remote", remote);
+		}
+
+		config.save();
+
+		return removed;
+	}
+
+	/*
+	 * Run a git maintenance step if the budget allows it.  A failed step (i.e. a git too old for multi-pack-index) is logged
+	 * and the next step is still tried.
+	 */
+	private void runStep(Map<String, String> report, List<String> ranSteps, List<String> skippedSteps, long deadline, String name, String... arguments) throws IOException {
+
+		if (System.currentTimeMillis() >= deadline) {
+			getLog().info("Maintenance budget used up, skipping " + name);
+			skippedSteps.add(name);
+			return;
+		}
+
+		ExternalGitCommand git = createExternalGitCommand();
+
+		ByteArrayOutputStream errors = new ByteArrayOutputStream();
+
+		long stepStart = System.currentTimeMillis();
+
+		ExternalGitCommand.Result result = git.run(Arrays.asList(arguments), errors);
+
+		report.put(name + ".ELAPSED_MILLIS", String.valueOf(System.currentTimeMillis() - stepStart));
+
+		if (result.isSuccess()) {
+			ranSteps.add(name);
+		}
+		else {
+			getLog().warn("git " + StringUtils.join(arguments, " ") + " failed (" + result.getExitCode() + "): " + errors.toString("UTF-8").trim());
+			skippedSteps.add(name);
+		}
+	}
+
+	private int countRefs() throws IOException {
+		return repository.getRefDatabase().getRefs(RefDatabase.ALL).size();
+	}
+
+	private static void putStatistics(Map<String, String> report, String prefix, RepoStatistics statistics, int refs) {
+
+		report.put(prefix + "_LOOSE_OBJECTS", String.valueOf(statistics.numberOfLooseObjects));
+		report.put(prefix + "_PACKED_OBJECTS", String.valueOf(statistics.numberOfPackedObjects));
+		report.put(prefix + "_PACK_FILES", String.valueOf(statistics.numberOfPackFiles));
+		report.put(prefix + "_LOOSE_BYTES", String.valueOf(statistics.sizeOfLooseObjects));
+		report.put(prefix + "_PACKED_BYTES", String.valueOf(statistics.sizeOfPackedObjects));
+		report.put(prefix + "_LOOSE_REFS", String.valueOf(statistics.numberOfLooseRefs));
+		report.put(prefix + "_REFS", String.valueOf(refs));
+	}
+
+	private void writeReport(Map<String, String> report) throws IOException {
+
+		List<String> lines = new ArrayList<String>();
+
+		for (Entry<String, String> entry : report.entrySet()) {
+			lines.add(entry.getKey() + "=" + entry.getValue());
+		}
+
+		ChangeReportWriter.writeAtomically(resolveFile(maintenanceReportFile), lines);
+	}
+}
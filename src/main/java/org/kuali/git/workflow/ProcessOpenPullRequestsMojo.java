@@ -0,0 +1,549 @@
+/**
+ *
+ */
+package org.kuali.git.workflow;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Execute;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathSuffixFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.kohsuke.github.GHCommitStatus;
+import org.kohsuke.github.GHIssueState;
+import org.kohsuke.github.GHPullRequest;
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GitHub;
+import org.kuali.git.workflow.model.ChangeSet;
+import org.kuali.git.workflow.model.utils.ChangeReportWriter;
+import org.kuali.git.workflow.model.utils.CommitGraph;
+import org.kuali.git.workflow.model.utils.CommitRangeWalker;
+import org.kuali.git.workflow.model.utils.GitOperations;
+import org.kuali.git.workflow.model.utils.GitProgressParser.Phase;
+import org.kuali.git.workflow.model.utils.PullRequestRefManager;
+import org.kuali.git.workflow.model.utils.SqlChangeAnalyzer;
+import org.kuali.git.workflow.model.utils.StagedPipeline;
+import org.kuali.git.workflow.model.utils.StagedPipeline.Result;
+import org.kuali.git.workflow.model.utils.StagedPipeline.Stage;
+
+/**
+ * @author ocleirig
+ *
+ * Does the work of listOpenPullRequests, fetchOpenPullRequests and identifyChangesInApi for every open pull request in
+ * one run.
+ *
+ * The open pull requests are listed once and each then goes through a pipeline of stages, each with its own number of
+ * threads:
+ *
+ * 1. status: skip the pull request if its head already has commit statuses (CI ran or is running).
+ * 2. fetch: fetch refs/pull/&lt;n&gt;/head from origin.
+ * 3. changes: diff the head against its merge base with the branch locally (no compare api call) and analyze the changed
+ * lines of the sql scripts.
+ * 4. report: write the change reports to &lt;changesReportTargetDirectory&gt;/&lt;n&gt; and the open-pull-requests.&lt;n&gt;
+ * trigger file.
+ *
+ * A pull request's changes are identified while the others are still being fetched.  The merge bases are found through the
+ * commit-graph written at the end of the previous run; a head fetched since isn't in it yet so its walk goes through JGit
+ * (see {@link CommitRangeWalker}).  The graph gets a layer for the new heads at the end of the run.
+ *
+ * The github client, the repository and its long running git sessions are shared by every pull request.  At the end the
+ * pull-request-&lt;n&gt; branches are updated in one batch (and those of closed pull requests removed).
+ *
+ */
+@Mojo (name="processOpenPullRequests")
+@Execute (goal="processOpenPullRequests", lifecycle="initialize")
+public class ProcessOpenPullRequestsMojo extends AbstractGitRepositoryAwareMojo {
+
+	private static final String ORIGIN = "origin";
+
+	@Parameter(required=true, property="git-flow.sourceGithubUser")
+	private String sourceGithubUser;
+
+	@Parameter(required=true, property="git-flow.sourceGithubRepo")
+	private String sourceGithubRepo;
+
+	@Parameter(required=true, property="git-flow.sourceGithubBranch")
+	private String sourceGithubBranch;
+
+	@Parameter (required=true, property="git-flow.reportFileNamePrefix", defaultValue="open-pull-requests")
+	private String reportFileNamePrefix;
+
+	/**
+	 * Each pull request's change reports are written to a sub directory named after its number.
+	 */
+	@Parameter (property="git-flow.changesReportTargetDirectory", defaultValue="${project.build.directory}/pull-requests")
+	private String changesReportTargetDirectory;
+
+	/**
+	 * Skip pull requests whose head commit already has commit statuses, as listOpenPullRequests does.
+	 */
+	@Parameter (property="git-flow.skipPullRequestsWithStatuses", defaultValue="true")
+	private boolean skipPullRequestsWithStatuses;
+
+	/**
+	 * The most commit status api calls made at once.
+	 */
+	@Parameter (property="git-flow.statusThreads", defaultValue="4")
+	private int statusThreads;
+
+	/**
+	 * The most fetches run at once.
+	 */
+	@Parameter (property="git-flow.fetchThreads", defaultValue="2")
+	private int fetchThreads;
+
+	/**
+	 * The most pull requests having their changes identified at once.
+	 */
+	@Parameter (property="git-flow.changeThreads", defaultValue="4")
+	private int changeThreads;
+
+	/**
+	 * Any variables specified here will be included in the variables written into the files for the downstream jobs.
+	 *
+	 * Expecting a comma seperated list of string values.
+	 */
+	@Parameter(property="git-flow.environmentVariablesToInclude")
+	private List<String> environmentVariablesToInclude;
+
+	// the state shared by all of the pull requests of the run.
+	private GHRepository githubRepository;
+
+	private GitOperations gitOperations;
+
+	private CommitGraph commitGraph;
+
+	private ObjectId branchHead;
+
+	// resolved on the goal's thread, the stages don't see the goal's WorkflowSession.
+	private File reportTargetDirectory;
+
+	private File triggerFilePrefix;
+
+	private Map<String, String> environment;
+
+	/**
+	 *
+	 */
+	public ProcessOpenPullRequestsMojo() {
+		super();
+
+		super.createRepository = true;
+	}
+
+	/**
+	 * @param sourceGithubUser the sourceGithubUser to set
+	 */
+	public void setSourceGithubUser(String sourceGithubUser) {
+		this.sourceGithubUser = sourceGithubUser;
+	}
+
+	/**
+	 * @param sourceGithubRepo the sourceGithubRepo to set
+	 */
+	public void setSourceGithubRepo(String sourceGithubRepo) {
+		this.sourceGithubRepo = sourceGithubRepo;
+	}
+
+	/**
+	 * @param sourceGithubBranch the sourceGithubBranch to set
+	 */
+	public void setSourceGithubBranch(String sourceGithubBranch) {
+		this.sourceGithubBranch = sourceGithubBranch;
+	}
+
+	/**
+	 * @param reportFileNamePrefix the reportFileNamePrefix to set
+	 */
+	public void setReportFileNamePrefix(String reportFileNamePrefix) {
+		this.reportFileNamePrefix = reportFileNamePrefix;
+	}
+
+	/**
+	 * @param changesReportTargetDirectory the changesReportTargetDirectory to set
+	 */
+	public void setChangesReportTargetDirectory(String changesReportTargetDirectory) {
+		this.changesReportTargetDirectory = changesReportTargetDirectory;
+	}
+
+	/**
+	 * @param skipPullRequestsWithStatuses the skipPullRequestsWithStatuses to set
+	 */
+	public void setSkipPullRequestsWithStatuses(boolean skipPullRequestsWithStatuses) {
+		this.skipPullRequestsWithStatuses = skipPullRequestsWithStatuses;
+	}
+
+	/**
+	 * @param statusThreads the statusThreads to set
+	 */
+	public void setStatusThreads(int statusThreads) {
+		this.statusThreads = statusThreads;
+	}
+
+	/**
+	 * @param fetchThreads the fetchThreads to set
+	 */
+	public void setFetchThreads(int fetchThreads) {
+		this.fetchThreads = fetchThreads;
+	}
+
+	/**
+	 * @param changeThreads the changeThreads to set
+	 */
+	public void setChangeThreads(int changeThreads) {
+		this.changeThreads = changeThreads;
+	}
+
+	public void setEnvironmentVariablesToInclude(
+			List<String> environmentVariablesToInclude) {
+		this.environmentVariablesToInclude = environmentVariablesToInclude;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.kuali.git.workflow.AbstractGitRepositoryAwareMojo#onExecute()
+	 */
+	@Override
+	protected void onExecute() throws MojoExecutionException,
+			MojoFailureException {
+
+		gitOperations = createGitOperations();
+
+		reportTargetDirectory = resolveFile(changesReportTargetDirectory);
+
+		triggerFilePrefix = resolveFile(reportFileNamePrefix);
+
+		environment = WorkflowSession.current().getEnvironment();
+
+		StagedPipeline<PullRequestWork> pipeline = createPipeline();
+
+		try {
+			GitHub github = super.authorizeFromCredentials();
+
+			githubRepository = github.getRepository(sourceGithubUser + "/" + sourceGithubRepo);
+
+			/*
+			 * Discover the pull requests once.
+			 */
+			List<PullRequestWork> work = new ArrayList<PullRequestWork>();
+
+			Set<Integer> openPullRequestNumbers = new HashSet<Integer>();
+
+			for (GHPullRequest pullRequest : githubRepository.getPullRequests(GHIssueState.OPEN)) {
+
+				openPullRequestNumbers.add(pullRequest.getNumber());
+
+				if (!sourceGithubBranch.equals(pullRequest.getBase().getRef())) {
+					getLog().info("Skipping pull request: " + pullRequest.getNumber() + " because it does not apply to branch: " + sourceGithubBranch);
+					continue;
+				}
+
+				work.add(new PullRequestWork(pullRequest.getNumber(), pullRequest.getHead().getSha()));
+			}
+
+			/*
+			 * The branch is fetched once, the pull requests only fetch what is missing on top of it.
+			 */
+			repository.getConfig().setString("remote", ORIGIN, "url", githubRepository.gitHttpTransportUrl());
+			repository.getConfig().setString("remote", ORIGIN, "fetch", String.format("refs/heads/%s:refs/remotes/%s/%s", sourceGithubBranch, ORIGIN, sourceGithubBranch));
+
+			repository.getConfig().save();
+
+			gitOperations.fetch(ORIGIN, -1, System.out);
+
+			branchHead = repository.resolve(String.format("refs/remotes/%s/%s", ORIGIN, sourceGithubBranch));
+
+			if (branchHead == null)
+				throw new MojoExecutionException("Failed to fetch " + sourceGithubBranch + " from " + ORIGIN);
+
+			getLog().info("Processing " + work.size() + " pull requests against " + sourceGithubBranch);
+
+			commitGraph = CommitGraph.open(repository);
+
+			Result<PullRequestWork> result = pipeline.run(work);
+
+			for (String line : pipeline.summarize()) {
+				getLog().info("stage: " + line);
+			}
+
+			/*
+			 * One batch for the branches of every fetched pull request.
+			 */
+			Map<Integer, ObjectId> heads = new HashMap<Integer, ObjectId>();
+
+			for (PullRequestWork pullRequest : work) {
+
+				if (pullRequest.fetched)
+					heads.put(pullRequest.number, ObjectId.fromString(pullRequest.headCommitId));
+			}
+
+			new PullRequestRefManager(repository, gitOperations).update(heads, openPullRequestNumbers);
+
+			// the next run walks the heads fetched in this one through the graph.
+			try {
+				gitOperations.writeCommitGraph();
+			} catch (IOException e) {
+				getLog().warn("Failed to update the commit-graph: " + e.getMessage());
+			}
+
+			for (Entry<PullRequestWork, String> skipped : result.getSkipped().entrySet()) {
+				getLog().info("pull-request-" + skipped.getKey().number + " skipped by the " + skipped.getValue() + " stage.");
+			}
+
+			Set<Integer> failed = new TreeSet<Integer>();
+
+			for (Entry<PullRequestWork, Throwable> failure : result.getFailures().entrySet()) {
+
+				failed.add(failure.getKey().number);
+
+				getLog().error("pull-request-" + failure.getKey().number + " failed: " + failure.getValue().getMessage(), failure.getValue());
+			}
+
+			getLog().info(result.getCompleted().size() + " pull requests reported, " + result.getSkipped().size() + " skipped, " + failed.size() + " failed.");
+
+			if (!failed.isEmpty())
+				throw new MojoFailureException("Failed to process pull requests: " + StringUtils.join(failed, ", "));
+
+		} catch (IOException e) {
+			throw new MojoExecutionException("ProcessOpenPullRequestsMojo failed: ", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while processing the pull requests", e);
+		}
+		finally {
+			gitOperations.close();
+
+			for (String line : gitOperations.getMetrics().summarize()) {
+				getLog().info("git operation: " + line);
+			}
+		}
+	}
+
+	private StagedPipeline<PullRequestWork> createPipeline() {
+
+		StagedPipeline<PullRequestWork> pipeline = new StagedPipeline<PullRequestWork>();
+
+		pipeline.addStage("status", statusThreads, new Stage<PullRequestWork>() {
+
+			@Override
+			public boolean process(PullRequestWork pullRequest) throws Exception {
+				return checkStatuses(pullRequest);
+			}
+		});
+
+		pipeline.addStage("fetch", fetchThreads, new Stage<PullRequestWork>() {
+
+			@Override
+			public boolean process(PullRequestWork pullRequest) throws Exception {
+				fetch(pullRequest);
+				return true;
+			}
+		});
+
+		pipeline.addStage("changes", changeThreads, new Stage<PullRequestWork>() {
+
+			@Override
+			public boolean process(PullRequestWork pullRequest) throws Exception {
+				identifyChanges(pullRequest);
+				return true;
+			}
+		});
+
+		// writing the reports is cheap, one thread keeps the console output readable.
+		pipeline.addStage("report", 1, new Stage<PullRequestWork>() {
+
+			@Override
+			public boolean process(PullRequestWork pullRequest) throws Exception {
+				writeReports(pullRequest);
+				return true;
+			}
+		});
+
+		return pipeline;
+	}
+
+	/*
+	 * false if the head already has statuses.
+	 */
+	private boolean checkStatuses(PullRequestWork pullRequest) throws IOException {
+
+		if (!skipPullRequestsWithStatuses)
+			return true;
+
+		// the non merged commits are available through the base repository.
+		List<GHCommitStatus> commitStatuses = githubRepository.getCommit(pullRequest.headCommitId).listStatuses().asList();
+
+		return commitStatuses.isEmpty();
+	}
+
+	private void fetch(PullRequestWork pullRequest) throws IOException {
+
+		String refSpec = String.format("+refs/pull/%d/head:refs/remotes/%s/pull-request-%d", pullRequest.number, ORIGIN, pullRequest.number);
+
+		List<Phase> phases = gitOperations.fetch(ORIGIN, -1, Collections.singletonList(refSpec), null);
+
+		if (!gitOperations.hasObject(ObjectId.fromString(pullRequest.headCommitId)))
+			throw new IOException("head commit " + pullRequest.headCommitId + " was not fetched.");
+
+		pullRequest.fetched = true;
+
+		for (Phase phase : phases) {
+			getLog().debug("pull-request-" + pullRequest.number + " " + phase);
+		}
+	}
+
+	/*
+	 * Diff the head against the merge base with the branch, the same changes the compare api returns.
+	 */
+	private void identifyChanges(PullRequestWork pullRequest) throws IOException {
+
+		ObjectId head = ObjectId.fromString(pullRequest.headCommitId);
+
+		// walkers are not thread safe so each pull request gets its own.
+		CommitRangeWalker walker = new CommitRangeWalker(repository, commitGraph);
+
+		RevWalk rw = new RevWalk(repository);
+
+		TreeWalk tw = new TreeWalk(repository);
+
+		DiffFormatter formatter = null;
+
+		try {
+			ObjectId mergeBase = walker.mergeBase(branchHead, head);
+
+			if (mergeBase == null)
+				throw new IOException("no merge base between " + sourceGithubBranch + " and " + pullRequest.headCommitId);
+
+			pullRequest.mergeBaseCommitId = mergeBase.name();
+
+			RevTree mergeBaseTree = rw.parseCommit(mergeBase).getTree();
+
+			RevTree headTree = rw.parseCommit(head).getTree();
+
+			tw.addTree(mergeBaseTree);
+			tw.addTree(headTree);
+
+			tw.setRecursive(true);
+			tw.setFilter(TreeFilter.ANY_DIFF);
+
+			while (tw.next()) {
+				pullRequest.changes.add(tw.getPathString());
+			}
+
+			// only the changed lines of the scripts, as identifyChangesInApi does with the patches of the compare api.
+			ByteArrayOutputStream patch = new ByteArrayOutputStream();
+
+			formatter = new DiffFormatter(patch);
+
+			formatter.setRepository(repository);
+			formatter.setPathFilter(PathSuffixFilter.create(".sql"));
+
+			for (DiffEntry script : formatter.scan(mergeBaseTree, headTree)) {
+
+				patch.reset();
+
+				formatter.format(script);
+				formatter.flush();
+
+				pullRequest.sqlAnalyzer.analyzePatch(patch.toString("UTF-8"));
+			}
+		}
+		finally {
+			tw.release();
+			rw.release();
+			walker.release();
+
+			if (formatter != null)
+				formatter.release();
+		}
+	}
+
+	private void writeReports(PullRequestWork pullRequest) throws IOException {
+
+		File reportDirectory = new File(reportTargetDirectory, String.valueOf(pullRequest.number));
+
+		ChangeReportWriter reportWriter = new ChangeReportWriter(reportDirectory);
+
+		reportWriter.addCommonProperty("PULL_REQUEST_NUMBER", String.valueOf(pullRequest.number));
+		reportWriter.addCommonProperty("PULL_REQUEST_COMMIT_ID", pullRequest.headCommitId);
+		reportWriter.addCommonProperty("MERGE_BASE", pullRequest.mergeBaseCommitId);
+		reportWriter.addEnvironmentVariables(environmentVariablesToInclude, environment);
+
+		SqlChangeAnalyzer sqlAnalyzer = pullRequest.sqlAnalyzer;
+
+		Set<String> sqlModuleChanges = pullRequest.changes.getTopLevelDirectoriesContaining(".sql");
+
+		if (sqlModuleChanges.size() > 0) {
+
+			Map<String, String> sqlReport = reportWriter.addReport(ChangeReportWriter.SQL_CATEGORY, StringUtils.join(sqlModuleChanges, ","), "sql-changes.dat");
+
+			sqlReport.put("SQL_MODULES", StringUtils.join(sqlModuleChanges, ","));
+			sqlReport.put("SQL_OBJECTS", StringUtils.join(sqlAnalyzer.getChanges(), ","));
+			sqlReport.put("SQL_TABLES", StringUtils.join(sqlAnalyzer.getObjectNames("TABLE"), ","));
+			sqlReport.put("SQL_VIEWS", StringUtils.join(sqlAnalyzer.getObjectNames("VIEW"), ","));
+			sqlReport.put("SQL_SEQUENCES", StringUtils.join(sqlAnalyzer.getObjectNames("SEQUENCE"), ","));
+			sqlReport.put("SQL_FULL_REBUILD", String.valueOf(sqlAnalyzer.hasUnattributedChanges()));
+		}
+
+		for (String module : pullRequest.changes.getTopLevelDirectories()) {
+			reportWriter.addReport(ChangeReportWriter.MODULE_CATEGORY, module, module + "-changes.dat").put("MODULE", module);
+		}
+
+		reportWriter.write();
+
+		/*
+		 * Emit a file per pull request because this is easier to consume in Jenkins.
+		 */
+		ChangeReportWriter.writeAtomically(new File(triggerFilePrefix.getPath() + "." + pullRequest.number), Arrays.asList(
+				String.format ("PULL_REQUEST_NUMBER=%d", pullRequest.number),
+				String.format ("PULL_REQUEST_COMMIT_ID=%s", pullRequest.headCommitId),
+				String.format ("CHANGES_DIRECTORY=%s", reportDirectory.getAbsolutePath())));
+
+		getLog().info("pull-request-" + pullRequest.number + " added to report: " + pullRequest.changes.size() + " changed files in " + StringUtils.join(pullRequest.changes.getTopLevelDirectories(), ", "));
+	}
+
+	/*
+	 * The state of one pull request as it goes through the pipeline, only touched by one stage at a time.
+	 */
+	private static final class PullRequestWork {
+
+		private final int number;
+
+		private final String headCommitId;
+
+		private final ChangeSet changes = new ChangeSet();
+
+		private final SqlChangeAnalyzer sqlAnalyzer = new SqlChangeAnalyzer();
+
+		private volatile boolean fetched = false;
+
+		private volatile String mergeBaseCommitId;
+
+		private PullRequestWork(int number, String headCommitId) {
+			this.number = number;
+			this.headCommitId = headCommitId;
+		}
+	}
+}
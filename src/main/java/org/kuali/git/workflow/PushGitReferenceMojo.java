@@ -3,8 +3,26 @@
  */
 package org.kuali.git.workflow;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.apache.commons.io.output.TeeOutputStream;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Execute;
@@ -13,24 +31,42 @@ import org.apache.maven.plugins.annotations.Parameter;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.PushCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
-import org.eclipse.jgit.api.errors.InvalidRemoteException;
-import org.eclipse.jgit.api.errors.TransportException;
 import org.eclipse.jgit.errors.UnsupportedCredentialItem;
+import org.eclipse.jgit.lib.EmptyProgressMonitor;
+import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.transport.CredentialItem;
 import org.eclipse.jgit.transport.CredentialsProvider;
 import org.eclipse.jgit.transport.PushResult;
 import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.RemoteRefUpdate;
 import org.eclipse.jgit.transport.URIish;
-import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
-import org.kuali.student.git.utils.ExternalGitUtils;
+import org.kuali.git.workflow.model.PushPlan;
+import org.kuali.git.workflow.model.RefPushResult;
+import org.kuali.git.workflow.model.utils.ChangeReportWriter;
+import org.kuali.git.workflow.model.utils.ExternalGitCommand;
+import org.kuali.git.workflow.model.utils.GitProgressParser;
+import org.kuali.git.workflow.model.utils.GitProgressParser.Phase;
+import org.kuali.git.workflow.model.utils.PorcelainPushParser;
+import org.kuali.git.workflow.model.utils.PushPlanner;
 
 /**
  * 
- * Will push the identified git local commit reference (branch or tag) to a
- * specified remote.
+ * Will push the identified git local commit references (branches or tags) to
+ * one or more remotes.
  * 
- * Will use a Credential Store to skip the login requirement.
+ * All of the refspecs for a remote are pushed in a single push so there is one
+ * negotiation and one pack per remote. Different remotes are pushed to
+ * concurrently.
+ * 
+ * JGit does not support atomic pushes so when atomic is requested the push is
+ * run through C git (git push --atomic). If the remote does not support atomic
+ * pushes the refs are pushed through JGit without it.
+ * 
+ * The remote refs are listed before pushing and refspecs the remote already
+ * has are dropped so a retried push only sends what is missing.
+ * 
+ * The credentials are read from the environment and handed to JGit and C git
+ * from memory, they are never written to disk.
  * 
  * @author ocleirig
  */
@@ -38,12 +74,40 @@ import org.kuali.student.git.utils.ExternalGitUtils;
 @Execute(goal = "pushRef", lifecycle = "initialize")
 public class PushGitReferenceMojo extends AbstractGitRepositoryAwareMojo {
 
-	@Parameter(property = "localRef", required = true)
+	private static final String ATOMIC_NOT_SUPPORTED = "does not support --atomic";
+
+	@Parameter(property = "localRef")
 	private String localRef;
 
-	@Parameter(property = "remoteName", required = true)
+	@Parameter(property = "remoteName", defaultValue = "origin")
 	private String remoteName;
 
+	/*
+	 * Additional refspecs to push. Each is either a refspec (pushed to
+	 * remoteName) or remote=refspec (i.e. upstream=refs/tags/x:refs/tags/x).
+	 */
+	@Parameter(property = "refSpecs")
+	private List<String> refSpecs;
+
+	/*
+	 * If true either all of the refs of a remote are updated or none are.
+	 */
+	@Parameter(property = "atomic", defaultValue = "false")
+	private boolean atomic;
+
+	/*
+	 * If true the pack is built before pushing to report its predicted size.
+	 * This builds the pack twice so it is only meant for diagnosing slow pushes.
+	 */
+	@Parameter(property = "git-flow.predictPackSize", defaultValue = "false")
+	private boolean predictPackSize;
+
+	/*
+	 * The per ref results and timings are written here.
+	 */
+	@Parameter(property = "pushReportFile", defaultValue = "${project.build.directory}/push-results.dat")
+	private String pushReportFile;
+
 	/*
 	 * Name of the environment variable containing the userName of the user with
 	 * push rights to remoteName.
@@ -61,6 +125,8 @@ public class PushGitReferenceMojo extends AbstractGitRepositoryAwareMojo {
 	@Parameter(property = "timeoutInSeconds")
 	private int timeoutInSeconds = 30;
 
+	private final Map<String, PushPlan> pushPlans = new ConcurrentHashMap<String, PushPlan>();
+
 	/**
 	 * 
 	 */
@@ -84,6 +150,38 @@ public class PushGitReferenceMojo extends AbstractGitRepositoryAwareMojo {
 		this.remoteName = remoteName;
 	}
 
+	/**
+	 * @param refSpecs
+	 *            the refSpecs to set
+	 */
+	public void setRefSpecs(List<String> refSpecs) {
+		this.refSpecs = refSpecs;
+	}
+
+	/**
+	 * @param atomic
+	 *            the atomic to set
+	 */
+	public void setAtomic(boolean atomic) {
+		this.atomic = atomic;
+	}
+
+	/**
+	 * @param predictPackSize
+	 *            the predictPackSize to set
+	 */
+	public void setPredictPackSize(boolean predictPackSize) {
+		this.predictPackSize = predictPackSize;
+	}
+
+	/**
+	 * @param pushReportFile
+	 *            the pushReportFile to set
+	 */
+	public void setPushReportFile(String pushReportFile) {
+		this.pushReportFile = pushReportFile;
+	}
+
 	/**
 	 * @param userNameEnvVarName
 	 *            the userNameEnvVarName to set
@@ -117,54 +215,385 @@ public class PushGitReferenceMojo extends AbstractGitRepositoryAwareMojo {
 	protected void onExecute() throws MojoExecutionException,
 			MojoFailureException {
 
-		String userName = System.getenv(userNameEnvVarName);
+		final String userName = getenv(userNameEnvVarName);
 
 		if (userName == null)
 			throw new MojoExecutionException("No varaible of name "
 					+ userNameEnvVarName
 					+ " for the userName exists in the environment.");
 
-		String password = System.getenv(passwordEnvVarName);
+		final String password = getenv(passwordEnvVarName);
 
 		if (password == null)
 			throw new MojoExecutionException("No varaible of name "
 					+ passwordEnvVarName
 					+ " for the password exists in the environment.");
 
-		Git git = new Git(repository);
+		Map<String, List<String>> refSpecsByRemote = groupRefSpecsByRemote();
 
-		PushCommand pushCommand = git.push();
+		if (refSpecsByRemote.isEmpty())
+			throw new MojoExecutionException(
+					"Nothing to push, set localRef or refSpecs.");
+
+		ExecutorService executor = Executors
+				.newFixedThreadPool(refSpecsByRemote.size());
 
 		try {
-			Iterable<PushResult> results = pushCommand
-					.setRemote(remoteName)
-					.add(localRef)
-					.setTimeout(timeoutInSeconds)
-					.setCredentialsProvider(
-							new UsernamePasswordCredentialsProvider(userName,
-									password)).call();
-
-			for (PushResult pushResult : results) {
-
-				for (RemoteRefUpdate rru : pushResult.getRemoteUpdates()) {
-
-					getLog().info(
-							"Ref Update: " + rru.getRemoteName() + " to "
-									+ rru.getSrcRef() + " status: "
-									+ rru.getStatus().name());
+
+			// both JGit and C git read the credentials from memory.
+			for (String remote : refSpecsByRemote.keySet()) {
+				addRemoteHostCredentials(remote, userName, password);
+			}
+
+			Map<String, Future<List<RefPushResult>>> futures = new LinkedHashMap<String, Future<List<RefPushResult>>>();
+
+			final Map<String, Long> elapsedMillisByRemote = new ConcurrentHashMap<String, Long>();
+
+			for (Entry<String, List<String>> entry : refSpecsByRemote
+					.entrySet()) {
+
+				final String remote = entry.getKey();
+
+				final List<String> specs = entry.getValue();
+
+				futures.put(remote, executor
+						.submit(new Callable<List<RefPushResult>>() {
+
+							@Override
+							public List<RefPushResult> call() throws Exception {
+
+								long start = System.currentTimeMillis();
+
+								try {
+									return push(remote, specs);
+								} finally {
+									elapsedMillisByRemote.put(remote,
+											System.currentTimeMillis() - start);
+								}
+							}
+						}));
+			}
+
+			List<RefPushResult> results = new ArrayList<RefPushResult>();
+
+			for (Entry<String, Future<List<RefPushResult>>> entry : futures
+					.entrySet()) {
+
+				try {
+					results.addAll(entry.getValue().get());
+				} catch (ExecutionException e) {
+					throw new MojoExecutionException("Failed to push "
+							+ refSpecsByRemote.get(entry.getKey())
+							+ " to remote: " + entry.getKey(), e.getCause());
 				}
 			}
-		} catch (InvalidRemoteException e) {
-			throw new MojoExecutionException("Failed to push " + localRef
-					+ " to remote: " + remoteName, e);
-		} catch (TransportException e) {
-			throw new MojoExecutionException("Failed to push " + localRef
-					+ " to remote: " + remoteName, e);
-		} catch (GitAPIException e) {
-			throw new MojoExecutionException("Failed to push " + localRef
-					+ " to remote: " + remoteName, e);
+
+			int failed = 0;
+
+			for (RefPushResult result : results) {
+
+				getLog().info("Ref Update: " + result);
+
+				if (!result.isSuccessful())
+					failed++;
+			}
+
+			for (Entry<String, Long> entry : elapsedMillisByRemote.entrySet()) {
+				getLog().info(
+						"Pushed to " + entry.getKey() + " in "
+								+ entry.getValue() + " ms");
+			}
+
+			writeReport(results, elapsedMillisByRemote);
+
+			if (failed > 0)
+				throw new MojoFailureException(failed
+						+ " ref(s) could not be pushed, see " + pushReportFile);
+
+		} catch (IOException e) {
+			throw new MojoExecutionException("Failed to push "
+					+ refSpecsByRemote, e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while pushing "
+					+ refSpecsByRemote, e);
+		} finally {
+			executor.shutdownNow();
 		}
 
 	}
 
+	private Map<String, List<String>> groupRefSpecsByRemote() {
+
+		Map<String, List<String>> refSpecsByRemote = new LinkedHashMap<String, List<String>>();
+
+		List<String> entries = new ArrayList<String>();
+
+		if (localRef != null && localRef.trim().length() > 0)
+			entries.add(localRef.trim());
+
+		if (refSpecs != null)
+			entries.addAll(refSpecs);
+
+		for (String entry : entries) {
+
+			String remote = remoteName;
+
+			String spec = entry.trim();
+
+			int equals = spec.indexOf('=');
+
+			if (equals != -1) {
+				remote = spec.substring(0, equals).trim();
+				spec = spec.substring(equals + 1).trim();
+			}
+
+			if (spec.length() == 0)
+				continue;
+
+			List<String> specs = refSpecsByRemote.get(remote);
+
+			if (specs == null) {
+				specs = new ArrayList<String>();
+				refSpecsByRemote.put(remote, specs);
+			}
+
+			specs.add(spec);
+		}
+
+		return refSpecsByRemote;
+	}
+
+	/*
+	 * Push all of the refspecs to the remote in one push.
+	 * 
+	 * The remote refs are listed first so that refspecs that are already up to
+	 * date are not pushed again.
+	 */
+	private List<RefPushResult> push(String remote, List<String> specs)
+			throws IOException, GitAPIException {
+
+		CredentialsProvider credentials = getCredentials();
+
+		Git git = new Git(repository);
+
+		Collection<Ref> advertisedRefs = git.lsRemote().setRemote(remote)
+				.setTimeout(timeoutInSeconds)
+				.setCredentialsProvider(credentials).call();
+
+		PushPlanner planner = new PushPlanner(repository);
+
+		PushPlan plan = planner.plan(remote, specs, advertisedRefs);
+
+		pushPlans.put(remote, plan);
+
+		List<RefPushResult> results = new ArrayList<RefPushResult>(
+				plan.getUpToDateResults());
+
+		if (plan.isUpToDate()) {
+			getLog().info(remote + " is already up to date, nothing to push.");
+			return results;
+		}
+
+		getLog().info(
+				remote + ": " + plan.getUpToDateResults().size()
+						+ " ref(s) already up to date, pushing "
+						+ plan.getRefSpecsToPush());
+
+		if (predictPackSize) {
+
+			planner.predictPackSize(plan);
+
+			getLog().info(
+					remote + ": predicted pack of "
+							+ plan.getPredictedObjects() + " objects, "
+							+ plan.getPredictedBytes() + " bytes");
+		}
+
+		if (atomic) {
+
+			ExternalGitCommand externalGit = createExternalGitCommand();
+
+			List<String> arguments = new ArrayList<String>();
+
+			arguments.add("push");
+			arguments.add("--atomic");
+			arguments.add("--porcelain");
+			arguments.add("--progress");
+			arguments.add(remote);
+			arguments.addAll(plan.getRefSpecsToPush());
+
+			ByteArrayOutputStream errors = new ByteArrayOutputStream();
+
+			GitProgressParser progress = new GitProgressParser(null, 0);
+
+			ExternalGitCommand.Result result = externalGit.run(arguments,
+					new TeeOutputStream(errors, progress));
+
+			progress.close();
+
+			String errorOutput = errors.toString("UTF-8");
+
+			if (!errorOutput.contains(ATOMIC_NOT_SUPPORTED)) {
+
+				List<RefPushResult> pushed = PorcelainPushParser.parse(remote,
+						result.getOutputLines());
+
+				if (pushed.isEmpty() && !result.isSuccess())
+					throw new IOException("git push to " + remote
+							+ " failed: " + errorOutput);
+
+				recordWrittenObjects(plan, progress);
+
+				results.addAll(pushed);
+
+				return results;
+			}
+
+			getLog().warn(
+					remote
+							+ " does not support atomic pushes, pushing all of the refs in one non-atomic push where each ref is updated or rejected on its own.");
+		}
+
+		PushCommand pushCommand = git.push().setRemote(remote)
+				.setTimeout(timeoutInSeconds).setThin(true)
+				.setProgressMonitor(new WritingObjectsMonitor(plan))
+				.setCredentialsProvider(credentials);
+
+		for (String spec : plan.getRefSpecsToPush()) {
+			pushCommand.add(spec);
+		}
+
+		for (PushResult pushResult : pushCommand.call()) {
+
+			for (RemoteRefUpdate rru : pushResult.getRemoteUpdates()) {
+
+				boolean successful = rru.getStatus() == RemoteRefUpdate.Status.OK
+						|| rru.getStatus() == RemoteRefUpdate.Status.UP_TO_DATE;
+
+				results.add(new RefPushResult(remote, rru.getSrcRef(), rru
+						.getRemoteName(), rru.getStatus().name(), successful,
+						rru.getMessage()));
+			}
+		}
+
+		return results;
+	}
+
+	/*
+	 * Writing objects: 100% (3/3), 280 bytes | 280.00 KiB/s, done.
+	 */
+	private void recordWrittenObjects(PushPlan plan, GitProgressParser progress) {
+
+		Phase writing = progress.getPhase("Writing objects");
+
+		if (writing == null || !writing.isDone())
+			return;
+
+		plan.setActualObjects(writing.getCount());
+		plan.setActualBytes(writing.getBytes());
+	}
+
+	/*
+	 * Register the credentials for the host of the remote's url.
+	 */
+	private void addRemoteHostCredentials(String remote, String userName,
+			String password) throws IOException {
+
+		String url = repository.getConfig().getString("remote", remote, "url");
+
+		if (url == null)
+			throw new IOException("No url is configured for remote: " + remote);
+
+		try {
+			URIish uri = new URIish(url);
+
+			if (uri.getScheme() == null || !uri.getScheme().startsWith("http"))
+				return; // ssh remotes use keys.
+
+			getCredentials().addForUrl(url, userName, password);
+
+		} catch (URISyntaxException e) {
+			throw new IOException("Invalid url for remote: " + remote, e);
+		}
+	}
+
+	/*
+	 * The pack sizes are only written where they were measured: the predicted
+	 * ones with predictPackSize, the actual bytes only when C git pushed and
+	 * reported them (JGit's progress only counts the objects).
+	 */
+	private void writeReport(List<RefPushResult> results,
+			Map<String, Long> elapsedMillisByRemote) throws IOException {
+
+		List<String> lines = new ArrayList<String>();
+
+		Set<String> failedRefs = new TreeSet<String>();
+
+		lines.add("REMOTES="
+				+ StringUtils.join(elapsedMillisByRemote.keySet(), ","));
+		lines.add("ATOMIC=" + atomic);
+
+		for (Entry<String, Long> entry : elapsedMillisByRemote.entrySet()) {
+			lines.add(entry.getKey() + ".ELAPSED_MILLIS=" + entry.getValue());
+		}
+
+		for (PushPlan plan : pushPlans.values()) {
+
+			String remote = plan.getRemoteName();
+
+			lines.add(remote + ".SKIPPED_UP_TO_DATE="
+					+ plan.getUpToDateResults().size());
+
+			addMeasured(lines, remote + ".PREDICTED_OBJECTS",
+					plan.getPredictedObjects());
+			addMeasured(lines, remote + ".PREDICTED_BYTES",
+					plan.getPredictedBytes());
+			addMeasured(lines, remote + ".ACTUAL_OBJECTS",
+					plan.getActualObjects());
+			addMeasured(lines, remote + ".ACTUAL_BYTES", plan.getActualBytes());
+		}
+
+		for (RefPushResult result : results) {
+
+			lines.add(result.getRemoteName() + "." + result.getRemoteRef()
+					+ "=" + result.getStatus());
+
+			if (!result.isSuccessful())
+				failedRefs.add(result.getRemoteName() + ":"
+						+ result.getRemoteRef());
+		}
+
+		lines.add("FAILED_REFS=" + StringUtils.join(failedRefs, ","));
+
+		ChangeReportWriter.writeAtomically(resolveFile(pushReportFile), lines);
+	}
+
+	private static void addMeasured(List<String> lines, String key, long value) {
+
+		if (value >= 0)
+			lines.add(key + "=" + value);
+	}
+
+	/*
+	 * JGit reports the objects of the pack it sends under the Writing objects
+	 * task.
+	 */
+	private static final class WritingObjectsMonitor extends
+			EmptyProgressMonitor {
+
+		private final PushPlan plan;
+
+		private WritingObjectsMonitor(PushPlan plan) {
+			this.plan = plan;
+		}
+
+		@Override
+		public void beginTask(String title, int totalWork) {
+
+			if (title.startsWith("Writing objects"))
+				plan.setActualObjects(totalWork);
+		}
+	}
+
 }
@@ -0,0 +1,374 @@
+/**
+ *
+ */
+package org.kuali.git.workflow;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import net.sf.json.JSONObject;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Execute;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.kuali.git.workflow.model.CommentCommand;
+import org.kuali.git.workflow.model.utils.ChangeReportWriter;
+import org.kuali.git.workflow.model.utils.CommentCommandParser;
+import org.kuali.git.workflow.model.utils.WebhookServer;
+import org.kuali.git.workflow.model.utils.WebhookServer.Listener;
+
+/**
+ * @author ocleirig
+ *
+ * Listens for github webhook deliveries instead of polling with listOpenPullRequests and githubComments.
+ *
+ * Runs until the jvm is stopped.  The webhook should be configured to send pull_request, issue_comment and push events
+ * as application/json with the secret from the git-flow.webhookSecretVariable environment variable.
+ *
+ * When a pull request against the branch is opened, reopened or has new commits pushed the same open-pull-requests.&lt;n&gt;
+ * file as listOpenPullRequests is written.  The commands in new pull request comments are written out in the same
+ * comment-command files as githubComments.  The payloads carry everything needed so no api calls are made.
+ *
+ */
+@Mojo (name="receiveWebhooks")
+@Execute (goal="receiveWebhooks", lifecycle="initialize")
+public class ReceiveWebhooksMojo extends AbstractGithubAuthorizedMojo {
+
+	private static final List<String> TRIGGER_ACTIONS = Arrays.asList("opened", "reopened", "synchronize");
+
+	@Parameter(required=true, property="git-flow.sourceGithubUser")
+	private String sourceGithubUser;
+
+	@Parameter(required=true, property="git-flow.sourceGithubRepo")
+	private String sourceGithubRepo;
+
+	@Parameter(required=true, property="git-flow.sourceGithubBranch")
+	private String sourceGithubBranch;
+
+	@Parameter (required=true, property="git-flow.reportFileNamePrefix", defaultValue="open-pull-requests")
+	private String reportFileNamePrefix;
+
+	@Parameter (property="git-flow.webhookPort", defaultValue="8090")
+	private int webhookPort;
+
+	/**
+	 * The path of the payload url configured on the github webhook.
+	 */
+	@Parameter (property="git-flow.webhookPath", defaultValue="/github-webhook")
+	private String webhookPath;
+
+	/**
+	 * The name of the environment variable holding the webhook secret, the secret itself is kept off the command line.
+	 */
+	@Parameter (property="git-flow.webhookSecretVariable", defaultValue="GITHUB_WEBHOOK_SECRET")
+	private String webhookSecretVariable;
+
+	/**
+	 * How many delivery ids are remembered to ignore repeated deliveries.
+	 */
+	@Parameter (property="git-flow.webhookRecentDeliveries", defaultValue="1000")
+	private int webhookRecentDeliveries;
+
+	/**
+	 * Where the recent delivery ids are saved so a delivery repeated after a restart is ignored too.
+	 */
+	@Parameter (property="git-flow.webhookDeliveriesFile", defaultValue="webhook-deliveries.dat")
+	private String webhookDeliveriesFile;
+
+	/**
+	 * The word that starts a command line in a comment (i.e. ci retest).
+	 */
+	@Parameter(property="git-flow.commentCommandPrefix", defaultValue="ci")
+	private String commentCommandPrefix;
+
+	/**
+	 * The commands that are recognized.
+	 */
+	@Parameter(property="git-flow.commentCommands", defaultValue="retest,skip-sql,build")
+	private List<String> commentCommands;
+
+	/**
+	 * If set only the commands of these github logins are acted on.
+	 */
+	@Parameter(property="git-flow.commentCommandUsers")
+	private List<String> commentCommandUsers;
+
+	/**
+	 * A file named $prefix.$pullRequestNumber.$commentId.$command is written for each command found.
+	 */
+	@Parameter(property="git-flow.commentCommandFilePrefix", defaultValue="comment-command")
+	private String commentCommandFilePrefix;
+
+	private WorkflowSession session;
+
+	/**
+	 *
+	 */
+	public ReceiveWebhooksMojo() {
+	}
+
+	/**
+	 * @param sourceGithubUser the sourceGithubUser to set
+	 */
+	public void setSourceGithubUser(String sourceGithubUser) {
+		this.sourceGithubUser = sourceGithubUser;
+	}
+
+	/**
+	 * @param sourceGithubRepo the sourceGithubRepo to set
+	 */
+	public void setSourceGithubRepo(String sourceGithubRepo) {
+		this.sourceGithubRepo = sourceGithubRepo;
+	}
+
+	/**
+	 * @param sourceGithubBranch the sourceGithubBranch to set
+	 */
+	public void setSourceGithubBranch(String sourceGithubBranch) {
+		this.sourceGithubBranch = sourceGithubBranch;
+	}
+
+	/**
+	 * @param reportFileNamePrefix the reportFileNamePrefix to set
+	 */
+	public void setReportFileNamePrefix(String reportFileNamePrefix) {
+		this.reportFileNamePrefix = reportFileNamePrefix;
+	}
+
+	/**
+	 * @param webhookPort the webhookPort to set
+	 */
+	public void setWebhookPort(int webhookPort) {
+		this.webhookPort = webhookPort;
+	}
+
+	/**
+	 * @param webhookPath the webhookPath to set
+	 */
+	public void setWebhookPath(String webhookPath) {
+		this.webhookPath = webhookPath;
+	}
+
+	/**
+	 * @param webhookSecretVariable the webhookSecretVariable to set
+	 */
+	public void setWebhookSecretVariable(String webhookSecretVariable) {
+		this.webhookSecretVariable = webhookSecretVariable;
+	}
+
+	/**
+	 * @param webhookRecentDeliveries the webhookRecentDeliveries to set
+	 */
+	public void setWebhookRecentDeliveries(int webhookRecentDeliveries) {
+		this.webhookRecentDeliveries = webhookRecentDeliveries;
+	}
+
+	/**
+	 * @param webhookDeliveriesFile the webhookDeliveriesFile to set
+	 */
+	public void setWebhookDeliveriesFile(String webhookDeliveriesFile) {
+		this.webhookDeliveriesFile = webhookDeliveriesFile;
+	}
+
+	/**
+	 * @param commentCommandPrefix the commentCommandPrefix to set
+	 */
+	public void setCommentCommandPrefix(String commentCommandPrefix) {
+		this.commentCommandPrefix = commentCommandPrefix;
+	}
+
+	/**
+	 * @param commentCommands the commentCommands to set
+	 */
+	public void setCommentCommands(List<String> commentCommands) {
+		this.commentCommands = commentCommands;
+	}
+
+	/**
+	 * @param commentCommandUsers the commentCommandUsers to set
+	 */
+	public void setCommentCommandUsers(List<String> commentCommandUsers) {
+		this.commentCommandUsers = commentCommandUsers;
+	}
+
+	/**
+	 * @param commentCommandFilePrefix the commentCommandFilePrefix to set
+	 */
+	public void setCommentCommandFilePrefix(String commentCommandFilePrefix) {
+		this.commentCommandFilePrefix = commentCommandFilePrefix;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.maven.plugin.Mojo#execute()
+	 */
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+
+		// the deliveries are handled on the server's threads which don't see the goal's WorkflowSession.
+		session = WorkflowSession.current();
+
+		String secret = getenv(webhookSecretVariable);
+
+		if (StringUtils.isEmpty(secret))
+			throw new MojoExecutionException("No webhook secret in the environment variable " + webhookSecretVariable);
+
+		final CommentCommandParser parser = new CommentCommandParser(commentCommandPrefix, commentCommands);
+
+		final WebhookServer server = new WebhookServer(secret, webhookRecentDeliveries, new Listener() {
+
+			@Override
+			public void onEvent(String event, String deliveryId, JSONObject payload) throws IOException {
+				handleEvent(event, deliveryId, payload, parser);
+			}
+
+			@Override
+			public void onRejected(String event, String deliveryId, int status, String reason) {
+				getLog().warn("delivery " + deliveryId + " of " + event + " not handled (" + status + "): " + reason);
+			}
+		});
+
+		final CountDownLatch stopped = new CountDownLatch(1);
+
+		try {
+			server.setDeliveriesFile(session.resolve(webhookDeliveriesFile));
+		} catch (IOException e) {
+			throw new MojoExecutionException("Failed to read the saved deliveries in " + webhookDeliveriesFile, e);
+		}
+
+		try {
+			server.start(new InetSocketAddress(webhookPort), webhookPath);
+		} catch (IOException e) {
+			throw new MojoExecutionException("Failed to listen on port " + webhookPort, e);
+		}
+
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				server.stop(5);
+				stopped.countDown();
+			}
+		}, "webhook-shutdown"));
+
+		getLog().info("Listening for webhook deliveries on port " + server.getPort() + " at " + webhookPath);
+
+		try {
+			stopped.await();
+		} catch (InterruptedException e) {
+			server.stop(0);
+			Thread.currentThread().interrupt();
+		}
+
+		getLog().info(String.format("Stopped after handling %d deliveries (%d repeated, %d rejected).", server.getHandled(), server.getDuplicates(), server.getRejected()));
+	}
+
+	private void handleEvent(String event, String deliveryId, JSONObject payload, CommentCommandParser parser) throws IOException {
+
+		JSONObject repository = payload.optJSONObject("repository");
+
+		String fullName = repository == null ? null : repository.optString("full_name");
+
+		if ("ping".equals(event)) {
+			getLog().info("ping from " + fullName + ": " + payload.optString("zen"));
+			return;
+		}
+
+		if (!(sourceGithubUser + "/" + sourceGithubRepo).equalsIgnoreCase(fullName)) {
+			getLog().info("ignoring " + event + " from " + fullName);
+			return;
+		}
+
+		if ("pull_request".equals(event))
+			onPullRequest(payload);
+		else if ("issue_comment".equals(event))
+			onIssueComment(payload, parser);
+		else if ("push".equals(event))
+			onPush(payload);
+		else
+			getLog().debug("ignoring " + event + " delivery " + deliveryId);
+	}
+
+	private void onPullRequest(JSONObject payload) throws IOException {
+
+		String action = payload.optString("action");
+
+		JSONObject pullRequest = payload.getJSONObject("pull_request");
+
+		int pullRequestNumber = pullRequest.getInt("number");
+
+		File triggerFile = session.resolve(reportFileNamePrefix + "." + pullRequestNumber);
+
+		if ("closed".equals(action)) {
+
+			// a pull request closed before its build started doesn't need one.
+			if (triggerFile.delete())
+				getLog().info("pull-request-" + pullRequestNumber + " closed, removed " + triggerFile.getName());
+
+			return;
+		}
+
+		if (!TRIGGER_ACTIONS.contains(action))
+			return;
+
+		String baseRef = pullRequest.getJSONObject("base").getString("ref");
+
+		if (!sourceGithubBranch.equals(baseRef)) {
+			getLog().info("Skipping pull request: " + pullRequestNumber + " because it does not apply to branch: " + sourceGithubBranch);
+			return;
+		}
+
+		String commitId = pullRequest.getJSONObject("head").getString("sha");
+
+		ChangeReportWriter.writeAtomically(triggerFile, Arrays.asList(String.format ("PULL_REQUEST_NUMBER=%d", pullRequestNumber), String.format ("PULL_REQUEST_COMMIT_ID=%s", commitId)));
+
+		getLog().info("pull-request-" + pullRequestNumber + " " + action + ", added to report at " + commitId);
+	}
+
+	private void onIssueComment(JSONObject payload, CommentCommandParser parser) throws IOException {
+
+		JSONObject issue = payload.getJSONObject("issue");
+
+		// comments on issues are delivered as well.
+		if (!"created".equals(payload.optString("action")) || !issue.has("pull_request"))
+			return;
+
+		int pullRequestNumber = issue.getInt("number");
+
+		JSONObject comment = payload.getJSONObject("comment");
+
+		String login = comment.getJSONObject("user").getString("login");
+
+		if (commentCommandUsers != null && commentCommandUsers.size() > 0 && !commentCommandUsers.contains(login)) {
+			getLog().debug("ignoring commands from " + login);
+			return;
+		}
+
+		for (CommentCommand command : parser.parse(comment.getLong("id"), login, comment.getString("body"))) {
+
+			getLog().info("pull-request-" + pullRequestNumber + " command: " + command + " from " + command.getUser());
+
+			ChangeReportWriter.writeAtomically(session.resolve(commentCommandFilePrefix + "." + pullRequestNumber + "." + command.getCommentId() + "." + command.getCommand()), Arrays.asList(
+					String.format ("PULL_REQUEST_NUMBER=%d", pullRequestNumber),
+					String.format ("COMMENT_ID=%d", command.getCommentId()),
+					"COMMENT_USER=" + command.getUser(),
+					"COMMAND=" + command.getCommand(),
+					"COMMAND_ARGUMENTS=" + StringUtils.join(command.getArguments(), ",")));
+		}
+	}
+
+	/*
+	 * The pull request heads don't change when the branch moves so this is only logged.
+	 */
+	private void onPush(JSONObject payload) {
+
+		if (("refs/heads/" + sourceGithubBranch).equals(payload.optString("ref")))
+			getLog().info(sourceGithubBranch + " moved from " + payload.optString("before") + " to " + payload.optString("after"));
+	}
+}
@@ -0,0 +1,317 @@
+/**
+ *
+ */
+package org.kuali.git.workflow;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Execute;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.kohsuke.github.GHCommitState;
+import org.kuali.git.workflow.model.utils.BuildResultCache;
+import org.kuali.git.workflow.model.utils.CommitStatusPublisher;
+import org.kuali.git.workflow.model.utils.ModuleBuildHistory;
+
+/**
+ * @author ocleirig
+ *
+ * Records how long the modules took to build in the module build history that identifyChangesInApi uses to plan its shards.
+ *
+ * Run at the end of each downstream module or shard job with the duration of every module it built:
+ *
+ * -Dgit-flow.moduleBuildDurations=ks-core=120,ks-web=310
+ *
+ * When the build passed the MODULE_CONTENT_KEY of each module built (from its report file) can be recorded too, so the
+ * same module content is skipped by identifyChangesInApi and identifyChangesInGit with git-flow.skipPassedModules:
+ *
+ * -Dgit-flow.moduleContentKeys=ks-core=$key,ks-web=$key
+ *
+ */
+@Mojo (name="recordModuleBuild")
+@Execute (goal="recordModuleBuild", lifecycle="initialize")
+public class RecordModuleBuildMojo extends AbstractGithubAuthorizedMojo {
+
+	private static final String BUILD_RESULT_CONTEXT_PREFIX = "build-result/";
+
+	/**
+	 * The modules built and their build duration in seconds as module=seconds.
+	 */
+	@Parameter (property="git-flow.moduleBuildDurations")
+	private List<String> moduleBuildDurations;
+
+	/**
+	 * Where the module build history is kept.
+	 */
+	@Parameter (property="git-flow.moduleBuildHistoryFile", defaultValue="module-build-history.dat")
+	private String moduleBuildHistoryFile;
+
+	/**
+	 * The number of recent builds kept for each module.
+	 */
+	@Parameter (property="git-flow.moduleBuildSamples", defaultValue="10")
+	private int moduleBuildSamples;
+
+	/**
+	 * The content keys of the modules that passed as module=key.
+	 */
+	@Parameter (property="git-flow.moduleContentKeys")
+	private List<String> moduleContentKeys;
+
+	/**
+	 * Where the content keys of the passed module builds are kept.
+	 */
+	@Parameter (property="git-flow.buildResultCacheFile", defaultValue="build-result-cache.dat")
+	private String buildResultCacheFile;
+
+	/**
+	 * The commit that was built.
+	 */
+	@Parameter (property="git-flow.targetCommitId")
+	private String targetCommitId;
+
+	/**
+	 * Also register a build-result/$module commit status with the content key on the commit that was built.
+	 */
+	@Parameter (property="git-flow.publishBuildResults", defaultValue="false")
+	private boolean publishBuildResults;
+
+	@Parameter (property="git-flow.sourceGithubUser")
+	private String sourceGithubUser;
+
+	@Parameter (property="git-flow.sourceGithubRepo")
+	private String sourceGithubRepo;
+
+	/**
+	 *
+	 */
+	public RecordModuleBuildMojo() {
+	}
+
+	/**
+	 * @param moduleBuildDurations the moduleBuildDurations to set
+	 */
+	public void setModuleBuildDurations(List<String> moduleBuildDurations) {
+		this.moduleBuildDurations = moduleBuildDurations;
+	}
+
+	/**
+	 * @param moduleBuildHistoryFile the moduleBuildHistoryFile to set
+	 */
+	public void setModuleBuildHistoryFile(String moduleBuildHistoryFile) {
+		this.moduleBuildHistoryFile = moduleBuildHistoryFile;
+	}
+
+	/**
+	 * @param moduleBuildSamples the moduleBuildSamples to set
+	 */
+	public void setModuleBuildSamples(int moduleBuildSamples) {
+		this.moduleBuildSamples = moduleBuildSamples;
+	}
+
+	/**
+	 * @param moduleContentKeys the moduleContentKeys to set
+	 */
+	public void setModuleContentKeys(List<String> moduleContentKeys) {
+		this.moduleContentKeys = moduleContentKeys;
+	}
+
+	/**
+	 * @param buildResultCacheFile the buildResultCacheFile to set
+	 */
+	public void setBuildResultCacheFile(String buildResultCacheFile) {
+		this.buildResultCacheFile = buildResultCacheFile;
+	}
+
+	/**
+	 * @param targetCommitId the targetCommitId to set
+	 */
+	public void setTargetCommitId(String targetCommitId) {
+		this.targetCommitId = targetCommitId;
+	}
+
+	/**
+	 * @param publishBuildResults the publishBuildResults to set
+	 */
+	public void setPublishBuildResults(boolean publishBuildResults) {
+		this.publishBuildResults = publishBuildResults;
+	}
+
+	/**
+	 * @param sourceGithubUser the sourceGithubUser to set
+	 */
+	public void setSourceGithubUser(String sourceGithubUser) {
+		this.sourceGithubUser = sourceGithubUser;
+	}
+
+	/**
+	 * @param sourceGithubRepo the sourceGithubRepo to set
+	 */
+	public void setSourceGithubRepo(String sourceGithubRepo) {
+		this.sourceGithubRepo = sourceGithubRepo;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.maven.plugin.Mojo#execute()
+	 */
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+
+		if (executeInDaemon())
+			return;
+
+		final Map<String, String> durations = parseModuleValues(moduleBuildDurations, "seconds");
+
+		final Map<String, String> contentKeys = parseModuleValues(moduleContentKeys, "key");
+
+		if (durations.isEmpty() && contentKeys.isEmpty())
+			throw new MojoFailureException("Nothing to record, set git-flow.moduleBuildDurations and/or git-flow.moduleContentKeys");
+
+		if (!durations.isEmpty()) {
+
+			final File historyFile = resolveFile(moduleBuildHistoryFile);
+
+			update(historyFile, new Update() {
+
+				@Override
+				public void apply() throws IOException, MojoFailureException {
+
+					ModuleBuildHistory history = ModuleBuildHistory.load(historyFile, moduleBuildSamples);
+
+					for (Entry<String, String> duration : durations.entrySet()) {
+
+						String module = duration.getKey();
+
+						long seconds;
+
+						try {
+							seconds = Long.parseLong(duration.getValue());
+						} catch (NumberFormatException e) {
+							throw new MojoFailureException("The build duration of " + module + " is not a number of seconds: " + duration.getValue());
+						}
+
+						if (seconds < 0)
+							throw new MojoFailureException("The build duration of " + module + " is negative: " + seconds);
+
+						history.record(module, seconds);
+
+						getLog().info(String.format("%s built in %d seconds, now estimated at %d seconds.", module, seconds, history.estimate(module, seconds)));
+					}
+
+					history.save(historyFile);
+				}
+			});
+		}
+
+		if (!contentKeys.isEmpty()) {
+
+			final File cacheFile = resolveFile(buildResultCacheFile);
+
+			update(cacheFile, new Update() {
+
+				@Override
+				public void apply() throws IOException, MojoFailureException {
+
+					BuildResultCache cache = BuildResultCache.load(cacheFile, BuildResultCache.DEFAULT_MAXIMUM_ENTRIES);
+
+					for (Entry<String, String> contentKey : contentKeys.entrySet()) {
+
+						cache.recordPassed(contentKey.getValue(), contentKey.getKey(), targetCommitId == null ? "unknown" : targetCommitId);
+
+						getLog().info("Recorded that " + contentKey.getKey() + " passed with content " + contentKey.getValue());
+					}
+
+					cache.save(cacheFile);
+				}
+			});
+
+			if (publishBuildResults)
+				publishBuildResults(contentKeys);
+		}
+	}
+
+	/*
+	 * Mirror the passed content keys as commit statuses so they can be seen on the pull request.
+	 */
+	private void publishBuildResults(Map<String, String> contentKeys) throws MojoExecutionException, MojoFailureException {
+
+		if (sourceGithubUser == null || sourceGithubRepo == null || targetCommitId == null)
+			throw new MojoFailureException("git-flow.publishBuildResults needs git-flow.sourceGithubUser, git-flow.sourceGithubRepo and git-flow.targetCommitId");
+
+		try {
+			CommitStatusPublisher publisher = new CommitStatusPublisher(authorizeFromCredentials().getRepository(sourceGithubUser + "/" + sourceGithubRepo), getLog());
+
+			for (Entry<String, String> contentKey : contentKeys.entrySet()) {
+				publisher.queue(targetCommitId, GHCommitState.SUCCESS, null, "content " + contentKey.getValue() + " passed", BUILD_RESULT_CONTEXT_PREFIX + contentKey.getKey());
+			}
+
+			getLog().info("Published " + publisher.flush() + " build result statuses on " + targetCommitId);
+
+		} catch (IOException e) {
+			throw new MojoExecutionException("Failed to publish the build results on " + targetCommitId, e);
+		}
+	}
+
+	private static Map<String, String> parseModuleValues(List<String> entries, String valueName) throws MojoFailureException {
+
+		Map<String, String> values = new LinkedHashMap<String, String>();
+
+		if (entries == null)
+			return values;
+
+		for (String entry : entries) {
+
+			int separator = entry.indexOf('=');
+
+			if (separator == -1)
+				throw new MojoFailureException("Expected module=" + valueName + " but found: " + entry);
+
+			values.put(entry.substring(0, separator).trim(), entry.substring(separator + 1).trim());
+		}
+
+		return values;
+	}
+
+	/*
+	 * The jobs on the same node share the history and cache files, so they take turns updating them.
+	 */
+	private static void update(File file, Update update) throws MojoExecutionException, MojoFailureException {
+
+		file.getAbsoluteFile().getParentFile().mkdirs();
+
+		try {
+			RandomAccessFile lockFile = new RandomAccessFile(new File(file.getAbsolutePath() + ".lock"), "rw");
+
+			try {
+				FileLock lock = lockFile.getChannel().lock();
+
+				try {
+					update.apply();
+				}
+				finally {
+					lock.release();
+				}
+			}
+			finally {
+				lockFile.close();
+			}
+
+		} catch (IOException e) {
+			throw new MojoExecutionException("Failed to update " + file, e);
+		}
+	}
+
+	private interface Update {
+
+		void apply() throws IOException, MojoFailureException;
+	}
+}
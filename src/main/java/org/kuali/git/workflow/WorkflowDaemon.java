@@ -0,0 +1,400 @@
+/**
+ *
+ */
+package org.kuali.git.workflow;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.EnumSet;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * @author ocleirig
+ *
+ * Runs the goals of this plugin for clients in a jvm that stays up, so the clients don't pay for starting a jvm, opening
+ * the repositories and connecting to github and the code is already compiled by the JIT.
+ *
+ * The daemon only listens on the loopback address.  The port and a random token are written to ~/.git-workflow-daemon,
+ * readable only by its owner, and a client must send the token before its request.  Up to goalThreads goals run at once,
+ * each on its own thread with the client's {@link WorkflowSession}; goals sharing a repository wait for each other (see
+ * {@link WorkflowSession#openRepository(File, boolean, boolean)}).
+ *
+ * The output of the goal is sent back to the client line by line (log &lt;level&gt; &lt;message&gt;) followed by
+ * result ok, result failure &lt;message&gt; or result error &lt;message&gt;.
+ *
+ */
+public class WorkflowDaemon {
+
+	/**
+	 * The file in the user's home directory that holds the port and token of the running daemon.
+	 */
+	public static final String STATE_FILE_NAME = ".git-workflow-daemon";
+
+	static final String PORT = "port";
+
+	static final String TOKEN = "token";
+
+	private static final String UTF_8 = "UTF-8";
+
+	private final int port;
+
+	private final Log log;
+
+	private final String token;
+
+	private final ExecutorService goalExecutor;
+
+	private ServerSocket serverSocket;
+
+	private final AtomicInteger goalsRun = new AtomicInteger();
+
+	private final AtomicInteger goalsFailed = new AtomicInteger();
+
+	/**
+	 * @param port the port to listen on, 0 for any free port.
+	 * @param goalThreads the most goals run at once.
+	 * @param log where the daemon's own messages go.
+	 */
+	public WorkflowDaemon(int port, int goalThreads, Log log) {
+		this.port = port;
+		this.log = log;
+		this.goalExecutor = Executors.newFixedThreadPool(Math.max(1, goalThreads));
+
+		byte[] random = new byte[16];
+
+		new SecureRandom().nextBytes(random);
+
+		this.token = Hex.encodeHexString(random);
+	}
+
+	/**
+	 * @return the file clients find the daemon through.
+	 */
+	public static File getStateFile() {
+		return new File(System.getProperty("user.home"), STATE_FILE_NAME);
+	}
+
+	/**
+	 * Listen on the port and publish it with the token in the state file.
+	 *
+	 * @throws IOException
+	 */
+	public void start() throws IOException {
+
+		serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+
+		File stateFile = getStateFile();
+
+		Files.deleteIfExists(stateFile.toPath());
+
+		try {
+			// created readable by the owner only so the token is never visible to others.
+			Files.createFile(stateFile.toPath(), PosixFilePermissions.asFileAttribute(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE)));
+		} catch (UnsupportedOperationException e) {
+			log.warn("Can't restrict the permissions of " + stateFile + " on this file system.");
+			Files.createFile(stateFile.toPath());
+		}
+
+		Properties state = new Properties();
+
+		state.setProperty(PORT, String.valueOf(serverSocket.getLocalPort()));
+		state.setProperty(TOKEN, token);
+
+		OutputStreamWriter writer = new OutputStreamWriter(Files.newOutputStream(stateFile.toPath()), UTF_8);
+
+		try {
+			state.store(writer, "git workflow daemon");
+		}
+		finally {
+			writer.close();
+		}
+
+		log.info("Workflow daemon listening on " + serverSocket.getLocalSocketAddress());
+	}
+
+	/**
+	 * Run the goals of the clients until {@link #stop()} is called.
+	 */
+	public void serve() {
+
+		while (!serverSocket.isClosed()) {
+
+			final Socket socket;
+
+			try {
+				socket = serverSocket.accept();
+			} catch (SocketException e) {
+				// closed by stop.
+				break;
+			} catch (IOException e) {
+				log.warn("Failed to accept a client: " + e.getMessage());
+				continue;
+			}
+
+			goalExecutor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+
+					try {
+						serveClient(socket);
+					} catch (IOException e) {
+						log.warn("Lost a client: " + e.getMessage());
+					}
+					finally {
+						try {
+							socket.close();
+						} catch (IOException e) {
+							// already gone.
+						}
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Stop listening, close the repositories kept open and remove the state file.
+	 */
+	public void stop() {
+
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			// stopping anyway.
+		}
+
+		// the goals still running are left to finish on their own.
+		goalExecutor.shutdown();
+
+		getStateFile().delete();
+
+		WorkflowSession.closeResources();
+	}
+
+	/**
+	 * @return the port listened on.
+	 */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * @return the number of goals run for clients.
+	 */
+	public int getGoalsRun() {
+		return goalsRun.get();
+	}
+
+	/**
+	 * @return the number of goals that failed.
+	 */
+	public int getGoalsFailed() {
+		return goalsFailed.get();
+	}
+
+	private void serveClient(Socket socket) throws IOException {
+
+		BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8));
+
+		PrintWriter output = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8));
+
+		String tokenLine = input.readLine();
+
+		// compare in constant time so the time taken does not reveal the token.
+		if (tokenLine == null || !MessageDigest.isEqual(("token " + token).getBytes(UTF_8), tokenLine.getBytes(UTF_8))) {
+			log.warn("Rejected a client without the daemon token.");
+			writeResult(output, "error", "invalid token");
+			return;
+		}
+
+		GoalRequest request = GoalRequest.read(input);
+
+		goalsRun.incrementAndGet();
+
+		long start = System.currentTimeMillis();
+
+		log.info("Running " + request.getMojoClassName() + " for " + request.getWorkingDirectory());
+
+		try {
+			GoalRunner.run(request, new ClientLog(output, request.isDebug()), true);
+
+			writeResult(output, "ok", "");
+
+		} catch (MojoFailureException e) {
+			goalsFailed.incrementAndGet();
+			writeResult(output, "failure", String.valueOf(e.getMessage()));
+		} catch (MojoExecutionException e) {
+			goalsFailed.incrementAndGet();
+			writeResult(output, "error", describe(e));
+		} catch (RuntimeException e) {
+			goalsFailed.incrementAndGet();
+			writeResult(output, "error", describe(e));
+		}
+
+		log.info("Finished " + request.getMojoClassName() + " in " + (System.currentTimeMillis() - start) + " ms");
+	}
+
+	private static String describe(Throwable e) {
+
+		StringWriter trace = new StringWriter();
+
+		e.printStackTrace(new PrintWriter(trace));
+
+		return e.getMessage() + "\n" + trace;
+	}
+
+	private static void writeResult(PrintWriter output, String result, String message) throws UnsupportedEncodingException {
+
+		output.println("result " + result + " " + URLEncoder.encode(message, UTF_8));
+		output.flush();
+	}
+
+	/*
+	 * Sends the goal's output to the client.  Pipelined goals log from several threads.
+	 */
+	private static final class ClientLog implements Log {
+
+		private final PrintWriter output;
+
+		private final boolean debug;
+
+		private ClientLog(PrintWriter output, boolean debug) {
+			this.output = output;
+			this.debug = debug;
+		}
+
+		private synchronized void send(String level, CharSequence content, Throwable error) {
+
+			StringBuilder message = new StringBuilder();
+
+			if (content != null)
+				message.append(content);
+
+			if (error != null) {
+
+				StringWriter trace = new StringWriter();
+
+				error.printStackTrace(new PrintWriter(trace));
+
+				if (message.length() > 0)
+					message.append('\n');
+
+				message.append(trace);
+			}
+
+			try {
+				output.println("log " + level + " " + URLEncoder.encode(message.toString(), UTF_8));
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			}
+
+			output.flush();
+		}
+
+		@Override
+		public boolean isDebugEnabled() {
+			return debug;
+		}
+
+		@Override
+		public void debug(CharSequence content) {
+			debug(content, null);
+		}
+
+		@Override
+		public void debug(CharSequence content, Throwable error) {
+			if (debug)
+				send("debug", content, error);
+		}
+
+		@Override
+		public void debug(Throwable error) {
+			debug(null, error);
+		}
+
+		@Override
+		public boolean isInfoEnabled() {
+			return true;
+		}
+
+		@Override
+		public void info(CharSequence content) {
+			send("info", content, null);
+		}
+
+		@Override
+		public void info(CharSequence content, Throwable error) {
+			send("info", content, error);
+		}
+
+		@Override
+		public void info(Throwable error) {
+			send("info", null, error);
+		}
+
+		@Override
+		public boolean isWarnEnabled() {
+			return true;
+		}
+
+		@Override
+		public void warn(CharSequence content) {
+			send("warn", content, null);
+		}
+
+		@Override
+		public void warn(CharSequence content, Throwable error) {
+			send("warn", content, error);
+		}
+
+		@Override
+		public void warn(Throwable error) {
+			send("warn", null, error);
+		}
+
+		@Override
+		public boolean isErrorEnabled() {
+			return true;
+		}
+
+		@Override
+		public void error(CharSequence content) {
+			send("error", content, null);
+		}
+
+		@Override
+		public void error(CharSequence content, Throwable error) {
+			send("error", content, error);
+		}
+
+		@Override
+		public void error(Throwable error) {
+			send("error", null, error);
+		}
+	}
+}
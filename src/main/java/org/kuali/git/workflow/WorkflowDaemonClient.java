@@ -0,0 +1,138 @@
+/**
+ *
+ */
+package org.kuali.git.workflow;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * @author ocleirig
+ *
+ * Sends a goal to the {@link WorkflowDaemon} running for this user and relays its output.
+ *
+ */
+public final class WorkflowDaemonClient {
+
+	private static final String UTF_8 = "UTF-8";
+
+	private final Socket socket;
+
+	private final String token;
+
+	private WorkflowDaemonClient(Socket socket, String token) {
+		this.socket = socket;
+		this.token = token;
+	}
+
+	/**
+	 * @return a client connected to the daemon or null if no daemon is running.
+	 * @throws IOException if the daemon's state file can't be read.
+	 */
+	public static WorkflowDaemonClient connect() throws IOException {
+
+		File stateFile = WorkflowDaemon.getStateFile();
+
+		if (!stateFile.exists())
+			return null;
+
+		Properties state = new Properties();
+
+		InputStream input = Files.newInputStream(stateFile.toPath());
+
+		try {
+			state.load(new InputStreamReader(input, UTF_8));
+		}
+		finally {
+			IOUtils.closeQuietly(input);
+		}
+
+		String port = state.getProperty(WorkflowDaemon.PORT);
+
+		if (port == null)
+			return null;
+
+		try {
+			return new WorkflowDaemonClient(new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(port)), state.getProperty(WorkflowDaemon.TOKEN));
+		} catch (ConnectException e) {
+			// the daemon stopped without removing its state file.
+			return null;
+		}
+	}
+
+	/**
+	 * Run the goal in the daemon, writing its output to the log given.
+	 *
+	 * @throws MojoExecutionException if the goal failed with an error or the daemon could not be talked to.
+	 * @throws MojoFailureException if the goal failed.
+	 */
+	public void execute(GoalRequest request, Log log) throws MojoExecutionException, MojoFailureException {
+
+		try {
+			PrintWriter output = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8));
+
+			output.println("token " + token);
+
+			request.write(output);
+
+			BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8));
+
+			String line;
+
+			while ((line = input.readLine()) != null) {
+
+				String[] parts = line.split(" ", 3);
+
+				String message = parts.length > 2 ? URLDecoder.decode(parts[2], UTF_8) : "";
+
+				if ("log".equals(parts[0]))
+					relay(log, parts[1], message);
+				else if ("result".equals(parts[0])) {
+
+					if ("ok".equals(parts[1]))
+						return;
+					else if ("failure".equals(parts[1]))
+						throw new MojoFailureException(message);
+					else
+						throw new MojoExecutionException("The workflow daemon failed to run the goal: " + message);
+				}
+			}
+
+			throw new MojoExecutionException("The workflow daemon closed the connection before the goal finished.");
+
+		} catch (IOException e) {
+			throw new MojoExecutionException("Lost the connection to the workflow daemon: ", e);
+		}
+		finally {
+			IOUtils.closeQuietly(socket);
+		}
+	}
+
+	private static void relay(Log log, String level, String message) {
+
+		if ("debug".equals(level))
+			log.debug(message);
+		else if ("warn".equals(level))
+			log.warn(message);
+		else if ("error".equals(level))
+			log.error(message);
+		else
+			log.info(message);
+	}
+}
@@ -0,0 +1,89 @@
+/**
+ *
+ */
+package org.kuali.git.workflow;
+
+import java.io.IOException;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Execute;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * @author ocleirig
+ *
+ * Starts the {@link WorkflowDaemon} and runs until the jvm is stopped.
+ *
+ * The other goals run with -Dgit-flow.useDaemon=true send themselves to the daemon instead of running in their own maven
+ * jvm, reusing its open repositories, github client and compiled code.  When no daemon is running they run as usual.
+ *
+ * The cli jar (see {@link WorkflowLauncher}) sends its goal to the daemon the same way without starting maven.
+ *
+ */
+@Mojo (name="daemon")
+@Execute (goal="daemon", lifecycle="initialize")
+public class WorkflowDaemonMojo extends AbstractGithubAuthorizedMojo {
+
+	/**
+	 * The loopback port to listen on, 0 for any free port.  Clients find the port in ~/.git-workflow-daemon.
+	 */
+	@Parameter (property="git-flow.daemonPort", defaultValue="0")
+	private int daemonPort;
+
+	/**
+	 * The most goals the daemon runs at once, goals using the same repository always run one after the other.
+	 */
+	@Parameter (property="git-flow.daemonGoalThreads", defaultValue="4")
+	private int daemonGoalThreads;
+
+	/**
+	 *
+	 */
+	public WorkflowDaemonMojo() {
+	}
+
+	/**
+	 * @param daemonPort the daemonPort to set
+	 */
+	public void setDaemonPort(int daemonPort) {
+		this.daemonPort = daemonPort;
+	}
+
+	/**
+	 * @param daemonGoalThreads the daemonGoalThreads to set
+	 */
+	public void setDaemonGoalThreads(int daemonGoalThreads) {
+		this.daemonGoalThreads = daemonGoalThreads;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.maven.plugin.Mojo#execute()
+	 */
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+
+		final WorkflowDaemon daemon = new WorkflowDaemon(daemonPort, daemonGoalThreads, getLog());
+
+		WorkflowSession.setResident(true);
+
+		try {
+			daemon.start();
+		} catch (IOException e) {
+			throw new MojoExecutionException("Failed to start the workflow daemon on port " + daemonPort, e);
+		}
+
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				daemon.stop();
+			}
+		}, "workflow-daemon-shutdown"));
+
+		daemon.serve();
+
+		getLog().info(String.format("Workflow daemon stopped after running %d goals (%d failed).", daemon.getGoalsRun(), daemon.getGoalsFailed()));
+	}
+}
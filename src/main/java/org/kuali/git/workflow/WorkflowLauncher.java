@@ -0,0 +1,246 @@
+/**
+ *
+ */
+package org.kuali.git.workflow;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+/**
+ * @author ocleirig
+ *
+ * Runs a goal of this plugin from the command line without starting maven:
+ *
+ * java -jar git-workflow-maven-plugin-cli.jar listOpenPullRequests -Dgit-flow.sourceGithubUser=kuali-student ...
+ *
+ * The goals are configured from the plugin descriptor the same way maven would configure them and are run by the same
+ * {@link GoalRunner} the workflow daemon uses, with the current directory as the project base directory.
+ *
+ * With -Dgit-flow.useDaemon=true the configured goal is sent straight to the running {@link WorkflowDaemon} and only its
+ * output is relayed, so the goal itself never runs in this jvm.  It runs here when no daemon is running.
+ *
+ * --list prints the goals and their properties; it also loads every goal which is what the class data sharing archive
+ * is recorded from at build time (see the cli profile in the pom).
+ *
+ */
+public final class WorkflowLauncher {
+
+	private static final int OK = 0;
+
+	private static final int FAILURE = 1;
+
+	private static final int ERROR = 2;
+
+	private static final int USAGE = 64;
+
+	private static final String USE_DAEMON_PROPERTY = "git-flow.useDaemon";
+
+	private WorkflowLauncher() {
+	}
+
+	/**
+	 * @param args the goal followed by -Dname=value properties and --debug.
+	 */
+	public static void main(String[] args) {
+		System.exit(launch(args));
+	}
+
+	/**
+	 * @return the exit code: 0 if the goal ran, 1 if it failed, 2 if it failed with an error and 64 for bad arguments.
+	 */
+	static int launch(String[] args) {
+
+		String goal = null;
+
+		boolean debug = false;
+
+		boolean list = false;
+
+		Properties properties = new Properties();
+
+		properties.putAll(System.getProperties());
+
+		for (String arg : args) {
+
+			if (arg.startsWith("-D")) {
+
+				int equals = arg.indexOf('=');
+
+				if (equals == -1)
+					properties.setProperty(arg.substring(2), "true");
+				else
+					properties.setProperty(arg.substring(2, equals), arg.substring(equals + 1));
+			}
+			else if ("--debug".equals(arg) || "-X".equals(arg))
+				debug = true;
+			else if ("--list".equals(arg))
+				list = true;
+			else if (goal == null && !arg.startsWith("-"))
+				goal = arg;
+			else {
+				System.err.println("Unexpected argument: " + arg);
+				return usage();
+			}
+		}
+
+		List<GoalDescriptor> goals;
+
+		try {
+			goals = GoalDescriptor.load();
+		} catch (IOException e) {
+			System.err.println("Failed to read the goals of this plugin: " + e.getMessage());
+			return ERROR;
+		}
+
+		if (list)
+			return list(goals);
+
+		if (goal == null)
+			return usage();
+
+		GoalDescriptor descriptor = GoalDescriptor.find(goals, goal);
+
+		if (descriptor == null) {
+			System.err.println("Unknown goal: " + goal);
+			return usage();
+		}
+
+		File basedir = new File(System.getProperty("user.dir")).getAbsoluteFile();
+
+		Map<String, Object> parameters;
+
+		try {
+			parameters = descriptor.resolveParameters(properties, basedir);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			return USAGE;
+		}
+
+		GoalRequest request = new GoalRequest(descriptor.getImplementation(), basedir, basedir, System.getenv(), parameters, debug);
+
+		ConsoleLog log = new ConsoleLog(debug);
+
+		try {
+			WorkflowDaemonClient client = null;
+
+			if (Boolean.parseBoolean(properties.getProperty(USE_DAEMON_PROPERTY)))
+				client = connect(log);
+
+			if (client != null)
+				client.execute(request, log);
+			else
+				GoalRunner.run(request, log, false);
+
+			return OK;
+
+		} catch (MojoFailureException e) {
+			System.err.println("[ERROR] " + e.getMessage());
+			return FAILURE;
+		} catch (MojoExecutionException e) {
+			System.err.println("[ERROR] " + e.getMessage());
+
+			if (debug)
+				e.printStackTrace();
+
+			return ERROR;
+		}
+	}
+
+	/*
+	 * null if no daemon is running.
+	 */
+	private static WorkflowDaemonClient connect(ConsoleLog log) throws MojoExecutionException {
+
+		try {
+			WorkflowDaemonClient client = WorkflowDaemonClient.connect();
+
+			if (client == null)
+				log.info("No workflow daemon is running, running the goal here.");
+
+			return client;
+
+		} catch (IOException e) {
+			throw new MojoExecutionException("Failed to read " + WorkflowDaemon.getStateFile(), e);
+		}
+	}
+
+	/*
+	 * Print the goals and their properties.  Each goal's class is loaded so that a -XX:ArchiveClassesAtExit run of --list
+	 * records all of them.
+	 */
+	private static int list(List<GoalDescriptor> goals) {
+
+		int result = OK;
+
+		for (GoalDescriptor descriptor : goals) {
+
+			System.out.println(descriptor.getGoal());
+
+			for (Map.Entry<String, String> property : descriptor.getProperties().entrySet()) {
+				System.out.println("    -D" + property.getValue() + " (" + property.getKey() + ")");
+			}
+
+			try {
+				Class.forName(descriptor.getImplementation());
+			} catch (ClassNotFoundException e) {
+				System.err.println("Missing goal class: " + descriptor.getImplementation());
+				result = ERROR;
+			} catch (LinkageError e) {
+				System.err.println("Failed to load " + descriptor.getImplementation() + ": " + e);
+				result = ERROR;
+			}
+		}
+
+		return result;
+	}
+
+	private static int usage() {
+
+		System.err.println("usage: java -jar git-workflow-maven-plugin-cli.jar <goal> [-Dproperty=value ...] [-Dgit-flow.useDaemon=true] [--debug]");
+		System.err.println("       java -jar git-workflow-maven-plugin-cli.jar --list");
+
+		return USAGE;
+	}
+
+	/*
+	 * The maven console log with the debug output turned on by --debug.
+	 */
+	private static final class ConsoleLog extends SystemStreamLog {
+
+		private final boolean debug;
+
+		private ConsoleLog(boolean debug) {
+			this.debug = debug;
+		}
+
+		@Override
+		public boolean isDebugEnabled() {
+			return debug;
+		}
+
+		@Override
+		public void debug(CharSequence content) {
+			if (debug)
+				super.debug(content);
+		}
+
+		@Override
+		public void debug(CharSequence content, Throwable error) {
+			if (debug)
+				super.debug(content, error);
+		}
+
+		@Override
+		public void debug(Throwable error) {
+			if (debug)
+				super.debug(error);
+		}
+	}
+}
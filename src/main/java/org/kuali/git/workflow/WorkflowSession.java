@@ -0,0 +1,259 @@
+/**
+ *
+ */
+package org.kuali.git.workflow;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.eclipse.jgit.lib.Repository;
+import org.kohsuke.github.GitHub;
+import org.kuali.student.git.model.GitRepositoryUtils;
+
+/**
+ * @author ocleirig
+ *
+ * The process state a goal depends on: the working directory relative paths are resolved against and the environment
+ * variables (credentials, variables copied into the reports).
+ *
+ * Normally this is just the state of the jvm.  When a goal is run by the workflow daemon on behalf of a client the session
+ * carries the client's working directory and environment instead, for the thread running the goal.  The threads a goal
+ * starts (i.e. the stages of a {@link org.kuali.git.workflow.model.utils.StagedPipeline}) see the jvm's state so a goal
+ * resolves its files and reads its environment before handing work to them.
+ *
+ * A resident jvm also keeps the github clients and the repositories open between goals.  A goal holds the repositories it
+ * opened until it finishes so goals sharing a repository never run at once while the others run side by side.
+ *
+ */
+public final class WorkflowSession {
+
+	private static final WorkflowSession PROCESS = new WorkflowSession(new File(System.getProperty("user.dir")), System.getenv(), false);
+
+	private static final ThreadLocal<WorkflowSession> CURRENT = new ThreadLocal<WorkflowSession>();
+
+	private static volatile boolean resident = false;
+
+	private static final Map<String, GitHub> githubClients = new HashMap<String, GitHub>();
+
+	private static final Map<File, Repository> repositories = new LinkedHashMap<File, Repository>();
+
+	private static final Map<File, ReentrantLock> repositoryLocks = new HashMap<File, ReentrantLock>();
+
+	private final File workingDirectory;
+
+	private final Map<String, String> environment;
+
+	private final boolean remote;
+
+	// the repository locks taken by the goal running in this session.
+	private final List<ReentrantLock> heldLocks = new ArrayList<ReentrantLock>();
+
+	/**
+	 * @param workingDirectory the directory relative paths are resolved against.
+	 * @param environment the environment variables.
+	 * @param remote true if the goal is run for a client of the daemon.
+	 */
+	public WorkflowSession(File workingDirectory, Map<String, String> environment, boolean remote) {
+		this.workingDirectory = workingDirectory.getAbsoluteFile();
+		this.environment = Collections.unmodifiableMap(new HashMap<String, String>(environment));
+		this.remote = remote;
+	}
+
+	/**
+	 * @return the session of the current thread.
+	 */
+	public static WorkflowSession current() {
+
+		WorkflowSession session = CURRENT.get();
+
+		return session == null ? PROCESS : session;
+	}
+
+	/**
+	 * Use the session for the goals run by the current thread until {@link #exit()}.
+	 */
+	static void enter(WorkflowSession session) {
+		CURRENT.set(session);
+	}
+
+	/**
+	 * Release the repositories held by the goal of the current thread and go back to the jvm's session.
+	 */
+	static void exit() {
+
+		WorkflowSession session = CURRENT.get();
+
+		if (session != null) {
+
+			for (ReentrantLock lock : session.heldLocks) {
+				lock.unlock();
+			}
+
+			session.heldLocks.clear();
+		}
+
+		CURRENT.remove();
+	}
+
+	/**
+	 * Keep the github clients and repositories open after the goals that used them.
+	 */
+	static void setResident(boolean resident) {
+		WorkflowSession.resident = resident;
+	}
+
+	/**
+	 * @return true if this jvm keeps its github clients and repositories between goals.
+	 */
+	public static boolean isResident() {
+		return resident;
+	}
+
+	/**
+	 * @return the path as an absolute file, relative paths are resolved against the working directory.
+	 */
+	public File resolve(String path) {
+
+		File file = new File(path);
+
+		return file.isAbsolute() ? file : new File(workingDirectory, path);
+	}
+
+	/**
+	 * @return the value of the environment variable or null if it is not set.
+	 */
+	public String getenv(String name) {
+		return environment.get(name);
+	}
+
+	/**
+	 * @return all of the environment variables.
+	 */
+	public Map<String, String> getEnvironment() {
+		return environment;
+	}
+
+	/**
+	 * @return the working directory.
+	 */
+	public File getWorkingDirectory() {
+		return workingDirectory;
+	}
+
+	/**
+	 * @return true if the goal is being run by the daemon for a client.
+	 */
+	public boolean isRemote() {
+		return remote;
+	}
+
+	/**
+	 * @return the github client connected with the credentials named by the key, null if there isn't one.
+	 */
+	static GitHub getGitHub(String key) {
+
+		synchronized (githubClients) {
+			return githubClients.get(key);
+		}
+	}
+
+	/**
+	 * Keep the client for the next goal if this jvm is resident.
+	 */
+	static GitHub keepGitHub(String key, GitHub github) {
+
+		if (resident) {
+			synchronized (githubClients) {
+				githubClients.put(key, github);
+			}
+		}
+
+		return github;
+	}
+
+	/**
+	 * Open the repository, reusing the one opened by an earlier goal if this jvm is resident.  In a resident jvm the goal
+	 * waits until no other goal holds the repository and then holds it until it finishes.
+	 *
+	 * @throws IOException
+	 */
+	static Repository openRepository(File directory, boolean create, boolean bare) throws IOException {
+
+		if (!resident)
+			return GitRepositoryUtils.buildFileRepository(directory, create, bare);
+
+		File key = directory.getCanonicalFile();
+
+		hold(key);
+
+		synchronized (repositories) {
+
+			Repository repository = repositories.get(key);
+
+			if (repository == null) {
+				repository = GitRepositoryUtils.buildFileRepository(directory, create, bare);
+				repositories.put(key, repository);
+			}
+
+			return repository;
+		}
+	}
+
+	/*
+	 * Take the lock of the repository for the goal of the current thread, a goal opening its repository twice already
+	 * holds it.
+	 */
+	private static void hold(File key) {
+
+		WorkflowSession session = CURRENT.get();
+
+		// only the goals run by GoalRunner release what they hold.
+		if (session == null)
+			return;
+
+		ReentrantLock lock;
+
+		synchronized (repositoryLocks) {
+
+			lock = repositoryLocks.get(key);
+
+			if (lock == null) {
+				lock = new ReentrantLock();
+				repositoryLocks.put(key, lock);
+			}
+		}
+
+		if (lock.isHeldByCurrentThread())
+			return;
+
+		lock.lock();
+
+		session.heldLocks.add(lock);
+	}
+
+	/**
+	 * Close the repositories kept open and forget the github clients.
+	 */
+	static void closeResources() {
+
+		synchronized (repositories) {
+
+			for (Repository repository : repositories.values()) {
+				repository.close();
+			}
+
+			repositories.clear();
+		}
+
+		synchronized (githubClients) {
+			githubClients.clear();
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model;
+
+/**
+ * @author ocleirig
+ *
+ * A single difference found when cross checking the content of two branch locations.
+ *
+ */
+public class BranchContentDivergence {
+
+	public static enum DivergenceType {
+		/*
+		 * the path exists only on the right hand side.
+		 */
+		MISSING_ON_LEFT,
+		/*
+		 * the path exists only on the left hand side.
+		 */
+		MISSING_ON_RIGHT,
+		/*
+		 * a file exists on both sides but with different content.
+		 */
+		CONTENT_DIFFERS,
+		/*
+		 * the path is a file on one side and a directory (or submodule) on the other.
+		 */
+		TYPE_DIFFERS;
+	}
+
+	private final DivergenceType type;
+
+	private final String path;
+
+	private final String leftSha;
+
+	private final String rightSha;
+
+	public BranchContentDivergence(DivergenceType type, String path, String leftSha, String rightSha) {
+		this.type = type;
+		this.path = path;
+		this.leftSha = leftSha;
+		this.rightSha = rightSha;
+	}
+
+	/**
+	 * @return the type
+	 */
+	public DivergenceType getType() {
+		return type;
+	}
+
+	/**
+	 * @return the path relative to the compared locations.
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return the leftSha or null if missing on the left.
+	 */
+	public String getLeftSha() {
+		return leftSha;
+	}
+
+	/**
+	 * @return the rightSha or null if missing on the right.
+	 */
+	public String getRightSha() {
+		return rightSha;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return type.name() + ":" + path;
+	}
+
+}
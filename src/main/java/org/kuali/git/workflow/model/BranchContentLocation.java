@@ -0,0 +1,105 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model;
+
+/**
+ * @author ocleirig
+ *
+ * A directory within a branch of a github repository.
+ *
+ * Expressed as: owner/repository@branch:path where the :path part is optional and defaults to the root of the branch.
+ *
+ */
+public class BranchContentLocation {
+
+	private final String repository;
+
+	private final String branch;
+
+	private final String path;
+
+	public BranchContentLocation(String repository, String branch, String path) {
+		this.repository = repository;
+		this.branch = branch;
+		this.path = trimSlashes(path);
+	}
+
+	/**
+	 * Parse a location like kuali/ks-development@master:ks-impex
+	 *
+	 * @param location the location string
+	 * @return the parsed location
+	 * @throws IllegalArgumentException if the location is not in the expected format.
+	 */
+	public static BranchContentLocation parse(String location) {
+
+		String trimmed = location.trim();
+
+		int branchOffset = trimmed.indexOf('@');
+
+		if (branchOffset == -1 || trimmed.indexOf('/') == -1 || trimmed.indexOf('/') > branchOffset)
+			throw new IllegalArgumentException("Expected owner/repository@branch[:path] but found: " + location);
+
+		String repository = trimmed.substring(0, branchOffset);
+
+		String branchAndPath = trimmed.substring(branchOffset + 1);
+
+		int pathOffset = branchAndPath.indexOf(':');
+
+		if (pathOffset == -1)
+			return new BranchContentLocation(repository, branchAndPath, "");
+
+		return new BranchContentLocation(repository, branchAndPath.substring(0, pathOffset), branchAndPath.substring(pathOffset + 1));
+	}
+
+	private static String trimSlashes(String path) {
+
+		if (path == null)
+			return "";
+
+		String trimmed = path.trim();
+
+		while (trimmed.startsWith("/"))
+			trimmed = trimmed.substring(1);
+
+		while (trimmed.endsWith("/"))
+			trimmed = trimmed.substring(0, trimmed.length() - 1);
+
+		return trimmed;
+	}
+
+	/**
+	 * @return the repository as owner/name
+	 */
+	public String getRepository() {
+		return repository;
+	}
+
+	/**
+	 * @return the branch
+	 */
+	public String getBranch() {
+		return branch;
+	}
+
+	/**
+	 * @return the path within the branch, the empty string for the root.
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+
+		if (path.length() == 0)
+			return repository + "@" + branch;
+
+		return repository + "@" + branch + ":" + path;
+	}
+
+}
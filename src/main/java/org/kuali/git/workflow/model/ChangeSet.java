@@ -0,0 +1,339 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * @author ocleirig
+ *
+ * The set of paths changed between two trees.
+ *
+ * Paths are stored as a trie of directory nodes where every path segment is interned so that
+ * the common prefixes of a large change (i.e. a mass reformat) are only held once.
+ *
+ * Heap use grows with the number of distinct directories and file names rather than with the total
+ * number of path bytes.  Full path strings are only built on demand while iterating.
+ *
+ */
+public class ChangeSet implements Iterable<String> {
+
+	/**
+	 * The name used for files that are located in the root of the tree.
+	 */
+	public static final String ROOT_DIRECTORY = ".";
+
+	private final Map<String, String> segmentPool = new HashMap<String, String>();
+
+	private final DirectoryNode root = new DirectoryNode(null, ROOT_DIRECTORY);
+
+	private int size = 0;
+
+	/**
+	 *
+	 */
+	public ChangeSet() {
+	}
+
+	/**
+	 * Add the path of a changed file.
+	 *
+	 * @param path the slash separated path of the file relative to the root of the tree.
+	 * @return true if the path was not already contained.
+	 */
+	public boolean add(String path) {
+
+		DirectoryNode current = root;
+
+		int start = 0;
+
+		int offset;
+
+		while ((offset = path.indexOf('/', start)) != -1) {
+
+			if (offset > start)
+				current = current.getOrCreateChild(intern(path.substring(start, offset)));
+
+			start = offset + 1;
+		}
+
+		if (start >= path.length())
+			return false; // a directory on its own is not a change.
+
+		if (current.addFile(intern(path.substring(start)))) {
+			size++;
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return the number of changed files.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return the top level directories containing at least one change.  Changes to files in the root of the tree are reported as '.'.
+	 */
+	public Set<String> getTopLevelDirectories() {
+		return aggregateByDirectory(1).keySet();
+	}
+
+	/**
+	 * Find the top level directories that contain a changed file with a name ending in the suffix given.
+	 *
+	 * @param suffix for example '.sql'
+	 * @return the matching top level directories with root level matches reported as '.'.
+	 */
+	public Set<String> getTopLevelDirectoriesContaining(String suffix) {
+
+		Set<String>topLevelDirectories = new TreeSet<String>();
+
+		if (root.containsFileEndingWith(suffix))
+			topLevelDirectories.add(ROOT_DIRECTORY);
+
+		for (DirectoryNode child : root.children.values()) {
+
+			if (child.subtreeContainsFileEndingWith(suffix))
+				topLevelDirectories.add(child.name);
+		}
+
+		return topLevelDirectories;
+	}
+
+	/**
+	 * Count the changed files under each directory found at the depth given.
+	 *
+	 * Files located above the requested depth are counted against their own directory (or '.' for the root).
+	 *
+	 * @param depth the number of leading path segments to aggregate on (1 is the top level directory).
+	 * @return a sorted map of directory path to the number of changed files within it.
+	 */
+	public Map<String, Integer> aggregateByDirectory(int depth) {
+
+		Map<String, Integer>aggregate = new TreeMap<String, Integer>();
+
+		aggregate(root, 0, depth, aggregate);
+
+		return aggregate;
+	}
+
+	private void aggregate(DirectoryNode node, int nodeDepth, int depth, Map<String, Integer> aggregate) {
+
+		if (nodeDepth == depth) {
+			aggregate.put(node.getPath(), node.subtreeFileCount);
+			return;
+		}
+
+		if (node.files != null && node.files.size() > 0)
+			aggregate.put(node.getPath(), node.files.size());
+
+		for (DirectoryNode child : node.children.values()) {
+			aggregate(child, nodeDepth + 1, depth, aggregate);
+		}
+	}
+
+	/**
+	 * Iterate over the changed paths.
+	 *
+	 * Each path string is built as it is returned so only the directory currently being visited is materialized.
+	 */
+	@Override
+	public Iterator<String> iterator() {
+		return new PathIterator(root);
+	}
+
+	private String intern(String segment) {
+
+		String existing = segmentPool.get(segment);
+
+		if (existing != null)
+			return existing;
+
+		segmentPool.put(segment, segment);
+
+		return segment;
+	}
+
+	/*
+	 * One node per distinct directory.
+	 */
+	private static final class DirectoryNode {
+
+		private final DirectoryNode parent;
+
+		private final String name;
+
+		private final Map<String, DirectoryNode>children = new TreeMap<String, DirectoryNode>();
+
+		// lazily created since most directories only hold other directories.
+		private Set<String>files;
+
+		private int subtreeFileCount = 0;
+
+		private DirectoryNode(DirectoryNode parent, String name) {
+			this.parent = parent;
+			this.name = name;
+		}
+
+		private DirectoryNode getOrCreateChild(String childName) {
+
+			DirectoryNode child = children.get(childName);
+
+			if (child == null) {
+				child = new DirectoryNode(this, childName);
+				children.put(childName, child);
+			}
+
+			return child;
+		}
+
+		private boolean addFile(String fileName) {
+
+			if (files == null)
+				files = new TreeSet<String>();
+
+			if (!files.add(fileName))
+				return false;
+
+			for (DirectoryNode current = this; current != null; current = current.parent) {
+				current.subtreeFileCount++;
+			}
+
+			return true;
+		}
+
+		private boolean containsFileEndingWith(String suffix) {
+
+			if (files == null)
+				return false;
+
+			for (String file : files) {
+
+				if (file.endsWith(suffix))
+					return true;
+			}
+
+			return false;
+		}
+
+		private boolean subtreeContainsFileEndingWith(String suffix) {
+
+			if (containsFileEndingWith(suffix))
+				return true;
+
+			for (DirectoryNode child : children.values()) {
+
+				if (child.subtreeContainsFileEndingWith(suffix))
+					return true;
+			}
+
+			return false;
+		}
+
+		/*
+		 * The full path of this directory or '.' for the root.
+		 */
+		private String getPath() {
+
+			if (parent == null)
+				return ROOT_DIRECTORY;
+
+			StringBuilder builder = new StringBuilder();
+
+			appendPath(builder);
+
+			return builder.toString();
+		}
+
+		private void appendPath(StringBuilder builder) {
+
+			if (parent == null)
+				return;
+
+			if (parent.parent != null) {
+				parent.appendPath(builder);
+				builder.append('/');
+			}
+
+			builder.append(name);
+		}
+	}
+
+	/*
+	 * Depth first iteration that only holds the prefix of the current directory.
+	 */
+	private static final class PathIterator implements Iterator<String> {
+
+		private final Deque<DirectoryNode>pendingDirectories = new ArrayDeque<DirectoryNode>();
+
+		private Iterator<String>currentFiles;
+
+		private String currentPrefix;
+
+		private PathIterator(DirectoryNode root) {
+			pendingDirectories.push(root);
+		}
+
+		@Override
+		public boolean hasNext() {
+
+			while (currentFiles == null || !currentFiles.hasNext()) {
+
+				if (pendingDirectories.isEmpty())
+					return false;
+
+				DirectoryNode next = pendingDirectories.pop();
+
+				// push in reverse so that the children are visited in sorted order.
+				DirectoryNode[] children = next.children.values().toArray(new DirectoryNode[next.children.size()]);
+
+				for (int i = children.length - 1; i >= 0; i--) {
+					pendingDirectories.push(children[i]);
+				}
+
+				if (next.files == null) {
+					currentFiles = null;
+					continue;
+				}
+
+				currentPrefix = (next.parent == null) ? "" : next.getPath() + "/";
+
+				currentFiles = next.files.iterator();
+			}
+
+			return true;
+		}
+
+		@Override
+		public String next() {
+
+			if (!hasNext())
+				throw new NoSuchElementException();
+
+			return currentPrefix + currentFiles.next();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("ChangeSet iteration is read only.");
+		}
+
+	}
+}
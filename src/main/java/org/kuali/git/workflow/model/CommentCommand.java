@@ -0,0 +1,72 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model;
+
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * @author ocleirig
+ *
+ * A command given to CI through a pull request comment (i.e. retest or skip-sql).
+ *
+ */
+public class CommentCommand {
+
+	private final long commentId;
+
+	private final String user;
+
+	private final String command;
+
+	private final List<String> arguments;
+
+	public CommentCommand(long commentId, String user, String command, List<String> arguments) {
+		this.commentId = commentId;
+		this.user = user;
+		this.command = command;
+		this.arguments = arguments;
+	}
+
+	/**
+	 * @return the id of the comment the command was given in.
+	 */
+	public long getCommentId() {
+		return commentId;
+	}
+
+	/**
+	 * @return the login of the user that wrote the comment.
+	 */
+	public String getUser() {
+		return user;
+	}
+
+	/**
+	 * @return the command name in lower case.
+	 */
+	public String getCommand() {
+		return command;
+	}
+
+	/**
+	 * @return the arguments of the command, empty if there are none.
+	 */
+	public List<String> getArguments() {
+		return arguments;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+
+		if (arguments.isEmpty())
+			return command;
+
+		return command + " " + StringUtils.join(arguments, ",");
+	}
+}
@@ -0,0 +1,142 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * @author ocleirig
+ *
+ * What needs to be pushed to a remote once the refs it already has are taken into account.
+ *
+ */
+public class PushPlan {
+
+	private final String remoteName;
+
+	private final List<String> refSpecsToPush = new ArrayList<String>();
+
+	private final List<RefPushResult> upToDateResults = new ArrayList<RefPushResult>();
+
+	// the local objects the remote refs will be updated to.
+	private final Set<ObjectId> wants = new HashSet<ObjectId>();
+
+	// the objects advertised by the remote that also exist locally.
+	private final Set<ObjectId> haves = new HashSet<ObjectId>();
+
+	private long predictedBytes = -1;
+
+	private long predictedObjects = -1;
+
+	private long actualBytes = -1;
+
+	private long actualObjects = -1;
+
+	public PushPlan(String remoteName) {
+		this.remoteName = remoteName;
+	}
+
+	/**
+	 * @return the remoteName
+	 */
+	public String getRemoteName() {
+		return remoteName;
+	}
+
+	/**
+	 * @return the refspecs that still need to be pushed.
+	 */
+	public List<String> getRefSpecsToPush() {
+		return refSpecsToPush;
+	}
+
+	/**
+	 * @return the results of the refspecs that were dropped because the remote is already up to date.
+	 */
+	public List<RefPushResult> getUpToDateResults() {
+		return upToDateResults;
+	}
+
+	/**
+	 * @return the wants
+	 */
+	public Set<ObjectId> getWants() {
+		return wants;
+	}
+
+	/**
+	 * @return the haves
+	 */
+	public Set<ObjectId> getHaves() {
+		return haves;
+	}
+
+	/**
+	 * @return true if there is nothing left to push.
+	 */
+	public boolean isUpToDate() {
+		return refSpecsToPush.isEmpty();
+	}
+
+	/**
+	 * @return the predicted size of the pack in bytes or -1 if it was not predicted.
+	 */
+	public long getPredictedBytes() {
+		return predictedBytes;
+	}
+
+	/**
+	 * @param predictedBytes the predictedBytes to set
+	 */
+	public void setPredictedBytes(long predictedBytes) {
+		this.predictedBytes = predictedBytes;
+	}
+
+	/**
+	 * @return the predicted number of objects in the pack or -1 if it was not predicted.
+	 */
+	public long getPredictedObjects() {
+		return predictedObjects;
+	}
+
+	/**
+	 * @param predictedObjects the predictedObjects to set
+	 */
+	public void setPredictedObjects(long predictedObjects) {
+		this.predictedObjects = predictedObjects;
+	}
+
+	/**
+	 * @return the bytes sent or -1 if they are not known.
+	 */
+	public long getActualBytes() {
+		return actualBytes;
+	}
+
+	/**
+	 * @param actualBytes the actualBytes to set
+	 */
+	public void setActualBytes(long actualBytes) {
+		this.actualBytes = actualBytes;
+	}
+
+	/**
+	 * @return the objects sent or -1 if they are not known.
+	 */
+	public long getActualObjects() {
+		return actualObjects;
+	}
+
+	/**
+	 * @param actualObjects the actualObjects to set
+	 */
+	public void setActualObjects(long actualObjects) {
+		this.actualObjects = actualObjects;
+	}
+}
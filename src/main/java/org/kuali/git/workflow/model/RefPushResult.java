@@ -0,0 +1,98 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model;
+
+/**
+ * @author ocleirig
+ *
+ * The outcome of pushing one ref to a remote.
+ *
+ */
+public class RefPushResult {
+
+	private final String remoteName;
+
+	private final String sourceRef;
+
+	private final String remoteRef;
+
+	private final String status;
+
+	private final boolean successful;
+
+	private final String message;
+
+	/**
+	 * @param remoteName the remote pushed to.
+	 * @param sourceRef the local ref or commit pushed (empty for a delete).
+	 * @param remoteRef the ref updated on the remote.
+	 * @param status the update status (i.e. OK, UP_TO_DATE, REJECTED_NONFASTFORWARD).
+	 * @param successful true if the remote ref now has the expected value.
+	 * @param message the reason given by the remote, may be null.
+	 */
+	public RefPushResult(String remoteName, String sourceRef, String remoteRef, String status, boolean successful, String message) {
+		this.remoteName = remoteName;
+		this.sourceRef = sourceRef;
+		this.remoteRef = remoteRef;
+		this.status = status;
+		this.successful = successful;
+		this.message = message;
+	}
+
+	/**
+	 * @return the remoteName
+	 */
+	public String getRemoteName() {
+		return remoteName;
+	}
+
+	/**
+	 * @return the sourceRef
+	 */
+	public String getSourceRef() {
+		return sourceRef;
+	}
+
+	/**
+	 * @return the remoteRef
+	 */
+	public String getRemoteRef() {
+		return remoteRef;
+	}
+
+	/**
+	 * @return the status
+	 */
+	public String getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return true if the remote ref now has the expected value.
+	 */
+	public boolean isSuccessful() {
+		return successful;
+	}
+
+	/**
+	 * @return the message
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+
+		String result = remoteName + " " + sourceRef + ":" + remoteRef + " " + status;
+
+		if (message != null)
+			result += " (" + message + ")";
+
+		return result;
+	}
+}
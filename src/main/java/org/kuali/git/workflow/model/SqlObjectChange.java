@@ -0,0 +1,100 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model;
+
+/**
+ * @author ocleirig
+ *
+ * A schema object (table, view, sequence, ...) affected by a changed sql script and how it was affected.
+ *
+ */
+public class SqlObjectChange implements Comparable<SqlObjectChange> {
+
+	public static enum ChangeKind {
+		CREATE, ALTER, DROP,
+		/*
+		 * rows were inserted, updated or deleted.
+		 */
+		DATA;
+	}
+
+	private final String objectType;
+
+	private final String objectName;
+
+	private final ChangeKind changeKind;
+
+	public SqlObjectChange(String objectType, String objectName, ChangeKind changeKind) {
+		this.objectType = objectType;
+		this.objectName = objectName;
+		this.changeKind = changeKind;
+	}
+
+	/**
+	 * @return the objectType (i.e. TABLE, VIEW or SEQUENCE)
+	 */
+	public String getObjectType() {
+		return objectType;
+	}
+
+	/**
+	 * @return the objectName
+	 */
+	public String getObjectName() {
+		return objectName;
+	}
+
+	/**
+	 * @return the changeKind
+	 */
+	public ChangeKind getChangeKind() {
+		return changeKind;
+	}
+
+	@Override
+	public int compareTo(SqlObjectChange o) {
+
+		int result = objectType.compareTo(o.objectType);
+
+		if (result == 0)
+			result = objectName.compareTo(o.objectName);
+
+		if (result == 0)
+			result = changeKind.compareTo(o.changeKind);
+
+		return result;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return toString().hashCode();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+
+		if (this == obj)
+			return true;
+
+		if (!(obj instanceof SqlObjectChange))
+			return false;
+
+		return compareTo((SqlObjectChange) obj) == 0;
+	}
+
+	/**
+	 * @return TYPE:NAME:KIND
+	 */
+	@Override
+	public String toString() {
+		return objectType + ":" + objectName + ":" + changeKind.name();
+	}
+
+}
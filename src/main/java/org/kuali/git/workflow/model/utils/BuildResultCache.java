@@ -0,0 +1,350 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.kuali.git.workflow.model.ChangeSet;
+
+/**
+ * @author ocleirig
+ *
+ * The modules whose exact content has already passed a build, so they don't need to be built again.
+ *
+ * The content of a module is identified by a key over the git tree id of its top level directory, the tree ids of the
+ * modules it depends on and the blob ids of the shared build files (i.e. the root pom.xml).  A pull request that is rebased
+ * without touching a module, or two pull requests with identical module trees, give the same key.
+ *
+ * The passed keys are kept locally as key=module commit lines, the oldest are forgotten past the entry limit.
+ *
+ * The key of a module only covers the modules it is declared to depend on, so {@link #select} never skips a module whose
+ * dependencies have not been declared.
+ *
+ */
+public final class BuildResultCache {
+
+	/**
+	 * The number of passed keys kept unless configured otherwise.
+	 */
+	public static final int DEFAULT_MAXIMUM_ENTRIES = 10000;
+
+	/**
+	 * The files at the root of the repository that every module build depends on unless configured otherwise.
+	 */
+	public static final String DEFAULT_SHARED_BUILD_FILES = "pom.xml";
+
+	private static final String UTF_8 = "UTF-8";
+
+	private static final String MISSING = "missing";
+
+	private final int maximumEntries;
+
+	// key -> module and commit, oldest first.
+	private final Map<String, String> passed = new LinkedHashMap<String, String>();
+
+	/**
+	 * @param maximumEntries the number of passed keys kept.
+	 */
+	public BuildResultCache(int maximumEntries) {
+		this.maximumEntries = Math.max(1, maximumEntries);
+	}
+
+	/**
+	 * @return the cache saved in the file or an empty cache if the file does not exist.
+	 * @throws IOException
+	 */
+	public static BuildResultCache load(File cacheFile, int maximumEntries) throws IOException {
+
+		BuildResultCache cache = new BuildResultCache(maximumEntries);
+
+		if (!cacheFile.exists())
+			return cache;
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(cacheFile.toPath()), UTF_8));
+
+		try {
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+
+				int separator = line.indexOf('=');
+
+				if (separator == -1)
+					continue;
+
+				cache.put(line.substring(0, separator).trim(), line.substring(separator + 1).trim());
+			}
+		}
+		finally {
+			reader.close();
+		}
+
+		return cache;
+	}
+
+	/**
+	 * Parse module dependencies given as module=dependency+dependency entries.
+	 *
+	 * @param moduleDependencies may be null.
+	 * @return the dependencies of each module.
+	 */
+	public static Map<String, Set<String>> parseDependencies(List<String> moduleDependencies) {
+
+		Map<String, Set<String>> dependencies = new TreeMap<String, Set<String>>();
+
+		if (moduleDependencies == null)
+			return dependencies;
+
+		for (String entry : moduleDependencies) {
+
+			int separator = entry.indexOf('=');
+
+			if (separator == -1)
+				throw new IllegalArgumentException("expected module=dependency+dependency but found: " + entry);
+
+			Set<String> modules = new TreeSet<String>();
+
+			for (String dependency : entry.substring(separator + 1).split("[+\\s]+")) {
+
+				if (dependency.length() > 0)
+					modules.add(dependency);
+			}
+
+			dependencies.put(entry.substring(0, separator).trim(), modules);
+		}
+
+		return dependencies;
+	}
+
+	/**
+	 * @return the id of each entry at the top level of the tree by name.
+	 * @throws IOException
+	 */
+	public static Map<String, String> readTopLevelEntries(ObjectReader reader, AnyObjectId tree) throws IOException {
+
+		Map<String, String> entries = new TreeMap<String, String>();
+
+		TreeWalk tw = new TreeWalk(reader);
+
+		try {
+			tw.addTree(tree);
+
+			tw.setRecursive(false);
+
+			while (tw.next()) {
+				entries.put(tw.getNameString(), tw.getObjectId(0).name());
+			}
+		}
+		finally {
+			tw.release();
+		}
+
+		return entries;
+	}
+
+	/**
+	 * Compute the content key of each module.  The root directory ('.') has no tree of its own so it never gets a key.
+	 *
+	 * @param topLevelEntries the ids of the top level entries of the commit being built.
+	 * @param modules the modules to compute the keys of.
+	 * @param dependencies the modules each module depends on.
+	 * @param sharedFiles the top level files every module's build depends on.
+	 * @return the key of each module.
+	 */
+	public static Map<String, String> contentKeys(Map<String, String> topLevelEntries, Collection<String> modules, Map<String, Set<String>> dependencies, Collection<String> sharedFiles) {
+
+		Map<String, String> keys = new TreeMap<String, String>();
+
+		Set<String> sortedSharedFiles = new TreeSet<String>();
+
+		if (sharedFiles != null)
+			sortedSharedFiles.addAll(sharedFiles);
+
+		for (String module : modules) {
+
+			if (ChangeSet.ROOT_DIRECTORY.equals(module) || !topLevelEntries.containsKey(module))
+				continue;
+
+			StringBuilder content = new StringBuilder();
+
+			content.append("module ").append(module).append(' ').append(topLevelEntries.get(module)).append('\n');
+
+			Set<String> moduleDependencies = dependencies.get(module);
+
+			if (moduleDependencies != null) {
+
+				for (String dependency : new TreeSet<String>(moduleDependencies)) {
+					content.append("dependency ").append(dependency).append(' ').append(idOf(topLevelEntries, dependency)).append('\n');
+				}
+			}
+
+			for (String sharedFile : sortedSharedFiles) {
+				content.append("shared ").append(sharedFile).append(' ').append(idOf(topLevelEntries, sharedFile)).append('\n');
+			}
+
+			keys.put(module, DigestUtils.sha1Hex(content.toString()));
+		}
+
+		return keys;
+	}
+
+	private static String idOf(Map<String, String> topLevelEntries, String name) {
+
+		String id = topLevelEntries.get(name);
+
+		return id == null ? MISSING : id;
+	}
+
+	/**
+	 * Compute the content keys of the changed modules and leave out those whose content has already passed a build, as
+	 * identifyChangesInGit and identifyChangesInApi do with git-flow.skipPassedModules.
+	 *
+	 * Only the modules with an entry in the module dependencies can be skipped (an entry without dependencies, i.e.
+	 * ks-core=, declares that the module has none).  The key of any other module would stay the same when a module it
+	 * depends on changes, so it is always built.
+	 *
+	 * @param cacheFile the passed keys recorded by recordModuleBuild.
+	 * @param topLevelEntries the ids of the top level entries of the commit being built.
+	 * @param modules the changed modules.
+	 * @param moduleDependencies module=dependency+dependency entries, may be null.
+	 * @param sharedFiles the top level files every module's build depends on.
+	 * @param log where the skipped modules are reported.
+	 * @return the content keys and the modules that still need to be built.
+	 * @throws IOException if the cache could not be read.
+	 */
+	public static Selection select(File cacheFile, Map<String, String> topLevelEntries, Set<String> modules, List<String> moduleDependencies, Collection<String> sharedFiles, Log log) throws IOException {
+
+		Map<String, Set<String>> dependencies = parseDependencies(moduleDependencies);
+
+		Map<String, String> keys = contentKeys(topLevelEntries, modules, dependencies, sharedFiles);
+
+		return new Selection(keys, load(cacheFile, DEFAULT_MAXIMUM_ENTRIES).selectUnpassed(modules, keys, dependencies, log));
+	}
+
+	/**
+	 * @return true if a build of the content with the key given has passed.
+	 */
+	public boolean hasPassed(String key) {
+		return key != null && passed.containsKey(key);
+	}
+
+	/**
+	 * Select the modules that still need to be built.
+	 *
+	 * @param modules the changed modules.
+	 * @param keys the content keys of the modules, modules without a key are always built.
+	 * @param dependencies the declared dependencies of each module, modules without an entry are always built.
+	 * @param log where the skipped modules are reported.
+	 * @return the modules whose content has not passed yet or whose dependencies are not declared.
+	 */
+	public Set<String> selectUnpassed(Collection<String> modules, Map<String, String> keys, Map<String, Set<String>> dependencies, Log log) {
+
+		Set<String> unpassed = new TreeSet<String>();
+
+		for (String module : modules) {
+
+			if (!hasPassed(keys.get(module)))
+				unpassed.add(module);
+			else if (!dependencies.containsKey(module)) {
+				unpassed.add(module);
+				log.info("Building module " + module + " although its content " + keys.get(module) + " has passed a build because its dependencies are not declared in git-flow.moduleDependencies.");
+			}
+			else
+				log.info("Skipping module " + module + " because its content " + keys.get(module) + " has already passed a build.");
+		}
+
+		return unpassed;
+	}
+
+	/**
+	 * Record that the build of the module content with the key given passed.
+	 *
+	 * @param commitId the commit that was built.
+	 */
+	public void recordPassed(String key, String module, String commitId) {
+
+		// re-recording a key makes it the newest.
+		passed.remove(key);
+
+		put(key, module + " " + commitId);
+	}
+
+	/**
+	 * @return the number of passed keys.
+	 */
+	public int size() {
+		return passed.size();
+	}
+
+	private void put(String key, String value) {
+
+		passed.put(key, value);
+
+		while (passed.size() > maximumEntries)
+			passed.remove(passed.keySet().iterator().next());
+	}
+
+	/**
+	 * Save the cache (see {@link ChangeReportWriter#writeAtomically(File, List)}).
+	 *
+	 * @throws IOException
+	 */
+	public void save(File cacheFile) throws IOException {
+
+		List<String> lines = new ArrayList<String>();
+
+		for (Entry<String, String> entry : passed.entrySet()) {
+			lines.add(entry.getKey() + "=" + entry.getValue());
+		}
+
+		ChangeReportWriter.writeAtomically(cacheFile, lines);
+	}
+
+	/**
+	 * The outcome of {@link BuildResultCache#select}.
+	 */
+	public static final class Selection {
+
+		private final Map<String, String> contentKeys;
+
+		private final Set<String> unpassedModules;
+
+		private Selection(Map<String, String> contentKeys, Set<String> unpassedModules) {
+			this.contentKeys = contentKeys;
+			this.unpassedModules = unpassedModules;
+		}
+
+		/**
+		 * @return the content key of each changed module that has one.
+		 */
+		public Map<String, String> getContentKeys() {
+			return contentKeys;
+		}
+
+		/**
+		 * @return the changed modules that still need to be built.
+		 */
+		public Set<String> getUnpassedModules() {
+			return unpassedModules;
+		}
+	}
+}
@@ -0,0 +1,53 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * @author ocleirig
+ *
+ * A git cat-file --batch-check session to look up objects without starting git for each one.
+ *
+ */
+public class CatFileSession extends GitProcessSession {
+
+	/**
+	 * @param gitCommand the git executable.
+	 * @param gitDirectory the .git directory of the repository.
+	 * @throws IOException if git could not be started.
+	 */
+	public CatFileSession(String gitCommand, File gitDirectory) throws IOException {
+		super(gitCommand, gitDirectory, "cat-file", "--batch-check");
+	}
+
+	/**
+	 * @param objectName a sha1 or any name git can resolve (i.e. refs/heads/master^{tree})
+	 * @return the type of the object (blob, tree, commit or tag) or null if it does not exist.
+	 * @throws IOException if git failed.
+	 */
+	public String getType(String objectName) throws IOException {
+
+		writeLine(objectName);
+
+		flush();
+
+		// <sha1> SP <type> SP <size> or <object> SP missing
+		String[] answer = readLine().split(" ");
+
+		if (answer.length != 3)
+			return null;
+
+		return answer[1];
+	}
+
+	/**
+	 * @return true if the object exists in the repository.
+	 * @throws IOException if git failed.
+	 */
+	public boolean exists(String objectName) throws IOException {
+		return getType(objectName) != null;
+	}
+}
@@ -0,0 +1,256 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * @author ocleirig
+ *
+ * Builds the complete set of change report files in memory and then writes them.
+ *
+ * Each file is written through {@link #writeAtomically(File, List)} so that a CI trigger watching the directory never sees a
+ * partially written file.
+ *
+ * An index file listing every report by category is written last.  Downstream tooling can read the index in one pass
+ * instead of globbing the directory and its presence means that all of the reports of the run are complete.
+ *
+ */
+public class ChangeReportWriter {
+
+	public static final String INDEX_FILE_NAME = "changes-index.dat";
+
+	/**
+	 * the $module-changes.dat reports.
+	 */
+	public static final String MODULE_CATEGORY = "changes";
+
+	/**
+	 * the sql-changes.dat report.
+	 */
+	public static final String SQL_CATEGORY = "sql-changes";
+
+	/**
+	 * the $module-cosmetic-changes.dat reports.
+	 */
+	public static final String COSMETIC_CATEGORY = "cosmetic-changes";
+
+	/**
+	 * the shard-$n-changes.dat reports, each for the modules built by one downstream job.
+	 */
+	public static final String SHARD_CATEGORY = "shard-changes";
+
+	private static final String UTF_8 = "UTF-8";
+
+	private final File reportsBase;
+
+	// written at the top of every report and of the index.
+	private final Map<String, String> commonProperties = new LinkedHashMap<String, String>();
+
+	private final Map<String, Map<String, String>> reports = new LinkedHashMap<String, Map<String, String>>();
+
+	// category -> module -> report file name
+	private final Map<String, Map<String, String>> reportsByCategory = new TreeMap<String, Map<String, String>>();
+
+	/**
+	 * @param reportsBase the directory the reports are written into.
+	 */
+	public ChangeReportWriter(File reportsBase) {
+		this.reportsBase = reportsBase;
+	}
+
+	/**
+	 * Add a property that is included in every report file.
+	 */
+	public void addCommonProperty(String key, String value) {
+		commonProperties.put(key, value);
+	}
+
+	/**
+	 * Include the values of the environment variables named in every report file.  Variables that are not set are skipped.
+	 *
+	 * @param environmentVariableNames may be null.
+	 */
+	public void addEnvironmentVariables(List<String> environmentVariableNames) {
+		addEnvironmentVariables(environmentVariableNames, System.getenv());
+	}
+
+	/**
+	 * Include the values of the variables named from the environment given (i.e. the environment of a daemon client).
+	 *
+	 * @param environmentVariableNames may be null.
+	 */
+	public void addEnvironmentVariables(List<String> environmentVariableNames, Map<String, String> environment) {
+
+		if (environmentVariableNames == null)
+			return;
+
+		for (String var : environmentVariableNames) {
+
+			String key = var.trim();
+
+			String value = environment.get(key);
+
+			if (value != null)
+				commonProperties.put(key, value);
+		}
+	}
+
+	/**
+	 * Add a report file.
+	 *
+	 * @param category the kind of report (i.e. {@link #MODULE_CATEGORY}).
+	 * @param module the module the report is for.
+	 * @param fileName the name of the report file within the reports directory.
+	 * @return the properties specific to this report, in the order they will be written.
+	 */
+	public Map<String, String> addReport(String category, String module, String fileName) {
+
+		Map<String, String> properties = reports.get(fileName);
+
+		if (properties == null) {
+			properties = new LinkedHashMap<String, String>();
+			reports.put(fileName, properties);
+		}
+
+		Map<String, String> categoryReports = reportsByCategory.get(category);
+
+		if (categoryReports == null) {
+			categoryReports = new TreeMap<String, String>();
+			reportsByCategory.put(category, categoryReports);
+		}
+
+		categoryReports.put(module, fileName);
+
+		return properties;
+	}
+
+	/**
+	 * @return the modules reported in the category given.
+	 */
+	public Set<String> getModules(String category) {
+
+		Map<String, String> categoryReports = reportsByCategory.get(category);
+
+		if (categoryReports == null)
+			return new TreeSet<String>();
+
+		return new TreeSet<String>(categoryReports.keySet());
+	}
+
+	/**
+	 * Write all of the reports followed by the index.
+	 *
+	 * @return the index file.
+	 * @throws IOException
+	 */
+	public File write() throws IOException {
+
+		reportsBase.mkdirs();
+
+		File indexFile = new File(reportsBase, INDEX_FILE_NAME);
+
+		// remove the index of a previous run so that it is never paired with the reports of this run.
+		Files.deleteIfExists(indexFile.toPath());
+
+		for (Entry<String, Map<String, String>> report : reports.entrySet()) {
+
+			Map<String, String> properties = new LinkedHashMap<String, String>(commonProperties);
+
+			properties.putAll(report.getValue());
+
+			writeProperties(new File(reportsBase, report.getKey()), properties);
+		}
+
+		Map<String, String> index = new LinkedHashMap<String, String>(commonProperties);
+
+		index.put("REPORT_FILES", StringUtils.join(reports.keySet(), ","));
+		index.put("CATEGORIES", StringUtils.join(reportsByCategory.keySet(), ","));
+
+		for (Entry<String, Map<String, String>> category : reportsByCategory.entrySet()) {
+
+			index.put(category.getKey() + ".MODULES", StringUtils.join(category.getValue().keySet(), ","));
+			index.put(category.getKey() + ".FILES", StringUtils.join(new TreeSet<String>(category.getValue().values()), ","));
+		}
+
+		writeProperties(indexFile, index);
+
+		return indexFile;
+	}
+
+	/**
+	 * @return the names of the report files that will be written (not including the index).
+	 */
+	public List<String> getReportFileNames() {
+		return new ArrayList<String>(reports.keySet());
+	}
+
+	private static void writeProperties(File target, Map<String, String> properties) throws IOException {
+
+		List<String> lines = new ArrayList<String>();
+
+		for (Entry<String, String> property : properties.entrySet()) {
+			lines.add(property.getKey() + "=" + property.getValue());
+		}
+
+		writeAtomically(target, lines);
+	}
+
+	/**
+	 * Write the lines to a temporary file next to the target and then rename it into place, atomically where the file
+	 * system allows it.  Readers of the target see either the previous content or all of the new content and a failed
+	 * write leaves the previous content in place.
+	 *
+	 * @throws IOException if the lines could not be written, the target is unchanged.
+	 */
+	public static void writeAtomically(File target, List<String> lines) throws IOException {
+
+		File directory = target.getAbsoluteFile().getParentFile();
+
+		directory.mkdirs();
+
+		File temporary = File.createTempFile("." + target.getName(), ".tmp", directory);
+
+		try {
+			PrintWriter pw = new PrintWriter(new OutputStreamWriter(Files.newOutputStream(temporary.toPath()), UTF_8));
+
+			try {
+				for (String line : lines) {
+					pw.println(line);
+				}
+			}
+			finally {
+				pw.close();
+			}
+
+			if (pw.checkError())
+				throw new IOException("failed to write " + temporary);
+
+			try {
+				Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally {
+			Files.deleteIfExists(temporary.toPath());
+		}
+	}
+}
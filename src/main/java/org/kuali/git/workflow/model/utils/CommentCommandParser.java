@@ -0,0 +1,97 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.kuali.git.workflow.model.CommentCommand;
+
+/**
+ * @author ocleirig
+ *
+ * Extracts CI commands from the body of a pull request comment.
+ *
+ * A command is a line of the form:
+ *
+ * <pre>
+ * prefix command [argument[,argument]...]
+ * </pre>
+ *
+ * For example 'ci retest' or 'ci build ks-enroll ks-core'.  Arguments may be separated by whitespace or commas.  The prefix
+ * and command are case insensitive.  Lines inside of quoted replies or fenced code blocks are ignored as are commands that
+ * are not known.
+ *
+ */
+public class CommentCommandParser {
+
+	private static final String CODE_FENCE = "```";
+
+	private final String prefix;
+
+	private final Set<String> knownCommands = new HashSet<String>();
+
+	/**
+	 * @param prefix the word that must start a command line (i.e. ci).
+	 * @param knownCommands the command names that are recognized.
+	 */
+	public CommentCommandParser(String prefix, Collection<String> knownCommands) {
+
+		this.prefix = prefix.trim().toLowerCase(Locale.ENGLISH);
+
+		for (String command : knownCommands) {
+			this.knownCommands.add(command.trim().toLowerCase(Locale.ENGLISH));
+		}
+	}
+
+	/**
+	 * @return the commands found in the comment, in the order they were written.
+	 */
+	public List<CommentCommand> parse(long commentId, String user, String body) {
+
+		List<CommentCommand> commands = new ArrayList<CommentCommand>();
+
+		if (body == null)
+			return commands;
+
+		boolean inCodeBlock = false;
+
+		for (String line : body.split("\r?\n")) {
+
+			String trimmed = line.trim();
+
+			if (trimmed.startsWith(CODE_FENCE)) {
+				inCodeBlock = !inCodeBlock;
+				continue;
+			}
+
+			if (inCodeBlock || trimmed.startsWith(">"))
+				continue;
+
+			String[] tokens = trimmed.split("[\\s,]+");
+
+			if (tokens.length < 2 || !tokens[0].toLowerCase(Locale.ENGLISH).equals(prefix))
+				continue;
+
+			String command = tokens[1].toLowerCase(Locale.ENGLISH);
+
+			if (!knownCommands.contains(command))
+				continue;
+
+			List<String> arguments = new ArrayList<String>();
+
+			for (int i = 2; i < tokens.length; i++) {
+				arguments.add(tokens[i]);
+			}
+
+			commands.add(new CommentCommand(commentId, user, command, arguments));
+		}
+
+		return commands;
+	}
+}
@@ -0,0 +1,564 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * @author ocleirig
+ *
+ * Reads the commit-graph that C git writes (git commit-graph write --reachable --changed-paths), either the single
+ * objects/info/commit-graph file or the split chain under objects/info/commit-graphs.
+ *
+ * The graph gives the parents, generation number and commit time of each commit without inflating the commit and,
+ * when it was written with --changed-paths, a Bloom filter of the paths each commit changed relative to its first parent.
+ * The filter answers "did this commit touch path X" with either definitely not or maybe, so only the maybe answers need a
+ * tree diff.
+ *
+ * The JGit version used by the plugin does not read commit-graphs itself so this follows git's
+ * Documentation/gitformat-commit-graph.txt and bloom.c.
+ *
+ * Commits added after the graph was written are not in it; callers must fall back to parsing those.
+ *
+ */
+public class CommitGraph {
+
+	/**
+	 * The answer of a changed path Bloom filter.
+	 */
+	public static enum PathFilterResult {
+		/** the commit did not change the path. */
+		NOT_CHANGED,
+		/** the commit may have changed the path, a tree diff is needed to be sure. */
+		MAYBE_CHANGED,
+		/** there is no filter for the commit (not in the graph or written without --changed-paths). */
+		NOT_AVAILABLE;
+	}
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int SIGNATURE = 0x43475048; // CGPH
+
+	private static final int CHUNK_OID_FANOUT = 0x4f494446; // OIDF
+
+	private static final int CHUNK_OID_LOOKUP = 0x4f49444c; // OIDL
+
+	private static final int CHUNK_COMMIT_DATA = 0x43444154; // CDAT
+
+	private static final int CHUNK_EXTRA_EDGES = 0x45444745; // EDGE
+
+	private static final int CHUNK_BLOOM_INDEXES = 0x42494458; // BIDX
+
+	private static final int CHUNK_BLOOM_DATA = 0x42444154; // BDAT
+
+	private static final int PARENT_NONE = 0x70000000;
+
+	private static final int EXTRA_EDGES_NEEDED = 0x80000000;
+
+	private static final int LAST_EDGE = 0x80000000;
+
+	private static final int COMMIT_DATA_WIDTH = Constants.OBJECT_ID_LENGTH + 16;
+
+	private static final int BLOOM_DATA_HEADER_SIZE = 12;
+
+	private static final int BLOOM_SEED_0 = 0x293ae76f;
+
+	private static final int BLOOM_SEED_1 = 0x7e646e2c;
+
+	// the layers of the graph, the base first.
+	private final List<Layer> layers;
+
+	private final int commitCount;
+
+	private CommitGraph(List<Layer> layers) {
+
+		this.layers = layers;
+
+		Layer top = layers.get(layers.size() - 1);
+
+		this.commitCount = top.baseCount + top.commitCount;
+	}
+
+	/**
+	 * Read the commit-graph of the repository.
+	 *
+	 * @return the graph or null if the repository does not have one.
+	 * @throws IOException if the graph is not readable.
+	 */
+	public static CommitGraph open(Repository repository) throws IOException {
+		return open(new File(repository.getDirectory(), "objects"));
+	}
+
+	/**
+	 * Read the commit-graph under the objects directory given.
+	 *
+	 * @return the graph or null if there is none.
+	 * @throws IOException if the graph is not readable.
+	 */
+	public static CommitGraph open(File objectsDirectory) throws IOException {
+
+		File info = new File(objectsDirectory, "info");
+
+		List<Layer> layers = new ArrayList<Layer>();
+
+		File single = new File(info, "commit-graph");
+
+		File chain = new File(info, "commit-graphs/commit-graph-chain");
+
+		// git prefers the single file when both exist.
+		if (single.isFile()) {
+			layers.add(new Layer(FileUtils.readFileToByteArray(single), 0));
+		}
+		else if (chain.isFile()) {
+
+			int baseCount = 0;
+
+			for (String hash : FileUtils.readLines(chain, "UTF-8")) {
+
+				hash = hash.trim();
+
+				if (hash.isEmpty())
+					continue;
+
+				Layer layer = new Layer(FileUtils.readFileToByteArray(new File(chain.getParentFile(), "graph-" + hash + ".graph")), baseCount);
+
+				layers.add(layer);
+
+				baseCount += layer.commitCount;
+			}
+		}
+
+		if (layers.isEmpty())
+			return null;
+
+		return new CommitGraph(layers);
+	}
+
+	/**
+	 * @return the number of commits in the graph.
+	 */
+	public int getCommitCount() {
+		return commitCount;
+	}
+
+	/**
+	 * @return true if the commit is in the graph.
+	 */
+	public boolean contains(AnyObjectId commitId) {
+		return findPosition(commitId) >= 0;
+	}
+
+	/**
+	 * @return the generation number (topological level) of the commit or -1 if it is not in the graph.  The generation of
+	 *         a commit is always greater than those of its parents.
+	 */
+	public int getGeneration(AnyObjectId commitId) {
+
+		int position = findPosition(commitId);
+
+		if (position < 0)
+			return -1;
+
+		return getGeneration(position);
+	}
+
+	/**
+	 * @return the committer time (seconds since the epoch) of the commit or -1 if it is not in the graph.
+	 */
+	public long getCommitTime(AnyObjectId commitId) {
+
+		int position = findPosition(commitId);
+
+		if (position < 0)
+			return -1;
+
+		Layer layer = layerOf(position);
+
+		int offset = layer.commitDataOffset(position - layer.baseCount) + Constants.OBJECT_ID_LENGTH + 8;
+
+		long high = layer.buffer.getInt(offset) & 0xffffffffL;
+
+		long low = layer.buffer.getInt(offset + 4) & 0xffffffffL;
+
+		return ((high & 0x3) << 32) | low;
+	}
+
+	/**
+	 * @return the parents of the commit or null if it is not in the graph.
+	 */
+	public ObjectId[] getParents(AnyObjectId commitId) {
+
+		int position = findPosition(commitId);
+
+		if (position < 0)
+			return null;
+
+		int[] parents = getParentPositions(position);
+
+		ObjectId[] parentIds = new ObjectId[parents.length];
+
+		for (int i = 0; i < parents.length; i++) {
+			parentIds[i] = getObjectId(parents[i]);
+		}
+
+		return parentIds;
+	}
+
+	/**
+	 * Ask the changed path Bloom filter of the commit if it changed the path relative to its first parent.
+	 *
+	 * Git adds every leading directory of a changed file to the filter so a module directory (i.e. ks-core) can be asked
+	 * for as well as a file.
+	 *
+	 * @param commitId the commit.
+	 * @param path the slash separated path without a trailing slash.
+	 */
+	public PathFilterResult mayHaveChanged(AnyObjectId commitId, String path) {
+
+		int position = findPosition(commitId);
+
+		if (position < 0)
+			return PathFilterResult.NOT_AVAILABLE;
+
+		Layer layer = layerOf(position);
+
+		if (layer.bloomIndexesOffset < 0 || layer.bloomDataOffset < 0)
+			return PathFilterResult.NOT_AVAILABLE;
+
+		int local = position - layer.baseCount;
+
+		int end = layer.buffer.getInt(layer.bloomIndexesOffset + 4 * local);
+
+		int start = local == 0 ? 0 : layer.buffer.getInt(layer.bloomIndexesOffset + 4 * (local - 1));
+
+		int length = end - start;
+
+		if (length <= 0)
+			return PathFilterResult.NOT_AVAILABLE;
+
+		int filterOffset = layer.bloomDataOffset + BLOOM_DATA_HEADER_SIZE + start;
+
+		int[] hashes = bloomKey(path.getBytes(UTF_8), layer.bloomHashVersion, layer.bloomHashCount);
+
+		long bits = (long) length * 8;
+
+		for (int hash : hashes) {
+
+			long bit = (hash & 0xffffffffL) % bits;
+
+			int filterByte = layer.buffer.get(filterOffset + (int) (bit / 8)) & 0xff;
+
+			if ((filterByte & (1 << (bit % 8))) == 0)
+				return PathFilterResult.NOT_CHANGED;
+		}
+
+		return PathFilterResult.MAYBE_CHANGED;
+	}
+
+	/*
+	 * The position of the commit over all layers or -1.
+	 */
+	private int findPosition(AnyObjectId commitId) {
+
+		for (int i = layers.size() - 1; i >= 0; i--) {
+
+			int local = layers.get(i).find(commitId);
+
+			if (local >= 0)
+				return layers.get(i).baseCount + local;
+		}
+
+		return -1;
+	}
+
+	private int getGeneration(int position) {
+
+		Layer layer = layerOf(position);
+
+		int offset = layer.commitDataOffset(position - layer.baseCount) + Constants.OBJECT_ID_LENGTH + 8;
+
+		return layer.buffer.getInt(offset) >>> 2;
+	}
+
+	private int[] getParentPositions(int position) {
+
+		Layer layer = layerOf(position);
+
+		int offset = layer.commitDataOffset(position - layer.baseCount) + Constants.OBJECT_ID_LENGTH;
+
+		int first = layer.buffer.getInt(offset);
+
+		int second = layer.buffer.getInt(offset + 4);
+
+		if (first == PARENT_NONE)
+			return new int[0];
+
+		if (second == PARENT_NONE)
+			return new int[] { first };
+
+		if ((second & EXTRA_EDGES_NEEDED) == 0)
+			return new int[] { first, second };
+
+		// octopus merge, the other parents are in the extra edge list.
+		List<Integer> parents = new ArrayList<Integer>();
+
+		parents.add(first);
+
+		int edgeOffset = layer.extraEdgesOffset + 4 * (second & ~EXTRA_EDGES_NEEDED);
+
+		while (true) {
+
+			int edge = layer.buffer.getInt(edgeOffset);
+
+			parents.add(edge & ~LAST_EDGE);
+
+			if ((edge & LAST_EDGE) != 0)
+				break;
+
+			edgeOffset += 4;
+		}
+
+		int[] positions = new int[parents.size()];
+
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = parents.get(i);
+		}
+
+		return positions;
+	}
+
+	private ObjectId getObjectId(int position) {
+
+		Layer layer = layerOf(position);
+
+		return ObjectId.fromRaw(layer.data, layer.oidLookupOffset + (position - layer.baseCount) * Constants.OBJECT_ID_LENGTH);
+	}
+
+	private Layer layerOf(int position) {
+
+		for (int i = layers.size() - 1; i >= 0; i--) {
+
+			if (position >= layers.get(i).baseCount)
+				return layers.get(i);
+		}
+
+		throw new IllegalArgumentException("no commit at position " + position);
+	}
+
+	/*
+	 * bloom.c fill_bloom_key: the i'th hash is murmur3(seed0) + i * murmur3(seed1).
+	 */
+	static int[] bloomKey(byte[] path, int hashVersion, int hashCount) {
+
+		int hash0 = murmur3(BLOOM_SEED_0, path, hashVersion);
+
+		int hash1 = murmur3(BLOOM_SEED_1, path, hashVersion);
+
+		int[] hashes = new int[hashCount];
+
+		for (int i = 0; i < hashCount; i++) {
+			hashes[i] = hash0 + i * hash1;
+		}
+
+		return hashes;
+	}
+
+	/*
+	 * 32 bit murmur3 as in bloom.c.  Version 1 filters were written by a git that read the bytes as signed chars, which only
+	 * differs for non ASCII paths.
+	 */
+	static int murmur3(int seed, byte[] data, int hashVersion) {
+
+		final int c1 = 0xcc9e2d51;
+		final int c2 = 0x1b873593;
+
+		int hash = seed;
+
+		int blocks = data.length / 4;
+
+		for (int i = 0; i < blocks; i++) {
+
+			int k = byteAt(data, 4 * i, hashVersion)
+					| (byteAt(data, 4 * i + 1, hashVersion) << 8)
+					| (byteAt(data, 4 * i + 2, hashVersion) << 16)
+					| (byteAt(data, 4 * i + 3, hashVersion) << 24);
+
+			k *= c1;
+			k = Integer.rotateLeft(k, 15);
+			k *= c2;
+
+			hash ^= k;
+			hash = Integer.rotateLeft(hash, 13) * 5 + 0xe6546b64;
+		}
+
+		int tail = blocks * 4;
+
+		int k1 = 0;
+
+		switch (data.length & 3) {
+		case 3:
+			k1 ^= byteAt(data, tail + 2, hashVersion) << 16;
+		case 2:
+			k1 ^= byteAt(data, tail + 1, hashVersion) << 8;
+		case 1:
+			k1 ^= byteAt(data, tail, hashVersion);
+			k1 *= c1;
+			k1 = Integer.rotateLeft(k1, 15);
+			k1 *= c2;
+			hash ^= k1;
+		}
+
+		hash ^= data.length;
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+
+		return hash;
+	}
+
+	private static int byteAt(byte[] data, int index, int hashVersion) {
+		return hashVersion == 1 ? data[index] : data[index] & 0xff;
+	}
+
+	/**
+	 * One commit-graph file.
+	 */
+	private static final class Layer {
+
+		private final byte[] data;
+
+		private final ByteBuffer buffer;
+
+		// the number of commits in the layers below this one.
+		private final int baseCount;
+
+		private final int commitCount;
+
+		private int fanoutOffset = -1;
+
+		private int oidLookupOffset = -1;
+
+		private int commitDataOffset = -1;
+
+		private int extraEdgesOffset = -1;
+
+		private int bloomIndexesOffset = -1;
+
+		private int bloomDataOffset = -1;
+
+		private int bloomHashVersion;
+
+		private int bloomHashCount;
+
+		private Layer(byte[] data, int baseCount) throws IOException {
+
+			this.data = data;
+			this.buffer = ByteBuffer.wrap(data);
+			this.baseCount = baseCount;
+
+			if (data.length < 8 || buffer.getInt(0) != SIGNATURE)
+				throw new IOException("not a commit-graph file");
+
+			if (data[4] != 1)
+				throw new IOException("unsupported commit-graph version " + data[4]);
+
+			if (data[5] != 1)
+				throw new IOException("unsupported commit-graph hash version " + data[5]);
+
+			int chunkCount = data[6] & 0xff;
+
+			for (int i = 0; i < chunkCount; i++) {
+
+				int entry = 8 + 12 * i;
+
+				int chunkId = buffer.getInt(entry);
+
+				int offset = (int) buffer.getLong(entry + 4);
+
+				switch (chunkId) {
+				case CHUNK_OID_FANOUT:
+					fanoutOffset = offset;
+					break;
+				case CHUNK_OID_LOOKUP:
+					oidLookupOffset = offset;
+					break;
+				case CHUNK_COMMIT_DATA:
+					commitDataOffset = offset;
+					break;
+				case CHUNK_EXTRA_EDGES:
+					extraEdgesOffset = offset;
+					break;
+				case CHUNK_BLOOM_INDEXES:
+					bloomIndexesOffset = offset;
+					break;
+				case CHUNK_BLOOM_DATA:
+					bloomDataOffset = offset;
+					break;
+				default:
+					// chunks that are not needed (i.e. generation data, base graphs)
+				}
+			}
+
+			if (fanoutOffset < 0 || oidLookupOffset < 0 || commitDataOffset < 0)
+				throw new IOException("commit-graph is missing a required chunk");
+
+			commitCount = buffer.getInt(fanoutOffset + 4 * 255);
+
+			if (bloomDataOffset >= 0) {
+				bloomHashVersion = buffer.getInt(bloomDataOffset);
+				bloomHashCount = buffer.getInt(bloomDataOffset + 4);
+
+				// filters of an unknown hash are ignored as git does.
+				if (bloomHashVersion != 1 && bloomHashVersion != 2)
+					bloomDataOffset = -1;
+			}
+		}
+
+		private int commitDataOffset(int local) {
+			return commitDataOffset + local * COMMIT_DATA_WIDTH;
+		}
+
+		/*
+		 * Binary search within the fanout bucket of the first byte.
+		 */
+		private int find(AnyObjectId commitId) {
+
+			int firstByte = commitId.getFirstByte();
+
+			int low = firstByte == 0 ? 0 : buffer.getInt(fanoutOffset + 4 * (firstByte - 1));
+
+			int high = buffer.getInt(fanoutOffset + 4 * firstByte);
+
+			while (low < high) {
+
+				int middle = (low + high) >>> 1;
+
+				int compare = commitId.compareTo(data, oidLookupOffset + middle * Constants.OBJECT_ID_LENGTH);
+
+				if (compare == 0)
+					return middle;
+
+				if (compare < 0)
+					high = middle;
+				else
+					low = middle + 1;
+			}
+
+			return -1;
+		}
+	}
+}
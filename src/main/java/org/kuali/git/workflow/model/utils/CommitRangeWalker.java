@@ -0,0 +1,286 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.kuali.git.workflow.model.utils.CommitGraph.PathFilterResult;
+
+/**
+ * @author ocleirig
+ *
+ * Answers history questions about two branches (merge base, the commits of a range and whether a commit touched a path)
+ * using the {@link CommitGraph} where possible.
+ *
+ * With a graph the walks visit commits in generation number order and stop as soon as no interesting commit can be
+ * left, without parsing any commit.  Path questions are first put to the commit's changed path Bloom filter and only the
+ * commits it can't rule out are checked with a tree diff against their first parent.
+ *
+ * Without a graph (or when a tip was added after the graph was written) the same questions are answered through a
+ * RevWalk.
+ *
+ */
+public class CommitRangeWalker {
+
+	private static final int FROM_LEFT = 1;
+
+	private static final int FROM_RIGHT = 2;
+
+	private static final int UNINTERESTING = 4;
+
+	private final Repository repository;
+
+	private final CommitGraph graph;
+
+	private final RevWalk rw;
+
+	private int bloomFilterAnswers = 0;
+
+	private int treeDiffAnswers = 0;
+
+	/**
+	 * @param repository the repository to walk.
+	 * @param graph the commit-graph of the repository, null to always walk through JGit.
+	 */
+	public CommitRangeWalker(Repository repository, CommitGraph graph) {
+		this.repository = repository;
+		this.graph = graph;
+		this.rw = new RevWalk(repository);
+	}
+
+	/**
+	 * @return the best common ancestor of the commits or null if they have none.
+	 * @throws IOException
+	 */
+	public ObjectId mergeBase(ObjectId left, ObjectId right) throws IOException {
+
+		if (!inGraph(left, right)) {
+
+			rw.reset();
+			rw.setRevFilter(RevFilter.MERGE_BASE);
+			rw.markStart(rw.parseCommit(left));
+			rw.markStart(rw.parseCommit(right));
+
+			RevCommit base = rw.next();
+
+			ObjectId baseId = base == null ? null : base.copy();
+
+			rw.reset();
+			rw.setRevFilter(RevFilter.ALL);
+
+			return baseId;
+		}
+
+		/*
+		 * Paint down from both sides in generation order.  All children of a commit have a higher generation so when a
+		 * commit is taken off the queue its flags are final and the first commit reached from both sides is a merge base.
+		 */
+		Map<ObjectId, Integer> flags = new HashMap<ObjectId, Integer>();
+
+		PriorityQueue<ObjectId> queue = newGenerationQueue();
+
+		paint(flags, queue, left, FROM_LEFT);
+		paint(flags, queue, right, FROM_RIGHT);
+
+		while (!queue.isEmpty()) {
+
+			ObjectId commit = queue.poll();
+
+			int commitFlags = flags.get(commit);
+
+			if (commitFlags == (FROM_LEFT | FROM_RIGHT))
+				return commit;
+
+			for (ObjectId parent : graph.getParents(commit)) {
+				paint(flags, queue, parent, commitFlags);
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return the commits reachable from include but not from exclude (git rev-list exclude..include).  Through the graph
+	 *         they are in generation order, highest first, so a commit always comes before its parents.  The RevWalk
+	 *         fallback returns them by commit time, newest first.
+	 * @throws IOException
+	 */
+	public List<ObjectId> commitsBetween(ObjectId exclude, ObjectId include) throws IOException {
+
+		List<ObjectId> commits = new ArrayList<ObjectId>();
+
+		if (!inGraph(exclude, include)) {
+
+			rw.reset();
+			rw.markStart(rw.parseCommit(include));
+			rw.markUninteresting(rw.parseCommit(exclude));
+
+			for (RevCommit commit : rw) {
+				commits.add(commit.copy());
+			}
+
+			return commits;
+		}
+
+		Map<ObjectId, Integer> flags = new HashMap<ObjectId, Integer>();
+
+		PriorityQueue<ObjectId> queue = newGenerationQueue();
+
+		paint(flags, queue, exclude, UNINTERESTING);
+		paint(flags, queue, include, FROM_LEFT);
+
+		int interestingQueued = flags.get(include) == FROM_LEFT ? 1 : 0;
+
+		// once only uninteresting commits are queued nothing else can be added to the range.
+		while (interestingQueued > 0) {
+
+			ObjectId commit = queue.poll();
+
+			int commitFlags = flags.get(commit);
+
+			boolean interesting = (commitFlags & UNINTERESTING) == 0;
+
+			if (interesting) {
+				interestingQueued--;
+				commits.add(commit);
+			}
+
+			for (ObjectId parent : graph.getParents(commit)) {
+
+				Integer before = flags.get(parent);
+
+				boolean wasInterestingQueued = before != null && (before & UNINTERESTING) == 0;
+
+				paint(flags, queue, parent, interesting ? FROM_LEFT : UNINTERESTING);
+
+				boolean isInterestingQueued = (flags.get(parent) & UNINTERESTING) == 0;
+
+				if (isInterestingQueued && !wasInterestingQueued)
+					interestingQueued++;
+				else if (wasInterestingQueued && !isInterestingQueued)
+					interestingQueued--;
+			}
+		}
+
+		return commits;
+	}
+
+	/**
+	 * @param commitId the commit.
+	 * @param path a slash separated file or directory path (i.e. a module name).
+	 * @return true if the commit changed something under the path relative to its first parent (or, for a root commit,
+	 *         if the path exists in it).
+	 * @throws IOException
+	 */
+	public boolean touches(ObjectId commitId, String path) throws IOException {
+
+		if (graph != null) {
+
+			ObjectId[] parents = graph.getParents(commitId);
+
+			// the filters are only against the first parent so merges still need the tree diff.
+			if (parents != null && parents.length == 1 && graph.mayHaveChanged(commitId, path) == PathFilterResult.NOT_CHANGED) {
+				bloomFilterAnswers++;
+				return false;
+			}
+		}
+
+		treeDiffAnswers++;
+
+		RevCommit commit = rw.parseCommit(commitId);
+
+		TreeWalk tw = new TreeWalk(repository);
+
+		try {
+			tw.setRecursive(true);
+
+			if (commit.getParentCount() > 0) {
+				tw.addTree(rw.parseCommit(commit.getParent(0)).getTree());
+				tw.addTree(commit.getTree());
+				tw.setFilter(AndTreeFilter.create(PathFilter.create(path), TreeFilter.ANY_DIFF));
+			}
+			else {
+				tw.addTree(commit.getTree());
+				tw.setFilter(PathFilter.create(path));
+			}
+
+			return tw.next();
+		}
+		finally {
+			tw.release();
+		}
+	}
+
+	/**
+	 * @return the number of path questions answered by a Bloom filter alone.
+	 */
+	public int getBloomFilterAnswers() {
+		return bloomFilterAnswers;
+	}
+
+	/**
+	 * @return the number of path questions that needed a tree diff.
+	 */
+	public int getTreeDiffAnswers() {
+		return treeDiffAnswers;
+	}
+
+	public void release() {
+		rw.release();
+	}
+
+	private boolean inGraph(ObjectId left, ObjectId right) {
+		return graph != null && graph.contains(left) && graph.contains(right);
+	}
+
+	/*
+	 * Highest generation first.
+	 */
+	private PriorityQueue<ObjectId> newGenerationQueue() {
+
+		return new PriorityQueue<ObjectId>(64, new Comparator<ObjectId>() {
+
+			@Override
+			public int compare(ObjectId o1, ObjectId o2) {
+
+				int generation1 = graph.getGeneration(o1);
+				int generation2 = graph.getGeneration(o2);
+
+				return generation1 == generation2 ? o1.compareTo(o2) : (generation1 > generation2 ? -1 : 1);
+			}
+		});
+	}
+
+	/*
+	 * Add the flag to the commit and queue it if it was not seen before.  Flags can only be added while the commit is
+	 * still queued since its children are all taken off the queue first.
+	 */
+	private static void paint(Map<ObjectId, Integer> flags, PriorityQueue<ObjectId> queue, ObjectId commit, int flag) {
+
+		Integer current = flags.get(commit);
+
+		if (current == null) {
+			flags.put(commit, flag);
+			queue.add(commit);
+		}
+		else {
+			flags.put(commit, current | flag);
+		}
+	}
+}
@@ -0,0 +1,286 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.kohsuke.github.GHCommitState;
+import org.kohsuke.github.GHCommitStatus;
+import org.kohsuke.github.GHRepository;
+
+/**
+ * @author ocleirig
+ *
+ * Publishes commit statuses while keeping the number of api calls to a minimum.
+ *
+ * The current statuses of a commit are listed once and cached by context.  Updates are queued and successive updates for
+ * the same commit and context are coalesced so that only the last one is sent, so callers should queue everything they
+ * have for a run and flush once.  When the queue is flushed any update that matches the latest status already registered
+ * for its context is skipped and the rest are posted concurrently.
+ *
+ * The statuses of each commit are only listed once, by the first flush (or {@link #getCurrentStatuses(String)}) that needs
+ * them, and are kept up to date as updates are posted so they can be read back after a flush without another call.
+ *
+ */
+public class CommitStatusPublisher {
+
+	private final GHRepository repo;
+
+	private final Log log;
+
+	private int threads = 4;
+
+	// commit id -> context -> latest status
+	private final ConcurrentMap<String, Map<String, StatusUpdate>> currentStatuses = new ConcurrentHashMap<String, Map<String, StatusUpdate>>();
+
+	// commit id + context -> update, in the order first queued.
+	private final Map<String, StatusUpdate> pendingUpdates = new LinkedHashMap<String, StatusUpdate>();
+
+	/**
+	 *
+	 */
+	public CommitStatusPublisher(GHRepository repo, Log log) {
+		this.repo = repo;
+		this.log = log;
+	}
+
+	/**
+	 * @param threads the number of updates that can be posted at the same time.
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Queue a status update.  It replaces any update that is already queued for the same commit and context.
+	 *
+	 * @param commitId the commit the status is for.
+	 * @param state the state of the status.
+	 * @param ciUrl the target url, may be null.
+	 * @param description the description, may be null.
+	 * @param context the context the status is registered under.
+	 */
+	public synchronized void queue (String commitId, GHCommitState state, String ciUrl, String description, String context) {
+
+		String key = commitId + " " + StringUtils.defaultString(context);
+
+		if (pendingUpdates.put(key, new StatusUpdate(commitId, state, ciUrl, description, context)) != null)
+			log.debug("coalesced status update for " + key);
+	}
+
+	/**
+	 * Return the latest status of each context registered on the commit given.
+	 *
+	 * The statuses are listed through the api the first time a commit is asked for and then kept up to date as updates are
+	 * published.
+	 *
+	 * @return context -> latest status
+	 * @throws IOException
+	 */
+	public Map<String, StatusUpdate> getCurrentStatuses(String commitId) throws IOException {
+
+		Map<String, StatusUpdate> statuses = currentStatuses.get(commitId);
+
+		if (statuses != null)
+			return Collections.unmodifiableMap(statuses);
+
+		statuses = new ConcurrentHashMap<String, StatusUpdate>();
+
+		// the api lists the newest status first so the first one seen for a context is its current state.
+		for (StatusUpdate status : listStatuses(commitId)) {
+
+			if (!statuses.containsKey(status.getContext()))
+				statuses.put(status.getContext(), status);
+		}
+
+		Map<String, StatusUpdate> existing = currentStatuses.putIfAbsent(commitId, statuses);
+
+		if (existing != null)
+			statuses = existing;
+
+		return Collections.unmodifiableMap(statuses);
+	}
+
+	/**
+	 * Post all of the queued updates that would change the current status of their context.
+	 *
+	 * @return the number of updates that were posted.
+	 * @throws IOException if any of the updates failed, the others are still attempted.
+	 */
+	public int flush() throws IOException {
+
+		List<StatusUpdate> updates;
+
+		synchronized (this) {
+			updates = new ArrayList<StatusUpdate>(pendingUpdates.values());
+			pendingUpdates.clear();
+		}
+
+		List<StatusUpdate> changedUpdates = new ArrayList<StatusUpdate>();
+
+		for (StatusUpdate update : updates) {
+
+			StatusUpdate current = getCurrentStatuses(update.getCommitId()).get(update.getContext());
+
+			if (update.isSameAs(current)) {
+				log.info(String.format("status: (commit, context, state) = (%s, %s, %s) is already registered, skipping.", update.getCommitId(), update.getContext(), update.getState().name()));
+				continue;
+			}
+
+			changedUpdates.add(update);
+		}
+
+		if (changedUpdates.isEmpty())
+			return 0;
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, changedUpdates.size()));
+
+		try {
+
+			List<Future<StatusUpdate>> futures = new ArrayList<Future<StatusUpdate>>();
+
+			for (final StatusUpdate update : changedUpdates) {
+
+				futures.add(executor.submit(new Callable<StatusUpdate>() {
+
+					@Override
+					public StatusUpdate call() throws Exception {
+
+						post(update);
+
+						return update;
+					}
+				}));
+			}
+
+			int posted = 0;
+
+			IOException failure = null;
+
+			for (Future<StatusUpdate> future : futures) {
+
+				try {
+					StatusUpdate update = future.get();
+
+					currentStatuses.get(update.getCommitId()).put(update.getContext(), update);
+
+					posted++;
+
+				} catch (ExecutionException e) {
+
+					if (failure == null)
+						failure = new IOException("failed to publish commit status", e.getCause());
+
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("interrupted while publishing commit statuses", e);
+				}
+			}
+
+			if (failure != null)
+				throw failure;
+
+			return posted;
+
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * List the statuses registered on the commit, newest first.
+	 *
+	 * @throws IOException
+	 */
+	protected List<StatusUpdate> listStatuses(String commitId) throws IOException {
+
+		List<StatusUpdate> statuses = new ArrayList<StatusUpdate>();
+
+		for (GHCommitStatus status : repo.listCommitStatuses(commitId)) {
+			statuses.add(new StatusUpdate(commitId, status.getState(), status.getTargetUrl(), status.getDescription(), status.getContext()));
+		}
+
+		return statuses;
+	}
+
+	/**
+	 * Register the status on its commit.
+	 *
+	 * @throws IOException
+	 */
+	protected void post(StatusUpdate update) throws IOException {
+		repo.createCommitStatus(update.getCommitId(), update.getState(), update.getTargetUrl(), update.getDescription(), update.getContext());
+	}
+
+	/**
+	 * A commit status that has been or will be registered.
+	 */
+	public static final class StatusUpdate {
+
+		private final String commitId;
+
+		private final GHCommitState state;
+
+		private final String targetUrl;
+
+		private final String description;
+
+		private final String context;
+
+		StatusUpdate(String commitId, GHCommitState state, String targetUrl, String description, String context) {
+			this.commitId = commitId;
+			this.state = state;
+			this.targetUrl = targetUrl;
+			this.description = description;
+			this.context = StringUtils.defaultString(context);
+		}
+
+		public String getCommitId() {
+			return commitId;
+		}
+
+		public GHCommitState getState() {
+			return state;
+		}
+
+		public String getTargetUrl() {
+			return targetUrl;
+		}
+
+		public String getDescription() {
+			return description;
+		}
+
+		public String getContext() {
+			return context;
+		}
+
+		/*
+		 * True if posting this update would not change the current status.
+		 */
+		private boolean isSameAs(StatusUpdate current) {
+
+			if (current == null)
+				return false;
+
+			return state == current.state
+					&& StringUtils.defaultString(targetUrl).equals(StringUtils.defaultString(current.targetUrl))
+					&& StringUtils.defaultString(description).equals(StringUtils.defaultString(current.description));
+		}
+	}
+}
@@ -0,0 +1,466 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+
+/**
+ * @author ocleirig
+ *
+ * Decides if the change between two versions of a file is only cosmetic (whitespace, comments or documentation).
+ *
+ * Both blobs are streamed through a normalizer that drops comments and whitespace (keeping a single space where it
+ * separates two words) and the normalized streams are compared character by character.  Nothing is loaded fully into memory
+ * so this is safe to use on large files.
+ *
+ * Where a line break can end a statement, a directive or an entry (javascript, the c preprocessor, properties and shell
+ * files) the syntax keeps the line breaks and only blank lines and the whitespace within a line are dropped.
+ *
+ * Whenever a file type is not configured the change is treated as substantive.  Indentation is never significant to the
+ * normalizer so languages where indentation has meaning (python, yaml) are not configured by default.
+ *
+ */
+public class CosmeticChangeFilter {
+
+	private static final String UTF_8 = "UTF-8";
+
+	/**
+	 * How comments are written in a file type.
+	 */
+	public static enum CommentSyntax {
+		/*
+		 * // line and block comments, " and ' quoted literals.
+		 */
+		C_STYLE,
+		/*
+		 * // line and block comments like C_STYLE but line breaks are kept, for languages where a line break can end a
+		 * statement or a directive (javascript, c).
+		 */
+		C_STYLE_LINES,
+		/*
+		 * block comments only, " and ' quoted literals (// is not a comment, i.e. url(http://...)).
+		 */
+		CSS,
+		/*
+		 * -- line and block comments, ' and " quoted literals.
+		 */
+		SQL,
+		/*
+		 * <!-- --> comments.
+		 */
+		XML,
+		/*
+		 * # comments at the start of a line, line breaks are kept.
+		 */
+		HASH,
+		/*
+		 * Documentation only, any change is cosmetic unless the file is in a src/main or src/test source set where it may be
+		 * packaged or read by the code.
+		 */
+		DOCUMENTATION;
+	}
+
+	private final Map<String, CommentSyntax> syntaxByExtension = new HashMap<String, CommentSyntax>();
+
+	/**
+	 * Create a filter for the default file types.
+	 */
+	public CosmeticChangeFilter() {
+
+		for (String extension : new String[] {"java", "groovy"}) {
+			syntaxByExtension.put(extension, CommentSyntax.C_STYLE);
+		}
+
+		for (String extension : new String[] {"js", "c", "h", "cpp"}) {
+			syntaxByExtension.put(extension, CommentSyntax.C_STYLE_LINES);
+		}
+
+		for (String extension : new String[] {"css", "less"}) {
+			syntaxByExtension.put(extension, CommentSyntax.CSS);
+		}
+
+		syntaxByExtension.put("sql", CommentSyntax.SQL);
+
+		for (String extension : new String[] {"xml", "xsd", "xsl", "html", "xhtml", "ftl"}) {
+			syntaxByExtension.put(extension, CommentSyntax.XML);
+		}
+
+		for (String extension : new String[] {"properties", "sh"}) {
+			syntaxByExtension.put(extension, CommentSyntax.HASH);
+		}
+
+		for (String extension : new String[] {"md", "apt", "rst", "adoc"}) {
+			syntaxByExtension.put(extension, CommentSyntax.DOCUMENTATION);
+		}
+	}
+
+	/**
+	 * Create a filter for the configured file types.
+	 *
+	 * @param fileTypes in the form of extension=SYNTAX (i.e. java=C_STYLE) where the syntax is one of {@link CommentSyntax}.
+	 * @throws IllegalArgumentException if a file type is malformed.
+	 */
+	public CosmeticChangeFilter(List<String> fileTypes) {
+
+		for (String fileType : fileTypes) {
+
+			String[] parts = fileType.trim().split("=");
+
+			if (parts.length != 2)
+				throw new IllegalArgumentException("Expected extension=SYNTAX but found: " + fileType);
+
+			syntaxByExtension.put(parts[0].trim().toLowerCase(Locale.ENGLISH), CommentSyntax.valueOf(parts[1].trim().toUpperCase(Locale.ENGLISH)));
+		}
+	}
+
+	/**
+	 * @return the comment syntax for the path given or null if the file type is not configured.
+	 */
+	public CommentSyntax getSyntax(String path) {
+
+		int slash = path.lastIndexOf('/');
+
+		int dot = path.lastIndexOf('.');
+
+		if (dot == -1 || dot < slash)
+			return null;
+
+		return syntaxByExtension.get(path.substring(dot + 1).toLowerCase(Locale.ENGLISH));
+	}
+
+	/*
+	 * Files under src/main or src/test can be resources that are packaged or read by the tests.
+	 */
+	private static boolean isInSourceSet(String path) {
+
+		String normalized = "/" + path;
+
+		return normalized.contains("/src/main/") || normalized.contains("/src/test/");
+	}
+
+	/**
+	 * Decide if the change from the original blob to the new blob is only cosmetic.
+	 *
+	 * @param reader to stream the blobs.
+	 * @param path the path of the file.
+	 * @param originalId the original blob or the zero id if the file was added.
+	 * @param newId the new blob or the zero id if the file was deleted.
+	 * @return true if the change does not alter the meaning of the file.
+	 * @throws IOException
+	 */
+	public boolean isCosmetic(ObjectReader reader, String path, ObjectId originalId, ObjectId newId) throws IOException {
+
+		CommentSyntax syntax = getSyntax(path);
+
+		if (syntax == null)
+			return false;
+
+		if (syntax == CommentSyntax.DOCUMENTATION)
+			return !isInSourceSet(path);
+
+		if (ObjectId.zeroId().equals(originalId) || ObjectId.zeroId().equals(newId))
+			return false; // adding or removing a source file is never cosmetic.
+
+		Reader original = new BufferedReader(new InputStreamReader(reader.open(originalId).openStream(), UTF_8));
+
+		try {
+			Reader changed = new BufferedReader(new InputStreamReader(reader.open(newId).openStream(), UTF_8));
+
+			try {
+				return isEquivalent(original, changed, syntax);
+			}
+			finally {
+				changed.close();
+			}
+		}
+		finally {
+			original.close();
+		}
+	}
+
+	/**
+	 * Compare the two character streams after normalizing away whitespace and comments.
+	 *
+	 * @return true if the normalized content is the same.
+	 * @throws IOException
+	 */
+	public static boolean isEquivalent(Reader original, Reader changed, CommentSyntax syntax) throws IOException {
+
+		NormalizingReader left = new NormalizingReader(original, syntax);
+
+		NormalizingReader right = new NormalizingReader(changed, syntax);
+
+		while (true) {
+
+			int l = left.read();
+
+			int r = right.read();
+
+			if (l != r)
+				return false;
+
+			if (l == -1)
+				return true;
+		}
+	}
+
+	/*
+	 * Returns the significant characters of the underlying stream one at a time.
+	 */
+	private static final class NormalizingReader {
+
+		private final PushbackReader input;
+
+		private final CommentSyntax syntax;
+
+		private boolean atLineStart = true;
+
+		private boolean pendingSeparator = false;
+
+		// only set when the syntax keeps line breaks.
+		private boolean pendingLineBreak = false;
+
+		private int lastEmitted = -1;
+
+		// the quote character of the literal being copied or -1 if not in a literal.
+		private int literalQuote = -1;
+
+		// a character read ahead that still needs to be returned.
+		private int buffered = -1;
+
+		private NormalizingReader(Reader input, CommentSyntax syntax) {
+			this.input = new PushbackReader(input, 4);
+			this.syntax = syntax;
+		}
+
+		private int read() throws IOException {
+
+			if (buffered != -1) {
+				int c = buffered;
+				buffered = -1;
+				return emit(c);
+			}
+
+			if (literalQuote != -1)
+				return readLiteral();
+
+			while (true) {
+
+				int c = input.read();
+
+				if (c == -1)
+					return -1;
+
+				if (c == '\n' || c == '\r') {
+					lineBreak();
+					continue;
+				}
+
+				if (Character.isWhitespace(c)) {
+					pendingSeparator = true;
+					continue;
+				}
+
+				if (skipComment(c)) {
+					pendingSeparator = true;
+					continue;
+				}
+
+				atLineStart = false;
+
+				if (isQuote(c))
+					literalQuote = c;
+
+				if (pendingSeparator) {
+
+					pendingSeparator = false;
+
+					if (pendingLineBreak) {
+
+						pendingLineBreak = false;
+
+						// blank lines and the line breaks before the first character are not kept.
+						if (lastEmitted != -1) {
+							buffered = c;
+							return emit('\n');
+						}
+					}
+
+					if (isWordCharacter(lastEmitted) && isWordCharacter(c)) {
+						// keep one space so that 'int x' does not match 'intx'
+						buffered = c;
+						return emit(' ');
+					}
+				}
+
+				return emit(c);
+			}
+		}
+
+		private int readLiteral() throws IOException {
+
+			int c = input.read();
+
+			if (c == -1)
+				return -1;
+
+			if (c == '\\' && (syntax == CommentSyntax.C_STYLE || syntax == CommentSyntax.C_STYLE_LINES)) {
+
+				int escaped = input.read();
+
+				if (escaped != -1)
+					buffered = escaped;
+
+				return emit(c);
+			}
+
+			if (c == literalQuote)
+				literalQuote = -1;
+
+			return emit(c);
+		}
+
+		private int emit(int c) {
+			lastEmitted = c;
+			return c;
+		}
+
+		private void lineBreak() {
+
+			atLineStart = true;
+			pendingSeparator = true;
+
+			if (syntax == CommentSyntax.C_STYLE_LINES || syntax == CommentSyntax.HASH)
+				pendingLineBreak = true;
+		}
+
+		private boolean isQuote(int c) {
+
+			switch (syntax) {
+			case C_STYLE:
+			case C_STYLE_LINES:
+			case CSS:
+			case SQL:
+				return c == '"' || c == '\'';
+			default:
+				return false;
+			}
+		}
+
+		/*
+		 * If c starts a comment consume the comment and return true.
+		 */
+		private boolean skipComment(int c) throws IOException {
+
+			switch (syntax) {
+			case C_STYLE:
+			case C_STYLE_LINES:
+				if (c == '/') {
+					if (lookingAt("/"))
+						return skipToEndOfLine();
+					if (lookingAt("*"))
+						return skipPast("*/");
+				}
+				return false;
+			case CSS:
+				if (c == '/' && lookingAt("*"))
+					return skipPast("*/");
+				return false;
+			case SQL:
+				if (c == '-' && lookingAt("-"))
+					return skipToEndOfLine();
+				if (c == '/' && lookingAt("*"))
+					return skipPast("*/");
+				return false;
+			case XML:
+				if (c == '<' && lookingAt("!--"))
+					return skipPast("-->");
+				return false;
+			case HASH:
+				if (c == '#' && atLineStart)
+					return skipToEndOfLine();
+				return false;
+			default:
+				return false;
+			}
+		}
+
+		/*
+		 * Consume the expected characters if they are next in the stream.
+		 */
+		private boolean lookingAt(String expected) throws IOException {
+
+			char[] next = new char[expected.length()];
+
+			int read = 0;
+
+			while (read < next.length) {
+
+				int c = input.read();
+
+				if (c == -1)
+					break;
+
+				next[read++] = (char) c;
+			}
+
+			if (read == next.length && new String(next).equals(expected))
+				return true;
+
+			input.unread(next, 0, read);
+
+			return false;
+		}
+
+		private boolean skipToEndOfLine() throws IOException {
+
+			int c;
+
+			while ((c = input.read()) != -1) {
+
+				if (c == '\n' || c == '\r') {
+					lineBreak();
+					break;
+				}
+			}
+
+			return true;
+		}
+
+		private boolean skipPast(String terminator) throws IOException {
+
+			StringBuilder window = new StringBuilder(terminator.length() + 1);
+
+			int c;
+
+			while ((c = input.read()) != -1) {
+
+				window.append((char) c);
+
+				if (window.length() > terminator.length())
+					window.deleteCharAt(0);
+
+				if (window.length() == terminator.length() && window.toString().equals(terminator))
+					break;
+			}
+
+			return true;
+		}
+
+		private static boolean isWordCharacter(int c) {
+			return c != -1 && (Character.isLetterOrDigit(c) || c == '_' || c == '$');
+		}
+	}
+}
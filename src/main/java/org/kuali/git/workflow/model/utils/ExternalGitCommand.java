@@ -0,0 +1,203 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * @author ocleirig
+ *
+ * Runs C git against a repository for the operations that JGit does not support (i.e. push --atomic).
+ *
+ * Standard output is captured line by line and standard error is copied to the stream given while the process runs.
+ *
+ */
+public class ExternalGitCommand {
+
+	private static final String UTF_8 = "UTF-8";
+
+	private final String gitCommand;
+
+	private final File gitDirectory;
+
+	private final Map<String, String> environment = new LinkedHashMap<String, String>();
+
+	// -c name=value options given before the git sub command.
+	private final List<String> configOptions = new ArrayList<String>();
+
+	private String input;
+
+	/**
+	 * @param gitCommand the git executable (i.e. git or /usr/local/bin/git)
+	 * @param gitDirectory the .git directory of the repository (or the repository itself if it is bare).
+	 */
+	public ExternalGitCommand(String gitCommand, File gitDirectory) {
+		this.gitCommand = gitCommand;
+		this.gitDirectory = gitDirectory;
+	}
+
+	/**
+	 * Set an environment variable for the git process only.
+	 */
+	public ExternalGitCommand setEnvironment(String name, String value) {
+		environment.put(name, value);
+		return this;
+	}
+
+	/**
+	 * Set a config value for the git process only (git -c name=value).  The same name can be given more than once for
+	 * multi valued options.
+	 */
+	public ExternalGitCommand addConfig(String name, String value) {
+		configOptions.add("-c");
+		configOptions.add(name + "=" + value);
+		return this;
+	}
+
+	/**
+	 * Give the text written to the standard input of git (i.e. the request of git credential fill).  It is written before
+	 * any output is read so it must be small, standard input is empty if it is not set.
+	 */
+	public ExternalGitCommand setInput(String input) {
+		this.input = input;
+		return this;
+	}
+
+	/**
+	 * Run git with the arguments given.
+	 *
+	 * @param arguments the git arguments (i.e. push, --porcelain, origin)
+	 * @param errorOutput where standard error is copied to, may be null to discard it.
+	 * @return the exit code and standard output of the process.
+	 * @throws IOException if git could not be run.
+	 */
+	public Result run(List<String> arguments, final OutputStream errorOutput) throws IOException {
+
+		List<String> command = new ArrayList<String>();
+
+		command.add(gitCommand);
+		command.add("--git-dir=" + gitDirectory.getAbsolutePath());
+		command.addAll(configOptions);
+		command.addAll(arguments);
+
+		ProcessBuilder builder = new ProcessBuilder(command);
+
+		builder.directory(gitDirectory);
+		builder.environment().putAll(environment);
+
+		final Process process = builder.start();
+
+		OutputStream standardInput = process.getOutputStream();
+
+		try {
+			if (input != null)
+				standardInput.write(input.getBytes(UTF_8));
+		}
+		finally {
+			IOUtils.closeQuietly(standardInput);
+		}
+
+		Thread errorPump = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				copyQuietly(process.getErrorStream(), errorOutput);
+			}
+		}, "git-stderr");
+
+		errorPump.setDaemon(true);
+		errorPump.start();
+
+		List<String> outputLines = new ArrayList<String>();
+
+		BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), UTF_8));
+
+		try {
+			String line;
+
+			while ((line = output.readLine()) != null) {
+				outputLines.add(line);
+			}
+		}
+		finally {
+			output.close();
+		}
+
+		try {
+			int exitCode = process.waitFor();
+
+			errorPump.join();
+
+			return new Result(exitCode, outputLines);
+
+		} catch (InterruptedException e) {
+			process.destroy();
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while waiting for " + command, e);
+		}
+	}
+
+	private static void copyQuietly(InputStream input, OutputStream output) {
+
+		try {
+			byte[] buffer = new byte[4096];
+
+			int read;
+
+			while ((read = input.read(buffer)) != -1) {
+
+				if (output != null) {
+					output.write(buffer, 0, read);
+					output.flush();
+				}
+			}
+
+		} catch (IOException e) {
+			// the process is gone, nothing left to copy.
+		} finally {
+			IOUtils.closeQuietly(input);
+		}
+	}
+
+	/**
+	 * The outcome of running git.
+	 */
+	public static final class Result {
+
+		private final int exitCode;
+
+		private final List<String> outputLines;
+
+		private Result(int exitCode, List<String> outputLines) {
+			this.exitCode = exitCode;
+			this.outputLines = outputLines;
+		}
+
+		public int getExitCode() {
+			return exitCode;
+		}
+
+		public boolean isSuccess() {
+			return exitCode == 0;
+		}
+
+		/**
+		 * @return the lines written to standard output.
+		 */
+		public List<String> getOutputLines() {
+			return outputLines;
+		}
+	}
+}
@@ -0,0 +1,182 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jgit.errors.UnsupportedCredentialItem;
+import org.eclipse.jgit.transport.CredentialItem;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.URIish;
+
+/**
+ * @author ocleirig
+ *
+ * Holds the credentials of the remote hosts in memory and hands them to both git engines without writing them anywhere.
+ *
+ * JGit operations use this directly as their {@link CredentialsProvider}.
+ *
+ * For C git the credentials are put into the environment of the git process only and an inline credential helper (given
+ * on the command line with -c) answers git's credential requests from those variables.  The repository config is never
+ * changed and nothing is written to disk.
+ *
+ */
+public class GitCredentials extends CredentialsProvider {
+
+	private static final String ENV_PREFIX = "GIT_WORKFLOW_CREDENTIAL_";
+
+	/*
+	 * Reads the host git is asking about from stdin and prints the username and password of the matching
+	 * GIT_WORKFLOW_CREDENTIAL_HOST_n variable.
+	 */
+	private static final String CREDENTIAL_HELPER = "!f() { test \"$1\" = get || exit 0; "
+			+ "while IFS=\"=\" read -r k v; do test -z \"$k\" && break; test \"$k\" = host && h=\"$v\"; done; "
+			+ "i=0; while :; do "
+			+ "eval \"c=\\${GIT_WORKFLOW_CREDENTIAL_HOST_$i}\"; test -z \"$c\" && break; "
+			+ "if test \"$c\" = \"$h\"; then eval \"printf \\\"username=%s\\\\npassword=%s\\\\n\\\" \\\"\\${GIT_WORKFLOW_CREDENTIAL_USERNAME_$i}\\\" \\\"\\${GIT_WORKFLOW_CREDENTIAL_PASSWORD_$i}\\\"\"; break; fi; "
+			+ "i=$((i+1)); done; }; f";
+
+	private final List<HostCredentials> hosts = new ArrayList<HostCredentials>();
+
+	/**
+	 *
+	 */
+	public GitCredentials() {
+	}
+
+	/**
+	 * Add the credentials for a host.
+	 *
+	 * @param host the host name, with the port if it is not the default port of the protocol (i.e. github.com)
+	 * @param userName
+	 * @param password
+	 */
+	public void add(String host, String userName, String password) {
+		hosts.add(new HostCredentials(host, userName, password));
+	}
+
+	/**
+	 * Add the credentials for the host of the url given.
+	 *
+	 * @throws URISyntaxException if the url is malformed.
+	 */
+	public void addForUrl(String url, String userName, String password) throws URISyntaxException {
+		add(hostOf(new URIish(url)), userName, password);
+	}
+
+	/**
+	 * @return true if no credentials have been added.
+	 */
+	public boolean isEmpty() {
+		return hosts.isEmpty();
+	}
+
+	/**
+	 * Configure the C git command to answer credential requests from memory.
+	 *
+	 * Any credential helpers from the user or system config are cleared for the command.
+	 */
+	public void configure(ExternalGitCommand command) {
+
+		if (hosts.isEmpty())
+			return;
+
+		command.addConfig("credential.helper", "");
+		command.addConfig("credential.helper", CREDENTIAL_HELPER);
+
+		// fail instead of waiting on a prompt nobody will answer.
+		command.setEnvironment("GIT_TERMINAL_PROMPT", "0");
+
+		for (int i = 0; i < hosts.size(); i++) {
+
+			HostCredentials credentials = hosts.get(i);
+
+			command.setEnvironment(ENV_PREFIX + "HOST_" + i, credentials.host);
+			command.setEnvironment(ENV_PREFIX + "USERNAME_" + i, credentials.userName);
+			command.setEnvironment(ENV_PREFIX + "PASSWORD_" + i, credentials.password);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.jgit.transport.CredentialsProvider#isInteractive()
+	 */
+	@Override
+	public boolean isInteractive() {
+		return false;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.jgit.transport.CredentialsProvider#supports(org.eclipse.jgit.transport.CredentialItem[])
+	 */
+	@Override
+	public boolean supports(CredentialItem... items) {
+
+		for (CredentialItem item : items) {
+
+			if (!(item instanceof CredentialItem.Username) && !(item instanceof CredentialItem.Password))
+				return false;
+		}
+
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.jgit.transport.CredentialsProvider#get(org.eclipse.jgit.transport.URIish, org.eclipse.jgit.transport.CredentialItem[])
+	 */
+	@Override
+	public boolean get(URIish uri, CredentialItem... items) throws UnsupportedCredentialItem {
+
+		HostCredentials credentials = find(hostOf(uri));
+
+		if (credentials == null)
+			return false;
+
+		for (CredentialItem item : items) {
+
+			if (item instanceof CredentialItem.Username)
+				((CredentialItem.Username) item).setValue(credentials.userName);
+			else if (item instanceof CredentialItem.Password)
+				((CredentialItem.Password) item).setValue(credentials.password.toCharArray());
+			else
+				throw new UnsupportedCredentialItem(uri, item.getClass().getName() + ":" + item.getPromptText());
+		}
+
+		return true;
+	}
+
+	private HostCredentials find(String host) {
+
+		for (HostCredentials credentials : hosts) {
+
+			if (credentials.host.equalsIgnoreCase(host))
+				return credentials;
+		}
+
+		return null;
+	}
+
+	/*
+	 * git names the host with the port when the port is given in the url.
+	 */
+	private static String hostOf(URIish uri) {
+		return uri.getPort() > 0 ? uri.getHost() + ":" + uri.getPort() : uri.getHost();
+	}
+
+	private static final class HostCredentials {
+
+		private final String host;
+
+		private final String userName;
+
+		private final String password;
+
+		private HostCredentials(String host, String userName, String password) {
+			this.host = host;
+			this.userName = userName;
+			this.password = password;
+		}
+	}
+}
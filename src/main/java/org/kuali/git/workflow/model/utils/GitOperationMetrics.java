@@ -0,0 +1,383 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * @author ocleirig
+ *
+ * Records the latency of each git operation by the engine (JGit or C git) that ran it.
+ *
+ * When an operation can run on more than one engine {@link #chooseEngine(String, Engine...)} tries each of them a few
+ * times and then picks the one with the lowest average latency.  Every {@link #setResampleInterval(int)}th choice goes to
+ * another engine so a change in the latencies (a repacked repository, a new git version) is noticed.
+ *
+ * A single run rarely does an operation more than a few times so the samples of earlier runs can be loaded from a file
+ * ({@link #load(File, int)}) and count towards the warm up and the averages; {@link #summarize()} only reports this run.
+ * Only the last {@link #MAXIMUM_SAVED_SAMPLES} samples of each operation and engine are kept in weight when saved, so old
+ * runs fade out of the averages.
+ *
+ * Safe to use from several threads.
+ *
+ */
+public class GitOperationMetrics {
+
+	public static enum Engine {
+		JGIT, CGIT;
+	}
+
+	/**
+	 * The samples of an operation and engine are scaled down to this many when saved.
+	 */
+	public static final int MAXIMUM_SAVED_SAMPLES = 200;
+
+	// samples per engine before the averages are trusted.
+	private final int warmupSamples;
+
+	// operation -> engine -> stats
+	private final Map<String, Map<Engine, OperationStats>> stats = new TreeMap<String, Map<Engine, OperationStats>>();
+
+	// the same for the runs before this one.
+	private final Map<String, Map<Engine, OperationStats>> previousStats = new TreeMap<String, Map<Engine, OperationStats>>();
+
+	// operation -> the choices made once every engine was warmed up.
+	private final Map<String, Long> choices = new TreeMap<String, Long>();
+
+	private int resampleInterval = 20;
+
+	/**
+	 * Create metrics that try each engine 3 times before choosing.
+	 */
+	public GitOperationMetrics() {
+		this(3);
+	}
+
+	/**
+	 * @param warmupSamples the number of times each engine is tried before the fastest is chosen.
+	 */
+	public GitOperationMetrics(int warmupSamples) {
+		this.warmupSamples = warmupSamples;
+	}
+
+	/**
+	 * @param resampleInterval every how many choices an engine other than the fastest is tried again, 0 to never.
+	 */
+	public synchronized void setResampleInterval(int resampleInterval) {
+		this.resampleInterval = resampleInterval;
+	}
+
+	/**
+	 * Record one run of the operation.
+	 *
+	 * @param operation the name of the operation (i.e. has-object)
+	 * @param engine the engine that ran it.
+	 * @param elapsedNanos how long it took.
+	 */
+	public synchronized void record(String operation, Engine engine, long elapsedNanos) {
+		record(operation, engine, elapsedNanos, 0);
+	}
+
+	/**
+	 * Record one run of the operation that transferred data (i.e. the Receiving objects phase of a fetch).
+	 *
+	 * @param operation the name of the operation.
+	 * @param engine the engine that ran it.
+	 * @param elapsedNanos how long it took.
+	 * @param bytes the bytes transferred.
+	 */
+	public synchronized void record(String operation, Engine engine, long elapsedNanos, long bytes) {
+		getStats(stats, operation, engine).add(elapsedNanos, bytes);
+	}
+
+	private static OperationStats getStats(Map<String, Map<Engine, OperationStats>> stats, String operation, Engine engine) {
+
+		Map<Engine, OperationStats> engines = stats.get(operation);
+
+		if (engines == null) {
+			engines = new TreeMap<Engine, OperationStats>();
+			stats.put(operation, engines);
+		}
+
+		OperationStats engineStats = engines.get(engine);
+
+		if (engineStats == null) {
+			engineStats = new OperationStats();
+			engines.put(engine, engineStats);
+		}
+
+		return engineStats;
+	}
+
+	/*
+	 * The stats of this run and the previous ones together.
+	 */
+	private OperationStats getAllStats(String operation, Engine engine) {
+
+		OperationStats all = new OperationStats();
+
+		for (Map<String, Map<Engine, OperationStats>> runs : Arrays.asList(previousStats, stats)) {
+
+			Map<Engine, OperationStats> engines = runs.get(operation);
+
+			if (engines != null && engines.containsKey(engine))
+				all.add(engines.get(engine));
+		}
+
+		return all;
+	}
+
+	/**
+	 * Choose the engine to run the operation on.
+	 *
+	 * @param operation the name of the operation.
+	 * @param candidates the engines that can run it, in order of preference while there are not enough samples.
+	 * @return the engine that has not been sampled enough yet or else the one with the lowest average latency, except for
+	 *         every resample interval'th choice which goes to the least sampled of the other engines.
+	 */
+	public synchronized Engine chooseEngine(String operation, Engine... candidates) {
+
+		Engine fastest = null;
+
+		double fastestAverage = Double.MAX_VALUE;
+
+		for (Engine candidate : candidates) {
+
+			OperationStats engineStats = getAllStats(operation, candidate);
+
+			if (engineStats.count < warmupSamples)
+				return candidate;
+
+			double average = engineStats.getAverageNanos();
+
+			if (average < fastestAverage) {
+				fastest = candidate;
+				fastestAverage = average;
+			}
+		}
+
+		Long previousChoices = choices.get(operation);
+
+		long choice = previousChoices == null ? 1 : previousChoices + 1;
+
+		choices.put(operation, choice);
+
+		if (resampleInterval <= 0 || choice % resampleInterval != 0)
+			return fastest;
+
+		Engine resampled = fastest;
+
+		long fewestSamples = Long.MAX_VALUE;
+
+		for (Engine candidate : candidates) {
+
+			long count = getAllStats(operation, candidate).count;
+
+			if (candidate != fastest && count < fewestSamples) {
+				resampled = candidate;
+				fewestSamples = count;
+			}
+		}
+
+		return resampled;
+	}
+
+	/**
+	 * Load the samples of the previous runs saved by {@link #save(File)}.  A missing or unreadable file is the same as no
+	 * previous runs.
+	 *
+	 * @param warmupSamples the number of times each engine is tried before the fastest is chosen.
+	 */
+	public static GitOperationMetrics load(File metricsFile, int warmupSamples) {
+
+		GitOperationMetrics metrics = new GitOperationMetrics(warmupSamples);
+
+		if (!metricsFile.exists())
+			return metrics;
+
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(metricsFile.toPath()), "UTF-8"));
+
+			try {
+				String line;
+
+				while ((line = reader.readLine()) != null) {
+
+					// operation engine count total max bytes, tab separated because the fetch phases have spaces.
+					String[] parts = line.split("\t");
+
+					if (parts.length != 6)
+						continue;
+
+					try {
+						OperationStats engineStats = getStats(metrics.previousStats, parts[0], Engine.valueOf(parts[1]));
+
+						engineStats.count = Long.parseLong(parts[2]);
+						engineStats.totalNanos = Long.parseLong(parts[3]);
+						engineStats.maxNanos = Long.parseLong(parts[4]);
+						engineStats.totalBytes = Long.parseLong(parts[5]);
+
+					} catch (IllegalArgumentException e) {
+						// skip the line, number format exceptions included.
+					}
+				}
+			}
+			finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			return new GitOperationMetrics(warmupSamples);
+		}
+
+		return metrics;
+	}
+
+	/**
+	 * Save the samples of this run and the previous ones so the next run can start from them.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void save(File metricsFile) throws IOException {
+
+		Map<String, Map<Engine, OperationStats>> all = new TreeMap<String, Map<Engine, OperationStats>>();
+
+		for (Map<String, Map<Engine, OperationStats>> runs : Arrays.asList(previousStats, stats)) {
+
+			for (Entry<String, Map<Engine, OperationStats>> operation : runs.entrySet()) {
+
+				for (Entry<Engine, OperationStats> engine : operation.getValue().entrySet()) {
+					getStats(all, operation.getKey(), engine.getKey()).add(engine.getValue());
+				}
+			}
+		}
+
+		for (Map<Engine, OperationStats> engines : all.values()) {
+
+			for (OperationStats engineStats : engines.values()) {
+				engineStats.scaleTo(MAXIMUM_SAVED_SAMPLES);
+			}
+		}
+
+		List<String> lines = new ArrayList<String>();
+
+		for (Entry<String, Map<Engine, OperationStats>> operation : all.entrySet()) {
+
+			for (Entry<Engine, OperationStats> engine : operation.getValue().entrySet()) {
+
+				OperationStats engineStats = engine.getValue();
+
+				lines.add(StringUtils.join(Arrays.asList(operation.getKey(), engine.getKey().name(), engineStats.count, engineStats.totalNanos, engineStats.maxNanos, engineStats.totalBytes), '\t'));
+			}
+		}
+
+		ChangeReportWriter.writeAtomically(metricsFile, lines);
+	}
+
+	/**
+	 * @return one line per operation and engine run in this run: operation engine count=n avg=x ms max=y ms total=z ms [bytes=b]
+	 */
+	public synchronized List<String> summarize() {
+
+		List<String> lines = new ArrayList<String>();
+
+		for (Entry<String, Map<Engine, OperationStats>> operation : stats.entrySet()) {
+
+			for (Entry<Engine, OperationStats> engine : operation.getValue().entrySet()) {
+
+				OperationStats engineStats = engine.getValue();
+
+				lines.add(String.format("%s %s count=%d avg=%.2f ms max=%.2f ms total=%.2f ms", operation.getKey(), engine.getKey().name(), engineStats.count, toMillis(engineStats.getAverageNanos()), toMillis(engineStats.maxNanos), toMillis(engineStats.totalNanos)));
+			}
+		}
+
+		return lines;
+	}
+
+	/**
+	 * @return the number of times the operation ran on the engine in this run.
+	 */
+	public synchronized long getCount(String operation, Engine engine) {
+
+		Map<Engine, OperationStats> engines = stats.get(operation);
+
+		if (engines == null || !engines.containsKey(engine))
+			return 0;
+
+		return engines.get(engine).count;
+	}
+
+	/**
+	 * @return the bytes transferred by the operation on the engine in this run.
+	 */
+	public synchronized long getBytes(String operation, Engine engine) {
+
+		Map<Engine, OperationStats> engines = stats.get(operation);
+
+		if (engines == null || !engines.containsKey(engine))
+			return 0;
+
+		return engines.get(engine).totalBytes;
+	}
+
+	private static double toMillis(double nanos) {
+		return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	private static final class OperationStats {
+
+		private long count;
+
+		private long totalNanos;
+
+		private long maxNanos;
+
+		private long totalBytes;
+
+		private void add(long elapsedNanos, long bytes) {
+			count++;
+			totalNanos += elapsedNanos;
+			totalBytes += Math.max(0, bytes);
+			maxNanos = Math.max(maxNanos, elapsedNanos);
+		}
+
+		private void add(OperationStats other) {
+			count += other.count;
+			totalNanos += other.totalNanos;
+			totalBytes += other.totalBytes;
+			maxNanos = Math.max(maxNanos, other.maxNanos);
+		}
+
+		/*
+		 * Keep the averages but give the samples the weight of at most maximumCount, so new samples move them.
+		 */
+		private void scaleTo(long maximumCount) {
+
+			if (count <= maximumCount)
+				return;
+
+			double scale = (double) maximumCount / count;
+
+			totalNanos = Math.round(totalNanos * scale);
+			totalBytes = Math.round(totalBytes * scale);
+			count = maximumCount;
+		}
+
+		private double getAverageNanos() {
+			return count == 0 ? 0 : (double) totalNanos / count;
+		}
+	}
+}
@@ -0,0 +1,393 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.jgit.lib.BatchRefUpdate;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.kuali.git.workflow.model.utils.GitOperationMetrics.Engine;
+import org.kuali.git.workflow.model.utils.GitProgressParser.Phase;
+
+/**
+ * @author ocleirig
+ *
+ * Runs git operations on whichever engine is fastest for them.
+ *
+ * Operations that both engines support run either in process through JGit or through a long running C git session
+ * ({@link CatFileSession}, {@link UpdateRefSession}) that is started once and reused so that C git's process start up cost
+ * is only paid once per run.  The latency of every operation is recorded and after a few tries of each engine the faster
+ * one is used.  The C git latencies include starting the session when the operation had to start it.
+ *
+ * The latencies are kept in the {@link #METRICS_FILE_NAME} file of the git directory across runs, so the tries of each
+ * engine add up over several runs instead of starting over in every one.
+ *
+ * If a C git session fails the operation is run through JGit for the rest of the run, as are the ref updates when C git is
+ * older than 2.27 (the first version with the transaction commands of update-ref --stdin).
+ *
+ * Close it to end the C git sessions.
+ *
+ */
+public class GitOperations {
+
+	public static final String HAS_OBJECT = "has-object";
+
+	public static final String UPDATE_REFS = "update-refs";
+
+	public static final String FETCH = "fetch";
+
+	public static final String WRITE_COMMIT_GRAPH = "write-commit-graph";
+
+	/**
+	 * the file in the git directory the latencies are saved to when the instance is closed.
+	 */
+	public static final String METRICS_FILE_NAME = "git-flow-metrics";
+
+	// the least time between two progress lines of the same phase on the console.
+	private static final long PROGRESS_INTERVAL_MILLIS = 5000;
+
+	private static final Pattern VERSION = Pattern.compile("(\\d+)\\.(\\d+)");
+
+	private final Repository repository;
+
+	private final String gitCommand;
+
+	private final GitOperationMetrics metrics;
+
+	// null when the metrics are shared and saved by someone else.
+	private File metricsFile;
+
+	private GitCredentials credentials;
+
+	private CatFileSession catFileSession;
+
+	private UpdateRefSession updateRefSession;
+
+	private boolean catFileUnavailable = false;
+
+	private boolean updateRefUnavailable = false;
+
+	// major and minor, null until asked for.
+	private int[] gitVersion;
+
+	// fetches that write FETCH_HEAD run one at a time.
+	private final Object fetchLock = new Object();
+
+	/**
+	 * Use the latencies saved by the previous runs on the repository and save them again on close.
+	 *
+	 * @param repository the repository to operate on.
+	 * @param gitCommand the C git executable.
+	 */
+	public GitOperations(Repository repository, String gitCommand) {
+		this(repository, gitCommand, GitOperationMetrics.load(new File(repository.getDirectory(), METRICS_FILE_NAME), 3));
+
+		this.metricsFile = new File(repository.getDirectory(), METRICS_FILE_NAME);
+	}
+
+	/**
+	 * @param repository the repository to operate on.
+	 * @param gitCommand the C git executable.
+	 * @param metrics where the latencies are recorded, can be shared with other instances.
+	 */
+	public GitOperations(Repository repository, String gitCommand, GitOperationMetrics metrics) {
+		this.repository = repository;
+		this.gitCommand = gitCommand;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @param credentials answer the credential requests of the fetches, the same credentials as the pushes use.
+	 */
+	public void setCredentials(GitCredentials credentials) {
+		this.credentials = credentials;
+	}
+
+	/**
+	 * @return the latencies recorded so far.
+	 */
+	public GitOperationMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return true if the object exists in the repository.
+	 * @throws IOException
+	 */
+	public synchronized boolean hasObject(ObjectId objectId) throws IOException {
+
+		Engine engine = catFileUnavailable ? Engine.JGIT : metrics.chooseEngine(HAS_OBJECT, Engine.JGIT, Engine.CGIT);
+
+		if (engine == Engine.CGIT) {
+
+			try {
+				long start = System.nanoTime();
+
+				if (catFileSession == null || !catFileSession.isOpen())
+					catFileSession = new CatFileSession(gitCommand, repository.getDirectory());
+
+				boolean exists = catFileSession.exists(objectId.name());
+
+				metrics.record(HAS_OBJECT, Engine.CGIT, System.nanoTime() - start);
+
+				return exists;
+
+			} catch (IOException e) {
+				catFileUnavailable = true;
+			}
+		}
+
+		long start = System.nanoTime();
+
+		boolean exists = repository.getObjectDatabase().has(objectId);
+
+		metrics.record(HAS_OBJECT, Engine.JGIT, System.nanoTime() - start);
+
+		return exists;
+	}
+
+	/**
+	 * Apply the ref updates as a batch.  Non fast forward updates are allowed.
+	 *
+	 * @throws IOException if any of the updates failed.
+	 */
+	public synchronized void updateRefs(List<ReceiveCommand> commands) throws IOException {
+
+		if (commands.isEmpty())
+			return;
+
+		// the start and commit commands of update-ref --stdin came in git 2.27.
+		if (!updateRefUnavailable && !isGitAtLeast(2, 27))
+			updateRefUnavailable = true;
+
+		Engine engine = updateRefUnavailable ? Engine.JGIT : metrics.chooseEngine(UPDATE_REFS, Engine.JGIT, Engine.CGIT);
+
+		if (engine == Engine.CGIT) {
+
+			try {
+				long start = System.nanoTime();
+
+				if (updateRefSession == null || !updateRefSession.isOpen())
+					updateRefSession = new UpdateRefSession(gitCommand, repository.getDirectory());
+
+				updateRefSession.apply(commands);
+
+				metrics.record(UPDATE_REFS, Engine.CGIT, System.nanoTime() - start);
+
+				return;
+
+			} catch (IOException e) {
+				// the transaction was rolled back so the batch can be retried through JGit.
+				updateRefUnavailable = true;
+			}
+		}
+
+		long start = System.nanoTime();
+
+		BatchRefUpdate batch = repository.getRefDatabase().newBatchUpdate();
+
+		batch.setAllowNonFastForwards(true);
+
+		batch.addCommand(commands);
+
+		RevWalk rw = new RevWalk(repository);
+
+		try {
+			batch.execute(rw, NullProgressMonitor.INSTANCE);
+		}
+		finally {
+			rw.release();
+		}
+
+		metrics.record(UPDATE_REFS, Engine.JGIT, System.nanoTime() - start);
+
+		for (ReceiveCommand command : commands) {
+
+			if (command.getResult() != ReceiveCommand.Result.OK)
+				throw new IOException("failed to update " + command.getRefName() + ": " + command.getResult().name() + " " + command.getMessage());
+		}
+	}
+
+	/**
+	 * Fetch from the remote through C git (JGit is too slow for large fetches).
+	 *
+	 * The remote's credentials are answered from memory by the {@link GitCredentials} given, if any.
+	 *
+	 * Git's progress is parsed as it is written: the console only gets a throttled copy and the time and bytes of each
+	 * phase are recorded in the metrics as fetch/&lt;phase&gt; (i.e. fetch/Receiving objects).
+	 *
+	 * @param depth the depth to fetch or -1 for a full fetch.
+	 * @param output where the throttled git output is copied.
+	 * @return the phases git reported.
+	 * @throws IOException if git failed.
+	 */
+	public List<Phase> fetch(String remoteName, int depth, PrintStream output) throws IOException {
+		return fetch(remoteName, depth, Collections.<String>emptyList(), output);
+	}
+
+	/**
+	 * Fetch the refspecs given instead of those configured for the remote.  Safe to call from several threads at once: on
+	 * git 2.29 or later fetches of explicit refspecs don't write FETCH_HEAD and run side by side (each must update its own
+	 * refs), the other fetches run one at a time.
+	 *
+	 * @param depth the depth to fetch or -1 for a full fetch.
+	 * @param refSpecs the refspecs to fetch (i.e. +refs/pull/12/head:refs/remotes/origin/pull-request-12)
+	 * @param output where the throttled git output is copied, null to only record the phases.
+	 * @return the phases git reported.
+	 * @throws IOException if git failed.
+	 */
+	public List<Phase> fetch(String remoteName, int depth, List<String> refSpecs, PrintStream output) throws IOException {
+
+		List<String> arguments = new ArrayList<String>();
+
+		arguments.add("fetch");
+		arguments.add("--progress");
+
+		boolean sideBySide = !refSpecs.isEmpty() && isGitAtLeast(2, 29);
+
+		if (sideBySide)
+			arguments.add("--no-write-fetch-head");
+
+		if (depth > 0)
+			arguments.add("--depth=" + depth);
+
+		arguments.add(remoteName);
+		arguments.addAll(refSpecs);
+
+		if (sideBySide)
+			return runFetch(remoteName, arguments, output);
+
+		synchronized (fetchLock) {
+			return runFetch(remoteName, arguments, output);
+		}
+	}
+
+	private List<Phase> runFetch(String remoteName, List<String> arguments, PrintStream output) throws IOException {
+
+		GitProgressParser progress = new GitProgressParser(output, PROGRESS_INTERVAL_MILLIS);
+
+		long start = System.nanoTime();
+
+		ExternalGitCommand command = new ExternalGitCommand(gitCommand, repository.getDirectory());
+
+		if (credentials != null)
+			credentials.configure(command);
+
+		ExternalGitCommand.Result result = command.run(arguments, progress);
+
+		progress.close();
+
+		long receivedBytes = 0;
+
+		for (Phase phase : progress.getPhases()) {
+
+			metrics.record(FETCH + "/" + phase.getName(), Engine.CGIT, phase.getElapsedNanos(), phase.getBytes());
+
+			receivedBytes += Math.max(0, phase.getBytes());
+		}
+
+		metrics.record(FETCH, Engine.CGIT, System.nanoTime() - start, receivedBytes);
+
+		if (!result.isSuccess())
+			throw new IOException("git fetch " + remoteName + " failed with exit code " + result.getExitCode());
+
+		return progress.getPhases();
+	}
+
+	/**
+	 * @return true if the C git executable is at least the version given, false if it is older or could not be run.
+	 */
+	public synchronized boolean isGitAtLeast(int major, int minor) {
+
+		if (gitVersion == null) {
+
+			gitVersion = new int[] { 0, 0 };
+
+			try {
+				ExternalGitCommand.Result result = new ExternalGitCommand(gitCommand, repository.getDirectory()).run(Arrays.asList("version"), null);
+
+				if (result.isSuccess() && !result.getOutputLines().isEmpty()) {
+
+					int[] parsed = parseVersion(result.getOutputLines().get(0));
+
+					if (parsed != null)
+						gitVersion = parsed;
+				}
+			} catch (IOException e) {
+				// treated as too old for anything that needs a version.
+			}
+		}
+
+		return gitVersion[0] > major || (gitVersion[0] == major && gitVersion[1] >= minor);
+	}
+
+	/**
+	 * @param versionLine the output of git version (i.e. git version 2.39.5.windows.1)
+	 * @return the major and minor version or null if there is none in the line.
+	 */
+	static int[] parseVersion(String versionLine) {
+
+		Matcher matcher = VERSION.matcher(versionLine);
+
+		if (!matcher.find())
+			return null;
+
+		return new int[] { Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)) };
+	}
+
+	/**
+	 * Add the commits that are not in the commit-graph yet as a new layer of the split graph, with generation numbers and
+	 * changed path Bloom filters (see {@link CommitGraph}).  Only the new commits are written so this is cheap to run
+	 * after every fetch.
+	 *
+	 * @throws IOException if git failed (i.e. it is older than 2.27 and can't write changed paths).
+	 */
+	public void writeCommitGraph() throws IOException {
+
+		ByteArrayOutputStream errors = new ByteArrayOutputStream();
+
+		long start = System.nanoTime();
+
+		ExternalGitCommand.Result result = new ExternalGitCommand(gitCommand, repository.getDirectory()).run(Arrays.asList("commit-graph", "write", "--reachable", "--split", "--changed-paths"), errors);
+
+		metrics.record(WRITE_COMMIT_GRAPH, Engine.CGIT, System.nanoTime() - start);
+
+		if (!result.isSuccess())
+			throw new IOException("git commit-graph write failed with exit code " + result.getExitCode() + ": " + errors.toString("UTF-8").trim());
+	}
+
+	/**
+	 * End the C git sessions and save the latencies.
+	 */
+	public synchronized void close() {
+
+		if (catFileSession != null)
+			catFileSession.close();
+
+		if (updateRefSession != null)
+			updateRefSession.close();
+
+		if (metricsFile != null) {
+
+			try {
+				metrics.save(metricsFile);
+			} catch (IOException e) {
+				// the latencies only pick the engine, the next run tries both again.
+			}
+		}
+	}
+}
@@ -0,0 +1,178 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * @author ocleirig
+ *
+ * A long running C git process that is given commands on its standard input and answers on its standard output (i.e.
+ * git cat-file --batch-check or git update-ref --stdin).
+ *
+ * Starting git costs far more than answering a single request so a session is started once and reused for every request
+ * of a run.  A session is not thread safe, callers must synchronize on it.
+ *
+ */
+public abstract class GitProcessSession {
+
+	private static final String UTF_8 = "UTF-8";
+
+	// keep only the end of standard error for error messages.
+	private static final int MAX_ERROR_CHARACTERS = 4096;
+
+	private final Process process;
+
+	private final Writer input;
+
+	private final BufferedReader output;
+
+	private final StringBuffer errors = new StringBuffer();
+
+	private boolean closed = false;
+
+	/**
+	 * Start the git process.
+	 *
+	 * @param gitCommand the git executable.
+	 * @param gitDirectory the .git directory of the repository.
+	 * @param arguments the git arguments (i.e. cat-file, --batch-check)
+	 * @throws IOException if git could not be started.
+	 */
+	protected GitProcessSession(String gitCommand, File gitDirectory, String... arguments) throws IOException {
+
+		List<String> command = new ArrayList<String>();
+
+		command.add(gitCommand);
+		command.add("--git-dir=" + gitDirectory.getAbsolutePath());
+
+		for (String argument : arguments) {
+			command.add(argument);
+		}
+
+		ProcessBuilder builder = new ProcessBuilder(command);
+
+		builder.directory(gitDirectory);
+
+		process = builder.start();
+
+		input = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), UTF_8));
+
+		output = new BufferedReader(new InputStreamReader(process.getInputStream(), UTF_8));
+
+		final InputStream errorStream = process.getErrorStream();
+
+		Thread errorPump = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				collectErrors(errorStream);
+			}
+		}, "git-session-stderr");
+
+		errorPump.setDaemon(true);
+		errorPump.start();
+	}
+
+	/**
+	 * Write a line to git without flushing.
+	 */
+	protected void writeLine(String line) throws IOException {
+		input.write(line);
+		input.write('\n');
+	}
+
+	/**
+	 * Send everything written so far to git.
+	 */
+	protected void flush() throws IOException {
+		input.flush();
+	}
+
+	/**
+	 * Read one line of the answer.
+	 *
+	 * @throws IOException if git has exited.
+	 */
+	protected String readLine() throws IOException {
+
+		String line = output.readLine();
+
+		if (line == null) {
+			closed = true;
+			throw new IOException("git exited unexpectedly: " + getErrors());
+		}
+
+		return line;
+	}
+
+	/**
+	 * @return the end of what git has written to standard error.
+	 */
+	protected String getErrors() {
+		return errors.toString().trim();
+	}
+
+	/**
+	 * @return false once git has exited or the session was closed.
+	 */
+	public boolean isOpen() {
+		return !closed;
+	}
+
+	/**
+	 * Close standard input so git exits and wait for it.
+	 */
+	public void close() {
+
+		if (closed)
+			return;
+
+		closed = true;
+
+		IOUtils.closeQuietly(input);
+
+		try {
+			process.waitFor();
+		} catch (InterruptedException e) {
+			process.destroy();
+			Thread.currentThread().interrupt();
+		}
+
+		IOUtils.closeQuietly(output);
+	}
+
+	private void collectErrors(InputStream errorStream) {
+
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(errorStream, UTF_8));
+
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+
+				errors.append(line).append('\n');
+
+				if (errors.length() > MAX_ERROR_CHARACTERS)
+					errors.delete(0, errors.length() - MAX_ERROR_CHARACTERS);
+			}
+
+		} catch (IOException e) {
+			// git has exited.
+		} finally {
+			IOUtils.closeQuietly(errorStream);
+		}
+	}
+}
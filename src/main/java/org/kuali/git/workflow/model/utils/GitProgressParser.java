@@ -0,0 +1,295 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @author ocleirig
+ *
+ * Reads the progress output of C git (standard error of fetch, push, clone with --progress) as it is written and keeps
+ * the timing, object count and byte count of each phase (Counting objects, Compressing objects, Receiving objects,
+ * Resolving deltas, ...).
+ *
+ * Git redraws a progress line many times a second; only the first and last line of a phase and at most one line per
+ * console interval are passed on to the console.  Lines that are not progress are always passed on.
+ *
+ */
+public class GitProgressParser extends OutputStream {
+
+	private static final String UTF_8 = "UTF-8";
+
+	private static final String REMOTE_PREFIX = "remote: ";
+
+	// Receiving objects:  45% (450/1000), 1.20 MiB | 2.00 MiB/s
+	private static final Pattern PERCENT_PROGRESS = Pattern.compile("^([A-Z][a-z]+(?: [a-z]+)*):\\s+(\\d+)% \\((\\d+)/(\\d+)\\)(?:, ([\\d.]+) (bytes|KiB|MiB|GiB))?");
+
+	// Counting objects: 1234, done.
+	private static final Pattern COUNT_PROGRESS = Pattern.compile("^([A-Z][a-z]+(?: [a-z]+)*): (\\d+)(?:, done\\.)?$");
+
+	private final PrintStream console;
+
+	private final long consoleIntervalNanos;
+
+	private final Map<String, Phase> phases = new LinkedHashMap<String, Phase>();
+
+	private final ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+
+	private long lastConsoleNanos = 0;
+
+	private String lastConsolePhase = null;
+
+	/**
+	 * @param console where the throttled output is written, may be null to only collect the phases.
+	 * @param consoleIntervalMillis the least time between two progress lines of the same phase on the console.
+	 */
+	public GitProgressParser(PrintStream console, long consoleIntervalMillis) {
+		this.console = console;
+		this.consoleIntervalNanos = TimeUnit.MILLISECONDS.toNanos(consoleIntervalMillis);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.OutputStream#write(int)
+	 */
+	@Override
+	public synchronized void write(int b) throws IOException {
+
+		// git ends progress lines with \r while redrawing them.
+		if (b == '\r' || b == '\n') {
+			endOfLine();
+			return;
+		}
+
+		line.write(b);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.OutputStream#write(byte[], int, int)
+	 */
+	@Override
+	public synchronized void write(byte[] b, int off, int len) throws IOException {
+
+		for (int i = off; i < off + len; i++) {
+			write(b[i]);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.OutputStream#close()
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+
+		endOfLine();
+
+		if (console != null)
+			console.flush();
+	}
+
+	/**
+	 * @return the phases seen so far in the order they started.
+	 */
+	public synchronized List<Phase> getPhases() {
+		return new ArrayList<Phase>(phases.values());
+	}
+
+	/**
+	 * @return the phase with the name given (i.e. Receiving objects) or null if it was not seen.
+	 */
+	public synchronized Phase getPhase(String name) {
+		return phases.get(name);
+	}
+
+	private void endOfLine() throws IOException {
+
+		if (line.size() == 0)
+			return;
+
+		String text = line.toString(UTF_8);
+
+		line.reset();
+
+		String progress = text.startsWith(REMOTE_PREFIX) ? text.substring(REMOTE_PREFIX.length()) : text;
+
+		Phase phase = parse(progress.trim());
+
+		if (phase == null) {
+			println(text);
+			return;
+		}
+
+		long now = System.nanoTime();
+
+		boolean newPhase = !phase.name.equals(lastConsolePhase);
+
+		if (newPhase || phase.done || now - lastConsoleNanos >= consoleIntervalNanos) {
+
+			println(text);
+
+			lastConsoleNanos = now;
+			lastConsolePhase = phase.name;
+		}
+	}
+
+	/*
+	 * Update the phase the line reports on, returns null if the line is not progress.
+	 */
+	private Phase parse(String text) {
+
+		Matcher percent = PERCENT_PROGRESS.matcher(text);
+
+		if (percent.find()) {
+
+			Phase phase = phase(percent.group(1));
+
+			phase.current = Long.parseLong(percent.group(3));
+			phase.total = Long.parseLong(percent.group(4));
+
+			if (percent.group(5) != null)
+				phase.bytes = toBytes(percent.group(5), percent.group(6));
+
+			phase.done = text.endsWith("done.");
+
+			return phase;
+		}
+
+		Matcher count = COUNT_PROGRESS.matcher(text);
+
+		if (count.find()) {
+
+			Phase phase = phase(count.group(1));
+
+			phase.current = Long.parseLong(count.group(2));
+			phase.done = text.endsWith("done.");
+
+			return phase;
+		}
+
+		return null;
+	}
+
+	private Phase phase(String name) {
+
+		Phase phase = phases.get(name);
+
+		long now = System.nanoTime();
+
+		if (phase == null) {
+			phase = new Phase(name, now);
+			phases.put(name, phase);
+		}
+
+		phase.lastNanos = now;
+
+		return phase;
+	}
+
+	private void println(String text) {
+
+		if (console != null)
+			console.println(text);
+	}
+
+	private static long toBytes(String amount, String unit) {
+
+		double value = Double.parseDouble(amount);
+
+		if (unit.equals("KiB"))
+			value *= 1024;
+		else if (unit.equals("MiB"))
+			value *= 1024 * 1024;
+		else if (unit.equals("GiB"))
+			value *= 1024 * 1024 * 1024;
+
+		return (long) value;
+	}
+
+	/**
+	 * The progress of one phase of a git command.
+	 */
+	public static final class Phase {
+
+		private final String name;
+
+		private final long startNanos;
+
+		private long lastNanos;
+
+		private long current = 0;
+
+		// 0 when git does not report a total.
+		private long total = 0;
+
+		// -1 when git does not report the bytes.
+		private long bytes = -1;
+
+		private boolean done = false;
+
+		private Phase(String name, long startNanos) {
+			this.name = name;
+			this.startNanos = startNanos;
+			this.lastNanos = startNanos;
+		}
+
+		/**
+		 * @return the name of the phase as git reports it (i.e. Receiving objects)
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the time from the first to the last progress line of the phase.
+		 */
+		public long getElapsedNanos() {
+			return lastNanos - startNanos;
+		}
+
+		/**
+		 * @return the number of objects (or deltas) processed.
+		 */
+		public long getCount() {
+			return current;
+		}
+
+		/**
+		 * @return the number of objects git expects to process or 0 if it is not known.
+		 */
+		public long getTotal() {
+			return total;
+		}
+
+		/**
+		 * @return the bytes transferred or -1 if git did not report them.
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * @return true once git reported the phase as complete.
+		 */
+		public boolean isDone() {
+			return done;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return String.format("%s: %d/%d objects, %d bytes, %d ms", name, current, total, bytes, TimeUnit.NANOSECONDS.toMillis(getElapsedNanos()));
+		}
+	}
+}
@@ -30,6 +30,7 @@ public class GithubApiUtils {
 
 	private GHRepository repo;
 	private Log log;
+	private CommitStatusPublisher statusPublisher;
 
 	/**
 	 * @param log 
@@ -38,6 +39,14 @@ public class GithubApiUtils {
 	public GithubApiUtils(GHRepository repo, Log log) {
 		this.repo = repo;
 		this.log = log;
+		this.statusPublisher = new CommitStatusPublisher(repo, log);
+	}
+	
+	/**
+	 * @return the publisher used to register commit statuses, it caches the current statuses of each commit it has seen.
+	 */
+	public CommitStatusPublisher getStatusPublisher() {
+		return statusPublisher;
 	}
 
 	public void reportPullRequestCommitStatuses (int pullRequestNumber) throws IOException {
@@ -112,15 +121,22 @@ public class GithubApiUtils {
 	}
 
 	/**
-	 * Register the commit status for the pull request number.
-	 * 
-	 * @param pullRequestNumber
-	 * @throws IOException 
+	 * Queue the commit status for the commit given, it is only posted by {@link #flushCommitStatuses()} so that all of the
+	 * statuses registered during a run are coalesced.
 	 */
-	public void registerCommitStatus(String commitId, GHCommitState state, String ciUrl, String description, String context) throws IOException {
-		
-		repo.createCommitStatus(commitId, state, ciUrl, description, context);
+	public void registerCommitStatus(String commitId, GHCommitState state, String ciUrl, String description, String context) {
 		
+		statusPublisher.queue(commitId, state, ciUrl, description, context);
 		
 	}
+
+	/**
+	 * Post the registered commit statuses that would change the latest status of their context.
+	 * 
+	 * @return the number of statuses that were posted.
+	 * @throws IOException 
+	 */
+	public int flushCommitStatuses() throws IOException {
+		return statusPublisher.flush();
+	}
 }
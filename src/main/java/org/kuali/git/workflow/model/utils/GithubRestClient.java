@@ -0,0 +1,208 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * @author ocleirig
+ *
+ * Minimal client for the parts of the Github v3 api that are not exposed by the github-api library we use (i.e. the git data trees api).
+ *
+ * Authorization is resolved from the same places as {@link org.kuali.git.workflow.AbstractGithubAuthorizedMojo#authorizeFromCredentials()}.
+ *
+ */
+public class GithubRestClient {
+
+	public static final String DEFAULT_API_URL = "https://api.github.com";
+
+	private static final String ENCODING = "UTF-8";
+
+	private final String apiUrl;
+
+	// null when anonymous
+	private final String authorization;
+
+	private int connectTimeoutInMillis = 30000;
+
+	private int readTimeoutInMillis = 60000;
+
+	/**
+	 * @param apiUrl the base url of the api
+	 * @param authorization the value of the Authorization header or null for anonymous access.
+	 */
+	public GithubRestClient(String apiUrl, String authorization) {
+		this.apiUrl = apiUrl;
+		this.authorization = authorization;
+	}
+
+	public static GithubRestClient usingOAuth(String oauthToken) {
+		return new GithubRestClient(DEFAULT_API_URL, "token " + oauthToken);
+	}
+
+	public static GithubRestClient usingPassword(String login, String password) throws IOException {
+
+		if (login == null || password == null)
+			return anonymous();
+
+		String userPass = login + ":" + password;
+
+		return new GithubRestClient(DEFAULT_API_URL, "Basic " + Base64.encodeBase64String(userPass.getBytes(ENCODING)));
+	}
+
+	public static GithubRestClient anonymous() {
+		return new GithubRestClient(DEFAULT_API_URL, null);
+	}
+
+	/**
+	 * @param connectTimeoutInMillis the connectTimeoutInMillis to set
+	 */
+	public void setConnectTimeoutInMillis(int connectTimeoutInMillis) {
+		this.connectTimeoutInMillis = connectTimeoutInMillis;
+	}
+
+	/**
+	 * @param readTimeoutInMillis the readTimeoutInMillis to set
+	 */
+	public void setReadTimeoutInMillis(int readTimeoutInMillis) {
+		this.readTimeoutInMillis = readTimeoutInMillis;
+	}
+
+	/**
+	 * GET the api path given (i.e. /repos/kuali/ks-development/git/trees/abc) and parse the response as a json object.
+	 *
+	 * @throws java.io.FileNotFoundException if the api returns a 404.
+	 */
+	public JSONObject getObject(String path) throws IOException {
+		return JSONObject.fromObject(get(path, null));
+	}
+
+	/**
+	 * GET a single page of the api path given and parse the response as a json array.
+	 */
+	public JSONArray getArray(String path) throws IOException {
+		return JSONArray.fromObject(get(path, null));
+	}
+
+	/**
+	 * GET every page of a paginated api path by following the Link rel="next" headers.
+	 */
+	public List<JSONObject> getAllPages(String path) throws IOException {
+
+		List<JSONObject>results = new ArrayList<JSONObject>();
+
+		String next = path;
+
+		while (next != null) {
+
+			String[] nextHolder = new String[1];
+
+			JSONArray page = JSONArray.fromObject(get(next, nextHolder));
+
+			for (int i = 0; i < page.size(); i++) {
+				results.add(page.getJSONObject(i));
+			}
+
+			next = nextHolder[0];
+		}
+
+		return results;
+	}
+
+	/**
+	 * Stream the raw content of a file through the contents api.
+	 *
+	 * The caller is responsible for closing the stream.
+	 *
+	 * @param repository owner/name
+	 * @param path the path of the file in the repository.
+	 * @param ref the commit, branch or tag to read the file from.
+	 */
+	public InputStream openRawContent(String repository, String path, String ref) throws IOException {
+
+		HttpURLConnection connection = open("/repos/" + repository + "/contents/" + path + "?ref=" + ref, "GET");
+
+		connection.setRequestProperty("Accept", "application/vnd.github.v3.raw");
+
+		return connection.getInputStream();
+	}
+
+	/*
+	 * Read the response body.  If nextPageHolder is given the url of the next page (if any) is stored in its first element.
+	 */
+	private String get(String pathOrUrl, String[] nextPageHolder) throws IOException {
+
+		HttpURLConnection connection = open(pathOrUrl, "GET");
+
+		InputStream input = null;
+
+		try {
+
+			input = connection.getInputStream();
+
+			if (nextPageHolder != null)
+				nextPageHolder[0] = parseNextLink(connection.getHeaderField("Link"));
+
+			return IOUtils.toString(input, ENCODING);
+
+		} finally {
+			IOUtils.closeQuietly(input);
+			connection.disconnect();
+		}
+	}
+
+	protected HttpURLConnection open(String pathOrUrl, String method) throws IOException {
+
+		String url = pathOrUrl.startsWith("http") ? pathOrUrl : apiUrl + pathOrUrl;
+
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+
+		connection.setRequestMethod(method);
+		connection.setConnectTimeout(connectTimeoutInMillis);
+		connection.setReadTimeout(readTimeoutInMillis);
+		connection.setRequestProperty("Accept", "application/vnd.github.v3+json");
+
+		if (authorization != null)
+			connection.setRequestProperty("Authorization", authorization);
+
+		return connection;
+	}
+
+	/*
+	 * Link: <https://api.github.com/...&page=2>; rel="next", <https://api.github.com/...&page=5>; rel="last"
+	 */
+	private String parseNextLink(String linkHeader) {
+
+		if (linkHeader == null)
+			return null;
+
+		for (String link : linkHeader.split(",")) {
+
+			String[] parts = link.split(";");
+
+			if (parts.length < 2)
+				continue;
+
+			if (parts[1].trim().equals("rel=\"next\"")) {
+
+				String url = parts[0].trim();
+
+				return url.substring(1, url.length() - 1);
+			}
+		}
+
+		return null;
+	}
+}
@@ -0,0 +1,192 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.kuali.git.workflow.model.BranchContentDivergence;
+import org.kuali.git.workflow.model.BranchContentDivergence.DivergenceType;
+import org.kuali.git.workflow.model.BranchContentLocation;
+
+/**
+ * @author ocleirig
+ *
+ * Compare the content of two branch locations using the git data api.
+ *
+ * Git trees are content addressed so if the tree sha1 of both locations is the same the content is identical and nothing
+ * else needs to be looked at.  Only subtrees with differing sha1's are listed and descended into.
+ *
+ * Tree listings are cached by sha1 and the cache is safe to share between threads comparing different locations.
+ *
+ */
+public class GithubTreeComparator {
+
+	private static final String TREE = "tree";
+
+	private final GithubRestClient client;
+
+	private final ConcurrentMap<String, Map<String, TreeEntry>> treeCache = new ConcurrentHashMap<String, Map<String, TreeEntry>>();
+
+	/**
+	 *
+	 */
+	public GithubTreeComparator(GithubRestClient client) {
+		this.client = client;
+	}
+
+	/**
+	 * Resolve the sha1 of the tree at the location given.
+	 *
+	 * @return the tree sha1 or null if the path does not exist (or is not a directory) in the branch.
+	 * @throws IOException
+	 */
+	public String resolveTreeSha(BranchContentLocation location) throws IOException {
+
+		JSONObject branch = client.getObject("/repos/" + location.getRepository() + "/branches/" + location.getBranch());
+
+		String treeSha = branch.getJSONObject("commit").getJSONObject("commit").getJSONObject(TREE).getString("sha");
+
+		if (location.getPath().length() == 0)
+			return treeSha;
+
+		for (String segment : location.getPath().split("/")) {
+
+			TreeEntry entry = listTree(location.getRepository(), treeSha).get(segment);
+
+			if (entry == null || !entry.isTree())
+				return null;
+
+			treeSha = entry.sha;
+		}
+
+		return treeSha;
+	}
+
+	/**
+	 * Compare the two locations.
+	 *
+	 * @return the divergences found, empty if the content is identical.
+	 * @throws IOException
+	 */
+	public List<BranchContentDivergence> compare(BranchContentLocation left, BranchContentLocation right) throws IOException {
+
+		String leftTreeSha = resolveTreeSha(left);
+
+		String rightTreeSha = resolveTreeSha(right);
+
+		List<BranchContentDivergence>divergences = new ArrayList<BranchContentDivergence>();
+
+		if (leftTreeSha == null || rightTreeSha == null) {
+
+			if (leftTreeSha != rightTreeSha)
+				divergences.add(new BranchContentDivergence(leftTreeSha == null ? DivergenceType.MISSING_ON_LEFT : DivergenceType.MISSING_ON_RIGHT, "", leftTreeSha, rightTreeSha));
+
+			return divergences;
+		}
+
+		compareTrees(left.getRepository(), leftTreeSha, right.getRepository(), rightTreeSha, "", divergences);
+
+		return divergences;
+	}
+
+	private void compareTrees(String leftRepository, String leftTreeSha, String rightRepository, String rightTreeSha, String relativePath, List<BranchContentDivergence> divergences) throws IOException {
+
+		if (leftTreeSha.equals(rightTreeSha))
+			return; // identical content.
+
+		Map<String, TreeEntry> leftEntries = listTree(leftRepository, leftTreeSha);
+
+		Map<String, TreeEntry> rightEntries = listTree(rightRepository, rightTreeSha);
+
+		TreeSet<String>names = new TreeSet<String>(leftEntries.keySet());
+
+		names.addAll(rightEntries.keySet());
+
+		for (String name : names) {
+
+			TreeEntry leftEntry = leftEntries.get(name);
+
+			TreeEntry rightEntry = rightEntries.get(name);
+
+			String path = relativePath.length() == 0 ? name : relativePath + "/" + name;
+
+			if (leftEntry == null) {
+				divergences.add(new BranchContentDivergence(DivergenceType.MISSING_ON_LEFT, path, null, rightEntry.sha));
+			}
+			else if (rightEntry == null) {
+				divergences.add(new BranchContentDivergence(DivergenceType.MISSING_ON_RIGHT, path, leftEntry.sha, null));
+			}
+			else if (leftEntry.sha.equals(rightEntry.sha)) {
+				continue;
+			}
+			else if (!leftEntry.type.equals(rightEntry.type)) {
+				divergences.add(new BranchContentDivergence(DivergenceType.TYPE_DIFFERS, path, leftEntry.sha, rightEntry.sha));
+			}
+			else if (leftEntry.isTree()) {
+				compareTrees(leftRepository, leftEntry.sha, rightRepository, rightEntry.sha, path, divergences);
+			}
+			else {
+				divergences.add(new BranchContentDivergence(DivergenceType.CONTENT_DIFFERS, path, leftEntry.sha, rightEntry.sha));
+			}
+		}
+	}
+
+	private Map<String, TreeEntry> listTree(String repository, String treeSha) throws IOException {
+
+		Map<String, TreeEntry> entries = treeCache.get(treeSha);
+
+		if (entries != null)
+			return entries;
+
+		JSONObject tree = client.getObject("/repos/" + repository + "/git/trees/" + treeSha);
+
+		if (tree.optBoolean("truncated"))
+			throw new IOException("tree " + treeSha + " in " + repository + " is too large to be listed through the api.");
+
+		JSONArray treeEntries = tree.getJSONArray(TREE);
+
+		entries = new TreeMap<String, TreeEntry>();
+
+		for (int i = 0; i < treeEntries.size(); i++) {
+
+			JSONObject entry = treeEntries.getJSONObject(i);
+
+			entries.put(entry.getString("path"), new TreeEntry(entry.getString("type"), entry.getString("sha")));
+		}
+
+		entries = Collections.unmodifiableMap(entries);
+
+		treeCache.putIfAbsent(treeSha, entries);
+
+		return entries;
+	}
+
+	private static final class TreeEntry {
+
+		// blob, tree or commit (submodule)
+		private final String type;
+
+		private final String sha;
+
+		private TreeEntry(String type, String sha) {
+			this.type = type;
+			this.sha = sha;
+		}
+
+		private boolean isTree() {
+			return TREE.equals(type);
+		}
+	}
+}
@@ -0,0 +1,192 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * @author ocleirig
+ *
+ * The recent build durations of each module, kept in a local file between builds.
+ *
+ * The estimated duration of a module is the median of its recent builds so one slow build (a cold cache, a busy executor)
+ * does not move the estimate much.  A module without any recorded build uses the default duration.
+ *
+ * The history is saved as module=seconds,seconds,... lines, oldest first.
+ *
+ */
+public final class ModuleBuildHistory {
+
+	/**
+	 * The number of recent builds kept for each module unless configured otherwise.
+	 */
+	public static final int DEFAULT_SAMPLES_PER_MODULE = 10;
+
+	private static final String UTF_8 = "UTF-8";
+
+	private final int samplesPerModule;
+
+	private final Map<String, LinkedList<Long>> durations = new TreeMap<String, LinkedList<Long>>();
+
+	/**
+	 * @param samplesPerModule the number of recent builds kept for each module.
+	 */
+	public ModuleBuildHistory(int samplesPerModule) {
+
+		if (samplesPerModule < 1)
+			throw new IllegalArgumentException("at least one build per module must be kept: " + samplesPerModule);
+
+		this.samplesPerModule = samplesPerModule;
+	}
+
+	/**
+	 * @return the history saved in the file or an empty history if the file does not exist.
+	 * @throws IOException
+	 */
+	public static ModuleBuildHistory load(File historyFile, int samplesPerModule) throws IOException {
+
+		ModuleBuildHistory history = new ModuleBuildHistory(samplesPerModule);
+
+		if (!historyFile.exists())
+			return history;
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(historyFile.toPath()), UTF_8));
+
+		try {
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+
+				int separator = line.indexOf('=');
+
+				if (separator == -1)
+					continue;
+
+				String module = line.substring(0, separator).trim();
+
+				for (String seconds : line.substring(separator + 1).split(",")) {
+
+					try {
+						history.record(module, Long.parseLong(seconds.trim()));
+					} catch (IllegalArgumentException e) {
+						// skip the damaged sample.
+					}
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+
+		return history;
+	}
+
+	/**
+	 * Record a build of the module, forgetting its oldest build if it has more than the samples kept.
+	 */
+	public void record(String module, long seconds) {
+
+		if (seconds < 0)
+			throw new IllegalArgumentException("negative build duration for " + module + ": " + seconds);
+
+		LinkedList<Long> samples = durations.get(module);
+
+		if (samples == null) {
+			samples = new LinkedList<Long>();
+			durations.put(module, samples);
+		}
+
+		samples.addLast(seconds);
+
+		while (samples.size() > samplesPerModule)
+			samples.removeFirst();
+	}
+
+	/**
+	 * @return the recorded build durations of the module, oldest first.
+	 */
+	public List<Long> getDurations(String module) {
+
+		LinkedList<Long> samples = durations.get(module);
+
+		if (samples == null)
+			return Collections.emptyList();
+
+		return Collections.unmodifiableList(new ArrayList<Long>(samples));
+	}
+
+	/**
+	 * @return the median of the recent builds of the module or the default if none were recorded.
+	 */
+	public long estimate(String module, long defaultSeconds) {
+
+		LinkedList<Long> samples = durations.get(module);
+
+		if (samples == null || samples.isEmpty())
+			return defaultSeconds;
+
+		List<Long> sorted = new ArrayList<Long>(samples);
+
+		Collections.sort(sorted);
+
+		int middle = sorted.size() / 2;
+
+		if (sorted.size() % 2 == 1)
+			return sorted.get(middle);
+
+		return (sorted.get(middle - 1) + sorted.get(middle)) / 2;
+	}
+
+	/**
+	 * @return the estimated build duration of each of the modules.
+	 */
+	public Map<String, Long> estimate(Collection<String> modules, long defaultSeconds) {
+
+		Map<String, Long> estimates = new LinkedHashMap<String, Long>();
+
+		for (String module : modules) {
+			estimates.put(module, estimate(module, defaultSeconds));
+		}
+
+		return estimates;
+	}
+
+	/**
+	 * @return the estimated build duration of every module with recorded builds.
+	 */
+	public Map<String, Long> estimateRecordedModules() {
+		return estimate(durations.keySet(), 0L);
+	}
+
+	/**
+	 * Save the history (see {@link ChangeReportWriter#writeAtomically(File, List)}).
+	 *
+	 * @throws IOException
+	 */
+	public void save(File historyFile) throws IOException {
+
+		List<String> lines = new ArrayList<String>();
+
+		for (Entry<String, LinkedList<Long>> module : durations.entrySet()) {
+			lines.add(module.getKey() + "=" + StringUtils.join(module.getValue(), ","));
+		}
+
+		ChangeReportWriter.writeAtomically(historyFile, lines);
+	}
+}
@@ -0,0 +1,84 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kuali.git.workflow.model.RefPushResult;
+
+/**
+ * @author ocleirig
+ *
+ * Parses the output of git push --porcelain into per ref results.
+ *
+ * Each ref is reported on a line of the form:
+ *
+ * <pre>
+ * flag TAB from:to TAB summary [(reason)]
+ * </pre>
+ *
+ * The status names match the names of JGit's RemoteRefUpdate.Status so that results from both engines read the same.
+ *
+ */
+public final class PorcelainPushParser {
+
+	private PorcelainPushParser() {
+	}
+
+	/**
+	 * @param remoteName the remote that was pushed to.
+	 * @param outputLines the standard output of git push --porcelain.
+	 * @return the result of each ref in the order reported.
+	 */
+	public static List<RefPushResult> parse(String remoteName, List<String> outputLines) {
+
+		List<RefPushResult> results = new ArrayList<RefPushResult>();
+
+		for (String line : outputLines) {
+
+			String[] parts = line.split("\t");
+
+			if (parts.length < 3 || parts[0].length() != 1)
+				continue; // To <url> and Done lines.
+
+			char flag = parts[0].charAt(0);
+
+			int colon = parts[1].indexOf(':');
+
+			String sourceRef = colon == -1 ? parts[1] : parts[1].substring(0, colon);
+
+			String remoteRef = colon == -1 ? parts[1] : parts[1].substring(colon + 1);
+
+			String summary = parts[2];
+
+			String reason = null;
+
+			int open = summary.indexOf('(');
+
+			if (open != -1 && summary.endsWith(")"))
+				reason = summary.substring(open + 1, summary.length() - 1);
+
+			switch (flag) {
+			case '=':
+				results.add(new RefPushResult(remoteName, sourceRef, remoteRef, "UP_TO_DATE", true, null));
+				break;
+			case ' ':
+			case '+':
+			case '-':
+			case '*':
+				results.add(new RefPushResult(remoteName, sourceRef, remoteRef, "OK", true, null));
+				break;
+			case '!':
+				String status = reason != null && reason.contains("non-fast-forward") ? "REJECTED_NONFASTFORWARD" : "REJECTED_OTHER_REASON";
+				results.add(new RefPushResult(remoteName, sourceRef, remoteRef, status, false, reason));
+				break;
+			default:
+				break;
+			}
+		}
+
+		return results;
+	}
+}
@@ -0,0 +1,137 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+
+/**
+ * @author ocleirig
+ *
+ * The head commit of every pull request as advertised by github under refs/pull/&lt;n&gt;/head.
+ *
+ * One ls-remote returns the heads of all pull requests without using the api rate limit.  Comparing them with the heads
+ * of the last run gives the pull requests that moved, so only those need to be looked up through the api.
+ *
+ * Github keeps the refs of closed pull requests so the heads include them; they just never move.
+ *
+ * The heads are saved as number=commit id lines.
+ *
+ */
+public final class PullRequestHeads {
+
+	private static final String UTF_8 = "UTF-8";
+
+	private static final Pattern PULL_REQUEST_HEAD = Pattern.compile("^refs/pull/(\\d+)/head$");
+
+	private PullRequestHeads() {
+	}
+
+	/**
+	 * @param refs the advertised refs of the repository, refs other than refs/pull/&lt;n&gt;/head are ignored.
+	 * @return the head commit id of each pull request by number.
+	 */
+	public static Map<Integer, String> fromRefs(Collection<Ref> refs) {
+
+		Map<Integer, String> heads = new TreeMap<Integer, String>();
+
+		for (Ref ref : refs) {
+
+			Matcher m = PULL_REQUEST_HEAD.matcher(ref.getName());
+
+			ObjectId objectId = ref.getObjectId();
+
+			if (m.matches() && objectId != null)
+				heads.put(Integer.parseInt(m.group(1)), objectId.name());
+		}
+
+		return heads;
+	}
+
+	/**
+	 * @return the pull requests that are new or whose head is different than in the known heads.
+	 */
+	public static Set<Integer> changedSince(Map<Integer, String> knownHeads, Map<Integer, String> currentHeads) {
+
+		Set<Integer> changed = new TreeSet<Integer>();
+
+		for (Entry<Integer, String> head : currentHeads.entrySet()) {
+
+			if (!head.getValue().equals(knownHeads.get(head.getKey())))
+				changed.add(head.getKey());
+		}
+
+		return changed;
+	}
+
+	/**
+	 * @return the saved heads or an empty map if the file does not exist.
+	 * @throws IOException
+	 */
+	public static Map<Integer, String> load(File headsFile) throws IOException {
+
+		if (!headsFile.exists())
+			return Collections.emptyMap();
+
+		Map<Integer, String> heads = new TreeMap<Integer, String>();
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(headsFile.toPath()), UTF_8));
+
+		try {
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+
+				int separator = line.indexOf('=');
+
+				if (separator == -1)
+					continue;
+
+				try {
+					heads.put(Integer.parseInt(line.substring(0, separator).trim()), line.substring(separator + 1).trim());
+				} catch (NumberFormatException e) {
+					// not a pull request line.
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+
+		return heads;
+	}
+
+	/**
+	 * Save the heads (see {@link ChangeReportWriter#writeAtomically(File, List)}).
+	 *
+	 * @throws IOException
+	 */
+	public static void save(File headsFile, Map<Integer, String> heads) throws IOException {
+
+		List<String> lines = new ArrayList<String>();
+
+		for (Entry<Integer, String> head : heads.entrySet()) {
+			lines.add(head.getKey() + "=" + head.getValue());
+		}
+
+		ChangeReportWriter.writeAtomically(headsFile, lines);
+	}
+}
@@ -0,0 +1,323 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.merge.MergeStrategy;
+import org.eclipse.jgit.merge.ResolveMerger;
+
+/**
+ * @author ocleirig
+ *
+ * Test merges a pull request head into the target branch without a working tree.
+ *
+ * The three-way merge is done in core by the recursive merge strategy without an index or checkout, so many pull requests
+ * can be test merged at once against the same repository.  A merger is not thread safe so each test merge uses its own.
+ *
+ * Only the ids of the merged blobs and the result tree are computed, nothing is written to the object database.  When the
+ * commits have more than one merge base the recursive strategy has to read back the tree it merged the bases into, those
+ * (rare) test merges are redone with the merged objects written as loose objects that maintainRepository packs later.
+ *
+ * The outcome of each test merge is kept in a &lt;prefix&gt;.&lt;number&gt; report file with the same KEY=VALUE layout as
+ * the other pull request reports.
+ *
+ */
+public final class PullRequestMergeTester {
+
+	private static final String UTF_8 = "UTF-8";
+
+	private static final String PULL_REQUEST_NUMBER = "PULL_REQUEST_NUMBER";
+
+	private static final String PULL_REQUEST_COMMIT_ID = "PULL_REQUEST_COMMIT_ID";
+
+	private static final String TARGET_COMMIT_ID = "TARGET_COMMIT_ID";
+
+	private static final String MERGEABLE = "MERGEABLE";
+
+	private static final String MERGE_TREE_ID = "MERGE_TREE_ID";
+
+	private static final String CONFLICTING_PATHS = "CONFLICTING_PATHS";
+
+	private final Repository repository;
+
+	/**
+	 * @param repository the repository holding both the target branch and the pull request heads.
+	 */
+	public PullRequestMergeTester(Repository repository) {
+		this.repository = repository;
+	}
+
+	/**
+	 * Merge the pull request head into the target commit in core.
+	 *
+	 * @return the outcome of the merge.
+	 * @throws IOException if the commits could not be read (i.e. they have no merge base).
+	 */
+	public Mergeability test(int pullRequestNumber, AnyObjectId pullRequestCommitId, AnyObjectId targetCommitId) throws IOException {
+
+		ResolveMerger merger = (ResolveMerger) MergeStrategy.RECURSIVE.newMerger(repository, true);
+
+		merger.setObjectInserter(new UnstoredObjectInserter(repository));
+
+		try {
+			return merge(merger, pullRequestNumber, pullRequestCommitId, targetCommitId);
+		} catch (MissingObjectException e) {
+			// the tree of the virtual merge base was not stored.
+			return merge((ResolveMerger) MergeStrategy.RECURSIVE.newMerger(repository, true), pullRequestNumber, pullRequestCommitId, targetCommitId);
+		}
+	}
+
+	private static Mergeability merge(ResolveMerger merger, int pullRequestNumber, AnyObjectId pullRequestCommitId, AnyObjectId targetCommitId) throws IOException {
+
+		if (merger.merge(targetCommitId, pullRequestCommitId))
+			return new Mergeability(pullRequestNumber, pullRequestCommitId.name(), targetCommitId.name(), true, merger.getResultTreeId().name(), Collections.<String>emptySet());
+
+		Set<String> conflictingPaths = new TreeSet<String>();
+
+		if (merger.getUnmergedPaths() != null)
+			conflictingPaths.addAll(merger.getUnmergedPaths());
+
+		// in core only the paths that could not be merged at all are failing, i.e. a submodule.
+		if (merger.getFailingPaths() != null)
+			conflictingPaths.addAll(merger.getFailingPaths().keySet());
+
+		return new Mergeability(pullRequestNumber, pullRequestCommitId.name(), targetCommitId.name(), false, null, conflictingPaths);
+	}
+
+	/**
+	 * @return the report file of the pull request.
+	 */
+	public static File getReportFile(File directory, String prefix, int pullRequestNumber) {
+		return new File(directory, prefix + "." + pullRequestNumber);
+	}
+
+	/**
+	 * Delete the reports of the pull requests that are no longer tested.
+	 *
+	 * @return the number of reports deleted.
+	 */
+	public static int deleteReports(File directory, String prefix) throws IOException {
+
+		File[] files = directory.listFiles();
+
+		if (files == null)
+			return 0;
+
+		int deleted = 0;
+
+		for (File file : files) {
+
+			String name = file.getName();
+
+			if (name.startsWith(prefix + ".") && StringUtils.isNumeric(name.substring(prefix.length() + 1))) {
+				Files.delete(file.toPath());
+				deleted++;
+			}
+		}
+
+		return deleted;
+	}
+
+	/**
+	 * @return the mergeability in the report file or null if the pull request has not been test merged.
+	 * @throws IOException
+	 */
+	public static Mergeability load(File reportFile) throws IOException {
+
+		if (!reportFile.exists())
+			return null;
+
+		String number = null, commitId = null, targetCommitId = null, mergeable = null, mergeTreeId = null, conflictingPaths = null;
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(reportFile.toPath()), UTF_8));
+
+		try {
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+
+				int separator = line.indexOf('=');
+
+				if (separator == -1)
+					continue;
+
+				String key = line.substring(0, separator).trim();
+
+				String value = line.substring(separator + 1).trim();
+
+				if (PULL_REQUEST_NUMBER.equals(key))
+					number = value;
+				else if (PULL_REQUEST_COMMIT_ID.equals(key))
+					commitId = value;
+				else if (TARGET_COMMIT_ID.equals(key))
+					targetCommitId = value;
+				else if (MERGEABLE.equals(key))
+					mergeable = value;
+				else if (MERGE_TREE_ID.equals(key))
+					mergeTreeId = value;
+				else if (CONFLICTING_PATHS.equals(key))
+					conflictingPaths = value;
+			}
+		}
+		finally {
+			reader.close();
+		}
+
+		if (number == null || commitId == null || mergeable == null)
+			return null;
+
+		Set<String> paths = new TreeSet<String>();
+
+		if (conflictingPaths != null) {
+
+			for (String path : conflictingPaths.split(",")) {
+
+				if (path.length() > 0)
+					paths.add(path);
+			}
+		}
+
+		try {
+			return new Mergeability(Integer.parseInt(number), commitId, targetCommitId, Boolean.parseBoolean(mergeable), StringUtils.trimToNull(mergeTreeId), paths);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Write the report of the test merge (see {@link ChangeReportWriter#writeAtomically(File, List)}).
+	 *
+	 * @throws IOException
+	 */
+	public static void save(File reportFile, Mergeability mergeability) throws IOException {
+
+		ChangeReportWriter.writeAtomically(reportFile, Arrays.asList(
+				String.format("%s=%d", PULL_REQUEST_NUMBER, mergeability.getPullRequestNumber()),
+				String.format("%s=%s", PULL_REQUEST_COMMIT_ID, mergeability.getPullRequestCommitId()),
+				String.format("%s=%s", TARGET_COMMIT_ID, StringUtils.defaultString(mergeability.getTargetCommitId())),
+				String.format("%s=%s", MERGEABLE, mergeability.isMergeable()),
+				String.format("%s=%s", MERGE_TREE_ID, StringUtils.defaultString(mergeability.getMergeTreeId())),
+				String.format("%s=%s", CONFLICTING_PATHS, StringUtils.join(mergeability.getConflictingPaths(), ","))));
+	}
+
+	/*
+	 * Computes the ids of the objects inserted without storing them, the objects already in the repository are read as usual.
+	 */
+	private static final class UnstoredObjectInserter extends ObjectInserter.Formatter {
+
+		private final Repository repository;
+
+		private UnstoredObjectInserter(Repository repository) {
+			this.repository = repository;
+		}
+
+		@Override
+		public ObjectId insert(int type, byte[] data, int off, int len) throws IOException {
+			return idFor(type, data, off, len);
+		}
+
+		@Override
+		public ObjectId insert(int objectType, long length, InputStream in) throws IOException {
+			return idFor(objectType, length, in);
+		}
+
+		// newer JGit versions have the merger read through its inserter, older ones don't have this method (so no @Override)
+		// and read the repository directly.  Either way the unstored objects are missing and test() retries the merge.
+		public ObjectReader newReader() {
+			return repository.newObjectReader();
+		}
+	}
+
+	/**
+	 * The outcome of test merging one pull request head.
+	 */
+	public static final class Mergeability {
+
+		private final int pullRequestNumber;
+
+		private final String pullRequestCommitId;
+
+		private final String targetCommitId;
+
+		private final boolean mergeable;
+
+		private final String mergeTreeId;
+
+		private final List<String> conflictingPaths;
+
+		/**
+		 * @param mergeTreeId the tree of the clean merge, null if it conflicts.
+		 * @param conflictingPaths empty if the merge is clean.
+		 */
+		public Mergeability(int pullRequestNumber, String pullRequestCommitId, String targetCommitId, boolean mergeable, String mergeTreeId, Set<String> conflictingPaths) {
+			this.pullRequestNumber = pullRequestNumber;
+			this.pullRequestCommitId = pullRequestCommitId;
+			this.targetCommitId = targetCommitId;
+			this.mergeable = mergeable;
+			this.mergeTreeId = mergeTreeId;
+			this.conflictingPaths = Collections.unmodifiableList(new ArrayList<String>(new TreeSet<String>(conflictingPaths)));
+		}
+
+		/**
+		 * @return the pullRequestNumber
+		 */
+		public int getPullRequestNumber() {
+			return pullRequestNumber;
+		}
+
+		/**
+		 * @return the pullRequestCommitId
+		 */
+		public String getPullRequestCommitId() {
+			return pullRequestCommitId;
+		}
+
+		/**
+		 * @return the targetCommitId
+		 */
+		public String getTargetCommitId() {
+			return targetCommitId;
+		}
+
+		/**
+		 * @return true if the head merges cleanly into the target.
+		 */
+		public boolean isMergeable() {
+			return mergeable;
+		}
+
+		/**
+		 * @return the tree of the clean merge, null if it conflicts.
+		 */
+		public String getMergeTreeId() {
+			return mergeTreeId;
+		}
+
+		/**
+		 * @return the paths that conflict, sorted.
+		 */
+		public List<String> getConflictingPaths() {
+			return conflictingPaths;
+		}
+	}
+}
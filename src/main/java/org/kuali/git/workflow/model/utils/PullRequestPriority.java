@@ -0,0 +1,349 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * @author ocleirig
+ *
+ * Orders the pull requests waiting to be built so the limited build executors reach the cheapest and most recently updated
+ * ones first.
+ *
+ * The score of a pull request is an estimate in seconds of what building it costs, lower scores are built first:
+ *
+ * the build cost of each module it changes + seconds per changed line * changed lines
+ *   - a bonus for a head committed within the recent update window (the author is likely waiting on the result)
+ *   - a bonus per day since it was opened (so a large pull request is not starved by a stream of small ones)
+ *
+ * The module build costs are module=seconds properties, modules without a cost use the default.
+ *
+ * Scoring a pull request takes two api calls (its changed files and its head commit) so the candidates are kept by head
+ * commit between runs, one per line as commit id, number, changed lines, created at, head commit time and modules
+ * separated by tabs.  A head that has not moved is scored again without any api call.
+ *
+ */
+public final class PullRequestPriority {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final long MILLIS_PER_HOUR = 60L * 60L * 1000L;
+
+	private static final long MILLIS_PER_DAY = 24L * MILLIS_PER_HOUR;
+
+	private final Map<String, Long> moduleBuildSeconds;
+
+	private final long defaultModuleBuildSeconds;
+
+	private double secondsPerChangedLine = 0.5d;
+
+	private int recentUpdateWindowHours = 24;
+
+	private long recentUpdateBonusSeconds = 600;
+
+	private long waitingBonusSecondsPerDay = 120;
+
+	private int maximumWaitingDays = 30;
+
+	/**
+	 * @param moduleBuildSeconds the build cost of each module in seconds.
+	 * @param defaultModuleBuildSeconds the build cost of a module without one.
+	 */
+	public PullRequestPriority(Map<String, Long> moduleBuildSeconds, long defaultModuleBuildSeconds) {
+		this.moduleBuildSeconds = new HashMap<String, Long>(moduleBuildSeconds);
+		this.defaultModuleBuildSeconds = defaultModuleBuildSeconds;
+	}
+
+	/**
+	 * @return the module build costs in the module=seconds properties file or none if the file does not exist.
+	 * @throws IOException if the file can't be read or a cost is not a number.
+	 */
+	public static Map<String, Long> loadModuleBuildSeconds(File costsFile) throws IOException {
+
+		Map<String, Long> costs = new HashMap<String, Long>();
+
+		if (!costsFile.exists())
+			return costs;
+
+		Properties properties = new Properties();
+
+		InputStream input = Files.newInputStream(costsFile.toPath());
+
+		try {
+			properties.load(input);
+		}
+		finally {
+			IOUtils.closeQuietly(input);
+		}
+
+		for (String module : properties.stringPropertyNames()) {
+
+			String seconds = properties.getProperty(module).trim();
+
+			try {
+				costs.put(module, Long.parseLong(seconds));
+			} catch (NumberFormatException e) {
+				throw new IOException(costsFile + ": the build cost of " + module + " is not a number of seconds: " + seconds, e);
+			}
+		}
+
+		return costs;
+	}
+
+	/**
+	 * @return the saved candidates by head commit id or none if the file does not exist.
+	 * @throws IOException
+	 */
+	public static Map<String, Candidate> loadCandidates(File candidatesFile) throws IOException {
+
+		Map<String, Candidate> candidates = new HashMap<String, Candidate>();
+
+		if (!candidatesFile.exists())
+			return candidates;
+
+		for (String line : Files.readAllLines(candidatesFile.toPath(), UTF_8)) {
+
+			String[] fields = line.split("\t", -1);
+
+			if (fields.length != 6)
+				continue;
+
+			try {
+				Collection<String> modules = fields[5].isEmpty() ? Collections.<String>emptySet() : Arrays.asList(fields[5].split(","));
+
+				candidates.put(fields[0], new Candidate(Integer.parseInt(fields[1]), fields[0], Integer.parseInt(fields[2]), modules, Long.parseLong(fields[3]), Long.parseLong(fields[4])));
+			} catch (NumberFormatException e) {
+				// not a candidate line.
+			}
+		}
+
+		return candidates;
+	}
+
+	/**
+	 * Save the candidates (see {@link ChangeReportWriter#writeAtomically(File, List)}).
+	 *
+	 * @throws IOException
+	 */
+	public static void saveCandidates(File candidatesFile, Collection<Candidate> candidates) throws IOException {
+
+		List<String> lines = new ArrayList<String>();
+
+		for (Candidate candidate : candidates) {
+			lines.add(candidate.getCommitId() + "\t" + candidate.getNumber() + "\t" + candidate.getChangedLines() + "\t" + candidate.getCreatedAt() + "\t" + candidate.getHeadCommitTime() + "\t" + StringUtils.join(candidate.getModules(), ","));
+		}
+
+		ChangeReportWriter.writeAtomically(candidatesFile, lines);
+	}
+
+	/**
+	 * @param secondsPerChangedLine the secondsPerChangedLine to set
+	 */
+	public void setSecondsPerChangedLine(double secondsPerChangedLine) {
+		this.secondsPerChangedLine = secondsPerChangedLine;
+	}
+
+	/**
+	 * @param recentUpdateWindowHours the recentUpdateWindowHours to set
+	 */
+	public void setRecentUpdateWindowHours(int recentUpdateWindowHours) {
+		this.recentUpdateWindowHours = recentUpdateWindowHours;
+	}
+
+	/**
+	 * @param recentUpdateBonusSeconds the recentUpdateBonusSeconds to set
+	 */
+	public void setRecentUpdateBonusSeconds(long recentUpdateBonusSeconds) {
+		this.recentUpdateBonusSeconds = recentUpdateBonusSeconds;
+	}
+
+	/**
+	 * @param waitingBonusSecondsPerDay the waitingBonusSecondsPerDay to set
+	 */
+	public void setWaitingBonusSecondsPerDay(long waitingBonusSecondsPerDay) {
+		this.waitingBonusSecondsPerDay = waitingBonusSecondsPerDay;
+	}
+
+	/**
+	 * @param maximumWaitingDays the maximumWaitingDays to set
+	 */
+	public void setMaximumWaitingDays(int maximumWaitingDays) {
+		this.maximumWaitingDays = maximumWaitingDays;
+	}
+
+	/**
+	 * @return the build cost estimate of the modules in seconds.
+	 */
+	public long getBuildSeconds(Collection<String> modules) {
+
+		long seconds = 0;
+
+		for (String module : modules) {
+
+			Long cost = moduleBuildSeconds.get(module);
+
+			seconds += cost == null ? defaultModuleBuildSeconds : cost;
+		}
+
+		return seconds;
+	}
+
+	/**
+	 * @param now the current time in milliseconds.
+	 * @return the score of the candidate, lower is built sooner.
+	 */
+	public double score(Candidate candidate, long now) {
+
+		double score = getBuildSeconds(candidate.getModules()) + secondsPerChangedLine * candidate.getChangedLines();
+
+		if (recentUpdateWindowHours > 0) {
+
+			double hoursSinceUpdate = Math.max(0L, now - candidate.getHeadCommitTime()) / (double)MILLIS_PER_HOUR;
+
+			if (hoursSinceUpdate < recentUpdateWindowHours)
+				score -= recentUpdateBonusSeconds * (1d - hoursSinceUpdate / recentUpdateWindowHours);
+		}
+
+		double daysWaiting = Math.min(maximumWaitingDays, Math.max(0L, now - candidate.getCreatedAt()) / (double)MILLIS_PER_DAY);
+
+		score -= waitingBonusSecondsPerDay * daysWaiting;
+
+		return score;
+	}
+
+	/**
+	 * Score the candidates and order them, ties go to the older pull request number.
+	 *
+	 * @param now the current time in milliseconds.
+	 * @return the candidates in the order they should be built.
+	 */
+	public List<Candidate> order(Collection<Candidate> candidates, long now) {
+
+		List<Candidate> ordered = new ArrayList<Candidate>(candidates);
+
+		for (Candidate candidate : ordered) {
+			candidate.score = score(candidate, now);
+		}
+
+		Collections.sort(ordered, new Comparator<Candidate>() {
+
+			@Override
+			public int compare(Candidate o1, Candidate o2) {
+
+				int result = Double.compare(o1.score, o2.score);
+
+				if (result == 0)
+					result = Integer.compare(o1.number, o2.number);
+
+				return result;
+			}
+		});
+
+		return ordered;
+	}
+
+	/**
+	 * A pull request waiting to be built.
+	 */
+	public static final class Candidate {
+
+		private final int number;
+
+		private final String commitId;
+
+		private final int changedLines;
+
+		private final Set<String> modules;
+
+		private final long createdAt;
+
+		private final long headCommitTime;
+
+		private double score;
+
+		/**
+		 * @param number the pull request number.
+		 * @param commitId the head commit id.
+		 * @param changedLines the lines added and deleted.
+		 * @param modules the top level directories changed.
+		 * @param createdAt when the pull request was opened in milliseconds.
+		 * @param headCommitTime when the head commit was made in milliseconds.
+		 */
+		public Candidate(int number, String commitId, int changedLines, Collection<String> modules, long createdAt, long headCommitTime) {
+			this.number = number;
+			this.commitId = commitId;
+			this.changedLines = changedLines;
+			this.modules = Collections.unmodifiableSet(new TreeSet<String>(modules));
+			this.createdAt = createdAt;
+			this.headCommitTime = headCommitTime;
+		}
+
+		/**
+		 * @return the number
+		 */
+		public int getNumber() {
+			return number;
+		}
+
+		/**
+		 * @return the commitId
+		 */
+		public String getCommitId() {
+			return commitId;
+		}
+
+		/**
+		 * @return the changedLines
+		 */
+		public int getChangedLines() {
+			return changedLines;
+		}
+
+		/**
+		 * @return the modules
+		 */
+		public Set<String> getModules() {
+			return modules;
+		}
+
+		/**
+		 * @return the createdAt
+		 */
+		public long getCreatedAt() {
+			return createdAt;
+		}
+
+		/**
+		 * @return the headCommitTime
+		 */
+		public long getHeadCommitTime() {
+			return headCommitTime;
+		}
+
+		/**
+		 * @return the score given by the last {@link PullRequestPriority#order(Collection, long)}
+		 */
+		public double getScore() {
+			return score;
+		}
+	}
+}
@@ -0,0 +1,230 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.jgit.internal.storage.file.RefDirectory;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.ReceiveCommand;
+
+/**
+ * @author ocleirig
+ *
+ * Manages the refs/heads/pull-request-&lt;n&gt; branches and the refs/remotes/&lt;fork&gt;/pull-request-&lt;n&gt; tracking refs
+ * of a repository that holds thousands of pull requests.
+ *
+ * The refs are read once into an index (pull request number to commit) so that each update only touches the refs that
+ * actually change: branches that are already at the pull request head are skipped and branches of pull requests that are
+ * no longer open are deleted in the same batch.  After the batch the loose pull request refs are moved into packed-refs so
+ * later ref lookups don't have to read thousands of loose ref files.
+ *
+ * The remote names are cached as well so checking for a fork remote does not re-read the config.
+ *
+ */
+public class PullRequestRefManager {
+
+	public static final String BRANCH_PREFIX = "refs/heads/pull-request-";
+
+	private static final String REMOTES_PREFIX = "refs/remotes/";
+
+	// refs/heads/pull-request-12 or refs/remotes/user/repo/pull-request-12
+	private static final Pattern PULL_REQUEST_REF = Pattern.compile("^refs/(?:heads|remotes/.+)/pull-request-(\\d+)$");
+
+	private final Repository repository;
+
+	private final GitOperations gitOperations;
+
+	// pull request number -> commit of refs/heads/pull-request-<n>
+	private Map<Integer, ObjectId> branchIndex;
+
+	// ref name -> commit of the remote tracking pull request refs.
+	private Map<String, ObjectId> trackingIndex;
+
+	private Set<String> remotes;
+
+	/**
+	 * @param repository the repository holding the pull request refs.
+	 * @param gitOperations used to apply the ref updates as one batch.
+	 */
+	public PullRequestRefManager(Repository repository, GitOperations gitOperations) {
+		this.repository = repository;
+		this.gitOperations = gitOperations;
+	}
+
+	/**
+	 * @return true if the remote is configured.
+	 */
+	public synchronized boolean remoteExists(String remoteName) {
+
+		if (remotes == null)
+			remotes = new HashSet<String>(repository.getConfig().getSubsections("remote"));
+
+		return remotes.contains(remoteName);
+	}
+
+	/**
+	 * Record a remote that was just added to the config.
+	 */
+	public synchronized void addRemote(String remoteName) {
+
+		remoteExists(remoteName);
+
+		remotes.add(remoteName);
+	}
+
+	/**
+	 * @return the pull request number to commit of the existing pull-request-&lt;n&gt; branches.
+	 * @throws IOException
+	 */
+	public synchronized Map<Integer, ObjectId> getPullRequestBranches() throws IOException {
+
+		loadIndex();
+
+		return Collections.unmodifiableMap(branchIndex);
+	}
+
+	/**
+	 * Point the pull-request-&lt;n&gt; branches at the heads given in one batch and pack them.
+	 *
+	 * @param heads pull request number to the head commit.
+	 * @param openPullRequests the numbers of every open pull request (whatever its base branch), the branches and tracking
+	 *            refs of the other pull requests are deleted.  null to not delete anything.
+	 * @return the ref updates that were applied (none if every branch was already up to date).
+	 * @throws IOException if the batch failed.
+	 */
+	public synchronized List<ReceiveCommand> update(Map<Integer, ObjectId> heads, Set<Integer> openPullRequests) throws IOException {
+
+		loadIndex();
+
+		List<ReceiveCommand> commands = new ArrayList<ReceiveCommand>();
+
+		for (Entry<Integer, ObjectId> head : heads.entrySet()) {
+
+			ObjectId current = branchIndex.get(head.getKey());
+
+			if (head.getValue().equals(current))
+				continue;
+
+			commands.add(new ReceiveCommand(current == null ? ObjectId.zeroId() : current, head.getValue(), BRANCH_PREFIX + head.getKey()));
+		}
+
+		if (openPullRequests != null) {
+
+			for (Entry<Integer, ObjectId> branch : branchIndex.entrySet()) {
+
+				if (!openPullRequests.contains(branch.getKey()) && !heads.containsKey(branch.getKey()))
+					commands.add(new ReceiveCommand(branch.getValue(), ObjectId.zeroId(), BRANCH_PREFIX + branch.getKey()));
+			}
+
+			for (Entry<String, ObjectId> tracking : trackingIndex.entrySet()) {
+
+				Integer number = parsePullRequestNumber(tracking.getKey());
+
+				if (!openPullRequests.contains(number) && !heads.containsKey(number))
+					commands.add(new ReceiveCommand(tracking.getValue(), ObjectId.zeroId(), tracking.getKey()));
+			}
+		}
+
+		try {
+			gitOperations.updateRefs(commands);
+		}
+		finally {
+			// the batch may have partly applied so read the refs again next time.
+			branchIndex = null;
+			trackingIndex = null;
+		}
+
+		packLooseRefs();
+
+		return commands;
+	}
+
+	/**
+	 * Move the loose pull request refs (including those written by a fetch) into packed-refs.
+	 *
+	 * Only possible for file based repositories, does nothing otherwise.
+	 *
+	 * @return the number of refs packed.
+	 * @throws IOException
+	 */
+	public synchronized int packLooseRefs() throws IOException {
+
+		RefDatabase refDatabase = repository.getRefDatabase();
+
+		if (!(refDatabase instanceof RefDirectory))
+			return 0;
+
+		List<String> loose = new ArrayList<String>();
+
+		for (Ref ref : refDatabase.getRefs(RefDatabase.ALL).values()) {
+
+			if (ref.getStorage().isLoose() && !ref.isSymbolic() && PULL_REQUEST_REF.matcher(ref.getName()).matches())
+				loose.add(ref.getName());
+		}
+
+		if (!loose.isEmpty())
+			((RefDirectory) refDatabase).pack(loose);
+
+		return loose.size();
+	}
+
+	/**
+	 * @return the pull request number of a pull-request-&lt;n&gt; ref or null if the ref is not one.
+	 */
+	public static Integer parsePullRequestNumber(String refName) {
+
+		Matcher matcher = PULL_REQUEST_REF.matcher(refName);
+
+		if (!matcher.matches())
+			return null;
+
+		return Integer.valueOf(matcher.group(1));
+	}
+
+	/*
+	 * Read the pull request refs once, they are kept until the next update.
+	 */
+	private void loadIndex() throws IOException {
+
+		if (branchIndex != null)
+			return;
+
+		Map<Integer, ObjectId> branches = new TreeMap<Integer, ObjectId>();
+
+		Map<String, ObjectId> tracking = new TreeMap<String, ObjectId>();
+
+		for (Ref ref : repository.getRefDatabase().getRefs(RefDatabase.ALL).values()) {
+
+			if (ref.isSymbolic() || ref.getObjectId() == null)
+				continue;
+
+			Integer number = parsePullRequestNumber(ref.getName());
+
+			if (number == null)
+				continue;
+
+			if (ref.getName().startsWith(REMOTES_PREFIX))
+				tracking.put(ref.getName(), ref.getObjectId());
+			else
+				branches.put(number, ref.getObjectId());
+		}
+
+		branchIndex = branches;
+		trackingIndex = tracking;
+	}
+}
@@ -0,0 +1,151 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.eclipse.jgit.internal.storage.pack.PackWriter;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.RefSpec;
+import org.kuali.git.workflow.model.PushPlan;
+import org.kuali.git.workflow.model.RefPushResult;
+
+/**
+ * @author ocleirig
+ *
+ * Works out what a push needs to send from the refs the remote advertises.
+ *
+ * Refspecs whose remote ref already points at the local object are dropped so that a retried push only sends what did not
+ * make it the first time.  The advertised objects that exist locally are the haves of the pack so it only contains what the
+ * remote is missing.
+ *
+ */
+public class PushPlanner {
+
+	private final Repository repository;
+
+	/**
+	 *
+	 */
+	public PushPlanner(Repository repository) {
+		this.repository = repository;
+	}
+
+	/**
+	 * @param remoteName the remote being pushed to.
+	 * @param refSpecs the refspecs to push.
+	 * @param advertisedRefs the refs of the remote (i.e. from ls-remote).
+	 * @return the plan.
+	 * @throws IOException
+	 */
+	public PushPlan plan(String remoteName, List<String> refSpecs, Collection<Ref> advertisedRefs) throws IOException {
+
+		PushPlan plan = new PushPlan(remoteName);
+
+		Map<String, ObjectId> remoteRefs = new HashMap<String, ObjectId>();
+
+		for (Ref ref : advertisedRefs) {
+
+			ObjectId id = ref.getObjectId();
+
+			if (id == null)
+				continue;
+
+			remoteRefs.put(ref.getName(), id);
+
+			if (repository.getObjectDatabase().has(id))
+				plan.getHaves().add(id);
+		}
+
+		for (String spec : refSpecs) {
+
+			RefSpec refSpec = new RefSpec(spec);
+
+			if (refSpec.isWildcard()) {
+				// can't be planned without expanding it, let the push do that.
+				plan.getRefSpecsToPush().add(spec);
+				continue;
+			}
+
+			String source = refSpec.getSource();
+
+			String destination = refSpec.getDestination();
+
+			if (source == null) {
+
+				// a delete is only needed if the remote still has the ref.
+				if (remoteRefs.containsKey(destination))
+					plan.getRefSpecsToPush().add(spec);
+				else
+					plan.getUpToDateResults().add(new RefPushResult(remoteName, "", destination, "UP_TO_DATE", true, null));
+
+				continue;
+			}
+
+			ObjectId localId = repository.resolve(source);
+
+			if (localId == null)
+				throw new IOException("Can't resolve " + source + " in the local repository.");
+
+			if (destination == null) {
+
+				Ref localRef = repository.getRef(source);
+
+				destination = localRef == null ? source : localRef.getName();
+			}
+
+			if (localId.equals(remoteRefs.get(destination))) {
+				plan.getUpToDateResults().add(new RefPushResult(remoteName, source, destination, "UP_TO_DATE", true, null));
+				continue;
+			}
+
+			plan.getRefSpecsToPush().add(spec);
+
+			plan.getWants().add(localId);
+		}
+
+		return plan;
+	}
+
+	/**
+	 * Build the thin pack the push will send, without sending it, to record its size on the plan.
+	 *
+	 * @throws IOException
+	 */
+	public void predictPackSize(PushPlan plan) throws IOException {
+
+		if (plan.getWants().isEmpty()) {
+			plan.setPredictedBytes(0);
+			plan.setPredictedObjects(0);
+			return;
+		}
+
+		PackWriter writer = new PackWriter(repository);
+
+		try {
+			writer.setThin(true);
+
+			writer.preparePack(NullProgressMonitor.INSTANCE, plan.getWants(), plan.getHaves());
+
+			CountingOutputStream counter = new CountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+
+			writer.writePack(NullProgressMonitor.INSTANCE, NullProgressMonitor.INSTANCE, counter);
+
+			plan.setPredictedObjects(writer.getObjectCount());
+			plan.setPredictedBytes(counter.getByteCount());
+		}
+		finally {
+			writer.release();
+		}
+	}
+}
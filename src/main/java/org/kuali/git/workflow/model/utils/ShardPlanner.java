@@ -0,0 +1,114 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * @author ocleirig
+ *
+ * Packs the changed modules into a number of downstream jobs (shards) with about the same total build duration.
+ *
+ * Uses longest processing time first scheduling: the modules are taken from the longest estimated build to the shortest
+ * and each goes into the shard with the least work so far.  The longest shard is at most 4/3 of the best possible split,
+ * so one large module is no longer queued behind several small ones and small modules don't each take an executor.
+ *
+ */
+public final class ShardPlanner {
+
+	private ShardPlanner() {
+	}
+
+	/**
+	 * @param estimatedSeconds the estimated build duration of each module to build.
+	 * @param shardCount the number of shards wanted, fewer are planned if there are fewer modules.
+	 * @return the shards, numbered from 1, without any empty ones.
+	 */
+	public static List<Shard> plan(Map<String, Long> estimatedSeconds, int shardCount) {
+
+		if (shardCount < 1)
+			throw new IllegalArgumentException("at least one shard is needed: " + shardCount);
+
+		List<Entry<String, Long>> modules = new ArrayList<Entry<String, Long>>(estimatedSeconds.entrySet());
+
+		// longest first, the module name keeps the plan the same from run to run.
+		Collections.sort(modules, new Comparator<Entry<String, Long>>() {
+
+			@Override
+			public int compare(Entry<String, Long> o1, Entry<String, Long> o2) {
+
+				int result = Long.compare(o2.getValue(), o1.getValue());
+
+				if (result == 0)
+					result = o1.getKey().compareTo(o2.getKey());
+
+				return result;
+			}
+		});
+
+		List<Shard> shards = new ArrayList<Shard>();
+
+		for (int i = 0; i < Math.min(shardCount, modules.size()); i++) {
+			shards.add(new Shard(i + 1));
+		}
+
+		for (Entry<String, Long> module : modules) {
+
+			Shard lightest = shards.get(0);
+
+			for (Shard shard : shards) {
+
+				if (shard.estimatedSeconds < lightest.estimatedSeconds)
+					lightest = shard;
+			}
+
+			lightest.modules.add(module.getKey());
+			lightest.estimatedSeconds += module.getValue();
+		}
+
+		return shards;
+	}
+
+	/**
+	 * The modules built by one downstream job.
+	 */
+	public static final class Shard {
+
+		private final int number;
+
+		private final List<String> modules = new ArrayList<String>();
+
+		private long estimatedSeconds = 0;
+
+		private Shard(int number) {
+			this.number = number;
+		}
+
+		/**
+		 * @return the shard number, starting from 1.
+		 */
+		public int getNumber() {
+			return number;
+		}
+
+		/**
+		 * @return the modules of the shard, longest first.
+		 */
+		public List<String> getModules() {
+			return Collections.unmodifiableList(modules);
+		}
+
+		/**
+		 * @return the estimated build duration of the shard.
+		 */
+		public long getEstimatedSeconds() {
+			return estimatedSeconds;
+		}
+	}
+}
@@ -0,0 +1,559 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.kuali.git.workflow.model.SqlObjectChange;
+import org.kuali.git.workflow.model.SqlObjectChange.ChangeKind;
+
+/**
+ * @author ocleirig
+ *
+ * Extracts the schema objects affected by sql scripts.
+ *
+ * The script is tokenized as it is read; comments and string literals are skipped and only the leading tokens of each
+ * statement are kept, which is enough to recognize the DDL and DML statement forms.  The analyzer never holds more than one
+ * statement prefix in memory so it is safe for large impex scripts.
+ *
+ * The analyzer accumulates results over all of the scripts it is given.
+ *
+ */
+public class SqlChangeAnalyzer {
+
+	private static final int STATEMENT_PREFIX_TOKENS = 8;
+
+	private static final Set<String> OBJECT_TYPES = new HashSet<String>(Arrays.asList("TABLE", "VIEW", "SEQUENCE", "INDEX", "SYNONYM", "TRIGGER", "PROCEDURE", "FUNCTION", "PACKAGE", "TYPE"));
+
+	private static final Set<String> CREATE_MODIFIERS = new HashSet<String>(Arrays.asList("OR", "REPLACE", "GLOBAL", "TEMPORARY", "UNIQUE", "BITMAP", "FORCE", "NOFORCE", "MATERIALIZED", "PUBLIC", "EDITIONABLE", "NONEDITIONABLE", "BODY"));
+
+	private final Set<SqlObjectChange> changes = new TreeSet<SqlObjectChange>();
+
+	// count of scripts where no schema object could be identified.
+	private int unattributedScripts = 0;
+
+	/**
+	 *
+	 */
+	public SqlChangeAnalyzer() {
+	}
+
+	/**
+	 * Analyze a complete script.
+	 *
+	 * @param script the content of the sql script, it is read until the end but not closed.
+	 * @return the number of statements that affected a schema object.
+	 * @throws IOException
+	 */
+	public int analyze(Reader script) throws IOException {
+
+		int found = analyzeStatements(script, null, false).recognized;
+
+		if (found == 0)
+			unattributedScripts++;
+
+		return found;
+	}
+
+	/**
+	 * Analyze the changed lines of a unified diff patch (as returned in the patch field of the github compare api).
+	 *
+	 * Each hunk is read twice: once as the old side (context and removed lines) and once as the new side (context and
+	 * added lines), with the enclosing statement that git reports in the hunk header as the first context line.  Only the
+	 * statements with at least one token on a removed or added line are changes; a statement whose text is only in the
+	 * context lines is ignored.  A statement removed from the script has the opposite effect of running it, so a removed
+	 * CREATE is reported as a DROP and a removed DROP as a CREATE.
+	 *
+	 * A changed statement that can't be attributed to a schema object marks the result as unattributed.
+	 *
+	 * @return the number of changed statements that affected a schema object.
+	 * @throws IOException
+	 */
+	public int analyzePatch(String patch) throws IOException {
+
+		int found = 0;
+
+		Hunk hunk = null;
+
+		for (String line : patch.split("\r?\n")) {
+
+			if (line.startsWith("@@")) {
+
+				if (hunk != null)
+					found += analyzeHunk(hunk);
+
+				hunk = new Hunk();
+
+				int headerEnd = line.indexOf("@@", 2);
+
+				hunk.addContext(headerEnd == -1 ? "" : line.substring(headerEnd + 2));
+			}
+			else if (hunk == null || line.startsWith("\\")) {
+				continue; // before the first hunk or \ No newline at end of file
+			}
+			else if (line.startsWith("+")) {
+				hunk.added.add(line.substring(1), true);
+			}
+			else if (line.startsWith("-")) {
+				hunk.removed.add(line.substring(1), true);
+			}
+			else {
+				hunk.addContext(line.length() == 0 ? line : line.substring(1));
+			}
+		}
+
+		if (hunk != null)
+			found += analyzeHunk(hunk);
+
+		return found;
+	}
+
+	private int analyzeHunk(Hunk hunk) throws IOException {
+
+		StatementCounts removed = analyzeStatements(new StringReader(hunk.removed.text.toString()), hunk.removed.changedLines, true);
+
+		StatementCounts added = analyzeStatements(new StringReader(hunk.added.text.toString()), hunk.added.changedLines, false);
+
+		if (removed.unrecognized + added.unrecognized > 0)
+			unattributedScripts++;
+
+		return removed.recognized + added.recognized;
+	}
+
+	/*
+	 * @param changedLines the lines of the script that changed, null if the whole script is new.
+	 * @param removed true if the script is the old side of a patch.
+	 */
+	private StatementCounts analyzeStatements(Reader script, Set<Integer> changedLines, boolean removed) throws IOException {
+
+		StatementCounts counts = new StatementCounts();
+
+		StatementTokenizer tokenizer = new StatementTokenizer(script);
+
+		List<String>statement = new ArrayList<String>(STATEMENT_PREFIX_TOKENS);
+
+		boolean statementChanged = false;
+
+		boolean verbChanged = false;
+
+		String token;
+
+		while ((token = tokenizer.next()) != null) {
+
+			boolean tokenChanged = changedLines == null || changedLines.contains(tokenizer.getTokenLine());
+
+			if (token.equals(StatementTokenizer.END_OF_STATEMENT)) {
+
+				if (statementChanged || (tokenChanged && !statement.isEmpty()))
+					counts.count(classify(statement, removed && verbChanged));
+
+				statement.clear();
+
+				statementChanged = false;
+			}
+			else {
+
+				if (statement.isEmpty())
+					verbChanged = tokenChanged;
+
+				if (statement.size() < STATEMENT_PREFIX_TOKENS)
+					statement.add(token);
+
+				statementChanged |= tokenChanged;
+			}
+		}
+
+		if (statementChanged)
+			counts.count(classify(statement, removed && verbChanged));
+
+		return counts;
+	}
+
+	/**
+	 * Record a changed script whose content could not be analyzed (i.e. it was deleted or the diff was too large).
+	 */
+	public void addUnattributedScript() {
+		unattributedScripts++;
+	}
+
+	/**
+	 * @return the schema object changes found in all of the analyzed scripts.
+	 */
+	public Set<SqlObjectChange> getChanges() {
+		return changes;
+	}
+
+	/**
+	 * @return the names of the affected objects of the type given (i.e. TABLE).
+	 */
+	public Set<String> getObjectNames(String objectType) {
+
+		Set<String>names = new TreeSet<String>();
+
+		for (SqlObjectChange change : changes) {
+
+			if (change.getObjectType().equals(objectType))
+				names.add(change.getObjectName());
+		}
+
+		return names;
+	}
+
+	/**
+	 * @return true if at least one analyzed script changed something that could not be attributed to a schema object.
+	 */
+	public boolean hasUnattributedChanges() {
+		return unattributedScripts > 0;
+	}
+
+	/*
+	 * Record the object changed by the statement, returns true if the statement was recognized.
+	 *
+	 * @param removed true if the statement itself was removed from the script.
+	 */
+	private boolean classify(List<String> statement, boolean removed) {
+
+		if (statement.size() < 2)
+			return false;
+
+		String verb = upper(statement.get(0));
+
+		if (verb.equals("CREATE") || verb.equals("ALTER") || verb.equals("DROP")) {
+
+			int i = 1;
+
+			while (i < statement.size() && CREATE_MODIFIERS.contains(upper(statement.get(i))))
+				i++;
+
+			if (i + 1 >= statement.size())
+				return false;
+
+			String objectType = upper(statement.get(i));
+
+			if (!OBJECT_TYPES.contains(objectType))
+				return false;
+
+			ChangeKind kind = ChangeKind.valueOf(verb);
+
+			if (removed && kind == ChangeKind.CREATE)
+				kind = ChangeKind.DROP;
+			else if (removed && kind == ChangeKind.DROP)
+				kind = ChangeKind.CREATE;
+
+			if (objectType.equals("INDEX") && i + 3 < statement.size() && upper(statement.get(i + 2)).equals("ON"))
+				add("TABLE", statement.get(i + 3), ChangeKind.ALTER);
+
+			return add(objectType, statement.get(i + 1), kind);
+		}
+		else if (verb.equals("INSERT") || verb.equals("MERGE")) {
+
+			if (statement.size() > 2 && upper(statement.get(1)).equals("INTO"))
+				return add("TABLE", statement.get(2), ChangeKind.DATA);
+		}
+		else if (verb.equals("UPDATE")) {
+			return add("TABLE", statement.get(1), ChangeKind.DATA);
+		}
+		else if (verb.equals("DELETE")) {
+
+			if (upper(statement.get(1)).equals("FROM")) {
+				if (statement.size() > 2)
+					return add("TABLE", statement.get(2), ChangeKind.DATA);
+			}
+			else {
+				return add("TABLE", statement.get(1), ChangeKind.DATA);
+			}
+		}
+		else if (verb.equals("TRUNCATE")) {
+
+			if (statement.size() > 2 && upper(statement.get(1)).equals("TABLE"))
+				return add("TABLE", statement.get(2), ChangeKind.DATA);
+		}
+		else if (verb.equals("COMMENT") && statement.size() > 3 && upper(statement.get(1)).equals("ON")) {
+
+			String target = upper(statement.get(2));
+
+			String name = statement.get(3);
+
+			if (target.equals("COLUMN")) {
+
+				int dot = name.lastIndexOf('.');
+
+				if (dot != -1)
+					return add("TABLE", name.substring(0, dot), ChangeKind.ALTER);
+			}
+			else if (OBJECT_TYPES.contains(target)) {
+				return add(target, name, ChangeKind.ALTER);
+			}
+		}
+
+		return false;
+	}
+
+	private boolean add(String objectType, String name, ChangeKind kind) {
+
+		if (name.length() == 0 || !Character.isLetter(name.charAt(0)))
+			return false;
+
+		changes.add(new SqlObjectChange(objectType, name, kind));
+
+		return true;
+	}
+
+	private static String upper(String token) {
+		return token.toUpperCase(Locale.ENGLISH);
+	}
+
+	private static final class StatementCounts {
+
+		private int recognized = 0;
+
+		private int unrecognized = 0;
+
+		private void count(boolean recognizedStatement) {
+
+			if (recognizedStatement)
+				recognized++;
+			else
+				unrecognized++;
+		}
+	}
+
+	/*
+	 * One side of a hunk: its text and which of its lines were removed or added.
+	 */
+	private static final class HunkSide {
+
+		private final StringBuilder text = new StringBuilder();
+
+		private final Set<Integer> changedLines = new HashSet<Integer>();
+
+		private int lines = 0;
+
+		private void add(String line, boolean changed) {
+
+			if (changed)
+				changedLines.add(lines);
+
+			text.append(line).append('\n');
+
+			lines++;
+		}
+	}
+
+	private static final class Hunk {
+
+		private final HunkSide removed = new HunkSide();
+
+		private final HunkSide added = new HunkSide();
+
+		private void addContext(String line) {
+			removed.add(line, false);
+			added.add(line, false);
+		}
+	}
+
+	/*
+	 * Splits the script into identifier and punctuation tokens with an END_OF_STATEMENT marker after each ; or / terminator.
+	 *
+	 * Unquoted identifiers are upper cased, quoted identifiers keep their case.
+	 */
+	private static final class StatementTokenizer {
+
+		private static final String END_OF_STATEMENT = ";";
+
+		private static final String LITERAL = "'";
+
+		private final PushbackReader input;
+
+		private boolean atLineStart = true;
+
+		// the line being read and the line the last token started on, counted from 0.
+		private int line = 0;
+
+		private int tokenLine = 0;
+
+		private StatementTokenizer(Reader input) {
+			this.input = new PushbackReader(input, 2);
+		}
+
+		private int getTokenLine() {
+			return tokenLine;
+		}
+
+		private int read() throws IOException {
+
+			int c = input.read();
+
+			if (c == '\n')
+				line++;
+
+			return c;
+		}
+
+		private void unread(int c) throws IOException {
+
+			input.unread(c);
+
+			if (c == '\n')
+				line--;
+		}
+
+		private String next() throws IOException {
+
+			int c;
+
+			while ((c = read()) != -1) {
+
+				if (c == '\n' || c == '\r') {
+					atLineStart = true;
+					continue;
+				}
+
+				if (Character.isWhitespace(c))
+					continue;
+
+				boolean lineStart = atLineStart;
+
+				atLineStart = false;
+
+				tokenLine = line;
+
+				if (c == '-' && peek('-')) {
+					skipToEndOfLine();
+					continue;
+				}
+
+				if (c == '/' && peek('*')) {
+					skipBlockComment();
+					continue;
+				}
+
+				if (c == ';')
+					return END_OF_STATEMENT;
+
+				if (c == '/' && lineStart)
+					return END_OF_STATEMENT; // sql*plus block terminator
+
+				if (c == '\'') {
+					skipLiteral();
+					return LITERAL;
+				}
+
+				if (c == '"')
+					return readQuotedIdentifier();
+
+				if (isIdentifierCharacter(c))
+					return readIdentifier(c);
+
+				return String.valueOf((char) c);
+			}
+
+			return null;
+		}
+
+		private boolean peek(int expected) throws IOException {
+
+			int c = read();
+
+			if (c == expected)
+				return true;
+
+			if (c != -1)
+				unread(c);
+
+			return false;
+		}
+
+		private void skipToEndOfLine() throws IOException {
+
+			int c;
+
+			while ((c = read()) != -1) {
+
+				if (c == '\n' || c == '\r') {
+					atLineStart = true;
+					return;
+				}
+			}
+		}
+
+		private void skipBlockComment() throws IOException {
+
+			int previous = -1;
+
+			int c;
+
+			while ((c = read()) != -1) {
+
+				if (previous == '*' && c == '/')
+					return;
+
+				previous = c;
+			}
+		}
+
+		private void skipLiteral() throws IOException {
+
+			int c;
+
+			while ((c = read()) != -1) {
+
+				if (c == '\'') {
+
+					// '' is an escaped quote inside of the literal.
+					if (!peek('\''))
+						return;
+				}
+			}
+		}
+
+		private String readQuotedIdentifier() throws IOException {
+
+			StringBuilder identifier = new StringBuilder();
+
+			int c;
+
+			while ((c = read()) != -1 && c != '"') {
+				identifier.append((char) c);
+			}
+
+			return identifier.toString();
+		}
+
+		private String readIdentifier(int first) throws IOException {
+
+			StringBuilder identifier = new StringBuilder();
+
+			identifier.append((char) first);
+
+			int c;
+
+			while ((c = read()) != -1) {
+
+				if (!isIdentifierCharacter(c)) {
+					unread(c);
+					break;
+				}
+
+				identifier.append((char) c);
+			}
+
+			return upper(identifier.toString());
+		}
+
+		private static boolean isIdentifierCharacter(int c) {
+			return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '#' || c == '.';
+		}
+	}
+}
@@ -0,0 +1,240 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author ocleirig
+ *
+ * Runs every item through a fixed sequence of stages where each stage has its own bounded number of threads.
+ *
+ * An item moves to the next stage as soon as it leaves the previous one so different items are in different stages at
+ * the same time (i.e. one pull request is fetched while the changes of another are identified).  The number of threads
+ * of a stage bounds how many items are in it at once, which keeps slow shared resources (the github api, the network)
+ * from being overloaded by the faster stages.
+ *
+ * A stage can skip an item (it leaves the pipeline without running the later stages) and a stage that throws fails the
+ * item; neither affects the other items.
+ *
+ * @param <T> the item type, compared by identity only if it does not override equals.
+ */
+public class StagedPipeline<T> {
+
+	/**
+	 * One step of the pipeline.
+	 */
+	public static interface Stage<T> {
+
+		/**
+		 * @return true to pass the item on to the next stage, false to skip the rest of the pipeline for it.
+		 * @throws Exception to fail the item.
+		 */
+		boolean process(T item) throws Exception;
+	}
+
+	private final List<StageRunner> stages = new ArrayList<StageRunner>();
+
+	/**
+	 *
+	 */
+	public StagedPipeline() {
+	}
+
+	/**
+	 * Add the next stage.
+	 *
+	 * @param name the name used in the summary.
+	 * @param threads the most items processed by the stage at once.
+	 * @param stage the work of the stage.
+	 */
+	public StagedPipeline<T> addStage(String name, int threads, Stage<T> stage) {
+
+		stages.add(new StageRunner(name, Math.max(1, threads), stage));
+
+		return this;
+	}
+
+	/**
+	 * Run all of the items through the pipeline and wait for them.
+	 *
+	 * @return the outcome of each item.
+	 * @throws InterruptedException if interrupted while waiting, the stages are stopped.
+	 */
+	public Result<T> run(Collection<T> items) throws InterruptedException {
+
+		Result<T> result = new Result<T>();
+
+		if (items.isEmpty() || stages.isEmpty())
+			return result;
+
+		CountDownLatch remaining = new CountDownLatch(items.size());
+
+		List<ExecutorService> executors = new ArrayList<ExecutorService>();
+
+		for (StageRunner stage : stages) {
+			executors.add(Executors.newFixedThreadPool(stage.threads));
+		}
+
+		try {
+			for (T item : items) {
+				submit(0, item, executors, result, remaining);
+			}
+
+			remaining.await();
+		}
+		finally {
+			for (ExecutorService executor : executors) {
+				executor.shutdownNow();
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return one line per stage: name threads=n items=n busiest=n total=x ms
+	 */
+	public List<String> summarize() {
+
+		List<String> lines = new ArrayList<String>();
+
+		for (StageRunner stage : stages) {
+			lines.add(String.format("%s threads=%d items=%d busiest=%d total=%d ms", stage.name, stage.threads, stage.items.get(), stage.busiest.get(), TimeUnit.NANOSECONDS.toMillis(stage.totalNanos.get())));
+		}
+
+		return lines;
+	}
+
+	private void submit(final int stageIndex, final T item, final List<ExecutorService> executors, final Result<T> result, final CountDownLatch remaining) {
+
+		final StageRunner stage = stages.get(stageIndex);
+
+		executors.get(stageIndex).execute(new Runnable() {
+
+			@Override
+			public void run() {
+
+				boolean passOn;
+
+				try {
+					passOn = stage.process(item);
+
+				} catch (Throwable e) {
+					// anything thrown must still release the item or run would never return.
+					result.failures.put(item, e);
+					remaining.countDown();
+					return;
+				}
+
+				if (!passOn) {
+					result.skipped.put(item, stage.name);
+					remaining.countDown();
+				}
+				else if (stageIndex + 1 < stages.size()) {
+					submit(stageIndex + 1, item, executors, result, remaining);
+				}
+				else {
+					result.completed.add(item);
+					remaining.countDown();
+				}
+			}
+		});
+	}
+
+	/*
+	 * A stage with its counters.
+	 */
+	private final class StageRunner {
+
+		private final String name;
+
+		private final int threads;
+
+		private final Stage<T> stage;
+
+		private final AtomicInteger active = new AtomicInteger();
+
+		private final AtomicInteger busiest = new AtomicInteger();
+
+		private final AtomicInteger items = new AtomicInteger();
+
+		private final AtomicLong totalNanos = new AtomicLong();
+
+		private StageRunner(String name, int threads, Stage<T> stage) {
+			this.name = name;
+			this.threads = threads;
+			this.stage = stage;
+		}
+
+		private boolean process(T item) throws Exception {
+
+			int now = active.incrementAndGet();
+
+			int max;
+
+			while ((max = busiest.get()) < now && !busiest.compareAndSet(max, now)) {
+				// retry until the maximum is recorded.
+			}
+
+			long start = System.nanoTime();
+
+			try {
+				return stage.process(item);
+			}
+			finally {
+				totalNanos.addAndGet(System.nanoTime() - start);
+				items.incrementAndGet();
+				active.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * The outcome of a run.
+	 */
+	public static final class Result<T> {
+
+		private final List<T> completed = Collections.synchronizedList(new ArrayList<T>());
+
+		private final Map<T, String> skipped = new ConcurrentHashMap<T, String>();
+
+		private final Map<T, Throwable> failures = new ConcurrentHashMap<T, Throwable>();
+
+		private Result() {
+		}
+
+		/**
+		 * @return the items that went through every stage.
+		 */
+		public List<T> getCompleted() {
+			return completed;
+		}
+
+		/**
+		 * @return the skipped items and the name of the stage that skipped them.
+		 */
+		public Map<T, String> getSkipped() {
+			return skipped;
+		}
+
+		/**
+		 * @return the failed items and what the stage that failed them threw.
+		 */
+		public Map<T, Throwable> getFailures() {
+			return failures;
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.eclipse.jgit.transport.ReceiveCommand.Result;
+
+/**
+ * @author ocleirig
+ *
+ * A git update-ref --stdin session that applies each batch of ref updates as one transaction.
+ *
+ * Uses the start and commit transaction commands which need git 2.27 or later, with an older git the first batch fails
+ * and the session is closed.
+ *
+ */
+public class UpdateRefSession extends GitProcessSession {
+
+	/**
+	 * @param gitCommand the git executable.
+	 * @param gitDirectory the .git directory of the repository.
+	 * @throws IOException if git could not be started.
+	 */
+	public UpdateRefSession(String gitCommand, File gitDirectory) throws IOException {
+		super(gitCommand, gitDirectory, "update-ref", "--stdin");
+	}
+
+	/**
+	 * Apply the commands in one transaction.  Either all of the refs are updated or none are.
+	 *
+	 * The result of each command is set to OK when the transaction commits.
+	 *
+	 * @throws IOException if the transaction failed, the session can't be used after that.
+	 */
+	public void apply(List<ReceiveCommand> commands) throws IOException {
+
+		try {
+			writeLine("start");
+
+			for (ReceiveCommand command : commands) {
+				writeLine(toInstruction(command));
+			}
+
+			writeLine("commit");
+
+			flush();
+
+			expect("start: ok");
+			expect("commit: ok");
+
+		} catch (IOException e) {
+
+			// nothing was applied, the results are left as not attempted so the batch can be retried.
+			close();
+
+			throw e;
+		}
+
+		for (ReceiveCommand command : commands) {
+			command.setResult(Result.OK);
+		}
+	}
+
+	private void expect(String expected) throws IOException {
+
+		String line = readLine();
+
+		if (!line.equals(expected))
+			throw new IOException("expected '" + expected + "' from git update-ref but got '" + line + "' " + getErrors());
+	}
+
+	/*
+	 * create SP ref SP new, update SP ref SP new [SP old] or delete SP ref [SP old]
+	 */
+	private static String toInstruction(ReceiveCommand command) {
+
+		ObjectId oldId = command.getOldId();
+
+		boolean checkOldValue = oldId != null && !ObjectId.zeroId().equals(oldId);
+
+		switch (command.getType()) {
+		case CREATE:
+			return "create " + command.getRefName() + " " + command.getNewId().name();
+		case DELETE:
+			return "delete " + command.getRefName() + (checkOldValue ? " " + oldId.name() : "");
+		default:
+			return "update " + command.getRefName() + " " + command.getNewId().name() + (checkOldValue ? " " + oldId.name() : "");
+		}
+	}
+}
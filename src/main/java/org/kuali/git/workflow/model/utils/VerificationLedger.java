@@ -0,0 +1,256 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.kohsuke.github.GHCommitState;
+
+/**
+ * @author ocleirig
+ *
+ * The merge result trees that have already been verified, and the pull request heads whose merge tree is still being built.
+ *
+ * A pull request re-pushed with the same content (an amended commit message, a rebase onto an unchanged base) has a new
+ * head commit but the same merge result tree.  If that tree was verified the statuses of the commit that verified it can be
+ * copied onto the new head instead of building it again.
+ *
+ * A head is recorded as queued with its merge tree when it is sent to be built, and is promoted to the verifier of the tree
+ * once all of its statuses are successful.
+ *
+ * A queued head that is superseded by a new push, or whose pull request is closed, never completes its statuses, so the
+ * queued heads that are no longer current or that were queued too long ago are forgotten before their statuses are read.
+ *
+ * The ledger is saved as 'verified tree commit' and 'queued commit tree time' lines, the oldest entries are forgotten past
+ * the entry limit.
+ *
+ */
+public final class VerificationLedger {
+
+	/**
+	 * The number of verified trees and of queued heads kept unless configured otherwise.
+	 */
+	public static final int DEFAULT_MAXIMUM_ENTRIES = 5000;
+
+	/**
+	 * How long a head stays queued without completing its statuses unless configured otherwise.
+	 */
+	public static final int DEFAULT_QUEUED_EXPIRY_HOURS = 48;
+
+	private static final String UTF_8 = "UTF-8";
+
+	private static final String VERIFIED = "verified";
+
+	private static final String QUEUED = "queued";
+
+	private final int maximumEntries;
+
+	// merge tree -> verifying commit, oldest first.
+	private final Map<String, String> verifiedTrees = new LinkedHashMap<String, String>();
+
+	// head commit -> merge tree, oldest first.
+	private final Map<String, String> queuedHeads = new LinkedHashMap<String, String>();
+
+	// head commit -> when it was queued in milliseconds.
+	private final Map<String, Long> queuedTimes = new HashMap<String, Long>();
+
+	/**
+	 * @param maximumEntries the number of verified trees and of queued heads kept.
+	 */
+	public VerificationLedger(int maximumEntries) {
+		this.maximumEntries = Math.max(1, maximumEntries);
+	}
+
+	/**
+	 * @return the ledger saved in the file or an empty ledger if the file does not exist.
+	 * @throws IOException
+	 */
+	public static VerificationLedger load(File ledgerFile, int maximumEntries) throws IOException {
+
+		VerificationLedger ledger = new VerificationLedger(maximumEntries);
+
+		if (!ledgerFile.exists())
+			return ledger;
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(ledgerFile.toPath()), UTF_8));
+
+		try {
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+
+				String[] parts = line.trim().split("\\s+");
+
+				if (VERIFIED.equals(parts[0]) && parts.length == 3)
+					put(ledger.verifiedTrees, parts[1], parts[2], ledger.maximumEntries);
+				else if (QUEUED.equals(parts[0]) && parts.length == 3)
+					ledger.recordQueued(parts[1], parts[2]); // saved before the queued time was kept.
+				else if (QUEUED.equals(parts[0]) && parts.length == 4)
+					ledger.recordQueued(parts[1], parts[2], parseTime(parts[3]));
+			}
+		}
+		finally {
+			reader.close();
+		}
+
+		return ledger;
+	}
+
+	private static long parseTime(String time) {
+
+		try {
+			return Long.parseLong(time);
+		} catch (NumberFormatException e) {
+			return System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * @return true if the statuses given show a completed, successful verification.
+	 */
+	public static boolean isVerified(Collection<GHCommitState> states) {
+
+		if (states.isEmpty())
+			return false;
+
+		for (GHCommitState state : states) {
+
+			if (state != GHCommitState.SUCCESS)
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return true if the statuses given show that the verification failed.
+	 */
+	public static boolean isFailed(Collection<GHCommitState> states) {
+		return states.contains(GHCommitState.FAILURE) || states.contains(GHCommitState.ERROR);
+	}
+
+	/**
+	 * @return the commit that verified the merge tree or null if it hasn't been verified.
+	 */
+	public String getVerifyingCommit(String mergeTreeId) {
+		return verifiedTrees.get(mergeTreeId);
+	}
+
+	/**
+	 * Record that the head was sent to be built for the merge tree given.
+	 */
+	public void recordQueued(String commitId, String mergeTreeId) {
+		recordQueued(commitId, mergeTreeId, System.currentTimeMillis());
+	}
+
+	/**
+	 * Record that the head was sent to be built for the merge tree given at the time given in milliseconds.
+	 */
+	public void recordQueued(String commitId, String mergeTreeId, long queuedAt) {
+
+		queuedHeads.remove(commitId);
+
+		put(queuedHeads, commitId, mergeTreeId, maximumEntries);
+
+		queuedTimes.put(commitId, queuedAt);
+
+		queuedTimes.keySet().retainAll(queuedHeads.keySet());
+	}
+
+	/**
+	 * Forget the queued heads that are not current any more (superseded by a new push or their pull request closed) and
+	 * those queued before the time given.
+	 *
+	 * @param currentHeads the head commits of the pull requests.
+	 * @param queuedBefore in milliseconds.
+	 * @return the number of queued heads forgotten.
+	 */
+	public int forgetStaleQueued(Collection<String> currentHeads, long queuedBefore) {
+
+		int forgotten = 0;
+
+		for (Iterator<String> it = queuedHeads.keySet().iterator(); it.hasNext();) {
+
+			String commitId = it.next();
+
+			Long queuedAt = queuedTimes.get(commitId);
+
+			if (!currentHeads.contains(commitId) || queuedAt == null || queuedAt < queuedBefore) {
+				it.remove();
+				queuedTimes.remove(commitId);
+				forgotten++;
+			}
+		}
+
+		return forgotten;
+	}
+
+	/**
+	 * @return the heads sent to be built that are not verified yet by commit, with their merge tree.
+	 */
+	public Map<String, String> getQueuedHeads() {
+		return Collections.unmodifiableMap(new LinkedHashMap<String, String>(queuedHeads));
+	}
+
+	/**
+	 * Record that the merge tree was verified by the commit given.
+	 */
+	public void recordVerified(String mergeTreeId, String commitId) {
+
+		forgetQueued(commitId);
+
+		verifiedTrees.remove(mergeTreeId);
+
+		put(verifiedTrees, mergeTreeId, commitId, maximumEntries);
+	}
+
+	/**
+	 * Forget a queued head whose verification failed or that is no longer being built.
+	 */
+	public void forgetQueued(String commitId) {
+		queuedHeads.remove(commitId);
+		queuedTimes.remove(commitId);
+	}
+
+	private static void put(Map<String, String> entries, String key, String value, int maximumEntries) {
+
+		entries.put(key, value);
+
+		while (entries.size() > maximumEntries)
+			entries.remove(entries.keySet().iterator().next());
+	}
+
+	/**
+	 * Save the ledger (see {@link ChangeReportWriter#writeAtomically(File, List)}).
+	 *
+	 * @throws IOException
+	 */
+	public void save(File ledgerFile) throws IOException {
+
+		List<String> lines = new ArrayList<String>();
+
+		for (Entry<String, String> verified : verifiedTrees.entrySet()) {
+			lines.add(VERIFIED + " " + verified.getKey() + " " + verified.getValue());
+		}
+
+		for (Entry<String, String> queued : queuedHeads.entrySet()) {
+			lines.add(QUEUED + " " + queued.getKey() + " " + queued.getValue() + " " + queuedTimes.get(queued.getKey()));
+		}
+
+		ChangeReportWriter.writeAtomically(ledgerFile, lines);
+	}
+}
@@ -0,0 +1,365 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @author ocleirig
+ *
+ * Receives github webhook deliveries over http.
+ *
+ * Each delivery must be a POST signed with the webhook secret (see {@link WebhookSignature}).  Github retries deliveries
+ * and they can also be redelivered by hand, so the X-GitHub-Delivery ids of the most recent deliveries are remembered and
+ * a repeated delivery is acknowledged without being handled again.  The ids are kept in memory unless a deliveries file is
+ * set ({@link #setDeliveriesFile(File)}), in which case they are saved after each handled delivery and loaded again on
+ * start so a delivery repeated across a restart is still recognized.
+ *
+ * The body is read before its signature can be checked, so a request over the body size limit is refused (413) without
+ * being read any further.
+ *
+ * Deliveries are handled one at a time, in the order received, on the server's thread.  A delivery whose handling fails
+ * gets a 500 response and is forgotten so that github's redelivery is handled.
+ *
+ */
+public class WebhookServer {
+
+	public static final String EVENT_HEADER = "X-GitHub-Event";
+
+	public static final String DELIVERY_HEADER = "X-GitHub-Delivery";
+
+	/**
+	 * The largest request body read unless configured otherwise, pull request payloads are well below it.
+	 */
+	public static final int DEFAULT_MAXIMUM_BODY_BYTES = 5 * 1024 * 1024;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * Handles the verified deliveries.
+	 */
+	public static interface Listener {
+
+		/**
+		 * @param event the github event name (i.e. pull_request, push, issue_comment)
+		 * @param deliveryId the unique id of the delivery.
+		 * @param payload the event payload.
+		 * @throws IOException to fail the delivery so that it can be redelivered.
+		 */
+		void onEvent(String event, String deliveryId, JSONObject payload) throws IOException;
+
+		/**
+		 * Called for each delivery that was not handled.
+		 *
+		 * @param status the http status of the response.
+		 * @param reason why the delivery was not handled.
+		 */
+		void onRejected(String event, String deliveryId, int status, String reason);
+	}
+
+	private final String secret;
+
+	private final Listener listener;
+
+	private final Map<String, Boolean> recentDeliveries;
+
+	private File deliveriesFile;
+
+	private int maximumBodyBytes = DEFAULT_MAXIMUM_BODY_BYTES;
+
+	private HttpServer server;
+
+	private int handled = 0;
+
+	private int duplicates = 0;
+
+	private int rejected = 0;
+
+	/**
+	 * @param secret the webhook secret the deliveries are signed with.
+	 * @param recentDeliveryLimit how many delivery ids are remembered to detect repeated deliveries.
+	 * @param listener handles the deliveries.
+	 */
+	public WebhookServer(String secret, final int recentDeliveryLimit, Listener listener) {
+		this.secret = secret;
+		this.listener = listener;
+
+		this.recentDeliveries = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+				return size() > recentDeliveryLimit;
+			}
+		};
+	}
+
+	/**
+	 * Remember the handled delivery ids in the file given, the ids saved there by an earlier run are loaded.
+	 *
+	 * @throws IOException if the saved ids can't be read.
+	 */
+	public synchronized void setDeliveriesFile(File deliveriesFile) throws IOException {
+
+		this.deliveriesFile = deliveriesFile;
+
+		if (!deliveriesFile.exists())
+			return;
+
+		// saved from the least to the most recently handled, so the limit keeps the most recent ones.
+		for (String deliveryId : Files.readAllLines(deliveriesFile.toPath(), UTF_8)) {
+
+			if (!deliveryId.trim().isEmpty())
+				recentDeliveries.put(deliveryId.trim(), Boolean.TRUE);
+		}
+	}
+
+	/**
+	 * @param maximumBodyBytes the maximumBodyBytes to set
+	 */
+	public void setMaximumBodyBytes(int maximumBodyBytes) {
+		this.maximumBodyBytes = maximumBodyBytes;
+	}
+
+	/**
+	 * Start listening for deliveries.
+	 *
+	 * @param address the address to bind, port 0 picks a free port.
+	 * @param path the path the webhook is configured to post to (i.e. /github-webhook)
+	 * @throws IOException if the address can't be bound.
+	 */
+	public void start(InetSocketAddress address, String path) throws IOException {
+
+		server = HttpServer.create(address, 0);
+
+		server.createContext(path, new HttpHandler() {
+
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange);
+			}
+		});
+
+		server.start();
+	}
+
+	/**
+	 * Stop listening, waiting up to the delay given for the delivery being handled.
+	 */
+	public void stop(int delaySeconds) {
+
+		if (server != null)
+			server.stop(delaySeconds);
+	}
+
+	/**
+	 * @return the port listened on.
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Verify and handle a delivery.  This is what the http listener does for each request so recorded deliveries can also
+	 * be replayed through it directly.
+	 *
+	 * @param event the X-GitHub-Event header.
+	 * @param deliveryId the X-GitHub-Delivery header.
+	 * @param signature the X-Hub-Signature-256 header.
+	 * @param body the raw request body.
+	 * @return the http status of the response.
+	 */
+	public synchronized int handle(String event, String deliveryId, String signature, byte[] body) {
+
+		if (!WebhookSignature.isValid(secret, body, signature))
+			return reject(event, deliveryId, 401, "the signature does not match.");
+
+		if (event == null || deliveryId == null)
+			return reject(event, deliveryId, 400, "the event or delivery header is missing.");
+
+		if (recentDeliveries.containsKey(deliveryId)) {
+			duplicates++;
+			listener.onRejected(event, deliveryId, 200, "repeated delivery.");
+			return 200;
+		}
+
+		JSONObject payload;
+
+		try {
+			payload = JSONObject.fromObject(new String(body, UTF_8));
+		} catch (JSONException e) {
+			return reject(event, deliveryId, 400, "invalid payload: " + e.getMessage());
+		}
+
+		recentDeliveries.put(deliveryId, Boolean.TRUE);
+
+		try {
+			listener.onEvent(event, deliveryId, payload);
+
+			handled++;
+
+		} catch (Exception e) {
+			// forget it so a redelivery is handled.
+			recentDeliveries.remove(deliveryId);
+
+			listener.onRejected(event, deliveryId, 500, "failed: " + e);
+
+			return 500;
+		}
+
+		if (deliveriesFile != null) {
+
+			try {
+				ChangeReportWriter.writeAtomically(deliveriesFile, new ArrayList<String>(recentDeliveries.keySet()));
+			} catch (IOException e) {
+				// the delivery was handled, it is only not recognized if repeated after a restart.
+				listener.onRejected(event, deliveryId, 200, "handled but not saved to " + deliveriesFile + ": " + e);
+			}
+		}
+
+		return 200;
+	}
+
+	private synchronized int rejectOversized(String event, String deliveryId) {
+		return reject(event, deliveryId, 413, "the body is larger than " + maximumBodyBytes + " bytes.");
+	}
+
+	private int reject(String event, String deliveryId, int status, String reason) {
+
+		rejected++;
+
+		listener.onRejected(event, deliveryId, status, reason);
+
+		return status;
+	}
+
+	/**
+	 * @return the number of deliveries handled.
+	 */
+	public synchronized int getHandled() {
+		return handled;
+	}
+
+	/**
+	 * @return the number of repeated deliveries that were ignored.
+	 */
+	public synchronized int getDuplicates() {
+		return duplicates;
+	}
+
+	/**
+	 * @return the number of deliveries rejected because of their signature or content.
+	 */
+	public synchronized int getRejected() {
+		return rejected;
+	}
+
+	/*
+	 * true if the Content-Length header says the body is over the maximum, or can't be read.
+	 */
+	static boolean isDeclaredOversized(String contentLength, int maximumBytes) {
+
+		if (contentLength == null)
+			return false;
+
+		try {
+			return Long.parseLong(contentLength.trim()) > maximumBytes;
+		} catch (NumberFormatException e) {
+			return true;
+		}
+	}
+
+	/*
+	 * The content length can be missing (chunked) or wrong so the bytes read are counted too.
+	 *
+	 * @return the body or null if it is larger than the maximum.
+	 */
+	static byte[] readBody(InputStream input, int maximumBytes) throws IOException {
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+		byte[] buffer = new byte[8192];
+
+		int read;
+
+		while ((read = input.read(buffer)) != -1) {
+
+			if (body.size() + read > maximumBytes)
+				return null;
+
+			body.write(buffer, 0, read);
+		}
+
+		return body.toByteArray();
+	}
+
+	private void respond(HttpExchange exchange) throws IOException {
+
+		try {
+			int status;
+
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				status = 405;
+			}
+			else {
+				String event = exchange.getRequestHeaders().getFirst(EVENT_HEADER);
+
+				String deliveryId = exchange.getRequestHeaders().getFirst(DELIVERY_HEADER);
+
+				byte[] body = null;
+
+				if (!isDeclaredOversized(exchange.getRequestHeaders().getFirst("Content-Length"), maximumBodyBytes)) {
+
+					InputStream input = exchange.getRequestBody();
+
+					try {
+						body = readBody(input, maximumBodyBytes);
+					}
+					finally {
+						input.close();
+					}
+				}
+
+				if (body == null)
+					status = rejectOversized(event, deliveryId);
+				else
+					status = handle(event, deliveryId, exchange.getRequestHeaders().getFirst(WebhookSignature.SIGNATURE_HEADER), body);
+			}
+
+			byte[] response = (status == 200 ? "OK" : "status " + status).getBytes(UTF_8);
+
+			exchange.sendResponseHeaders(status, response.length);
+
+			OutputStream output = exchange.getResponseBody();
+
+			try {
+				output.write(response);
+			}
+			finally {
+				output.close();
+			}
+		}
+		finally {
+			exchange.close();
+		}
+	}
+}
@@ -0,0 +1,72 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.nio.charset.Charset;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * @author ocleirig
+ *
+ * Signs and verifies github webhook payloads.
+ *
+ * Github sends the HMAC-SHA256 of the raw request body, keyed with the webhook secret, in the X-Hub-Signature-256 header
+ * as sha256=&lt;hex digest&gt;.
+ *
+ */
+public final class WebhookSignature {
+
+	/**
+	 * The header github puts the signature in.
+	 */
+	public static final String SIGNATURE_HEADER = "X-Hub-Signature-256";
+
+	private static final String PREFIX = "sha256=";
+
+	private static final String ALGORITHM = "HmacSHA256";
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private WebhookSignature() {
+	}
+
+	/**
+	 * @return the signature of the body in the format of the X-Hub-Signature-256 header.
+	 */
+	public static String sign(String secret, byte[] body) {
+
+		try {
+			Mac mac = Mac.getInstance(ALGORITHM);
+
+			mac.init(new SecretKeySpec(secret.getBytes(UTF_8), ALGORITHM));
+
+			return PREFIX + Hex.encodeHexString(mac.doFinal(body));
+
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(ALGORITHM + " is not available", e);
+		} catch (InvalidKeyException e) {
+			throw new IllegalArgumentException("invalid webhook secret", e);
+		}
+	}
+
+	/**
+	 * @param signature the value of the X-Hub-Signature-256 header, may be null.
+	 * @return true if the signature is that of the body.
+	 */
+	public static boolean isValid(String secret, byte[] body, String signature) {
+
+		if (signature == null || !signature.startsWith(PREFIX))
+			return false;
+
+		// compare in constant time so the time taken does not reveal how much of the signature matched.
+		return MessageDigest.isEqual(sign(secret, body).getBytes(UTF_8), signature.trim().toLowerCase().getBytes(UTF_8));
+	}
+}
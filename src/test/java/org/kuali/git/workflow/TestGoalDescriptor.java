@@ -0,0 +1,95 @@
+/**
+ *
+ */
+package org.kuali.git.workflow;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author ocleirig
+ *
+ */
+public class TestGoalDescriptor {
+
+	private static final String DESCRIPTOR = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<plugin><mojos><mojo>\n"
+			+ "<goal>listOpenPullRequests</goal>\n"
+			+ "<implementation>org.kuali.git.workflow.ListOpenPullRequestsMojo</implementation>\n"
+			+ "<parameters>\n"
+			+ "<parameter><name>project</name><type>org.apache.maven.project.MavenProject</type><required>true</required></parameter>\n"
+			+ "<parameter><name>sourceGithubUser</name><type>java.lang.String</type><required>true</required></parameter>\n"
+			+ "<parameter><name>statusThreads</name><type>int</type><required>false</required></parameter>\n"
+			+ "<parameter><name>reportDirectory</name><type>java.lang.String</type><required>false</required></parameter>\n"
+			+ "<parameter><name>modules</name><type>java.util.List</type><required>false</required></parameter>\n"
+			+ "<parameter><name>token</name><type>java.lang.String</type><required>false</required></parameter>\n"
+			+ "</parameters>\n"
+			+ "<configuration>\n"
+			+ "<project implementation=\"org.apache.maven.project.MavenProject\" default-value=\"${project}\"/>\n"
+			+ "<sourceGithubUser implementation=\"java.lang.String\">${git-flow.sourceGithubUser}</sourceGithubUser>\n"
+			+ "<statusThreads implementation=\"int\" default-value=\"4\">${git-flow.statusThreads}</statusThreads>\n"
+			+ "<reportDirectory implementation=\"java.lang.String\" default-value=\"${project.build.directory}/reports\">${git-flow.reportDirectory}</reportDirectory>\n"
+			+ "<modules implementation=\"java.util.List\">${git-flow.modules}</modules>\n"
+			+ "<token implementation=\"java.lang.String\">${git-flow.token}</token>\n"
+			+ "</configuration>\n"
+			+ "</mojo></mojos></plugin>\n";
+
+	/**
+	 *
+	 */
+	public TestGoalDescriptor() {
+	}
+
+	@Test
+	public void testParametersResolveLikeMaven() throws IOException {
+
+		List<GoalDescriptor> goals = GoalDescriptor.read(new ByteArrayInputStream(DESCRIPTOR.getBytes("UTF-8")));
+
+		GoalDescriptor goal = GoalDescriptor.find(goals, "listOpenPullRequests");
+
+		Assert.assertNotNull(goal);
+		Assert.assertNull(GoalDescriptor.find(goals, "daemon"));
+		Assert.assertEquals("org.kuali.git.workflow.ListOpenPullRequestsMojo", goal.getImplementation());
+		Assert.assertEquals("git-flow.sourceGithubUser", goal.getProperties().get("sourceGithubUser"));
+		Assert.assertFalse(goal.getProperties().containsKey("project"));
+
+		Properties properties = new Properties();
+
+		properties.setProperty("git-flow.sourceGithubUser", "kuali-student");
+		properties.setProperty("git-flow.modules", "ks-core, ks-lum,");
+
+		File basedir = new File("/tmp/project");
+
+		Map<String, Object> values = goal.resolveParameters(properties, basedir);
+
+		Assert.assertEquals("kuali-student", values.get("sourceGithubUser"));
+		Assert.assertEquals("4", values.get("statusThreads"));
+		Assert.assertEquals(new File(basedir, "target").getAbsolutePath() + "/reports", values.get("reportDirectory"));
+		Assert.assertEquals(Arrays.asList("ks-core", "ks-lum"), values.get("modules"));
+		Assert.assertFalse(values.containsKey("token"));
+		Assert.assertFalse(values.containsKey("project"));
+	}
+
+	@Test
+	public void testMissingRequiredParameterIsRejected() throws IOException {
+
+		GoalDescriptor goal = GoalDescriptor.read(new ByteArrayInputStream(DESCRIPTOR.getBytes("UTF-8"))).get(0);
+
+		try {
+			goal.resolveParameters(new Properties(), new File("/tmp/project"));
+
+			Assert.fail("the goal was configured without its required sourceGithubUser");
+
+		} catch (IllegalArgumentException e) {
+			Assert.assertTrue(e.getMessage().contains("-Dgit-flow.sourceGithubUser"));
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/**
+ *
+ */
+package org.kuali.git.workflow;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author ocleirig
+ *
+ */
+public class TestGoalRequest {
+
+	/**
+	 *
+	 */
+	public TestGoalRequest() {
+	}
+
+	@Test
+	public void testParametersSurviveTheWire() throws IOException {
+
+		SampleMojo mojo = new SampleMojo();
+
+		mojo.prefix = "open pull=requests\nsecond line";
+		mojo.threads = 3;
+		mojo.skip = true;
+		mojo.modules = new ArrayList<String>(Arrays.asList("ks-core", "a,b"));
+		mojo.empty = new ArrayList<String>();
+
+		WorkflowSession session = new WorkflowSession(new File("/tmp/workspace"), Collections.singletonMap("BUILD_NUMBER", "12"), false);
+
+		GoalRequest request = GoalRequest.fromMojo(mojo, new File("/tmp/project"), session, true);
+
+		StringWriter wire = new StringWriter();
+
+		request.write(new PrintWriter(wire));
+
+		GoalRequest received = GoalRequest.read(new BufferedReader(new StringReader(wire.toString())));
+
+		Assert.assertEquals(SampleMojo.class.getName(), received.getMojoClassName());
+		Assert.assertEquals(new File("/tmp/project").getAbsoluteFile(), received.getBasedir());
+		Assert.assertEquals("12", received.getEnvironment().get("BUILD_NUMBER"));
+		Assert.assertTrue(received.isDebug());
+
+		SampleMojo copy = new SampleMojo();
+
+		received.applyTo(copy);
+
+		Assert.assertEquals(mojo.prefix, copy.prefix);
+		Assert.assertEquals(3, copy.threads);
+		Assert.assertTrue(copy.skip);
+		Assert.assertEquals(mojo.modules, copy.modules);
+		Assert.assertTrue(copy.empty.isEmpty());
+		Assert.assertNull(copy.unset);
+	}
+
+	@Test
+	public void testTruncatedRequestIsRejected() {
+
+		try {
+			GoalRequest.read(new BufferedReader(new StringReader("mojo org.kuali.SomeMojo\nbasedir %2Ftmp\n")));
+
+			Assert.fail("a request without its end line was accepted");
+
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	public static final class SampleMojo extends AbstractMojo {
+
+		private String prefix;
+
+		private int threads;
+
+		private boolean skip;
+
+		private List<String> modules;
+
+		private List<String> empty;
+
+		private String unset;
+
+		@Override
+		public void execute() throws MojoExecutionException, MojoFailureException {
+		}
+	}
+}
@@ -0,0 +1,195 @@
+/**
+ *
+ */
+package org.kuali.git.workflow;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author ocleirig
+ *
+ */
+public class TestGoalRunner {
+
+	/**
+	 *
+	 */
+	public TestGoalRunner() {
+	}
+
+	/*
+	 * Run the goals at once, each on its own thread as the daemon does.
+	 */
+	private static void runAtOnce(final GoalRequest... requests) throws InterruptedException {
+
+		final Map<Integer, Throwable> failures = new ConcurrentHashMap<Integer, Throwable>();
+
+		Thread[] threads = new Thread[requests.length];
+
+		for (int i = 0; i < requests.length; i++) {
+
+			final int index = i;
+
+			threads[i] = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+
+					try {
+						GoalRunner.run(requests[index], new SystemStreamLog(), true);
+					} catch (Throwable e) {
+						failures.put(index, e);
+					}
+				}
+			});
+
+			threads[i].start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		Assert.assertTrue("goals failed: " + failures, failures.isEmpty());
+	}
+
+	private static GoalRequest request(Class<?> mojoClass, File workingDirectory, String buildNumber, String parameter, String value) {
+		return new GoalRequest(mojoClass.getName(), workingDirectory, workingDirectory, Collections.singletonMap("BUILD_NUMBER", buildNumber), Collections.<String, Object>singletonMap(parameter, value), false);
+	}
+
+	@Test
+	public void testGoalsSeeTheirOwnWorkingDirectoryAndEnvironment() throws InterruptedException {
+
+		SessionMojo.seen.clear();
+
+		runAtOnce(request(SessionMojo.class, new File("/tmp/workspace-1"), "1", "name", "first"),
+				request(SessionMojo.class, new File("/tmp/workspace-2"), "2", "name", "second"));
+
+		Assert.assertEquals(new File("/tmp/workspace-1/report.dat").getAbsoluteFile() + " 1", SessionMojo.seen.get("first"));
+		Assert.assertEquals(new File("/tmp/workspace-2/report.dat").getAbsoluteFile() + " 2", SessionMojo.seen.get("second"));
+
+		// the runner's thread is back to the jvm's own session.
+		Assert.assertFalse(WorkflowSession.current().isRemote());
+	}
+
+	@Test
+	public void testGoalsSharingARepositoryRunOneAfterTheOther() throws InterruptedException, IOException {
+
+		File directory = Files.createTempDirectory("goal-runner").toFile();
+
+		WorkflowSession.setResident(true);
+
+		try {
+			String first = new File(directory, "first.git").getAbsolutePath();
+
+			String second = new File(directory, "second.git").getAbsolutePath();
+
+			RepositoryMojo.reset(300);
+
+			runAtOnce(request(RepositoryMojo.class, directory, "1", "repositoryPath", first),
+					request(RepositoryMojo.class, directory, "2", "repositoryPath", first));
+
+			Assert.assertEquals(1, RepositoryMojo.mostInside);
+
+			RepositoryMojo.reset(5000);
+
+			runAtOnce(request(RepositoryMojo.class, directory, "1", "repositoryPath", first),
+					request(RepositoryMojo.class, directory, "2", "repositoryPath", second));
+
+			Assert.assertEquals(2, RepositoryMojo.mostInside);
+		}
+		finally {
+			WorkflowSession.setResident(false);
+			WorkflowSession.closeResources();
+
+			FileUtils.deleteDirectory(directory);
+		}
+	}
+
+	/*
+	 * Records what the goal sees while the other goal is running too.
+	 */
+	public static final class SessionMojo extends AbstractGithubAuthorizedMojo {
+
+		private static final Map<String, String> seen = new ConcurrentHashMap<String, String>();
+
+		private static final CyclicBarrier bothRunning = new CyclicBarrier(2);
+
+		private String name;
+
+		@Override
+		public void execute() throws MojoExecutionException, MojoFailureException {
+
+			try {
+				bothRunning.await(5, TimeUnit.SECONDS);
+			} catch (Exception e) {
+				throw new MojoExecutionException("the other goal did not run at the same time", e);
+			}
+
+			seen.put(name, resolveFile("report.dat") + " " + getenv("BUILD_NUMBER"));
+		}
+	}
+
+	/*
+	 * Counts the goals inside at once, waiting for the other goal for at most waitMillis.
+	 */
+	public static final class RepositoryMojo extends AbstractGithubAuthorizedMojo {
+
+		private static final AtomicInteger inside = new AtomicInteger();
+
+		private static volatile int mostInside;
+
+		private static volatile long waitMillis;
+
+		private String repositoryPath;
+
+		private static void reset(long waitMillis) {
+			RepositoryMojo.waitMillis = waitMillis;
+			mostInside = 0;
+		}
+
+		@Override
+		public void execute() throws MojoExecutionException, MojoFailureException {
+
+			try {
+				WorkflowSession.openRepository(new File(repositoryPath), true, true);
+			} catch (IOException e) {
+				throw new MojoExecutionException("failed to open " + repositoryPath, e);
+			}
+
+			inside.incrementAndGet();
+
+			try {
+				long deadline = System.currentTimeMillis() + waitMillis;
+
+				while (inside.get() < 2 && System.currentTimeMillis() < deadline) {
+					Thread.sleep(10);
+				}
+
+				synchronized (RepositoryMojo.class) {
+					mostInside = Math.max(mostInside, inside.get());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			finally {
+				inside.decrementAndGet();
+			}
+		}
+	}
+}
@@ -0,0 +1,173 @@
+/**
+ *
+ */
+package org.kuali.git.workflow;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+import org.kuali.git.workflow.model.utils.GitOperations;
+
+/**
+ * @author ocleirig
+ *
+ */
+public class TestMaintainRepositoryMojo {
+
+	/**
+	 *
+	 */
+	public TestMaintainRepositoryMojo() {
+	}
+
+	private static MaintainRepositoryMojo createMojo(Repository repository, int maintenanceIntervalHours) {
+
+		MaintainRepositoryMojo mojo = new MaintainRepositoryMojo();
+
+		mojo.repository = repository;
+		mojo.setMaintenanceIntervalHours(maintenanceIntervalHours);
+
+		return mojo;
+	}
+
+	@Test
+	public void testMaintenanceRunsOncePerInterval() throws IOException {
+
+		File directory = Files.createTempDirectory("maintain-repository").toFile();
+
+		try {
+			Repository repository = FileRepositoryBuilder.create(new File(directory, "repository.git"));
+
+			repository.create(true);
+
+			long now = System.currentTimeMillis();
+
+			MaintainRepositoryMojo mojo = createMojo(repository, 24);
+
+			// never maintained.
+			Assert.assertTrue(mojo.isMaintenanceDue(now));
+
+			StoredConfig config = repository.getConfig();
+
+			config.setLong("git-workflow", null, "lastMaintenance", now - TimeUnit.HOURS.toMillis(23));
+			config.save();
+
+			Assert.assertFalse(mojo.isMaintenanceDue(now));
+			Assert.assertTrue(mojo.isMaintenanceDue(now + TimeUnit.HOURS.toMillis(1)));
+
+			// 0 always runs.
+			Assert.assertTrue(createMojo(repository, 0).isMaintenanceDue(now));
+
+			repository.close();
+		}
+		finally {
+			FileUtils.deleteDirectory(directory);
+		}
+	}
+
+	@Test
+	public void testOnlyTheForksOfOpenPullRequestsAreKept() throws IOException {
+
+		File directory = Files.createTempDirectory("maintain-repository").toFile();
+
+		try {
+			Repository repository = FileRepositoryBuilder.create(new File(directory, "repository.git"));
+
+			repository.create(true);
+
+			ObjectId commitId = commit(repository);
+
+			StoredConfig config = repository.getConfig();
+
+			for (String remote : Arrays.asList("origin", "upstream", "alice/ks-development", "bob/ks-development")) {
+
+				config.setString("remote", remote, "url", "https://github.com/" + remote + ".git");
+
+				createRef(repository, "refs/remotes/" + remote + "/pull-request-1", commitId);
+			}
+
+			config.save();
+
+			GitOperations gitOperations = new GitOperations(repository, "git");
+
+			try {
+				MaintainRepositoryMojo mojo = createMojo(repository, 24);
+
+				Assert.assertEquals(new TreeSet<String>(Arrays.asList("bob/ks-development")), mojo.removeStaleRemotes(gitOperations, Collections.singleton("alice/ks-development")));
+
+				// only the user/repo remotes of forks are candidates.
+				Assert.assertEquals(new TreeSet<String>(Arrays.asList("alice/ks-development", "origin", "upstream")), new TreeSet<String>(repository.getConfig().getSubsections("remote")));
+
+				Assert.assertNull(repository.getRef("refs/remotes/bob/ks-development/pull-request-1"));
+				Assert.assertNotNull(repository.getRef("refs/remotes/alice/ks-development/pull-request-1"));
+				Assert.assertNotNull(repository.getRef("refs/remotes/upstream/pull-request-1"));
+
+				// nothing left to remove.
+				Assert.assertTrue(mojo.removeStaleRemotes(gitOperations, Collections.singleton("alice/ks-development")).isEmpty());
+			}
+			finally {
+				gitOperations.close();
+			}
+
+			repository.close();
+		}
+		finally {
+			FileUtils.deleteDirectory(directory);
+		}
+	}
+
+	private static ObjectId commit(Repository repository) throws IOException {
+
+		ObjectInserter inserter = repository.newObjectInserter();
+
+		try {
+			CommitBuilder commit = new CommitBuilder();
+
+			commit.setTreeId(inserter.insert(Constants.OBJ_TREE, new byte[0]));
+
+			PersonIdent ident = new PersonIdent("test", "test@example.org");
+
+			commit.setAuthor(ident);
+			commit.setCommitter(ident);
+			commit.setMessage("empty\n");
+
+			ObjectId commitId = inserter.insert(commit);
+
+			inserter.flush();
+
+			return commitId;
+		}
+		finally {
+			inserter.release();
+		}
+	}
+
+	private static void createRef(Repository repository, String refName, ObjectId objectId) throws IOException {
+
+		RefUpdate update = repository.updateRef(refName);
+
+		update.setNewObjectId(objectId);
+
+		RefUpdate.Result result = update.update();
+
+		if (result != RefUpdate.Result.NEW)
+			throw new IOException("failed to create " + refName + ": " + result);
+	}
+}
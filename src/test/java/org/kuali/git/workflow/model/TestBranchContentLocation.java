@@ -0,0 +1,62 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author ocleirig
+ *
+ */
+public class TestBranchContentLocation {
+
+	/**
+	 *
+	 */
+	public TestBranchContentLocation() {
+	}
+
+	@Test
+	public void testParse() {
+
+		BranchContentLocation location = BranchContentLocation.parse(" kuali/ks-development@master:/ks-impex/sql/ ");
+
+		Assert.assertEquals("kuali/ks-development", location.getRepository());
+		Assert.assertEquals("master", location.getBranch());
+		Assert.assertEquals("ks-impex/sql", location.getPath());
+
+		Assert.assertEquals("kuali/ks-development@master:ks-impex/sql", location.toString());
+	}
+
+	@Test
+	public void testParseWithoutAPath() {
+
+		BranchContentLocation location = BranchContentLocation.parse("kuali/ks-api@release/2.1");
+
+		Assert.assertEquals("kuali/ks-api", location.getRepository());
+		Assert.assertEquals("release/2.1", location.getBranch());
+		Assert.assertEquals("", location.getPath());
+
+		Assert.assertEquals("kuali/ks-api@release/2.1", location.toString());
+
+		// an empty path is the root of the branch too.
+		Assert.assertEquals("", BranchContentLocation.parse("kuali/ks-api@master:/").getPath());
+	}
+
+	@Test
+	public void testInvalidLocationsAreRejected() {
+
+		for (String invalid : new String[] {"kuali/ks-api", "ks-api@master", "master@kuali/ks-api:sql"}) {
+
+			try {
+				BranchContentLocation.parse(invalid);
+
+				Assert.fail("expected " + invalid + " to be rejected.");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author ocleirig
+ *
+ */
+public class TestChangeSet {
+
+	/**
+	 *
+	 */
+	public TestChangeSet() {
+	}
+
+	@Test
+	public void testTopLevelDirectories() {
+
+		ChangeSet changes = new ChangeSet();
+
+		changes.add("pom.xml");
+		changes.add("ks-core/pom.xml");
+		changes.add("ks-core/src/main/java/Foo.java");
+		changes.add("ks-enroll/src/main/resources/sql/upgrade.sql");
+		changes.add("ks-enroll/src/main/resources/sql/upgrade.sql");
+
+		Assert.assertEquals(4, changes.size());
+
+		Assert.assertEquals(Arrays.asList(".", "ks-core", "ks-enroll"), new ArrayList<String>(changes.getTopLevelDirectories()));
+
+		Assert.assertEquals(Arrays.asList("ks-enroll"), new ArrayList<String>(changes.getTopLevelDirectoriesContaining(".sql")));
+	}
+
+	@Test
+	public void testIterationRebuildsPaths() {
+
+		ChangeSet changes = new ChangeSet();
+
+		changes.add("b/x.txt");
+		changes.add("a/c/y.txt");
+		changes.add("z.txt");
+		changes.add("a/b.txt");
+
+		List<String>paths = new ArrayList<String>();
+
+		for (String path : changes) {
+			paths.add(path);
+		}
+
+		Assert.assertEquals(Arrays.asList("z.txt", "a/b.txt", "a/c/y.txt", "b/x.txt"), paths);
+	}
+
+	@Test
+	public void testAggregateByDirectory() {
+
+		ChangeSet changes = new ChangeSet();
+
+		changes.add("README.md");
+		changes.add("a/one.txt");
+		changes.add("a/b/two.txt");
+		changes.add("a/b/three.txt");
+		changes.add("a/c/four.txt");
+
+		Map<String, Integer> aggregate = changes.aggregateByDirectory(2);
+
+		Assert.assertEquals(Integer.valueOf(1), aggregate.get("."));
+		Assert.assertEquals(Integer.valueOf(1), aggregate.get("a"));
+		Assert.assertEquals(Integer.valueOf(2), aggregate.get("a/b"));
+		Assert.assertEquals(Integer.valueOf(1), aggregate.get("a/c"));
+
+		Assert.assertEquals(Integer.valueOf(4), changes.aggregateByDirectory(1).get("a"));
+	}
+
+}
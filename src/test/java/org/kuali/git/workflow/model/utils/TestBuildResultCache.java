@@ -0,0 +1,147 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author ocleirig
+ *
+ */
+public class TestBuildResultCache {
+
+	private static final List<String> MODULES = Arrays.asList(".", "ks-core", "ks-web");
+
+	/**
+	 *
+	 */
+	public TestBuildResultCache() {
+	}
+
+	private static Map<String, String> entries(String core, String web, String pom) {
+
+		Map<String, String> entries = new TreeMap<String, String>();
+
+		entries.put("ks-core", core);
+		entries.put("ks-web", web);
+		entries.put("pom.xml", pom);
+		entries.put("README.md", "1111111111111111111111111111111111111111");
+
+		return entries;
+	}
+
+	@Test
+	public void testKeysFollowTheModuleAndDependencyContent() {
+
+		Map<String, Set<String>> dependencies = BuildResultCache.parseDependencies(Arrays.asList("ks-web=ks-core"));
+
+		Assert.assertEquals(new TreeSet<String>(Arrays.asList("ks-core")), dependencies.get("ks-web"));
+
+		List<String> shared = Arrays.asList("pom.xml");
+
+		Map<String, String> before = BuildResultCache.contentKeys(entries("aaaa", "bbbb", "cccc"), MODULES, dependencies, shared);
+
+		// the root directory has no tree of its own.
+		Assert.assertFalse(before.containsKey("."));
+		Assert.assertEquals(2, before.size());
+
+		// a rebase that only changed ks-web
+		Map<String, String> webChanged = BuildResultCache.contentKeys(entries("aaaa", "dddd", "cccc"), MODULES, dependencies, shared);
+
+		Assert.assertEquals(before.get("ks-core"), webChanged.get("ks-core"));
+		Assert.assertFalse(before.get("ks-web").equals(webChanged.get("ks-web")));
+
+		// ks-web depends on ks-core
+		Map<String, String> coreChanged = BuildResultCache.contentKeys(entries("eeee", "bbbb", "cccc"), MODULES, dependencies, shared);
+
+		Assert.assertFalse(before.get("ks-core").equals(coreChanged.get("ks-core")));
+		Assert.assertFalse(before.get("ks-web").equals(coreChanged.get("ks-web")));
+
+		// every module depends on the root pom.
+		Map<String, String> pomChanged = BuildResultCache.contentKeys(entries("aaaa", "bbbb", "ffff"), MODULES, dependencies, shared);
+
+		Assert.assertFalse(before.get("ks-core").equals(pomChanged.get("ks-core")));
+	}
+
+	@Test
+	public void testPassedModulesAreSkipped() throws IOException {
+
+		Map<String, Set<String>> dependencies = BuildResultCache.parseDependencies(Arrays.asList("ks-core=", "ks-web=ks-core"));
+
+		Map<String, String> keys = BuildResultCache.contentKeys(entries("aaaa", "bbbb", "cccc"), MODULES, dependencies, null);
+
+		BuildResultCache cache = new BuildResultCache(2);
+
+		cache.recordPassed(keys.get("ks-core"), "ks-core", "abc123");
+
+		Assert.assertEquals(new TreeSet<String>(Arrays.asList(".", "ks-web")), cache.selectUnpassed(MODULES, keys, dependencies, new SystemStreamLog()));
+
+		// a passed module is still built when its dependencies are not declared.
+		Assert.assertEquals(new TreeSet<String>(MODULES), cache.selectUnpassed(MODULES, keys, BuildResultCache.parseDependencies(null), new SystemStreamLog()));
+
+		File cacheFile = File.createTempFile("build-result-cache", ".dat");
+
+		try {
+			cache.recordPassed("key2", "ks-web", "abc123");
+			cache.recordPassed("key3", "ks-web", "def456");
+
+			cache.save(cacheFile);
+
+			BuildResultCache loaded = BuildResultCache.load(cacheFile, 2);
+
+			// the oldest key was forgotten past the limit of 2.
+			Assert.assertEquals(2, loaded.size());
+			Assert.assertFalse(loaded.hasPassed(keys.get("ks-core")));
+			Assert.assertTrue(loaded.hasPassed("key2"));
+			Assert.assertTrue(loaded.hasPassed("key3"));
+		}
+		finally {
+			cacheFile.delete();
+		}
+	}
+
+	@Test
+	public void testUndeclaredModulesAreNotSkipped() throws IOException {
+
+		Map<String, String> topLevelEntries = entries("aaaa", "bbbb", "cccc");
+
+		Set<String> modules = new TreeSet<String>(Arrays.asList("ks-core", "ks-web"));
+
+		List<String> shared = Arrays.asList("pom.xml");
+
+		File cacheFile = File.createTempFile("build-result-cache", ".dat");
+
+		try {
+			BuildResultCache.Selection selection = BuildResultCache.select(cacheFile, topLevelEntries, modules, Arrays.asList("ks-core="), shared, new SystemStreamLog());
+
+			Assert.assertEquals(modules, selection.getUnpassedModules());
+
+			BuildResultCache cache = new BuildResultCache(10);
+
+			cache.recordPassed(selection.getContentKeys().get("ks-core"), "ks-core", "abc123");
+			cache.recordPassed(selection.getContentKeys().get("ks-web"), "ks-web", "abc123");
+
+			cache.save(cacheFile);
+
+			// ks-web has passed but its dependencies are not declared.
+			selection = BuildResultCache.select(cacheFile, topLevelEntries, modules, Arrays.asList("ks-core="), shared, new SystemStreamLog());
+
+			Assert.assertEquals(new TreeSet<String>(Arrays.asList("ks-web")), selection.getUnpassedModules());
+		}
+		finally {
+			cacheFile.delete();
+		}
+	}
+}
@@ -0,0 +1,59 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kuali.git.workflow.model.CommentCommand;
+
+/**
+ * @author ocleirig
+ *
+ */
+public class TestCommentCommandParser {
+
+	/**
+	 *
+	 */
+	public TestCommentCommandParser() {
+	}
+
+	@Test
+	public void testParse() {
+
+		CommentCommandParser parser = new CommentCommandParser("ci", Arrays.asList("retest", "skip-sql", "build"));
+
+		List<CommentCommand> commands = parser.parse(42L, "dev1",
+				"Looks good.\n" +
+				"CI Retest\r\n" +
+				"> ci skip-sql\n" +
+				"```\n" +
+				"ci build ks-lum\n" +
+				"```\n" +
+				"ci unknown-command\n" +
+				"ci build ks-enroll, ks-core\n");
+
+		Assert.assertEquals(2, commands.size());
+
+		Assert.assertEquals("retest", commands.get(0).getCommand());
+		Assert.assertTrue(commands.get(0).getArguments().isEmpty());
+
+		Assert.assertEquals("build", commands.get(1).getCommand());
+		Assert.assertEquals(Arrays.asList("ks-enroll", "ks-core"), commands.get(1).getArguments());
+		Assert.assertEquals(42L, commands.get(1).getCommentId());
+		Assert.assertEquals("dev1", commands.get(1).getUser());
+	}
+
+	@Test
+	public void testPrefixMustBeAWord() {
+
+		CommentCommandParser parser = new CommentCommandParser("ci", Arrays.asList("retest"));
+
+		Assert.assertTrue(parser.parse(1L, "dev1", "ciretest\nplease ci retest").isEmpty());
+		Assert.assertTrue(parser.parse(1L, "dev1", null).isEmpty());
+	}
+}
@@ -0,0 +1,247 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.kuali.git.workflow.model.utils.CommitGraph.PathFilterResult;
+
+/**
+ * @author ocleirig
+ *
+ */
+public class TestCommitGraph {
+
+	/**
+	 *
+	 */
+	public TestCommitGraph() {
+	}
+
+	@Test
+	public void testBloomKeyMatchesGit() {
+
+		// git t/t0095-bloom.sh: compute bloom key for empty string
+		int[] expected = new int[] { 0x5615800c, 0x5b966560, 0x61174ab4, 0x66983008, 0x6c19155c, 0x7199fab0, 0x771ae004 };
+
+		Assert.assertArrayEquals(expected, CommitGraph.bloomKey(new byte[0], 2, 7));
+
+		Assert.assertEquals(0, CommitGraph.murmur3(0, new byte[0], 2));
+	}
+
+	@Test
+	public void testHashVersionsOnlyDifferForNonAscii() throws Exception {
+
+		byte[] ascii = "ks-core/src/main/java".getBytes("UTF-8");
+
+		Assert.assertEquals(CommitGraph.murmur3(0x293ae76f, ascii, 1), CommitGraph.murmur3(0x293ae76f, ascii, 2));
+
+		byte[] nonAscii = "ks-core/caf\u00e9".getBytes("UTF-8");
+
+		Assert.assertTrue(CommitGraph.murmur3(0x293ae76f, nonAscii, 1) != CommitGraph.murmur3(0x293ae76f, nonAscii, 2));
+	}
+
+	private static ObjectId commit(ObjectInserter inserter, int time, String core, String web, ObjectId... parents) throws IOException {
+
+		TreeFormatter coreTree = new TreeFormatter();
+
+		coreTree.append("a.txt", FileMode.REGULAR_FILE, inserter.insert(Constants.OBJ_BLOB, Constants.encode(core)));
+
+		TreeFormatter webTree = new TreeFormatter();
+
+		webTree.append("b.txt", FileMode.REGULAR_FILE, inserter.insert(Constants.OBJ_BLOB, Constants.encode(web)));
+
+		TreeFormatter tree = new TreeFormatter();
+
+		tree.append("ks-core", FileMode.TREE, inserter.insert(coreTree));
+		tree.append("ks-web", FileMode.TREE, inserter.insert(webTree));
+
+		CommitBuilder commit = new CommitBuilder();
+
+		// a fixed time keeps the commit ids (and so the Bloom filter answers) the same on every run.
+		PersonIdent author = new PersonIdent("test", "test@example.com", new Date(1400000000000L + time * 60000L), TimeZone.getTimeZone("UTC"));
+
+		commit.setAuthor(author);
+		commit.setCommitter(author);
+		commit.setMessage("commit " + time);
+		commit.setTreeId(inserter.insert(tree));
+		commit.setParentIds(parents);
+
+		return inserter.insert(commit);
+	}
+
+	private static void updateRef(Repository repository, String name, ObjectId commitId) throws IOException {
+
+		RefUpdate update = repository.updateRef(name);
+
+		update.setNewObjectId(commitId);
+
+		update.forceUpdate();
+	}
+
+	private static void writeCommitGraphLayer(Repository repository) throws IOException {
+
+		ExternalGitCommand.Result result = new ExternalGitCommand("git", repository.getDirectory()).run(Arrays.asList("commit-graph", "write", "--reachable", "--changed-paths", "--split=no-merge"), null);
+
+		Assert.assertTrue("git commit-graph write failed", result.isSuccess());
+	}
+
+	@Test
+	public void testSplitGraphMatchesTheHistory() throws IOException {
+
+		File directory = Files.createTempDirectory("commit-graph").toFile();
+
+		try {
+			Repository repository = FileRepositoryBuilder.create(new File(directory, "repository.git"));
+
+			repository.create(true);
+
+			// --split=no-merge needs git 2.29, older versions can't write the layers this test reads.
+			Assume.assumeTrue("git 2.29 or later is needed to write a split commit-graph", new GitOperations(repository, "git", new GitOperationMetrics(3)).isGitAtLeast(2, 29));
+
+			ObjectInserter inserter = repository.newObjectInserter();
+
+			ObjectId root = commit(inserter, 1, "1", "1");
+
+			ObjectId coreChange = commit(inserter, 2, "2", "1", root);
+
+			ObjectId webChange = commit(inserter, 3, "1", "2", root);
+
+			ObjectId merge = commit(inserter, 4, "2", "2", coreChange, webChange);
+
+			ObjectId master = commit(inserter, 5, "3", "2", merge);
+
+			inserter.flush();
+
+			updateRef(repository, "refs/heads/master", master);
+			updateRef(repository, "refs/heads/topic", webChange);
+
+			writeCommitGraphLayer(repository);
+
+			// the second layer only holds the commits added since.
+			ObjectId topic = commit(inserter, 6, "1", "3", webChange);
+
+			ObjectId newMaster = commit(inserter, 7, "3", "4", master);
+
+			// more than two parents, one of them in the first layer.
+			ObjectId octopus = commit(inserter, 8, "2", "3", topic, newMaster, coreChange);
+
+			inserter.flush();
+			inserter.release();
+
+			updateRef(repository, "refs/heads/master", newMaster);
+			updateRef(repository, "refs/heads/topic", topic);
+			updateRef(repository, "refs/heads/octopus", octopus);
+
+			writeCommitGraphLayer(repository);
+
+			Assert.assertEquals(2, FileUtils.readLines(new File(repository.getDirectory(), "objects/info/commit-graphs/commit-graph-chain"), "UTF-8").size());
+
+			CommitGraph graph = CommitGraph.open(repository);
+
+			Assert.assertNotNull(graph);
+			Assert.assertEquals(8, graph.getCommitCount());
+
+			// CDAT in both layers.
+			Assert.assertTrue(graph.contains(root));
+			Assert.assertTrue(graph.contains(newMaster));
+			Assert.assertFalse(graph.contains(ObjectId.zeroId()));
+
+			Assert.assertEquals(1, graph.getGeneration(root));
+			Assert.assertEquals(3, graph.getGeneration(merge));
+			Assert.assertEquals(3, graph.getGeneration(topic));
+			Assert.assertEquals(5, graph.getGeneration(newMaster));
+			Assert.assertEquals(6, graph.getGeneration(octopus));
+
+			Assert.assertEquals(Arrays.asList(coreChange, webChange), Arrays.asList(graph.getParents(merge)));
+			Assert.assertEquals(Arrays.asList(master), Arrays.asList(graph.getParents(newMaster)));
+			Assert.assertEquals(0, graph.getParents(root).length);
+
+			// EDGE, the parents after the first are in the extra edge list.
+			Assert.assertEquals(Arrays.asList(topic, newMaster, coreChange), Arrays.asList(graph.getParents(octopus)));
+
+			RevWalk rw = new RevWalk(repository);
+
+			Assert.assertEquals(rw.parseCommit(topic).getCommitTime(), graph.getCommitTime(topic));
+
+			// BIDX and BDAT, a Bloom filter has no false negatives.
+			Assert.assertEquals(PathFilterResult.MAYBE_CHANGED, graph.mayHaveChanged(coreChange, "ks-core"));
+			Assert.assertEquals(PathFilterResult.MAYBE_CHANGED, graph.mayHaveChanged(coreChange, "ks-core/a.txt"));
+			Assert.assertEquals(PathFilterResult.NOT_CHANGED, graph.mayHaveChanged(coreChange, "ks-web"));
+			Assert.assertEquals(PathFilterResult.MAYBE_CHANGED, graph.mayHaveChanged(newMaster, "ks-web"));
+			Assert.assertEquals(PathFilterResult.NOT_CHANGED, graph.mayHaveChanged(newMaster, "ks-core"));
+			Assert.assertEquals(PathFilterResult.NOT_AVAILABLE, graph.mayHaveChanged(ObjectId.zeroId(), "ks-core"));
+
+			rw.setRevFilter(RevFilter.MERGE_BASE);
+			rw.markStart(rw.parseCommit(topic));
+			rw.markStart(rw.parseCommit(newMaster));
+
+			ObjectId expectedBase = rw.next().copy();
+
+			rw.reset();
+			rw.setRevFilter(RevFilter.ALL);
+			rw.markStart(rw.parseCommit(newMaster));
+			rw.markUninteresting(rw.parseCommit(topic));
+
+			Set<ObjectId> expectedRange = new HashSet<ObjectId>();
+
+			for (RevCommit commit : rw) {
+				expectedRange.add(commit.copy());
+			}
+
+			rw.release();
+
+			CommitRangeWalker walker = new CommitRangeWalker(repository, graph);
+
+			try {
+				Assert.assertEquals(webChange, expectedBase);
+				Assert.assertEquals(expectedBase, walker.mergeBase(topic, newMaster));
+
+				List<ObjectId> range = walker.commitsBetween(topic, newMaster);
+
+				Assert.assertEquals(expectedRange, new HashSet<ObjectId>(range));
+
+				// generation order, each commit comes before its parents.
+				Assert.assertEquals(Arrays.asList(newMaster, master, merge, coreChange), range);
+
+				Assert.assertTrue(walker.touches(newMaster, "ks-web"));
+				Assert.assertFalse(walker.touches(newMaster, "ks-core"));
+				Assert.assertTrue(walker.getBloomFilterAnswers() > 0);
+			}
+			finally {
+				walker.release();
+			}
+
+			repository.close();
+		}
+		finally {
+			FileUtils.deleteDirectory(directory);
+		}
+	}
+}
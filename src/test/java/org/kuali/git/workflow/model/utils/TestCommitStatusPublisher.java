@@ -0,0 +1,134 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Assert;
+import org.junit.Test;
+import org.kohsuke.github.GHCommitState;
+import org.kuali.git.workflow.model.utils.CommitStatusPublisher.StatusUpdate;
+
+/**
+ * @author ocleirig
+ *
+ */
+public class TestCommitStatusPublisher {
+
+	/**
+	 *
+	 */
+	public TestCommitStatusPublisher() {
+	}
+
+	@Test
+	public void testUpdatesOfTheSameContextAreCoalesced() throws IOException {
+
+		StubbedPublisher publisher = new StubbedPublisher();
+
+		publisher.queue("c1", GHCommitState.PENDING, null, "building", "build");
+		publisher.queue("c1", GHCommitState.SUCCESS, null, "built", "build");
+		publisher.queue("c1", GHCommitState.PENDING, null, "testing", "test");
+
+		Assert.assertEquals(2, publisher.flush());
+
+		Assert.assertEquals(2, publisher.posted.size());
+		Assert.assertEquals(Collections.singletonList("c1"), publisher.listed);
+
+		Map<String, StatusUpdate> statuses = publisher.getCurrentStatuses("c1");
+
+		Assert.assertEquals(GHCommitState.SUCCESS, statuses.get("build").getState());
+		Assert.assertEquals(GHCommitState.PENDING, statuses.get("test").getState());
+
+		// read back from what the flush listed and posted.
+		Assert.assertEquals(1, publisher.listed.size());
+
+		// nothing is left queued.
+		Assert.assertEquals(0, publisher.flush());
+	}
+
+	@Test
+	public void testUpdatesMatchingTheCurrentStatusAreSkipped() throws IOException {
+
+		StubbedPublisher publisher = new StubbedPublisher();
+
+		// newest first, so the pending status is an older one.
+		publisher.registered("c1", GHCommitState.SUCCESS, "built", "build");
+		publisher.registered("c1", GHCommitState.PENDING, "building", "build");
+
+		publisher.queue("c1", GHCommitState.SUCCESS, null, "built", "build");
+
+		Assert.assertEquals(0, publisher.flush());
+		Assert.assertEquals(0, publisher.posted.size());
+
+		publisher.queue("c1", GHCommitState.SUCCESS, null, "built again", "build");
+
+		Assert.assertEquals(1, publisher.flush());
+		Assert.assertEquals("built again", publisher.getCurrentStatuses("c1").get("build").getDescription());
+
+		Assert.assertEquals(Collections.singletonList("c1"), publisher.listed);
+	}
+
+	@Test
+	public void testALoneUpdateIsCheckedBeforeItIsPosted() throws IOException {
+
+		StubbedPublisher publisher = new StubbedPublisher();
+
+		publisher.registered("c1", GHCommitState.PENDING, "testing status", "verify");
+
+		publisher.queue("c1", GHCommitState.PENDING, null, "testing status", "verify");
+		publisher.queue("c2", GHCommitState.PENDING, null, "testing status", "verify");
+
+		Assert.assertEquals(1, publisher.flush());
+
+		Assert.assertEquals("c2", publisher.posted.get(0).getCommitId());
+		Assert.assertEquals(2, publisher.listed.size());
+	}
+
+	/*
+	 * Stands in for the repository: statuses registered up front are listed newest first and posts are recorded.
+	 */
+	private static final class StubbedPublisher extends CommitStatusPublisher {
+
+		private final Map<String, List<StatusUpdate>> statuses = new HashMap<String, List<StatusUpdate>>();
+
+		private final List<String> listed = Collections.synchronizedList(new ArrayList<String>());
+
+		private final List<StatusUpdate> posted = Collections.synchronizedList(new ArrayList<StatusUpdate>());
+
+		public StubbedPublisher() {
+			super(null, new SystemStreamLog());
+		}
+
+		private void registered(String commitId, GHCommitState state, String description, String context) {
+
+			if (!statuses.containsKey(commitId))
+				statuses.put(commitId, new ArrayList<StatusUpdate>());
+
+			statuses.get(commitId).add(new StatusUpdate(commitId, state, null, description, context));
+		}
+
+		@Override
+		protected List<StatusUpdate> listStatuses(String commitId) throws IOException {
+
+			listed.add(commitId);
+
+			if (statuses.containsKey(commitId))
+				return statuses.get(commitId);
+
+			return Collections.emptyList();
+		}
+
+		@Override
+		protected void post(StatusUpdate update) throws IOException {
+			posted.add(update);
+		}
+	}
+}
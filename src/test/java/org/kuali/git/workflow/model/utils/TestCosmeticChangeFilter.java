@@ -0,0 +1,119 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Assert;
+import org.junit.Test;
+import org.kuali.git.workflow.model.utils.CosmeticChangeFilter.CommentSyntax;
+
+/**
+ * @author ocleirig
+ *
+ */
+public class TestCosmeticChangeFilter {
+
+	/**
+	 *
+	 */
+	public TestCosmeticChangeFilter() {
+	}
+
+	private boolean equivalent(String original, String changed, CommentSyntax syntax) throws IOException {
+		return CosmeticChangeFilter.isEquivalent(new StringReader(original), new StringReader(changed), syntax);
+	}
+
+	@Test
+	public void testJavaWhitespaceAndComments() throws IOException {
+
+		Assert.assertTrue(equivalent("int x = 1; // the count\n", "int  x=1;\r\n/* reformatted */", CommentSyntax.C_STYLE));
+
+		Assert.assertFalse(equivalent("int x = 1;", "intx = 1;", CommentSyntax.C_STYLE));
+
+		Assert.assertFalse(equivalent("int x = 1;", "int x = 2;", CommentSyntax.C_STYLE));
+	}
+
+	@Test
+	public void testLiteralsAreSignificant() throws IOException {
+
+		Assert.assertFalse(equivalent("s = \"a  b\";", "s = \"a b\";", CommentSyntax.C_STYLE));
+
+		Assert.assertFalse(equivalent("s = \"http://example.com\";", "s = \"http:\";", CommentSyntax.C_STYLE));
+
+		Assert.assertTrue(equivalent("s = \"a\\\"//b\";", "s = \"a\\\"//b\"; // trailing", CommentSyntax.C_STYLE));
+
+		Assert.assertFalse(equivalent("select 'a -- b' from dual", "select 'a' from dual", CommentSyntax.SQL));
+	}
+
+	@Test
+	public void testOtherSyntaxes() throws IOException {
+
+		Assert.assertTrue(equivalent("<a><!-- note ---><b/></a>", "<a>\n  <b/>\n</a>", CommentSyntax.XML));
+
+		Assert.assertTrue(equivalent("select 1 -- why\nfrom dual", "select 1\nfrom dual", CommentSyntax.SQL));
+
+		Assert.assertTrue(equivalent("# header\na=b", "a=b\n", CommentSyntax.HASH));
+
+		Assert.assertFalse(equivalent("a=b # not a comment", "a=b", CommentSyntax.HASH));
+	}
+
+	@Test
+	public void testLineBreaksAreKeptWhereTheyEndAStatement() throws IOException {
+
+		Assert.assertTrue(equivalent("x = 1;\n\n\ty = 2;\n", "x = 1; // one\r\ny  =  2;", CommentSyntax.C_STYLE_LINES));
+
+		// a line break can end a javascript statement or a c preprocessor directive.
+		Assert.assertFalse(equivalent("return\nvalue;", "return value;", CommentSyntax.C_STYLE_LINES));
+		Assert.assertFalse(equivalent("#define A 1\nint x;", "#define A 1 int x;", CommentSyntax.C_STYLE_LINES));
+
+		Assert.assertFalse(equivalent("a=1\nb=2", "a=1 b=2", CommentSyntax.HASH));
+		Assert.assertTrue(equivalent("a=1\n\n# b\nb=2", "a=1\nb=2\n", CommentSyntax.HASH));
+
+		Assert.assertTrue(equivalent("return\nvalue;", "return value;", CommentSyntax.C_STYLE));
+	}
+
+	@Test
+	public void testSyntaxByExtension() {
+
+		CosmeticChangeFilter filter = new CosmeticChangeFilter();
+
+		Assert.assertEquals(CommentSyntax.C_STYLE, filter.getSyntax("ks-core/src/main/java/Foo.java"));
+		Assert.assertEquals(CommentSyntax.C_STYLE_LINES, filter.getSyntax("ks-web/src/main/webapp/app.js"));
+		Assert.assertEquals(CommentSyntax.HASH, filter.getSyntax("ks-core/src/main/resources/app.properties"));
+		Assert.assertEquals(CommentSyntax.DOCUMENTATION, filter.getSyntax("README.md"));
+		Assert.assertNull(filter.getSyntax("ks-core/bin.d/run"));
+
+		// whitespace is significant in these.
+		Assert.assertNull(filter.getSyntax("scripts/release.py"));
+		Assert.assertNull(filter.getSyntax(".travis.yml"));
+		Assert.assertNull(filter.getSyntax("ks-core/src/main/resources/messages.txt"));
+	}
+
+	@Test
+	public void testCssUrlsAreNotComments() throws IOException {
+
+		Assert.assertFalse(equivalent("a { background: url(http://example.com/a.png); }", "a { background: url(http:); }", CommentSyntax.CSS));
+
+		Assert.assertTrue(equivalent("a { color: red; } /* brand */", "a {\n  color: red;\n}", CommentSyntax.CSS));
+	}
+
+	@Test
+	public void testPackagedDocumentationIsSubstantive() throws IOException {
+
+		CosmeticChangeFilter filter = new CosmeticChangeFilter();
+
+		ObjectId original = ObjectId.fromString("1111111111111111111111111111111111111111");
+
+		ObjectId changed = ObjectId.fromString("2222222222222222222222222222222222222222");
+
+		// documentation outside of a source set is not read, so no reader is needed.
+		Assert.assertTrue(filter.isCosmetic(null, "ks-core/README.md", original, changed));
+		Assert.assertTrue(filter.isCosmetic(null, "ks-core/src/site/markdown/index.md", original, changed));
+
+		Assert.assertFalse(filter.isCosmetic(null, "ks-core/src/main/resources/help.md", original, changed));
+	}
+}
@@ -0,0 +1,136 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kuali.git.workflow.model.utils.GitOperationMetrics.Engine;
+
+/**
+ * @author ocleirig
+ *
+ */
+public class TestGitOperationMetrics {
+
+	/**
+	 *
+	 */
+	public TestGitOperationMetrics() {
+	}
+
+	@Test
+	public void testFasterEngineIsChosenAfterWarmup() {
+
+		GitOperationMetrics metrics = new GitOperationMetrics(2);
+
+		for (int i = 0; i < 10; i++) {
+
+			Engine engine = metrics.chooseEngine("update-refs", Engine.JGIT, Engine.CGIT);
+
+			metrics.record("update-refs", engine, engine == Engine.JGIT ? 5000000L : 1000000L);
+		}
+
+		Assert.assertEquals(2, metrics.getCount("update-refs", Engine.JGIT));
+		Assert.assertEquals(8, metrics.getCount("update-refs", Engine.CGIT));
+
+		Assert.assertEquals(Engine.CGIT, metrics.chooseEngine("update-refs", Engine.JGIT, Engine.CGIT));
+
+		// nothing recorded yet so the first candidate is tried.
+		Assert.assertEquals(Engine.JGIT, metrics.chooseEngine("has-object", Engine.JGIT, Engine.CGIT));
+	}
+
+	@Test
+	public void testSavedSamplesCountTowardsTheWarmup() throws IOException {
+
+		File metricsFile = File.createTempFile("git-flow-metrics", ".dat");
+
+		try {
+			GitOperationMetrics firstRun = GitOperationMetrics.load(metricsFile, 2);
+
+			firstRun.record("update-refs", Engine.JGIT, 5000000L);
+			firstRun.record("update-refs", Engine.CGIT, 1000000L);
+			firstRun.record("fetch/Receiving objects", Engine.CGIT, 1000000L, 1024);
+
+			firstRun.save(metricsFile);
+
+			GitOperationMetrics secondRun = GitOperationMetrics.load(metricsFile, 2);
+
+			// one sample of each engine so far.
+			Assert.assertEquals(Engine.JGIT, secondRun.chooseEngine("update-refs", Engine.JGIT, Engine.CGIT));
+
+			secondRun.record("update-refs", Engine.JGIT, 5000000L);
+			secondRun.record("update-refs", Engine.CGIT, 1000000L);
+
+			Assert.assertEquals(Engine.CGIT, secondRun.chooseEngine("update-refs", Engine.JGIT, Engine.CGIT));
+
+			// only this run is reported.
+			Assert.assertEquals(1, secondRun.getCount("update-refs", Engine.CGIT));
+			Assert.assertEquals(2, secondRun.summarize().size());
+
+			secondRun.save(metricsFile);
+
+			GitOperationMetrics thirdRun = GitOperationMetrics.load(metricsFile, 2);
+
+			Assert.assertEquals(Engine.CGIT, thirdRun.chooseEngine("update-refs", Engine.JGIT, Engine.CGIT));
+			Assert.assertEquals(Engine.JGIT, thirdRun.chooseEngine("fetch/Receiving objects", Engine.JGIT, Engine.CGIT));
+		}
+		finally {
+			Files.deleteIfExists(metricsFile.toPath());
+		}
+	}
+
+	@Test
+	public void testOtherEnginesAreResampled() {
+
+		GitOperationMetrics metrics = new GitOperationMetrics(1);
+
+		metrics.setResampleInterval(4);
+
+		for (int i = 0; i < 12; i++) {
+
+			Engine engine = metrics.chooseEngine("has-object", Engine.JGIT, Engine.CGIT);
+
+			metrics.record("has-object", engine, engine == Engine.JGIT ? 5000000L : 1000000L);
+		}
+
+		// one warm up sample and the 4th and 8th of the 10 choices made after it.
+		Assert.assertEquals(3, metrics.getCount("has-object", Engine.JGIT));
+		Assert.assertEquals(9, metrics.getCount("has-object", Engine.CGIT));
+	}
+
+	@Test
+	public void testOldRunsFadeOut() throws IOException {
+
+		File metricsFile = File.createTempFile("git-flow-metrics", ".dat");
+
+		try {
+			GitOperationMetrics firstRun = GitOperationMetrics.load(metricsFile, 2);
+
+			for (int i = 0; i < 1000; i++) {
+				firstRun.record("has-object", Engine.JGIT, 8000000L);
+				firstRun.record("has-object", Engine.CGIT, 10000000L);
+			}
+
+			firstRun.save(metricsFile);
+
+			GitOperationMetrics secondRun = GitOperationMetrics.load(metricsFile, 2);
+
+			secondRun.setResampleInterval(0);
+
+			for (int i = 0; i < GitOperationMetrics.MAXIMUM_SAVED_SAMPLES; i++) {
+				secondRun.record("has-object", Engine.CGIT, 1000000L);
+			}
+
+			// the 1000 slow samples only weigh as much as the 200 fast ones.
+			Assert.assertEquals(Engine.CGIT, secondRun.chooseEngine("has-object", Engine.JGIT, Engine.CGIT));
+		}
+		finally {
+			Files.deleteIfExists(metricsFile.toPath());
+		}
+	}
+}
@@ -0,0 +1,30 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author ocleirig
+ *
+ */
+public class TestGitOperations {
+
+	/**
+	 *
+	 */
+	public TestGitOperations() {
+	}
+
+	@Test
+	public void testVersionIsParsed() {
+
+		Assert.assertArrayEquals(new int[] { 2, 39 }, GitOperations.parseVersion("git version 2.39.5"));
+		Assert.assertArrayEquals(new int[] { 2, 24 }, GitOperations.parseVersion("git version 2.24.3 (Apple Git-128)"));
+		Assert.assertArrayEquals(new int[] { 2, 45 }, GitOperations.parseVersion("git version 2.45.1.windows.1"));
+
+		Assert.assertNull(GitOperations.parseVersion("not git"));
+	}
+}
@@ -0,0 +1,64 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kuali.git.workflow.model.utils.GitProgressParser.Phase;
+
+/**
+ * @author ocleirig
+ *
+ */
+public class TestGitProgressParser {
+
+	/**
+	 *
+	 */
+	public TestGitProgressParser() {
+	}
+
+	@Test
+	public void testFetchProgress() throws IOException {
+
+		ByteArrayOutputStream consoleBytes = new ByteArrayOutputStream();
+
+		GitProgressParser parser = new GitProgressParser(new PrintStream(consoleBytes, true, "UTF-8"), 60000);
+
+		parser.write((
+				"remote: Counting objects: 1234, done.\n" +
+				"remote: Compressing objects:  50% (5/10)\r" +
+				"remote: Compressing objects: 100% (10/10), done.\n" +
+				"Receiving objects:  10% (100/1000), 12.00 KiB | 1.00 MiB/s\r" +
+				"Receiving objects:  20% (200/1000), 24.00 KiB | 1.00 MiB/s\r" +
+				"Receiving objects: 100% (1000/1000), 1.50 MiB | 1.00 MiB/s, done.\n" +
+				"Resolving deltas: 100% (300/300), done.\n" +
+				"From https://github.com/kuali-student/ks-development\n").getBytes("UTF-8"));
+
+		parser.close();
+
+		Assert.assertEquals(4, parser.getPhases().size());
+
+		Phase receiving = parser.getPhase("Receiving objects");
+
+		Assert.assertEquals(1000, receiving.getCount());
+		Assert.assertEquals(1000, receiving.getTotal());
+		Assert.assertEquals((long) (1.5 * 1024 * 1024), receiving.getBytes());
+		Assert.assertTrue(receiving.isDone());
+
+		Assert.assertEquals(1234, parser.getPhase("Counting objects").getCount());
+
+		String console = consoleBytes.toString("UTF-8");
+
+		// the intermediate line is throttled, the first and last of the phase are kept.
+		Assert.assertTrue(console.contains("Receiving objects:  10%"));
+		Assert.assertFalse(console.contains("Receiving objects:  20%"));
+		Assert.assertTrue(console.contains("Receiving objects: 100%"));
+		Assert.assertTrue(console.contains("From https://github.com/kuali-student/ks-development"));
+	}
+}
@@ -0,0 +1,199 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kuali.git.workflow.model.BranchContentDivergence;
+import org.kuali.git.workflow.model.BranchContentDivergence.DivergenceType;
+import org.kuali.git.workflow.model.BranchContentLocation;
+
+/**
+ * @author ocleirig
+ *
+ */
+public class TestGithubTreeComparator {
+
+	/**
+	 *
+	 */
+	public TestGithubTreeComparator() {
+	}
+
+	/*
+	 * kuali/left@master:impex and kuali/right@master:db share a subtree and one file but otherwise differ in every way
+	 * the comparator reports.
+	 */
+	private static StubbedClient createClient() {
+
+		StubbedClient client = new StubbedClient();
+
+		client.branch("kuali/left", "master", "left-root");
+		client.tree("kuali/left", "left-root", entry("impex", "tree", "left-impex"), entry("pom.xml", "blob", "pom-1"));
+		client.tree("kuali/left", "left-impex",
+				entry("same.sql", "blob", "same-1"),
+				entry("changed.sql", "blob", "changed-1"),
+				entry("only-left.sql", "blob", "left-1"),
+				entry("flipped", "blob", "flipped-1"),
+				entry("shared", "tree", "shared-tree"),
+				entry("upgrade", "tree", "left-upgrade"));
+		client.tree("kuali/left", "left-upgrade", entry("v1.sql", "blob", "v1-1"));
+
+		client.branch("kuali/right", "master", "right-root");
+		client.tree("kuali/right", "right-root", entry("db", "tree", "right-db"));
+		client.tree("kuali/right", "right-db",
+				entry("same.sql", "blob", "same-1"),
+				entry("changed.sql", "blob", "changed-2"),
+				entry("only-right.sql", "blob", "right-1"),
+				entry("flipped", "tree", "flipped-tree"),
+				entry("shared", "tree", "shared-tree"),
+				entry("upgrade", "tree", "right-upgrade"));
+		client.tree("kuali/right", "right-upgrade", entry("v1.sql", "blob", "v1-2"));
+
+		return client;
+	}
+
+	@Test
+	public void testOnlyDifferingTreesAreDescendedInto() throws IOException {
+
+		StubbedClient client = createClient();
+
+		List<BranchContentDivergence> divergences = new GithubTreeComparator(client).compare(BranchContentLocation.parse("kuali/left@master:impex"), BranchContentLocation.parse("kuali/right@master:db"));
+
+		List<String> found = new ArrayList<String>();
+
+		for (BranchContentDivergence divergence : divergences) {
+			found.add(divergence.getType() + " " + divergence.getPath());
+		}
+
+		Assert.assertEquals(Arrays.asList(
+				DivergenceType.CONTENT_DIFFERS + " changed.sql",
+				DivergenceType.TYPE_DIFFERS + " flipped",
+				DivergenceType.MISSING_ON_RIGHT + " only-left.sql",
+				DivergenceType.MISSING_ON_LEFT + " only-right.sql",
+				DivergenceType.CONTENT_DIFFERS + " upgrade/v1.sql"), found);
+
+		Assert.assertEquals("changed-1", divergences.get(0).getLeftSha());
+		Assert.assertEquals("changed-2", divergences.get(0).getRightSha());
+
+		// the subtree with the same sha on both sides is never listed.
+		Assert.assertFalse(client.requested.contains("/repos/kuali/left/git/trees/shared-tree"));
+		Assert.assertFalse(client.requested.contains("/repos/kuali/right/git/trees/shared-tree"));
+	}
+
+	@Test
+	public void testIdenticalTreesAreNotListed() throws IOException {
+
+		StubbedClient client = createClient();
+
+		client.branch("kuali/copy", "master", "left-root");
+
+		Assert.assertEquals(Collections.emptyList(), new GithubTreeComparator(client).compare(BranchContentLocation.parse("kuali/left@master"), BranchContentLocation.parse("kuali/copy@master")));
+
+		Assert.assertEquals(Arrays.asList("/repos/kuali/left/branches/master", "/repos/kuali/copy/branches/master"), client.requested);
+	}
+
+	@Test
+	public void testMissingLocations() throws IOException {
+
+		GithubTreeComparator comparator = new GithubTreeComparator(createClient());
+
+		// a file is not a directory that can be compared.
+		List<BranchContentDivergence> divergences = comparator.compare(BranchContentLocation.parse("kuali/left@master:impex"), BranchContentLocation.parse("kuali/left@master:pom.xml"));
+
+		Assert.assertEquals(1, divergences.size());
+		Assert.assertEquals(DivergenceType.MISSING_ON_RIGHT, divergences.get(0).getType());
+		Assert.assertEquals("", divergences.get(0).getPath());
+
+		Assert.assertEquals(Collections.emptyList(), comparator.compare(BranchContentLocation.parse("kuali/left@master:absent"), BranchContentLocation.parse("kuali/right@master:absent")));
+	}
+
+	private static JSONObject entry(String path, String type, String sha) {
+
+		JSONObject entry = new JSONObject();
+
+		entry.put("path", path);
+		entry.put("type", type);
+		entry.put("sha", sha);
+
+		return entry;
+	}
+
+	/*
+	 * Answers the branch and tree requests from what was registered and records the paths requested.
+	 */
+	private static final class StubbedClient extends GithubRestClient {
+
+		private final Map<String, JSONObject> responses = new HashMap<String, JSONObject>();
+
+		private final List<String> requested = Collections.synchronizedList(new ArrayList<String>());
+
+		public StubbedClient() {
+			super("http://localhost", null);
+		}
+
+		private void branch(String repository, String branch, String treeSha) {
+
+			JSONObject tree = new JSONObject();
+
+			tree.put("sha", treeSha);
+
+			JSONObject commit = new JSONObject();
+
+			commit.put("tree", tree);
+
+			JSONObject branchCommit = new JSONObject();
+
+			branchCommit.put("commit", commit);
+
+			JSONObject response = new JSONObject();
+
+			response.put("commit", branchCommit);
+
+			responses.put("/repos/" + repository + "/branches/" + branch, response);
+		}
+
+		private void tree(String repository, String treeSha, JSONObject... entries) {
+
+			JSONArray tree = new JSONArray();
+
+			for (JSONObject entry : entries) {
+				tree.add(entry);
+			}
+
+			JSONObject response = new JSONObject();
+
+			response.put("sha", treeSha);
+			response.put("tree", tree);
+			response.put("truncated", false);
+
+			responses.put("/repos/" + repository + "/git/trees/" + treeSha, response);
+		}
+
+		@Override
+		public JSONObject getObject(String path) throws IOException {
+
+			requested.add(path);
+
+			JSONObject response = responses.get(path);
+
+			if (response == null)
+				throw new FileNotFoundException(path);
+
+			return response;
+		}
+	}
+}
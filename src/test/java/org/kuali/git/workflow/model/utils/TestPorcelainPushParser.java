@@ -0,0 +1,50 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kuali.git.workflow.model.RefPushResult;
+
+/**
+ * @author ocleirig
+ *
+ */
+public class TestPorcelainPushParser {
+
+	/**
+	 *
+	 */
+	public TestPorcelainPushParser() {
+	}
+
+	@Test
+	public void testParse() {
+
+		List<RefPushResult> results = PorcelainPushParser.parse("origin", Arrays.asList(
+				"To https://github.com/kuali-student/ks-development.git",
+				"=\trefs/heads/trunk:refs/heads/trunk\t[up to date]",
+				"*\trefs/tags/release-1:refs/tags/release-1\t[new tag]",
+				"!\trefs/heads/b:refs/heads/b\t[rejected] (non-fast-forward)",
+				"!\trefs/heads/c:refs/heads/c\t[rejected] (atomic push failed)",
+				"Done"));
+
+		Assert.assertEquals(4, results.size());
+
+		Assert.assertEquals("UP_TO_DATE", results.get(0).getStatus());
+		Assert.assertTrue(results.get(0).isSuccessful());
+
+		Assert.assertEquals("OK", results.get(1).getStatus());
+		Assert.assertEquals("refs/tags/release-1", results.get(1).getRemoteRef());
+
+		Assert.assertEquals("REJECTED_NONFASTFORWARD", results.get(2).getStatus());
+		Assert.assertFalse(results.get(2).isSuccessful());
+
+		Assert.assertEquals("REJECTED_OTHER_REASON", results.get(3).getStatus());
+		Assert.assertEquals("atomic push failed", results.get(3).getMessage());
+	}
+}
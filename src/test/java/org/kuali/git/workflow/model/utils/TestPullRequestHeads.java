@@ -0,0 +1,100 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdRef;
+import org.eclipse.jgit.lib.Ref;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author ocleirig
+ *
+ */
+public class TestPullRequestHeads {
+
+	private static final String COMMIT_1 = "1111111111111111111111111111111111111111";
+
+	private static final String COMMIT_2 = "2222222222222222222222222222222222222222";
+
+	private static final String COMMIT_3 = "3333333333333333333333333333333333333333";
+
+	/**
+	 *
+	 */
+	public TestPullRequestHeads() {
+	}
+
+	@Test
+	public void testOnlyPullRequestHeadsAreKept() {
+
+		Map<Integer, String> heads = PullRequestHeads.fromRefs(Arrays.asList(
+				ref("refs/heads/master", COMMIT_1),
+				ref("refs/pull/12/head", COMMIT_2),
+				ref("refs/pull/12/merge", COMMIT_3),
+				ref("refs/pull/7/head", COMMIT_3)));
+
+		Assert.assertEquals(2, heads.size());
+		Assert.assertEquals(COMMIT_2, heads.get(12));
+		Assert.assertEquals(COMMIT_3, heads.get(7));
+	}
+
+	@Test
+	public void testNewAndMovedHeadsAreChanged() {
+
+		Map<Integer, String> known = new TreeMap<Integer, String>();
+
+		known.put(1, COMMIT_1);
+		known.put(2, COMMIT_2);
+		known.put(3, COMMIT_3);
+
+		Map<Integer, String> current = new TreeMap<Integer, String>(known);
+
+		current.put(2, COMMIT_3);
+		current.put(4, COMMIT_1);
+		current.remove(3);
+
+		Set<Integer> changed = PullRequestHeads.changedSince(known, current);
+
+		Assert.assertEquals(2, changed.size());
+		Assert.assertTrue(changed.contains(2));
+		Assert.assertTrue(changed.contains(4));
+	}
+
+	@Test
+	public void testSavedHeadsCanBeLoaded() throws IOException {
+
+		File headsFile = File.createTempFile("pull-request-heads", ".dat");
+
+		try {
+			Assert.assertTrue(headsFile.delete());
+
+			Assert.assertTrue(PullRequestHeads.load(headsFile).isEmpty());
+
+			Map<Integer, String> heads = new TreeMap<Integer, String>();
+
+			heads.put(5, COMMIT_1);
+			heads.put(40, COMMIT_2);
+
+			PullRequestHeads.save(headsFile, heads);
+
+			Assert.assertEquals(heads, PullRequestHeads.load(headsFile));
+		}
+		finally {
+			headsFile.delete();
+		}
+	}
+
+	private static Ref ref(String name, String commitId) {
+		return new ObjectIdRef.PeeledNonTag(Ref.Storage.NETWORK, name, ObjectId.fromString(commitId));
+	}
+}
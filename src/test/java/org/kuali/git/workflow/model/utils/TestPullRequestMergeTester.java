@@ -0,0 +1,176 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+import org.kuali.git.workflow.model.utils.PullRequestMergeTester.Mergeability;
+
+/**
+ * @author ocleirig
+ *
+ */
+public class TestPullRequestMergeTester {
+
+	/**
+	 *
+	 */
+	public TestPullRequestMergeTester() {
+	}
+
+	private static ObjectId commit(ObjectInserter inserter, String readme, String pom, ObjectId... parents) throws IOException {
+
+		TreeFormatter tree = new TreeFormatter();
+
+		tree.append("README.md", FileMode.REGULAR_FILE, inserter.insert(Constants.OBJ_BLOB, Constants.encode(readme)));
+		tree.append("pom.xml", FileMode.REGULAR_FILE, inserter.insert(Constants.OBJ_BLOB, Constants.encode(pom)));
+
+		CommitBuilder commit = new CommitBuilder();
+
+		PersonIdent author = new PersonIdent("test", "test@example.com");
+
+		commit.setAuthor(author);
+		commit.setCommitter(author);
+		commit.setMessage("test");
+		commit.setTreeId(inserter.insert(tree));
+		commit.setParentIds(parents);
+
+		return inserter.insert(commit);
+	}
+
+	// the id of the tree commit() would write, without writing it.
+	private static ObjectId treeId(String readme, String pom) {
+
+		ObjectInserter.Formatter formatter = new ObjectInserter.Formatter();
+
+		TreeFormatter tree = new TreeFormatter();
+
+		tree.append("README.md", FileMode.REGULAR_FILE, formatter.idFor(Constants.OBJ_BLOB, Constants.encode(readme)));
+		tree.append("pom.xml", FileMode.REGULAR_FILE, formatter.idFor(Constants.OBJ_BLOB, Constants.encode(pom)));
+
+		return tree.computeId(formatter);
+	}
+
+	@Test
+	public void testConflictingPathsAreReported() throws IOException {
+
+		File directory = Files.createTempDirectory("merge-tester").toFile();
+
+		try {
+			Repository repository = FileRepositoryBuilder.create(new File(directory, "repository.git"));
+
+			repository.create(true);
+
+			ObjectInserter inserter = repository.newObjectInserter();
+
+			ObjectId base = commit(inserter, "readme\n", "<version>1</version>\n");
+
+			ObjectId target = commit(inserter, "readme\n", "<version>2</version>\n", base);
+
+			ObjectId clean = commit(inserter, "better readme\n", "<version>1</version>\n", base);
+
+			ObjectId conflicting = commit(inserter, "readme\n", "<version>3</version>\n", base);
+
+			inserter.flush();
+			inserter.release();
+
+			PullRequestMergeTester tester = new PullRequestMergeTester(repository);
+
+			Mergeability cleanMerge = tester.test(1, clean, target);
+
+			Assert.assertTrue(cleanMerge.isMergeable());
+			Assert.assertNotNull(cleanMerge.getMergeTreeId());
+
+			// the merged blob and tree are not written.
+			Assert.assertFalse(repository.getObjectDatabase().has(ObjectId.fromString(cleanMerge.getMergeTreeId())));
+			Assert.assertTrue(cleanMerge.getConflictingPaths().isEmpty());
+
+			Mergeability conflictingMerge = tester.test(2, conflicting, target);
+
+			Assert.assertFalse(conflictingMerge.isMergeable());
+			Assert.assertNull(conflictingMerge.getMergeTreeId());
+			Assert.assertEquals(Arrays.asList("pom.xml"), conflictingMerge.getConflictingPaths());
+
+			repository.close();
+
+			File reportFile = PullRequestMergeTester.getReportFile(directory, "mergeability", 2);
+
+			PullRequestMergeTester.save(reportFile, conflictingMerge);
+
+			Mergeability loaded = PullRequestMergeTester.load(reportFile);
+
+			Assert.assertEquals(2, loaded.getPullRequestNumber());
+			Assert.assertEquals(conflicting.name(), loaded.getPullRequestCommitId());
+			Assert.assertEquals(target.name(), loaded.getTargetCommitId());
+			Assert.assertFalse(loaded.isMergeable());
+			Assert.assertEquals(Arrays.asList("pom.xml"), loaded.getConflictingPaths());
+
+			Assert.assertEquals(1, PullRequestMergeTester.deleteReports(directory, "mergeability"));
+			Assert.assertNull(PullRequestMergeTester.load(reportFile));
+		}
+		finally {
+			FileUtils.deleteDirectory(directory);
+		}
+	}
+
+	@Test
+	public void testCrissCrossMergesAreTested() throws IOException {
+
+		File directory = Files.createTempDirectory("merge-tester").toFile();
+
+		try {
+			Repository repository = FileRepositoryBuilder.create(new File(directory, "repository.git"));
+
+			repository.create(true);
+
+			ObjectInserter inserter = repository.newObjectInserter();
+
+			ObjectId base = commit(inserter, "readme\n", "<version>1</version>\n");
+
+			ObjectId left = commit(inserter, "better readme\n", "<version>1</version>\n", base);
+
+			ObjectId right = commit(inserter, "readme\n", "<version>2</version>\n", base);
+
+			// left and right are both merge bases, the tree they merge into is not in the repository.
+			ObjectId target = commit(inserter, "better readme\n", "<version>3</version>\n", left, right);
+
+			ObjectId head = commit(inserter, "best readme\n", "<version>2</version>\n", right, left);
+
+			inserter.flush();
+			inserter.release();
+
+			ObjectId virtualBaseTree = treeId("better readme\n", "<version>2</version>\n");
+
+			Assert.assertFalse(repository.getObjectDatabase().has(virtualBaseTree));
+
+			Mergeability mergeability = new PullRequestMergeTester(repository).test(1, head, target);
+
+			Assert.assertTrue(mergeability.isMergeable());
+			Assert.assertTrue(mergeability.getConflictingPaths().isEmpty());
+
+			// the unstored merge of the bases could not be read back, so it was redone with the merged bases written.
+			Assert.assertTrue(repository.getObjectDatabase().has(virtualBaseTree));
+
+			repository.close();
+		}
+		finally {
+			FileUtils.deleteDirectory(directory);
+		}
+	}
+}
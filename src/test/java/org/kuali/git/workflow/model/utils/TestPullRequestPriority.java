@@ -0,0 +1,119 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.kuali.git.workflow.model.utils.PullRequestPriority.Candidate;
+
+/**
+ * @author ocleirig
+ *
+ */
+public class TestPullRequestPriority {
+
+	private static final long HOUR = 60L * 60L * 1000L;
+
+	private static final long DAY = 24L * HOUR;
+
+	private static final long NOW = 1000L * DAY;
+
+	/**
+	 *
+	 */
+	public TestPullRequestPriority() {
+	}
+
+	@Test
+	public void testCheapRecentPullRequestsComeFirst() {
+
+		Map<String, Long> costs = new HashMap<String, Long>();
+
+		costs.put("ks-enroll", 1800L);
+		costs.put("ks-web", 900L);
+
+		PullRequestPriority priority = new PullRequestPriority(costs, 60L);
+
+		List<Candidate> candidates = new ArrayList<Candidate>();
+
+		// a large refactor of the expensive modules, pushed an hour ago.
+		candidates.add(new Candidate(10, "a", 4000, Arrays.asList("ks-enroll", "ks-web"), NOW - 2 * DAY, NOW - HOUR));
+
+		// a documentation fix, pushed two days ago.
+		candidates.add(new Candidate(11, "b", 4, Arrays.asList("."), NOW - 2 * DAY, NOW - 2 * DAY));
+
+		// a small change to one module, pushed just now.
+		candidates.add(new Candidate(12, "c", 40, Arrays.asList("ks-core"), NOW - HOUR, NOW));
+
+		List<Candidate> ordered = priority.order(candidates, NOW);
+
+		Assert.assertEquals(12, ordered.get(0).getNumber());
+		Assert.assertEquals(11, ordered.get(1).getNumber());
+		Assert.assertEquals(10, ordered.get(2).getNumber());
+
+		Assert.assertEquals(2700L, priority.getBuildSeconds(Arrays.asList("ks-enroll", "ks-web")));
+		Assert.assertEquals(60L, priority.getBuildSeconds(Arrays.asList("ks-unknown")));
+	}
+
+	@Test
+	public void testWaitingPullRequestIsNotStarved() {
+
+		PullRequestPriority priority = new PullRequestPriority(new HashMap<String, Long>(), 60L);
+
+		Candidate waiting = new Candidate(20, "a", 1000, Arrays.asList("ks-core"), NOW - 20 * DAY, NOW - 20 * DAY);
+
+		Candidate fresh = new Candidate(21, "b", 1000, Arrays.asList("ks-core"), NOW - 2 * DAY, NOW - 2 * DAY);
+
+		List<Candidate> ordered = priority.order(Arrays.asList(fresh, waiting), NOW);
+
+		Assert.assertEquals(20, ordered.get(0).getNumber());
+
+		// ties go to the older pull request.
+		Candidate twin = new Candidate(19, "c", 1000, Arrays.asList("ks-core"), NOW - 2 * DAY, NOW - 2 * DAY);
+
+		Assert.assertEquals(19, priority.order(Arrays.asList(fresh, twin), NOW).get(0).getNumber());
+	}
+
+	@Test
+	public void testCandidatesAreSavedByHeadCommit() throws IOException {
+
+		File directory = Files.createTempDirectory("pull-request-priority").toFile();
+
+		try {
+			File candidatesFile = new File(directory, "pull-request-candidates.dat");
+
+			Assert.assertTrue(PullRequestPriority.loadCandidates(candidatesFile).isEmpty());
+
+			PullRequestPriority.saveCandidates(candidatesFile, Arrays.asList(new Candidate(10, "a", 4000, Arrays.asList("ks-enroll", "ks-web"), NOW - 2 * DAY, NOW - HOUR),
+					new Candidate(11, "b", 0, new ArrayList<String>(), NOW - DAY, NOW - DAY)));
+
+			Map<String, Candidate> loaded = PullRequestPriority.loadCandidates(candidatesFile);
+
+			Assert.assertEquals(2, loaded.size());
+
+			Candidate candidate = loaded.get("a");
+
+			Assert.assertEquals(10, candidate.getNumber());
+			Assert.assertEquals(4000, candidate.getChangedLines());
+			Assert.assertEquals(Arrays.asList("ks-enroll", "ks-web"), new ArrayList<String>(candidate.getModules()));
+			Assert.assertEquals(NOW - 2 * DAY, candidate.getCreatedAt());
+			Assert.assertEquals(NOW - HOUR, candidate.getHeadCommitTime());
+
+			Assert.assertTrue(loaded.get("b").getModules().isEmpty());
+		}
+		finally {
+			FileUtils.deleteDirectory(directory);
+		}
+	}
+}
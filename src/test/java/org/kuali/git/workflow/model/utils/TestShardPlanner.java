@@ -0,0 +1,99 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kuali.git.workflow.model.utils.ShardPlanner.Shard;
+
+/**
+ * @author ocleirig
+ *
+ */
+public class TestShardPlanner {
+
+	/**
+	 *
+	 */
+	public TestShardPlanner() {
+	}
+
+	@Test
+	public void testLongestModulesAreSpreadFirst() {
+
+		Map<String, Long> estimates = new LinkedHashMap<String, Long>();
+
+		estimates.put("ks-core", 200L);
+		estimates.put("ks-enroll", 700L);
+		estimates.put("ks-lum", 600L);
+		estimates.put("ks-web", 500L);
+		estimates.put("ks-api", 400L);
+		estimates.put("ks-deployments", 300L);
+
+		List<Shard> shards = ShardPlanner.plan(estimates, 2);
+
+		Assert.assertEquals(2, shards.size());
+
+		// 700 + 400 + 300 and 600 + 500 + 200
+		Assert.assertEquals(Arrays.asList("ks-enroll", "ks-api", "ks-deployments"), shards.get(0).getModules());
+		Assert.assertEquals(1400L, shards.get(0).getEstimatedSeconds());
+
+		Assert.assertEquals(Arrays.asList("ks-lum", "ks-web", "ks-core"), shards.get(1).getModules());
+		Assert.assertEquals(1300L, shards.get(1).getEstimatedSeconds());
+		Assert.assertEquals(2, shards.get(1).getNumber());
+	}
+
+	@Test
+	public void testNoEmptyShards() {
+
+		Map<String, Long> estimates = new LinkedHashMap<String, Long>();
+
+		estimates.put("ks-core", 200L);
+		estimates.put("ks-web", 200L);
+
+		List<Shard> shards = ShardPlanner.plan(estimates, 5);
+
+		Assert.assertEquals(2, shards.size());
+		Assert.assertEquals(Arrays.asList("ks-core"), shards.get(0).getModules());
+		Assert.assertEquals(Arrays.asList("ks-web"), shards.get(1).getModules());
+
+		Assert.assertTrue(ShardPlanner.plan(new LinkedHashMap<String, Long>(), 3).isEmpty());
+	}
+
+	@Test
+	public void testHistoryEstimatesTheMedianOfRecentBuilds() throws IOException {
+
+		ModuleBuildHistory history = new ModuleBuildHistory(3);
+
+		history.record("ks-core", 100L);
+		history.record("ks-core", 900L);
+		history.record("ks-core", 120L);
+		history.record("ks-core", 110L);
+
+		Assert.assertEquals(Arrays.asList(900L, 120L, 110L), history.getDurations("ks-core"));
+		Assert.assertEquals(120L, history.estimate("ks-core", 60L));
+		Assert.assertEquals(60L, history.estimate("ks-web", 60L));
+
+		File historyFile = File.createTempFile("module-build-history", ".dat");
+
+		try {
+			history.save(historyFile);
+
+			ModuleBuildHistory loaded = ModuleBuildHistory.load(historyFile, 2);
+
+			Assert.assertEquals(Arrays.asList(120L, 110L), loaded.getDurations("ks-core"));
+			Assert.assertEquals(115L, loaded.estimate("ks-core", 60L));
+		}
+		finally {
+			historyFile.delete();
+		}
+	}
+}
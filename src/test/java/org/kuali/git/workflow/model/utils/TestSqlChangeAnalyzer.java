@@ -0,0 +1,109 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kuali.git.workflow.model.SqlObjectChange;
+import org.kuali.git.workflow.model.SqlObjectChange.ChangeKind;
+
+/**
+ * @author ocleirig
+ *
+ */
+public class TestSqlChangeAnalyzer {
+
+	/**
+	 *
+	 */
+	public TestSqlChangeAnalyzer() {
+	}
+
+	@Test
+	public void testScript() throws IOException {
+
+		SqlChangeAnalyzer analyzer = new SqlChangeAnalyzer();
+
+		analyzer.analyze(new StringReader(
+				"-- not a statement; \n" +
+				"CREATE TABLE ksen_lui (id varchar2(10)); /* drop table ksen_gone; */\n" +
+				"insert into KSEN_LUI (id) values ('a;b''c');\n" +
+				"CREATE OR REPLACE FORCE VIEW ks.v_lui AS select 1 from dual\n" +
+				"/\n" +
+				"alter sequence seq_lui increment by 1;\n" +
+				"delete ksen_atp where 1=1;\n"));
+
+		Assert.assertTrue(analyzer.getChanges().contains(new SqlObjectChange("TABLE", "KSEN_LUI", ChangeKind.CREATE)));
+		Assert.assertTrue(analyzer.getChanges().contains(new SqlObjectChange("TABLE", "KSEN_LUI", ChangeKind.DATA)));
+		Assert.assertTrue(analyzer.getChanges().contains(new SqlObjectChange("VIEW", "KS.V_LUI", ChangeKind.CREATE)));
+		Assert.assertTrue(analyzer.getChanges().contains(new SqlObjectChange("SEQUENCE", "SEQ_LUI", ChangeKind.ALTER)));
+
+		Assert.assertEquals(new TreeSet<String>(Arrays.asList("KSEN_ATP", "KSEN_LUI")), analyzer.getObjectNames("TABLE"));
+
+		Assert.assertFalse(analyzer.hasUnattributedChanges());
+	}
+
+	@Test
+	public void testPatchUsesHunkHeader() throws IOException {
+
+		SqlChangeAnalyzer analyzer = new SqlChangeAnalyzer();
+
+		analyzer.analyzePatch(
+				"@@ -10,6 +10,7 @@ CREATE TABLE KSEN_FOO (\n" +
+				"   A NUMBER,\n" +
+				"-  B NUMBER\n" +
+				"+  B NUMBER,\n" +
+				"+  C NUMBER\n" +
+				" );\n");
+
+		Assert.assertEquals(1, analyzer.getChanges().size());
+		Assert.assertTrue(analyzer.getChanges().contains(new SqlObjectChange("TABLE", "KSEN_FOO", ChangeKind.CREATE)));
+		Assert.assertFalse(analyzer.hasUnattributedChanges());
+
+		analyzer.analyzePatch("@@ -40,2 +41,2 @@\n-  x,\n+  y,\n");
+
+		Assert.assertTrue(analyzer.hasUnattributedChanges());
+	}
+
+	@Test
+	public void testRemovedStatementsHaveTheOppositeEffect() throws IOException {
+
+		SqlChangeAnalyzer analyzer = new SqlChangeAnalyzer();
+
+		analyzer.analyzePatch(
+				"@@ -1,4 +1,2 @@\n" +
+				" insert into KSEN_ATP (id) values ('a');\n" +
+				"-CREATE TABLE KSEN_OLD (id varchar2(10));\n" +
+				"-drop sequence KSEN_SEQ;\n" +
+				"+update KSEN_LUI set id = 'b';\n");
+
+		Assert.assertEquals(new TreeSet<SqlObjectChange>(Arrays.asList(
+				new SqlObjectChange("TABLE", "KSEN_OLD", ChangeKind.DROP),
+				new SqlObjectChange("SEQUENCE", "KSEN_SEQ", ChangeKind.CREATE),
+				new SqlObjectChange("TABLE", "KSEN_LUI", ChangeKind.DATA))), analyzer.getChanges());
+
+		Assert.assertFalse(analyzer.hasUnattributedChanges());
+	}
+
+	@Test
+	public void testContextStatementsDoNotHideUnknownChanges() throws IOException {
+
+		SqlChangeAnalyzer analyzer = new SqlChangeAnalyzer();
+
+		analyzer.analyzePatch(
+				"@@ -1,3 +1,3 @@\n" +
+				" CREATE TABLE KSEN_LUI (id varchar2(10));\n" +
+				"-set define off;\n" +
+				"+set define on;\n" +
+				" insert into KSEN_ATP (id) values ('a');\n");
+
+		Assert.assertTrue(analyzer.getChanges().isEmpty());
+		Assert.assertTrue(analyzer.hasUnattributedChanges());
+	}
+}
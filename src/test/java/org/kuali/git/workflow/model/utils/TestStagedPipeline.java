@@ -0,0 +1,86 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kuali.git.workflow.model.utils.StagedPipeline.Result;
+import org.kuali.git.workflow.model.utils.StagedPipeline.Stage;
+
+/**
+ * @author ocleirig
+ *
+ */
+public class TestStagedPipeline {
+
+	/**
+	 *
+	 */
+	public TestStagedPipeline() {
+	}
+
+	@Test
+	public void testStagesAreBoundedAndOutcomesKept() throws InterruptedException {
+
+		final AtomicInteger active = new AtomicInteger();
+
+		final AtomicInteger busiest = new AtomicInteger();
+
+		StagedPipeline<Integer> pipeline = new StagedPipeline<Integer>();
+
+		pipeline.addStage("filter", 4, new Stage<Integer>() {
+
+			@Override
+			public boolean process(Integer item) throws Exception {
+				// odd items are skipped.
+				return item % 2 == 0;
+			}
+		});
+
+		pipeline.addStage("slow", 2, new Stage<Integer>() {
+
+			@Override
+			public boolean process(Integer item) throws Exception {
+
+				int now = active.incrementAndGet();
+
+				synchronized (busiest) {
+					busiest.set(Math.max(busiest.get(), now));
+				}
+
+				Thread.sleep(5);
+
+				active.decrementAndGet();
+
+				if (item == 10)
+					throw new IllegalStateException("item 10 fails");
+
+				return true;
+			}
+		});
+
+		List<Integer> items = new ArrayList<Integer>();
+
+		for (int i = 0; i < 20; i++) {
+			items.add(i);
+		}
+
+		Result<Integer> result = pipeline.run(items);
+
+		Assert.assertTrue(busiest.get() <= 2);
+
+		Assert.assertEquals(10, result.getSkipped().size());
+		Assert.assertEquals("filter", result.getSkipped().get(1));
+
+		Assert.assertEquals(1, result.getFailures().size());
+		Assert.assertTrue(result.getFailures().get(10) instanceof IllegalStateException);
+
+		Assert.assertEquals(9, result.getCompleted().size());
+		Assert.assertFalse(result.getCompleted().contains(10));
+	}
+}
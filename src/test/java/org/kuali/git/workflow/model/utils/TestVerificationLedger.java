@@ -0,0 +1,115 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kohsuke.github.GHCommitState;
+
+/**
+ * @author ocleirig
+ *
+ */
+public class TestVerificationLedger {
+
+	/**
+	 *
+	 */
+	public TestVerificationLedger() {
+	}
+
+	@Test
+	public void testQueuedHeadIsPromotedToVerifier() throws IOException {
+
+		VerificationLedger ledger = new VerificationLedger(10);
+
+		ledger.recordQueued("head1", "tree1");
+		ledger.recordQueued("head2", "tree2");
+
+		Assert.assertNull(ledger.getVerifyingCommit("tree1"));
+		Assert.assertEquals(2, ledger.getQueuedHeads().size());
+
+		ledger.recordVerified("tree1", "head1");
+		ledger.forgetQueued("head2");
+
+		Assert.assertEquals("head1", ledger.getVerifyingCommit("tree1"));
+		Assert.assertTrue(ledger.getQueuedHeads().isEmpty());
+
+		ledger.recordQueued("head3", "tree3");
+
+		File ledgerFile = File.createTempFile("verification-ledger", ".dat");
+
+		try {
+			ledger.save(ledgerFile);
+
+			VerificationLedger loaded = VerificationLedger.load(ledgerFile, 10);
+
+			Assert.assertEquals("head1", loaded.getVerifyingCommit("tree1"));
+			Assert.assertEquals("tree3", loaded.getQueuedHeads().get("head3"));
+			Assert.assertNull(loaded.getVerifyingCommit("tree2"));
+		}
+		finally {
+			ledgerFile.delete();
+		}
+	}
+
+	@Test
+	public void testOnlyCompletedSuccessfulStatusesVerify() {
+
+		Assert.assertTrue(VerificationLedger.isVerified(Arrays.asList(GHCommitState.SUCCESS, GHCommitState.SUCCESS)));
+
+		Assert.assertFalse(VerificationLedger.isVerified(Collections.<GHCommitState>emptyList()));
+		Assert.assertFalse(VerificationLedger.isVerified(Arrays.asList(GHCommitState.SUCCESS, GHCommitState.PENDING)));
+
+		Assert.assertFalse(VerificationLedger.isFailed(Arrays.asList(GHCommitState.SUCCESS, GHCommitState.PENDING)));
+		Assert.assertTrue(VerificationLedger.isFailed(Arrays.asList(GHCommitState.SUCCESS, GHCommitState.ERROR)));
+	}
+
+	@Test
+	public void testStaleQueuedHeadsAreForgotten() throws IOException {
+
+		VerificationLedger ledger = new VerificationLedger(10);
+
+		ledger.recordQueued("superseded", "tree1", 1000L);
+		ledger.recordQueued("expired", "tree2", 1000L);
+		ledger.recordQueued("current", "tree3", 5000L);
+
+		Assert.assertEquals(2, ledger.forgetStaleQueued(Arrays.asList("expired", "current"), 2000L));
+
+		Assert.assertEquals(Collections.singletonMap("current", "tree3"), ledger.getQueuedHeads());
+
+		File ledgerFile = File.createTempFile("verification-ledger", ".dat");
+
+		try {
+			ledger.save(ledgerFile);
+
+			// the queued time is kept.
+			VerificationLedger loaded = VerificationLedger.load(ledgerFile, 10);
+
+			Assert.assertEquals(0, loaded.forgetStaleQueued(Arrays.asList("current"), 5000L));
+			Assert.assertEquals(1, loaded.forgetStaleQueued(Arrays.asList("current"), 5001L));
+		}
+		finally {
+			ledgerFile.delete();
+		}
+	}
+
+	@Test
+	public void testOldestEntriesAreForgotten() {
+
+		VerificationLedger ledger = new VerificationLedger(2);
+
+		ledger.recordVerified("tree1", "head1");
+		ledger.recordVerified("tree2", "head2");
+		ledger.recordVerified("tree3", "head3");
+
+		Assert.assertNull(ledger.getVerifyingCommit("tree1"));
+		Assert.assertEquals("head3", ledger.getVerifyingCommit("tree3"));
+	}
+}
@@ -0,0 +1,176 @@
+/**
+ *
+ */
+package org.kuali.git.workflow.model.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.sf.json.JSONObject;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.kuali.git.workflow.model.utils.WebhookServer.Listener;
+
+/**
+ * @author ocleirig
+ *
+ */
+public class TestWebhookServer {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final String SECRET = "It's a Secret to Everybody";
+
+	/**
+	 *
+	 */
+	public TestWebhookServer() {
+	}
+
+	@Test
+	public void testSignatureMatchesGithub() {
+
+		// the example from github's webhook validation documentation.
+		byte[] body = "Hello, World!".getBytes(UTF_8);
+
+		String signature = WebhookSignature.sign(SECRET, body);
+
+		Assert.assertEquals("sha256=757107ea0eb2509fc211221cce984b8a37570b6d7586c22c46f4379c8b043e17", signature);
+
+		Assert.assertTrue(WebhookSignature.isValid(SECRET, body, signature));
+		Assert.assertFalse(WebhookSignature.isValid("another secret", body, signature));
+		Assert.assertFalse(WebhookSignature.isValid(SECRET, "Hello, World?".getBytes(UTF_8), signature));
+		Assert.assertFalse(WebhookSignature.isValid(SECRET, body, null));
+		Assert.assertFalse(WebhookSignature.isValid(SECRET, body, signature.substring(7)));
+	}
+
+	@Test
+	public void testRepeatedDeliveriesAreHandledOnce() {
+
+		RecordingListener listener = new RecordingListener();
+
+		WebhookServer server = new WebhookServer(SECRET, 2, listener);
+
+		byte[] body = "{\"action\":\"opened\"}".getBytes(UTF_8);
+
+		String signature = WebhookSignature.sign(SECRET, body);
+
+		Assert.assertEquals(200, server.handle("pull_request", "delivery-1", signature, body));
+		Assert.assertEquals(200, server.handle("pull_request", "delivery-1", signature, body));
+		Assert.assertEquals(200, server.handle("pull_request", "delivery-2", signature, body));
+
+		Assert.assertEquals(2, listener.handled.size());
+		Assert.assertEquals(1, server.getDuplicates());
+
+		// only the most recent deliveries are remembered.
+		server.handle("pull_request", "delivery-3", signature, body);
+		server.handle("pull_request", "delivery-4", signature, body);
+		server.handle("pull_request", "delivery-1", signature, body);
+
+		Assert.assertEquals(5, listener.handled.size());
+
+		Assert.assertEquals(401, server.handle("pull_request", "delivery-5", WebhookSignature.sign("wrong", body), body));
+		Assert.assertEquals(5, listener.handled.size());
+		Assert.assertEquals(1, server.getRejected());
+	}
+
+	@Test
+	public void testFailedDeliveriesCanBeRedelivered() {
+
+		RecordingListener listener = new RecordingListener();
+
+		listener.fail = true;
+
+		WebhookServer server = new WebhookServer(SECRET, 10, listener);
+
+		byte[] body = "{\"action\":\"created\"}".getBytes(UTF_8);
+
+		String signature = WebhookSignature.sign(SECRET, body);
+
+		Assert.assertEquals(500, server.handle("issue_comment", "delivery-1", signature, body));
+
+		listener.fail = false;
+
+		Assert.assertEquals(200, server.handle("issue_comment", "delivery-1", signature, body));
+		Assert.assertEquals(1, listener.handled.size());
+	}
+
+	@Test
+	public void testDeliveriesAreRecognizedAfterARestart() throws IOException {
+
+		File directory = Files.createTempDirectory("webhook-server").toFile();
+
+		try {
+			File deliveriesFile = new File(directory, "webhook-deliveries.dat");
+
+			byte[] body = "{\"action\":\"opened\"}".getBytes(UTF_8);
+
+			String signature = WebhookSignature.sign(SECRET, body);
+
+			RecordingListener listener = new RecordingListener();
+
+			WebhookServer server = new WebhookServer(SECRET, 2, listener);
+
+			server.setDeliveriesFile(deliveriesFile);
+
+			server.handle("pull_request", "delivery-1", signature, body);
+			server.handle("pull_request", "delivery-2", signature, body);
+			server.handle("pull_request", "delivery-3", signature, body);
+
+			WebhookServer restarted = new WebhookServer(SECRET, 2, listener);
+
+			restarted.setDeliveriesFile(deliveriesFile);
+
+			Assert.assertEquals(200, restarted.handle("pull_request", "delivery-3", signature, body));
+			Assert.assertEquals(1, restarted.getDuplicates());
+
+			// only the most recent deliveries were saved.
+			restarted.handle("pull_request", "delivery-1", signature, body);
+
+			Assert.assertEquals(Arrays.asList("delivery-1", "delivery-2", "delivery-3", "delivery-1"), listener.handled);
+		}
+		finally {
+			FileUtils.deleteDirectory(directory);
+		}
+	}
+
+	@Test
+	public void testOversizedBodiesAreNotRead() throws IOException {
+
+		Assert.assertTrue(WebhookServer.isDeclaredOversized("11", 10));
+		Assert.assertTrue(WebhookServer.isDeclaredOversized("not a number", 10));
+		Assert.assertFalse(WebhookServer.isDeclaredOversized("10", 10));
+		Assert.assertFalse(WebhookServer.isDeclaredOversized(null, 10));
+
+		Assert.assertNull(WebhookServer.readBody(new ByteArrayInputStream(new byte[11]), 10));
+		Assert.assertEquals(10, WebhookServer.readBody(new ByteArrayInputStream(new byte[10]), 10).length);
+	}
+
+	private static final class RecordingListener implements Listener {
+
+		private final List<String> handled = new ArrayList<String>();
+
+		private boolean fail = false;
+
+		@Override
+		public void onEvent(String event, String deliveryId, JSONObject payload) throws IOException {
+
+			if (fail)
+				throw new IOException("failed");
+
+			handled.add(deliveryId);
+		}
+
+		@Override
+		public void onRejected(String event, String deliveryId, int status, String reason) {
+		}
+	}
+}